@@ -16,10 +16,10 @@
  ******************************************************************************/
 package com.quattroresearch.antibody;
 
-import java.awt.Cursor;
 import java.awt.event.ActionEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -28,9 +28,9 @@ import java.util.prefs.Preferences;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
-import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.SwingWorker;
 
 import org.roche.antibody.services.PreferencesService;
 
@@ -177,7 +177,9 @@ public class AntibodyEditorDialog extends javax.swing.JDialog {
 
   /**
    * Displays Dialog for domain-matching. <p> If there already exists a FindDialog, it is dismissed because the data
-   * could have changed.
+   * could have changed. The domains are detected in the background, a {@link DomainDetectionProgressDialog} shows the
+   * progress meanwhile. The find button stays disabled until the task is done, also when it was cancelled, so no two
+   * detections overlap.
    * 
    */
 
@@ -185,24 +187,26 @@ public class AntibodyEditorDialog extends javax.swing.JDialog {
     if (findDialog == null) {
       findDialog = new AntibodyFindDialog(this, false);
     }
-    try {
-      this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-      if (findDialog.processData(AntibodySequenceEditor.getInstance()
-          .getNames(), AntibodySequenceEditor.getInstance()
-          .getChains())) {
-        findDialog.setLocationRelativeTo(parentFrame);
-        findDialog.setVisible(true);
-        this.setVisible(false);
+    final DomainDetectionTask task = new DomainDetectionTask(AntibodySequenceEditor.getInstance()
+        .getNames(), AntibodySequenceEditor.getInstance().getChains());
+    final DomainDetectionProgressDialog progressDialog = new DomainDetectionProgressDialog(this, task);
+    task.addPropertyChangeListener(new PropertyChangeListener() {
+      @Override
+      public void propertyChange(PropertyChangeEvent evt) {
+        if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == SwingWorker.StateValue.DONE) {
+          progressDialog.dispose();
+          findButton.setEnabled(true);
+          if (findDialog.finishDetection(task)) {
+            findDialog.setLocationRelativeTo(parentFrame);
+            findDialog.setVisible(true);
+            setVisible(false);
+          }
+        }
       }
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
-      JOptionPane.showMessageDialog(parentFrame,
-          "An error occurred while initiating domain detection.",
-          "Domain Detection failed", JOptionPane.ERROR_MESSAGE);
-    } finally {
-      this.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-    }
-
+    });
+    findButton.setEnabled(false);
+    task.execute();
+    progressDialog.setVisible(true);
   }
 
   public void openButtonActionPerformed(ActionEvent e) {
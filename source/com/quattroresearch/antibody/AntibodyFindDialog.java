@@ -24,6 +24,8 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JButton;
 import javax.swing.JDialog;
@@ -34,16 +36,16 @@ import javax.swing.ToolTipManager;
 
 import org.roche.antibody.model.antibody.Antibody;
 import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.services.AntibodyCreationService;
 import org.roche.antibody.services.ConfigFileService;
+import org.roche.antibody.services.ConfigRepository;
 import org.roche.antibody.services.PreferencesDefault;
 import org.roche.antibody.services.PreferencesService;
 import org.roche.antibody.services.UIService;
-import org.roche.antibody.services.antibody.AntibodyService;
 import org.roche.antibody.ui.components.AntibodyEditorPane;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.quattroresearch.antibody.DomainDetection.E_ErrorType;
 import com.quattroresearch.antibody.exception.AutoconnectorConnectingException;
 import com.quattroresearch.antibody.exception.OverlappingDomainsException;
 
@@ -93,69 +95,86 @@ public class AntibodyFindDialog extends JDialog {
     getContentPane().repaint();
   }
 
-  public boolean processData(List<String> chainNames, List<String> chains) throws FileNotFoundException {
-    domainDetection = new DomainDetection(chainNames, chains);
-
-    try {
-      if (domainDetection.makeBlastDatabases().equals(E_ErrorType.LOADLIB_FAILED)) {
-        JOptionPane.showMessageDialog(antibodyEditorDialog.getParentFrame(),
-            "Could not load Library File!", "Error",
-            JOptionPane.ERROR_MESSAGE);
-        LOG.error("Unable to load library, no search conducted!");
-        return false;
-      }
-    } catch (FileNotFoundException e) {
-      JOptionPane.showMessageDialog(antibodyEditorDialog.getParentFrame(), "Please check the filepath in the Antibody Editor Settings", "Domain definition file not found", JOptionPane.ERROR_MESSAGE);
-      LOG.error("File not found. Blast database not created.");
+  /**
+   * Takes over the result of a finished {@link DomainDetectionTask} and shows errors of the detection. The chain panels
+   * and the original antibody were built by the task, they are only laid out and shown here.
+   * 
+   * @param task the finished task
+   * @return true, if the found domains can be shown
+   */
+  public boolean finishDetection(DomainDetectionTask task) {
+    if (task.isDetectionCancelled()) {
+      LOG.info("Domain detection cancelled.");
       return false;
-    } catch (Exception e) {
-      JOptionPane.showMessageDialog(antibodyEditorDialog.getParentFrame(), "Unable to make blast database : "
-          + e.getClass().getName()
-          + "(" + e.getMessage() + ")", "Blast failed.", JOptionPane.ERROR_MESSAGE);
-      LOG.error("Unable to make blast database: " + e.getClass().getName()
-          + "(" + e.getMessage() + ")");
+    }
+    if (task.isLoadLibraryFailed()) {
+      JOptionPane.showMessageDialog(antibodyEditorDialog.getParentFrame(),
+          "Could not load Library File!", "Error",
+          JOptionPane.ERROR_MESSAGE);
       return false;
     }
 
+    long startTime = System.currentTimeMillis();
     try {
-      domainDetection.loadData();
-    } catch (Exception e) {
-      JOptionPane.showMessageDialog(antibodyEditorDialog.getParentFrame(), "Exception occurred while loading domain data: "
-          + e.getClass().getName()
-          + "(" + e.getMessage() + ")", "Loading domains failed.", JOptionPane.ERROR_MESSAGE);
-      LOG.error("Exception occurred while loading domain data: "
-          + e.getClass().getName()
-          + "(" + e.getMessage() + ")");
-      e.printStackTrace();
+      domainDetection = task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (CancellationException e) {
+      LOG.info("Domain detection cancelled.");
+      return false;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof CancellationException) {
+        LOG.info("Domain detection cancelled.");
+      } else {
+        showDetectionError(task, e.getCause());
+      }
       return false;
     }
     refreshPanels();
-    domainDetection.checkCompability();
 
     /* Set original Antibody */
     if (viewDialog != null) {
       viewDialog.setOriginalAntibody(null);
     }
-    try {
-      List<Peptide> peptideList = null;
-      peptideList = domainDetection.calculatePeptides(false);
-      FindMutations.find(peptideList, ConfigFileService.getInstance().fetchMutationLibrary());
-      Antibody ab = AntibodyService.getInstance().create(peptideList);
-      LOG.debug("Create original antibody");
-      ab.setMasterLibrariesUsed(PreferencesService.getInstance().isAllMasterLibrariesEnabled());
-      ab.setMasterSettingsUsed(PreferencesService.getInstance().isMasterSettingsEnabled());
+    Antibody ab = task.getOriginalAntibody();
+    if (ab != null) {
       if (viewDialog == null) {
         viewDialog = UIService.getInstance().addAntibodyViewEditor(this);
       }
       viewDialog.setOriginalAntibody(ab);
       LOG.debug("Original Antibody was set");
-    } catch (Exception e) {
-      LOG.error("Original Antibody can not be set according to error " + e.getMessage());
     }
+    LOG.info("Time|Step Domain detection panels|" + (System.currentTimeMillis() - startTime));
 
     return true;
   }
 
+  private void showDetectionError(DomainDetectionTask task, Throwable e) {
+    if (task.getDomainDetection() == null) {
+      LOG.error("Unable to initiate domain detection: " + e.getMessage(), e);
+      JOptionPane.showMessageDialog(antibodyEditorDialog.getParentFrame(),
+          "An error occurred while initiating domain detection.",
+          "Domain Detection failed", JOptionPane.ERROR_MESSAGE);
+    } else if (task.getStage() == DomainDetectionTask.Stage.DATABASES && e instanceof FileNotFoundException) {
+      JOptionPane.showMessageDialog(antibodyEditorDialog.getParentFrame(), "Please check the filepath in the Antibody Editor Settings", "Domain definition file not found", JOptionPane.ERROR_MESSAGE);
+      LOG.error("File not found. Blast database not created.");
+    } else if (task.getStage() == DomainDetectionTask.Stage.DATABASES) {
+      JOptionPane.showMessageDialog(antibodyEditorDialog.getParentFrame(), "Unable to make blast database : "
+          + e.getClass().getName()
+          + "(" + e.getMessage() + ")", "Blast failed.", JOptionPane.ERROR_MESSAGE);
+      LOG.error("Unable to make blast database: " + e.getClass().getName()
+          + "(" + e.getMessage() + ")");
+    } else {
+      JOptionPane.showMessageDialog(antibodyEditorDialog.getParentFrame(), "Exception occurred while loading domain data: "
+          + e.getClass().getName()
+          + "(" + e.getMessage() + ")", "Loading domains failed.", JOptionPane.ERROR_MESSAGE);
+      LOG.error("Exception occurred while loading domain data: "
+          + e.getClass().getName()
+          + "(" + e.getMessage() + ")", e);
+    }
+  }
+
   private void saveTooltipDelays() {
     tooltipDefaultDelayInitial = ToolTipManager.sharedInstance()
         .getInitialDelay();
@@ -297,7 +316,7 @@ public class AntibodyFindDialog extends JDialog {
       try {
         try {
           this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-          FindMutations.find(peptideList, ConfigFileService.getInstance().fetchMutationLibrary());
+          MutationLibraryIndex.of(ConfigRepository.getInstance().getMutationLibrary()).find(peptideList);
         } catch (SQLException e) {
           JOptionPane.showMessageDialog(antibodyEditorDialog.getParentFrame(), "A SQL Exception occurred."
               + System.getProperty("line.separator") + "(" + e.getMessage() + ")", "Mutation detection failed.",
@@ -321,7 +340,7 @@ public class AntibodyFindDialog extends JDialog {
           viewDialog = UIService.getInstance().addAntibodyViewEditor(this);
         }
         this.setVisible(false);
-        Antibody ab = AntibodyService.getInstance().create(peptideList);
+        Antibody ab = AntibodyCreationService.getInstance().create(peptideList);
         ab.setMasterLibrariesUsed(PreferencesService.getInstance().isAllMasterLibrariesEnabled());
         ab.setMasterSettingsUsed(PreferencesService.getInstance().isMasterSettingsEnabled());
 
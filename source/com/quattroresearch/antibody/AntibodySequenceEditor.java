@@ -209,12 +209,12 @@ public class AntibodySequenceEditor extends JPanel {
    */
   public List<String>[] readFiles(List<File> files) throws IllegalArgumentException, HeadlessException, IOException {
     ISequenceFileReader readerPlugin = PluginLoader.getInstance().loadSequenceFileReaderPlugin();
-    TreeMap<String, String> inputs = getFilesContent(files);
     if (readerPlugin != null) {
+      TreeMap<String, String> inputs = getFilesContent(files);
       return readerPlugin.read(UIService.getInstance().getMainFrame(), inputs);
 
     } else {
-      return new SequenceFileReader().read(UIService.getInstance().getMainFrame(), inputs);
+      return new StreamingSequenceFileReader().read(UIService.getInstance().getMainFrame(), files);
     }
 
   }
@@ -0,0 +1,406 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.antibody;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.roche.antibody.model.antibody.DomainLibraryValues;
+import org.roche.antibody.model.antibody.DomainLibraryValues.DomainUsage;
+import org.roche.antibody.services.ConfigRepository;
+import org.roche.antibody.services.PreferencesService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.quattroresearch.blastws.BatchBlastSearchService;
+import com.quattroresearch.blastws.BlastHit;
+import com.quattroresearch.blastws.BlastSearchParams;
+import com.quattroresearch.blastws.BlastSearchService;
+import com.quattroresearch.blastws.NCBIBlastAPI;
+import com.quattroresearch.blastws.SmithWatermanSearchService;
+
+/**
+ * {@code BatchDomainDetection} is a {@link DomainDetection} which searches all chains with one blast call per
+ * database. {@link #prefetchSearches()} runs the CORE and GENERAL searches for all chains concurrently, larger batches
+ * are split across the processors (see {@link BatchBlastSearchService}). If the batched search fails, every chain is
+ * searched on its own, these searches run concurrently on the pool of the {@link BatchBlastSearchService}. All searches
+ * use their own temp workspace, so several detections may run at the same time.
+ * <p>
+ * {@link #loadData()} processes the chains with the prefetched hits, it only searches if nothing was prefetched. The
+ * searches do not touch the chain panels, so they may be prefetched on a background thread, while {@link #loadData()}
+ * has to run on the event dispatch thread when the panels are shown.
+ * <p>
+ * When the user enabled {@link SmithWatermanSearchService#PREF_USE_INTERNAL_ALIGNER}, the domains are aligned
+ * in-process by the {@link SmithWatermanSearchService} and no blast database is needed at all.
+ * <p>
+ * A {@link SearchListener} is told about the hits of every chain while the searches run. The detection can be cancelled
+ * from another thread, the running blast processes are destroyed and the searches stop with a
+ * {@link CancellationException}.
+ *
+ * @version $Id$
+ */
+public class BatchDomainDetection extends DomainDetection {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(BatchDomainDetection.class);
+
+  private final List<String> chains;
+
+  private BatchBlastSearchService batchSearchService;
+
+  private boolean archiveLastBlast = NCBIBlastAPI.ARCHIVE_LAST_BLAST;
+
+  private volatile SearchListener searchListener;
+
+  private volatile boolean cancelled;
+
+  /** the thread running {@link #prefetchSearches()}, interrupted by {@link #cancel()} */
+  private Thread searchThread;
+
+  /** prefetched hits: database suffix -> chain sequence -> hits, one entry per occurrence of the chain */
+  private final Map<String, Map<String, LinkedList<BlastHit[]>>> prefetchedHits =
+      new HashMap<String, Map<String, LinkedList<BlastHit[]>>>();
+
+  private volatile boolean prefetched;
+
+  /**
+   * Instantiates the domain detection with fresh chains. The domain library of the {@link ConfigRepository} will be
+   * used, it is only fetched again when the configuration changed.
+   *
+   * @param chainNames the chains names
+   * @param chains the chains
+   * @throws FileNotFoundException
+   */
+  public BatchDomainDetection(List<String> chainNames, List<String> chains) throws FileNotFoundException {
+    super(chainNames, chains, fetchDomainLibrary());
+    this.chains = chains;
+    useSearchService();
+  }
+
+  /**
+   * Instantiates the domain detection with fresh chains and the given domain library.
+   *
+   * @param chainNames the chains names
+   * @param chains the chains
+   * @param domainLibrary the domain library, fetched once by the caller
+   * @throws FileNotFoundException
+   */
+  public BatchDomainDetection(List<String> chainNames, List<String> chains, List<DomainLibraryValues> domainLibrary)
+      throws FileNotFoundException {
+    super(chainNames, chains, domainLibrary);
+    this.chains = chains;
+    useSearchService();
+  }
+
+  /**
+   * Makes the domain library usable to BLAST. The indexed databases are reused as long as the library did not change
+   * (see {@link BlastDatabaseCache}). Nothing has to be indexed for the internal aligner.
+   *
+   * @return ErrorType - will be NO_ERR when no error occurred
+   * @throws FileNotFoundException
+   * @throws Exception
+   */
+  @Override
+  public E_ErrorType makeBlastDatabases() throws FileNotFoundException, Exception {
+    useSearchService();
+    if (batchSearchService == null) {
+      return E_ErrorType.NO_ERR;
+    }
+    return BlastDatabaseCache.getInstance().ensureDomainDatabases(bss);
+  }
+
+  /**
+   * Searches all chains against the CORE and GENERAL library in one go and keeps the hits for {@link #loadData()}. The
+   * {@link SearchListener} is told about the hits of every chain, as soon as it was searched.
+   *
+   * @throws Exception
+   */
+  public void prefetchSearches() throws Exception {
+    checkCancelled();
+    synchronized (this) {
+      searchThread = Thread.currentThread();
+    }
+    try {
+      searchChains();
+    } catch (InterruptedException e) {
+      checkCancelled();
+      throw e;
+    } finally {
+      synchronized (this) {
+        searchThread = null;
+      }
+      if (cancelled) {
+        // clears the interrupt of cancel()
+        Thread.interrupted();
+      }
+    }
+  }
+
+  private void searchChains() throws Exception {
+    boolean batched = false;
+    if (batchSearchService != null) {
+      try {
+        batchSearchService.searchBatch(createSearchParams(), chains, new BatchBlastSearchService.BatchListener() {
+          @Override
+          public void querySearched(int queryIndex, String dbSuffix, BlastHit[] hits) {
+            fireChainSearched(queryIndex, dbSuffix, hits);
+          }
+        }, getDatabaseSuffix(DomainUsage.CORE), getDatabaseSuffix(DomainUsage.GENERAL));
+        batched = true;
+      } catch (Exception e) {
+        batchSearchService.clearBatch();
+        if (e instanceof InterruptedException) {
+          throw e;
+        }
+        LOG.warn("Batched blast search failed, searching chains one by one: " + e.getMessage());
+      }
+    }
+
+    // same order as DomainDetection#loadData(): all chains against CORE, then against GENERAL
+    DomainUsage[] domainUsages = new DomainUsage[] {DomainUsage.CORE, DomainUsage.GENERAL};
+    List<Future<BlastHit[]>> searches = new ArrayList<Future<BlastHit[]>>();
+    try {
+      if (batchSearchService != null && !batched) {
+        for (DomainUsage domainUsage : domainUsages) {
+          for (int chainIndex = 0; chainIndex < chains.size(); chainIndex++) {
+            final int index = chainIndex;
+            final String dbSuffix = getDatabaseSuffix(domainUsage);
+            searches.add(BatchBlastSearchService.getExecutor().submit(new Callable<BlastHit[]>() {
+              @Override
+              public BlastHit[] call() throws Exception {
+                return searchChain(index, dbSuffix);
+              }
+            }));
+          }
+        }
+      }
+
+      prefetchedHits.clear();
+      int searchIndex = 0;
+      for (DomainUsage domainUsage : domainUsages) {
+        String dbSuffix = getDatabaseSuffix(domainUsage);
+        Map<String, LinkedList<BlastHit[]>> hitsBySequence = new HashMap<String, LinkedList<BlastHit[]>>();
+        for (int chainIndex = 0; chainIndex < chains.size(); chainIndex++) {
+          checkCancelled();
+          BlastHit[] hits = searches.isEmpty() ? searchChain(chainIndex, dbSuffix) : searches.get(searchIndex++).get();
+          // the batch told the listener about every chain already
+          if (!batched) {
+            fireChainSearched(chainIndex, dbSuffix, hits);
+          }
+
+          LinkedList<BlastHit[]> occurrences = hitsBySequence.get(chains.get(chainIndex));
+          if (occurrences == null) {
+            occurrences = new LinkedList<BlastHit[]>();
+            hitsBySequence.put(chains.get(chainIndex), occurrences);
+          }
+          occurrences.add(hits);
+        }
+        prefetchedHits.put(dbSuffix, hitsBySequence);
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    } finally {
+      // stops the searches still running after a failure or cancellation
+      for (Future<BlastHit[]> search : searches) {
+        search.cancel(true);
+      }
+    }
+    prefetched = true;
+  }
+
+  private void fireChainSearched(int chainIndex, String dbSuffix, BlastHit[] hits) {
+    SearchListener listener = searchListener;
+    if (listener != null) {
+      listener.chainSearched(chainIndex, dbSuffix, hits);
+    }
+  }
+
+  /**
+   * Searches a single chain in one database, as {@link DomainDetection#performBlast(DomainUsage)} does.
+   */
+  private BlastHit[] searchChain(int chainIndex, String dbSuffix) throws Exception {
+    BlastSearchParams params = createSearchParams();
+    params.setQuery(chains.get(chainIndex));
+
+    long startTime = System.currentTimeMillis();
+    BlastHit[] hits = bss.searchSequence(params, dbSuffix);
+    LOG.info("Time|Step Search chain " + chainIndex + " " + dbSuffix + "|"
+        + (System.currentTimeMillis() - startTime));
+    return hits;
+  }
+
+  /**
+   * Performs the domain detection with the hits of {@link #prefetchSearches()}, the chains are searched first if they
+   * were not prefetched.
+   *
+   * @throws Exception
+   */
+  @Override
+  public void loadData() throws Exception {
+    if (!prefetched) {
+      prefetchSearches();
+    }
+    BlastSearchService searchService = bss;
+    bss = new PrefetchedSearchService(searchService);
+    try {
+      super.loadData();
+    } finally {
+      bss = searchService;
+      prefetchedHits.clear();
+      prefetched = false;
+    }
+  }
+
+  /**
+   * @param searchListener told about the hits of every chain during {@link #prefetchSearches()}, may be null
+   */
+  public void setSearchListener(SearchListener searchListener) {
+    this.searchListener = searchListener;
+  }
+
+  /**
+   * Cancels the detection. The thread searching in {@link #prefetchSearches()} is interrupted, which destroys the
+   * running blast processes. No further search is started.
+   */
+  public void cancel() {
+    cancelled = true;
+    synchronized (this) {
+      if (searchThread != null) {
+        searchThread.interrupt();
+      }
+    }
+  }
+
+  /**
+   * @return true, if the detection was cancelled
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  private void checkCancelled() {
+    if (cancelled) {
+      throw new CancellationException("Domain detection cancelled.");
+    }
+  }
+
+  /**
+   * @param archiveLastBlast true, to keep the files of the last blast search for the HELMEditor (see
+   *          {@link BatchBlastSearchService#setArchiveLastBlast(boolean)})
+   */
+  public void setArchiveLastBlast(boolean archiveLastBlast) {
+    this.archiveLastBlast = archiveLastBlast;
+    if (batchSearchService != null) {
+      batchSearchService.setArchiveLastBlast(archiveLastBlast);
+    }
+  }
+
+  private static List<DomainLibraryValues> fetchDomainLibrary() throws FileNotFoundException {
+    try {
+      return ConfigRepository.getInstance().getDomainLibrary();
+    } catch (Exception e) {
+      throw new FileNotFoundException(String.format("Domain Library not loaded (%s)", e.getMessage()));
+    }
+  }
+
+  private void useSearchService() {
+    if (PreferencesService.getInstance().getUserPrefs().getBoolean(SmithWatermanSearchService.PREF_USE_INTERNAL_ALIGNER,
+        SmithWatermanSearchService.DEFAULT_USE_INTERNAL_ALIGNER)) {
+      batchSearchService = null;
+      bss = new SmithWatermanSearchService();
+    } else {
+      batchSearchService = new BatchBlastSearchService();
+      batchSearchService.setArchiveLastBlast(archiveLastBlast);
+      bss = batchSearchService;
+    }
+  }
+
+  /**
+   * Blast parameters as used by {@link DomainDetection#performBlast(DomainUsage)}.
+   */
+  private BlastSearchParams createSearchParams() {
+    BlastSearchParams params = new BlastSearchParams();
+    params.setSequenceType("Protein");
+    // eVal and word size essential for detection of very short domains
+    params.setWordSize(2);
+    params.setCompBasedStats("F");
+    return params;
+  }
+
+  private String getDatabaseSuffix(DomainUsage domainUsage) {
+    return domainUsage.toString().toUpperCase();
+  }
+
+  /**
+   * Receives the hits of the chains, as soon as a chain was searched.
+   */
+  public interface SearchListener {
+
+    /**
+     * Called after a chain was searched in one database, on the searching thread or on a blast thread. The hits of a
+     * batch are reported concurrently and not in chain order.
+     *
+     * @param chainIndex index of the chain
+     * @param dbSuffix the database, e.g. CORE
+     * @param hits the hits found
+     */
+    void chainSearched(int chainIndex, String dbSuffix, BlastHit[] hits);
+  }
+
+  /**
+   * Hands out the prefetched hits to {@link DomainDetection#loadData()}. Every prefetched result is handed out only
+   * once, because domain detection modifies the returned hits. Any other search is delegated.
+   */
+  private class PrefetchedSearchService extends BlastSearchService {
+
+    private final BlastSearchService searchService;
+
+    PrefetchedSearchService(BlastSearchService searchService) {
+      this.searchService = searchService;
+    }
+
+    @Override
+    public BlastHit[] searchSequence(BlastSearchParams params, String dbSuffix) throws Exception {
+      Map<String, LinkedList<BlastHit[]>> hitsBySequence = prefetchedHits.get(dbSuffix);
+      if (hitsBySequence != null) {
+        LinkedList<BlastHit[]> occurrences = hitsBySequence.get(params.getQuery());
+        if (occurrences != null && !occurrences.isEmpty()) {
+          return occurrences.removeFirst();
+        }
+      }
+      return searchService.searchSequence(params, dbSuffix);
+    }
+
+    @Override
+    public String getBestAlignment() {
+      return searchService.getBestAlignment();
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.antibody;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.roche.antibody.model.antibody.DomainLibraryValues.DomainUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.quattroresearch.antibody.DomainDetection.E_ErrorType;
+import com.quattroresearch.blastws.BlastSearchService;
+import com.quattroresearch.blastws.LocalConfig;
+
+/**
+ * {@code BlastDatabaseCache} keeps the blast databases of the domain library indexed between detection runs. The
+ * FASTA generated from the library is hashed, the hash is stored next to the indexed database. {@code makeblastdb} is
+ * only run again, when the hash of the library changed or the index files are missing.
+ *
+ * @version $Id$
+ */
+public final class BlastDatabaseCache {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(BlastDatabaseCache.class);
+
+  /** suffix of the file holding the hash of an indexed database */
+  private static final String HASH_FILE_SUFFIX = ".sha256";
+
+  /** index file of a protein database, written last by makeblastdb */
+  private static final String INDEX_FILE_SUFFIX = ".pin";
+
+  private static BlastDatabaseCache instance;
+
+  private BlastDatabaseCache() {
+  }
+
+  public static synchronized BlastDatabaseCache getInstance() {
+    if (instance == null) {
+      instance = new BlastDatabaseCache();
+    }
+    return instance;
+  }
+
+  /**
+   * Makes sure the CORE and GENERAL databases of the cached {@link DomainLibrary} are indexed. Databases whose library
+   * content did not change are reused.
+   *
+   * @param bss the search service used to build the FASTA content and the index
+   * @return ErrorType - will be NO_ERR when no error occurred
+   * @throws Exception
+   */
+  public synchronized E_ErrorType ensureDomainDatabases(BlastSearchService bss) throws Exception {
+    DomainLibraryIndex libraryIndex = DomainLibraryIndex.getInstance();
+
+    String coreContent = bss.getDomainLibAsFA(libraryIndex.getByUsage(DomainUsage.CORE), DomainUsage.CORE);
+    if (!ensureDatabase(bss, "_CORE", coreContent)) {
+      return E_ErrorType.LOADLIB_FAILED;
+    }
+    String generalContent = bss.getDomainLibAsFA(libraryIndex.getByUsage(DomainUsage.GENERAL, DomainUsage.ANTIGEN),
+        DomainUsage.GENERAL, DomainUsage.ANTIGEN);
+    if (!ensureDatabase(bss, "_GENERAL", generalContent)) {
+      return E_ErrorType.LOADLIB_FAILED;
+    }
+    return E_ErrorType.NO_ERR;
+  }
+
+  /**
+   * Indexes the content as protein database with the given suffix, if it is not indexed yet.
+   *
+   * @return true, if the database is indexed
+   * @throws IOException
+   */
+  private boolean ensureDatabase(BlastSearchService bss, String dbSuffix, String content) throws IOException {
+    if (content == null) {
+      return false;
+    }
+    File libraryDirectory = new File(LocalConfig.getInstance().getProteinLibraryDirectory().toString());
+    final String dbFileName = String.format("db%s.fa", dbSuffix);
+    File dbFile = new File(libraryDirectory, dbFileName);
+    File hashFile = new File(libraryDirectory, dbFileName + HASH_FILE_SUFFIX);
+    String hash = DigestUtils.sha256Hex(content);
+
+    if (isIndexed(dbFile, hashFile, hash)) {
+      LOG.info("Reusing blast database " + dbFile + " (" + hash + ")");
+      return true;
+    }
+
+    LOG.info("Building blast database " + dbFile + " (" + hash + ")");
+    FileUtils.deleteQuietly(hashFile);
+    File[] oldFiles = libraryDirectory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(dbFileName);
+      }
+    });
+    if (oldFiles != null) {
+      for (File oldFile : oldFiles) {
+        FileUtils.deleteQuietly(oldFile);
+      }
+    }
+
+    String info = bss.uploadAndIndex("Protein", dbSuffix, content);
+    if (info.equals("ERROR") || !getIndexFile(dbFile).exists()) {
+      return false;
+    }
+    FileUtils.writeStringToFile(hashFile, hash);
+    return true;
+  }
+
+  private boolean isIndexed(File dbFile, File hashFile, String hash) throws IOException {
+    if (!dbFile.exists() || !hashFile.exists() || !getIndexFile(dbFile).exists()) {
+      return false;
+    }
+    return hash.equals(FileUtils.readFileToString(hashFile).trim());
+  }
+
+  private File getIndexFile(File dbFile) {
+    return new File(dbFile.getPath() + INDEX_FILE_SUFFIX);
+  }
+
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.antibody;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.WindowConstants;
+
+/**
+ * {@code DomainDetectionProgressDialog} shows the progress of a {@link DomainDetectionTask}: the current stage and the
+ * hits of every chain as soon as it was searched. The detection can be cancelled. The dialog does not close itself,
+ * the owner disposes it when the task is done.
+ *
+ * @version $Id$
+ */
+public class DomainDetectionProgressDialog extends JDialog implements PropertyChangeListener {
+
+  /** Generated UID */
+  private static final long serialVersionUID = -2318836251473927005L;
+
+  private final DomainDetectionTask task;
+
+  private final JLabel lblStage = new JLabel(" ");
+
+  private final JProgressBar progressBar = new JProgressBar(0, 100);
+
+  private final JTextArea txtChainResults = new JTextArea(8, 40);
+
+  private final JButton btnCancel = new JButton("Cancel");
+
+  /**
+   * @param owner the dialog starting the detection
+   * @param task the detection task, the dialog listens to it
+   */
+  public DomainDetectionProgressDialog(JDialog owner, DomainDetectionTask task) {
+    super(owner, "Domain Detection", false);
+    this.task = task;
+    initComponents();
+    task.addPropertyChangeListener(this);
+    setLocationRelativeTo(owner);
+  }
+
+  private void initComponents() {
+    setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+    addWindowListener(new WindowAdapter() {
+      @Override
+      public void windowClosing(WindowEvent e) {
+        cancel();
+      }
+    });
+    btnCancel.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        cancel();
+      }
+    });
+
+    progressBar.setStringPainted(true);
+    txtChainResults.setEditable(false);
+
+    JPanel progressPanel = new JPanel(new BorderLayout(5, 5));
+    progressPanel.add(lblStage, BorderLayout.NORTH);
+    progressPanel.add(progressBar, BorderLayout.CENTER);
+
+    JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+    buttonPanel.add(btnCancel);
+
+    JPanel contentPanel = new JPanel(new BorderLayout(5, 5));
+    contentPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+    contentPanel.add(progressPanel, BorderLayout.NORTH);
+    contentPanel.add(new JScrollPane(txtChainResults), BorderLayout.CENTER);
+    contentPanel.add(buttonPanel, BorderLayout.SOUTH);
+    setContentPane(contentPanel);
+    pack();
+  }
+
+  private void cancel() {
+    btnCancel.setEnabled(false);
+    lblStage.setText("Cancelling...");
+    task.cancelDetection();
+  }
+
+  @Override
+  public void propertyChange(PropertyChangeEvent evt) {
+    if ("progress".equals(evt.getPropertyName())) {
+      progressBar.setValue((Integer) evt.getNewValue());
+    } else if (DomainDetectionTask.STAGE_PROPERTY.equals(evt.getPropertyName()) && btnCancel.isEnabled()) {
+      lblStage.setText(((DomainDetectionTask.Stage) evt.getNewValue()).getDescription() + "...");
+    } else if (DomainDetectionTask.CHAIN_RESULT_PROPERTY.equals(evt.getPropertyName())) {
+      txtChainResults.append(evt.getNewValue() + "\n");
+    }
+  }
+
+}
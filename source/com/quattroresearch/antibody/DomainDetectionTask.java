@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.antibody;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingWorker;
+
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.services.AntibodyCreationService;
+import org.roche.antibody.services.ConfigRepository;
+import org.roche.antibody.services.PreferencesService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.quattroresearch.antibody.DomainDetection.E_ErrorType;
+import com.quattroresearch.blastws.BlastHit;
+
+/**
+ * {@code DomainDetectionTask} runs the domain detection of {@link AntibodyFindDialog} in the background: blast
+ * databases, the search of all chains (see {@link BatchDomainDetection#prefetchSearches()}), the domains of the chains,
+ * the mutation lookup and the autoconnection of the original antibody. The chain panels are created in the background
+ * as well, they are not shown before the task is done. The find dialog only lays them out and shows the original
+ * antibody on the event dispatch thread (see {@link AntibodyFindDialog#finishDetection(DomainDetectionTask)}).
+ * <p>
+ * The current {@link Stage} is fired as {@link #STAGE_PROPERTY}, the hits of every searched chain as
+ * {@link #CHAIN_RESULT_PROPERTY} and the overall progress as "progress". The duration of every stage is logged.
+ * {@link #cancelDetection()} destroys the running blast processes and stops the detection before the next stage. The
+ * task is only done, when the background work has stopped.
+ *
+ * @version $Id$
+ */
+public class DomainDetectionTask extends SwingWorker<BatchDomainDetection, Void> {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(DomainDetectionTask.class);
+
+  /** property of the current {@link Stage} */
+  public static final String STAGE_PROPERTY = "stage";
+
+  /** property of the hits of a searched chain, the new value is a description of the hits */
+  public static final String CHAIN_RESULT_PROPERTY = "chainResult";
+
+  /**
+   * The stages of the domain detection, with the progress at their start.
+   */
+  public enum Stage {
+    DATABASES("Preparing blast databases", 0),
+    SEARCH("Searching domains", 10),
+    DOMAINS("Assigning domains", 70),
+    MUTATIONS("Matching mutations", 80),
+    AUTOCONNECT("Connecting the antibody", 90);
+
+    private final String description;
+
+    private final int progress;
+
+    private Stage(String description, int progress) {
+      this.description = description;
+      this.progress = progress;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public int getProgress() {
+      return progress;
+    }
+  }
+
+  private final List<String> chainNames;
+
+  private final List<String> chains;
+
+  private volatile BatchDomainDetection domainDetection;
+
+  private volatile Antibody originalAntibody;
+
+  private volatile Stage stage;
+
+  private volatile boolean loadLibraryFailed;
+
+  private volatile boolean detectionCancelled;
+
+  private long stageStartTime;
+
+  private final AtomicInteger searchCount = new AtomicInteger();
+
+  /**
+   * @param chainNames the chains names
+   * @param chains the chains
+   */
+  public DomainDetectionTask(List<String> chainNames, List<String> chains) {
+    this.chainNames = chainNames;
+    this.chains = chains;
+  }
+
+  @Override
+  protected BatchDomainDetection doInBackground() throws Exception {
+    long startTime = System.currentTimeMillis();
+    try {
+      startStage(Stage.DATABASES);
+      domainDetection = new BatchDomainDetection(chainNames, chains);
+      if (detectionCancelled) {
+        domainDetection.cancel();
+      }
+      if (domainDetection.makeBlastDatabases().equals(E_ErrorType.LOADLIB_FAILED)) {
+        LOG.error("Unable to load library, no search conducted!");
+        loadLibraryFailed = true;
+        return null;
+      }
+
+      startStage(Stage.SEARCH);
+      domainDetection.setSearchListener(new BatchDomainDetection.SearchListener() {
+        @Override
+        public void chainSearched(int chainIndex, String dbSuffix, BlastHit[] hits) {
+          fireChainResult(chainIndex, dbSuffix, hits);
+        }
+      });
+      domainDetection.prefetchSearches();
+
+      startStage(Stage.DOMAINS);
+      domainDetection.loadData();
+      originalAntibody = createOriginalAntibody();
+      setProgress(100);
+      return domainDetection;
+    } finally {
+      finishStage();
+      LOG.info("Time|Step Domain detection|" + (System.currentTimeMillis() - startTime));
+    }
+  }
+
+  /**
+   * Builds the antibody of the detected domains, as accepting them unchanged would. It is shown next to the domains,
+   * the domains are shown without it if it can not be built.
+   *
+   * @return the antibody, null if it could not be built
+   */
+  private Antibody createOriginalAntibody() {
+    try {
+      List<Peptide> peptideList = domainDetection.calculatePeptides(false);
+      startStage(Stage.MUTATIONS);
+      MutationLibraryIndex.of(ConfigRepository.getInstance().getMutationLibrary()).find(peptideList);
+      startStage(Stage.AUTOCONNECT);
+      Antibody ab = AntibodyCreationService.getInstance().create(peptideList);
+      LOG.debug("Create original antibody");
+      ab.setMasterLibrariesUsed(PreferencesService.getInstance().isAllMasterLibrariesEnabled());
+      ab.setMasterSettingsUsed(PreferencesService.getInstance().isMasterSettingsEnabled());
+      return ab;
+    } catch (CancellationException e) {
+      throw e;
+    } catch (Exception e) {
+      LOG.error("Original Antibody can not be set according to error " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Cancels the detection. The running blast processes are destroyed, the task stops before the next stage and is
+   * done when it stopped. Its result is dropped.
+   */
+  public void cancelDetection() {
+    detectionCancelled = true;
+    BatchDomainDetection detection = domainDetection;
+    if (detection != null) {
+      detection.cancel();
+    }
+  }
+
+  /**
+   * @return true, if the detection was cancelled
+   */
+  public boolean isDetectionCancelled() {
+    return detectionCancelled;
+  }
+
+  /**
+   * @return the detection, null if it could not be created
+   */
+  public BatchDomainDetection getDomainDetection() {
+    return domainDetection;
+  }
+
+  /**
+   * @return the antibody of the detected domains, null if it could not be built
+   */
+  public Antibody getOriginalAntibody() {
+    return originalAntibody;
+  }
+
+  /**
+   * @return the current stage, the stage that failed after a failure
+   */
+  public Stage getStage() {
+    return stage;
+  }
+
+  /**
+   * @return true, if the domain library could not be loaded into the blast databases
+   */
+  public boolean isLoadLibraryFailed() {
+    return loadLibraryFailed;
+  }
+
+  private void startStage(Stage next) {
+    if (detectionCancelled) {
+      throw new CancellationException("Domain detection cancelled.");
+    }
+    finishStage();
+    Stage previous = stage;
+    stage = next;
+    stageStartTime = System.currentTimeMillis();
+    setProgress(next.getProgress());
+    firePropertyChange(STAGE_PROPERTY, previous, next);
+  }
+
+  private void finishStage() {
+    if (stage != null && stageStartTime > 0) {
+      LOG.info("Time|Step Domain detection " + stage + "|" + (System.currentTimeMillis() - stageStartTime));
+      stageStartTime = 0;
+    }
+  }
+
+  private void fireChainResult(int chainIndex, String dbSuffix, BlastHit[] hits) {
+    int searches = Math.max(1, 2 * chains.size());
+    setProgress(Stage.SEARCH.getProgress() + Math.min(searchCount.incrementAndGet(), searches)
+        * (Stage.DOMAINS.getProgress() - Stage.SEARCH.getProgress()) / searches);
+    firePropertyChange(CHAIN_RESULT_PROPERTY, null,
+        String.format("%s: %d %s hits", chainNames.get(chainIndex), hits.length, dbSuffix));
+  }
+
+}
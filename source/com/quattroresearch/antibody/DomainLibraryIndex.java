@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.antibody;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.roche.antibody.model.antibody.ChainType;
+import org.roche.antibody.model.antibody.DomainLibraryValues;
+import org.roche.antibody.model.antibody.DomainLibraryValues.DomainUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code DomainLibraryIndex} is an immutable, hashed view of a domain library. It finds the same entries as
+ * {@link DomainDetection#getDomainLibraryValues(String)}, which scans the whole library for every lookup: entries are
+ * indexed by short name, and grouped by domain usage, chain type and species in library order. If short names occur
+ * more than once, the first entry is found, like by the scan.
+ * <p>
+ * The index of the library cached by {@link DomainLibrary} is kept, see {@link #getInstance()}. It is replaced as a
+ * whole, when another library is set.
+ * 
+ * @version $Id$
+ */
+public final class DomainLibraryIndex {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(DomainLibraryIndex.class);
+
+  /** the library of the last index */
+  private static List<DomainLibraryValues> cachedLibrary;
+
+  private static DomainLibraryIndex cachedIndex;
+
+  private final List<DomainLibraryValues> library;
+
+  private final Map<String, DomainLibraryValues> byShortName = new HashMap<String, DomainLibraryValues>();
+
+  private final Map<DomainUsage, List<DomainLibraryValues>> byUsage =
+      new EnumMap<DomainUsage, List<DomainLibraryValues>>(DomainUsage.class);
+
+  private final Map<ChainType, List<DomainLibraryValues>> byChainType =
+      new EnumMap<ChainType, List<DomainLibraryValues>>(ChainType.class);
+
+  private final Map<String, List<DomainLibraryValues>> bySpecies = new HashMap<String, List<DomainLibraryValues>>();
+
+  /**
+   * @return index of the library currently cached by {@link DomainLibrary}
+   */
+  public static DomainLibraryIndex getInstance() {
+    return of(DomainLibrary.getDomainLibrary());
+  }
+
+  /**
+   * Returns the index of the given domain library. The index is only built again, if another library instance is given
+   * than for the last call.
+   * 
+   * @param domainLibrary domain library, e.g. from {@link DomainLibrary#getDomainLibrary()}
+   * @return index of the library
+   */
+  public static synchronized DomainLibraryIndex of(List<DomainLibraryValues> domainLibrary) {
+    if (cachedIndex == null || cachedLibrary != domainLibrary) {
+      cachedIndex = new DomainLibraryIndex(domainLibrary);
+      cachedLibrary = domainLibrary;
+    }
+    return cachedIndex;
+  }
+
+  /**
+   * Builds the index. Changes of the library or its entries afterwards are not reflected.
+   * 
+   * @param domainLibrary the domain library
+   */
+  public DomainLibraryIndex(List<DomainLibraryValues> domainLibrary) {
+    long startTime = System.currentTimeMillis();
+    library = Collections.unmodifiableList(new ArrayList<DomainLibraryValues>(domainLibrary));
+    for (DomainLibraryValues values : library) {
+      if (values.getShortName() != null && !byShortName.containsKey(values.getShortName())) {
+        byShortName.put(values.getShortName(), values);
+      }
+      if (values.getDomainUsage() != null) {
+        group(byUsage, values.getDomainUsage(), values);
+      }
+      if (values.getChainType() != null) {
+        group(byChainType, values.getChainType(), values);
+      }
+      if (values.getSpecies() != null) {
+        group(bySpecies, values.getSpecies(), values);
+      }
+    }
+    LOG.debug("Domain library index of {} entries built in {}ms.", library.size(),
+        System.currentTimeMillis() - startTime);
+  }
+
+  /**
+   * @param shortName short name of the library entry, e.g. the sequence id of a blast hit
+   * @return the entry or null, if there is none
+   */
+  public DomainLibraryValues get(String shortName) {
+    return byShortName.get(shortName);
+  }
+
+  /**
+   * Looks up an entry like {@link DomainDetection#getDomainLibraryValues(String)}.
+   * 
+   * @param shortName short name of the library entry, e.g. the sequence id of a blast hit
+   * @return the entry or new, empty values, if there is none
+   */
+  public DomainLibraryValues getDomainLibraryValues(String shortName) {
+    DomainLibraryValues values = byShortName.get(shortName);
+    if (values == null) {
+      LOG.warn(shortName + " not found in domain library values");
+      return new DomainLibraryValues();
+    }
+    return values;
+  }
+
+  /**
+   * @param shortName short name of a library entry
+   * @return true, if the library has an entry with this short name
+   */
+  public boolean contains(String shortName) {
+    return byShortName.containsKey(shortName);
+  }
+
+  /**
+   * @param domainUsages the usages to select
+   * @return all entries with one of the usages, in library order
+   */
+  public List<DomainLibraryValues> getByUsage(DomainUsage... domainUsages) {
+    if (domainUsages.length == 1) {
+      return unmodifiable(byUsage.get(domainUsages[0]));
+    }
+    List<DomainLibraryValues> result = new ArrayList<DomainLibraryValues>();
+    for (DomainLibraryValues values : library) {
+      for (DomainUsage domainUsage : domainUsages) {
+        if (domainUsage == values.getDomainUsage()) {
+          result.add(values);
+          break;
+        }
+      }
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * @param chainType the chain type
+   * @return all entries of the chain type, in library order
+   */
+  public List<DomainLibraryValues> getByChainType(ChainType chainType) {
+    return unmodifiable(byChainType.get(chainType));
+  }
+
+  /**
+   * @param species the species, e.g. "Human"
+   * @return all entries of the species, in library order
+   */
+  public List<DomainLibraryValues> getBySpecies(String species) {
+    return unmodifiable(bySpecies.get(species));
+  }
+
+  /**
+   * @return all entries in library order
+   */
+  public List<DomainLibraryValues> getLibrary() {
+    return library;
+  }
+
+  public int size() {
+    return library.size();
+  }
+
+  private static <K> void group(Map<K, List<DomainLibraryValues>> groups, K key, DomainLibraryValues values) {
+    List<DomainLibraryValues> group = groups.get(key);
+    if (group == null) {
+      group = new ArrayList<DomainLibraryValues>();
+      groups.put(key, group);
+    }
+    group.add(values);
+  }
+
+  private static List<DomainLibraryValues> unmodifiable(List<DomainLibraryValues> values) {
+    if (values == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(values);
+  }
+
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.antibody;
+
+import java.awt.Image;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.helm.notation.tools.StructureParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import chemaxon.struc.Molecule;
+
+/**
+ * {@code MoleculeCache} keeps the molecules parsed from chemical notations (Molfile or SMILES), so constructs with many
+ * identical chemical elements parse every structure only once. Molecules are cached by their unique extended SMILES:
+ * different notations of the same structure share one molecule and its rendered thumbnails. Both the notations and the
+ * molecules are evicted least recently used.
+ * <p>
+ * Cached molecules are never handed out, callers get a copy they may change.
+ *
+ * @version $Id$
+ */
+public class MoleculeCache {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MoleculeCache.class);
+
+  /** maximum number of parsed molecules */
+  public static final int MAX_CACHED_MOLECULES = 128;
+
+  /** maximum number of chemical notations mapped to their unique SMILES */
+  public static final int MAX_CACHED_NOTATIONS = 1024;
+
+  /** static Singleton instance */
+  private static MoleculeCache instance;
+
+  /** chemical notation to unique extended SMILES */
+  private final Map<String, String> uniqueSmiles = new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+      return size() > MAX_CACHED_NOTATIONS;
+    }
+  };
+
+  /** unique extended SMILES to the parsed molecule */
+  private final Map<String, CachedMolecule> molecules = new LinkedHashMap<String, CachedMolecule>(16, 0.75f, true) {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, CachedMolecule> eldest) {
+      return size() > MAX_CACHED_MOLECULES;
+    }
+  };
+
+  private int hitCount;
+
+  private int missCount;
+
+  /** Private constructor for singleton */
+  private MoleculeCache() {
+  }
+
+  /** Static getter method for retrieving the singleton instance */
+  public synchronized static MoleculeCache getInstance() {
+    if (instance == null) {
+      instance = new MoleculeCache();
+    }
+    return instance;
+  }
+
+  /**
+   * Returns the molecule of a chemical notation, as {@link MonomerUtils#parseChemicalNotation(String)} does.
+   *
+   * @param chemNotation Molfile or SMILES string, may be Base64 encoded
+   * @return a copy of the cached molecule
+   * @throws Exception if the notation could not be parsed
+   */
+  public synchronized Molecule getMolecule(String chemNotation) throws Exception {
+    return getCachedMolecule(chemNotation).molecule.cloneMolecule();
+  }
+
+  /**
+   * @param chemNotation Molfile or SMILES string, may be Base64 encoded
+   * @return the unique extended SMILES of the molecule
+   * @throws Exception if the notation could not be parsed
+   */
+  public synchronized String getUniqueSmiles(String chemNotation) throws Exception {
+    return getCachedMolecule(chemNotation).smiles;
+  }
+
+  /**
+   * Returns a rendered image of the molecule. The last image rendered for a molecule is kept. The image is rendered
+   * without holding the cache, but it may take a while: call it off the event dispatch thread, see
+   * {@link #getCachedThumbnail(String, int, int)}.
+   *
+   * @param chemNotation Molfile or SMILES string, may be Base64 encoded
+   * @param width width of the image
+   * @param height height of the image
+   * @return the image of the molecule
+   * @throws Exception if the notation could not be parsed
+   */
+  public Image getThumbnail(String chemNotation, int width, int height) throws Exception {
+    CachedMolecule cached;
+    Molecule molecule;
+    synchronized (this) {
+      cached = getCachedMolecule(chemNotation);
+      if (cached.hasThumbnail(width, height)) {
+        return cached.thumbnail;
+      }
+      molecule = cached.molecule.cloneMolecule();
+    }
+
+    molecule.clean(2, null); // SMILES has no coordinates
+    Image thumbnail = (Image) molecule.toObject("image:w" + width + ",h" + height);
+    synchronized (this) {
+      cached.thumbnail = thumbnail;
+      cached.thumbnailWidth = width;
+      cached.thumbnailHeight = height;
+    }
+    return thumbnail;
+  }
+
+  /**
+   * Returns the image of the molecule, if it was rendered already. Neither parses nor renders.
+   *
+   * @param chemNotation Molfile or SMILES string, may be Base64 encoded
+   * @param width width of the image
+   * @param height height of the image
+   * @return the image of the molecule, null if it is not cached
+   */
+  public synchronized Image getCachedThumbnail(String chemNotation, int width, int height) {
+    String smiles = uniqueSmiles.get(chemNotation);
+    CachedMolecule cached = smiles == null ? null : molecules.get(smiles);
+    return cached != null && cached.hasThumbnail(width, height) ? cached.thumbnail : null;
+  }
+
+  /**
+   * Removes all molecules.
+   */
+  public synchronized void clear() {
+    uniqueSmiles.clear();
+    molecules.clear();
+  }
+
+  /**
+   * @return the number of requests answered from the cache
+   */
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return the number of requests, which parsed the notation
+   */
+  public synchronized int getMissCount() {
+    return missCount;
+  }
+
+  private CachedMolecule getCachedMolecule(String chemNotation) throws Exception {
+    String smiles = uniqueSmiles.get(chemNotation);
+    CachedMolecule cached = smiles == null ? null : molecules.get(smiles);
+    if (cached != null) {
+      hitCount++;
+      return cached;
+    }
+    missCount++;
+    Molecule molecule = MonomerUtils.parseChemicalNotation(chemNotation);
+    smiles = StructureParser.getUniqueExtendedSMILES(molecule);
+    uniqueSmiles.put(chemNotation, smiles);
+    cached = molecules.get(smiles);
+    if (cached == null) {
+      cached = new CachedMolecule(molecule, smiles);
+      molecules.put(smiles, cached);
+      LOG.debug("Molecule {} cached ({} molecules).", smiles, molecules.size());
+    }
+    return cached;
+  }
+
+  /**
+   * A parsed molecule and its last thumbnail.
+   */
+  private static class CachedMolecule {
+
+    private final Molecule molecule;
+
+    private final String smiles;
+
+    private Image thumbnail;
+
+    private int thumbnailWidth;
+
+    private int thumbnailHeight;
+
+    CachedMolecule(Molecule molecule, String smiles) {
+      this.molecule = molecule;
+      this.smiles = smiles;
+    }
+
+    boolean hasThumbnail(int width, int height) {
+      return thumbnail != null && thumbnailWidth == width && thumbnailHeight == height;
+    }
+  }
+
+}
@@ -221,7 +221,8 @@ public class MonomerUtils {
 	}
 
 	/**
-	 * Create an instance of {@code Molecule} from a chemical notation.
+	 * Create an instance of {@code Molecule} from a chemical notation. The
+	 * notation is parsed only once, see {@link MoleculeCache}.
 	 * 
 	 * @param chemNotation
 	 *            Molfile or SMILES string.
@@ -230,6 +231,20 @@ public class MonomerUtils {
 	 */
 	public static Molecule createMoleculeFromChemicalNotation(
 			String chemNotation) throws Exception {
+		return MoleculeCache.getInstance().getMolecule(chemNotation);
+	}
+
+	/**
+	 * Parses a chemical notation into a new instance of {@code Molecule},
+	 * without using the {@link MoleculeCache}.
+	 * 
+	 * @param chemNotation
+	 *            Molfile or SMILES string.
+	 * @return the {@code Molecule} instance.
+	 * @throws Exception 
+	 */
+	static Molecule parseChemicalNotation(String chemNotation)
+			throws Exception {
 		Molecule result = null;
 		InputStream is = null;
 
@@ -286,12 +301,13 @@ public class MonomerUtils {
 		Molecule rct1 = createMoleculeFromChemicalNotation(reactant1);
 		Molecule rct2 = createMoleculeFromChemicalNotation(reactant2);
 		try {
+			MoleculeCache cache = MoleculeCache.getInstance();
 			List<String> rGroups1 = StructureParser
-					.getRGroupsFromExtendedSmiles(StructureParser
-							.getUniqueExtendedSMILES(rct1));
+					.getRGroupsFromExtendedSmiles(cache
+							.getUniqueSmiles(reactant1));
 			List<String> rGroups2 = StructureParser
-					.getRGroupsFromExtendedSmiles(StructureParser
-							.getUniqueExtendedSMILES(rct2));
+					.getRGroupsFromExtendedSmiles(cache
+							.getUniqueSmiles(reactant2));
 
 			MolAtom atom1 = StructureParser.getRgroupAtom(rct1,
 					rGroups1.indexOf(rGroup1));
@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.antibody;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.roche.antibody.model.antibody.Domain;
+import org.roche.antibody.model.antibody.Peptide;
+
+/**
+ * 
+ * {@code MutationLibraryIndex} is a precompiled mutation library. It finds the same mutations as
+ * {@link FindMutations#find(List, List)}, but without scanning the whole library for every peptide: the single
+ * mutations are indexed by domain library name, position and new amino acid, so a mutated domain is only checked at
+ * the positions the library has mutations for. Subset elimination compares the single mutations of the found mutations
+ * as bitsets.
+ * <p>
+ * The index of the last used library is kept, see {@link #of(List)}.
+ * 
+ * @version $Id$
+ */
+public final class MutationLibraryIndex {
+
+  /** the library of the last index */
+  private static List<Mutation> cachedLibrary;
+
+  private static MutationLibraryIndex cachedIndex;
+
+  private final List<Mutation> mutations;
+
+  /** all single mutations; the index in this array is the id of the single mutation */
+  private final SingleMutation[] singleMutations;
+
+  /** ids of the single mutations of every mutation */
+  private final int[][] singleMutationIds;
+
+  /** the mutation of every single mutation id */
+  private final int[] mutationOfSingleMutation;
+
+  /** the single mutations of every mutation, by value (equal single mutations share a bit) */
+  private final BitSet[] singleMutationValues;
+
+  /** mutations without single mutations, they are always found */
+  private final BitSet emptyMutations = new BitSet();
+
+  /** single mutation ids by domain library name */
+  private final Map<String, DomainMutations> domainMutations = new HashMap<String, DomainMutations>();
+
+  /**
+   * Returns the index of the given mutation library. The index is only compiled again, if another library instance is
+   * given than for the last call.
+   * 
+   * @param mutationLibrary mutation library, e.g. from {@code ConfigRepository.getMutationLibrary()}
+   * @return index of the library
+   */
+  public static synchronized MutationLibraryIndex of(List<Mutation> mutationLibrary) {
+    if (cachedIndex == null || cachedLibrary != mutationLibrary) {
+      cachedIndex = new MutationLibraryIndex(mutationLibrary);
+      cachedLibrary = mutationLibrary;
+    }
+    return cachedIndex;
+  }
+
+  /**
+   * Compiles the index. The library must not be changed afterwards.
+   * 
+   * @param mutationLibrary the registered mutations
+   */
+  public MutationLibraryIndex(List<Mutation> mutationLibrary) {
+    mutations = new ArrayList<Mutation>(mutationLibrary);
+
+    List<SingleMutation> allSingleMutations = new ArrayList<SingleMutation>();
+    singleMutationIds = new int[mutations.size()][];
+    singleMutationValues = new BitSet[mutations.size()];
+    Map<String, Integer> valueIds = new HashMap<String, Integer>();
+    Map<String, Map<Long, List<Integer>>> positions = new HashMap<String, Map<Long, List<Integer>>>();
+
+    for (int m = 0; m < mutations.size(); m++) {
+      List<SingleMutation> singles = mutations.get(m).getSingleMutations();
+      singleMutationIds[m] = new int[singles.size()];
+      singleMutationValues[m] = new BitSet();
+      if (singles.isEmpty()) {
+        emptyMutations.set(m);
+      }
+      for (int s = 0; s < singles.size(); s++) {
+        SingleMutation single = singles.get(s);
+        int id = allSingleMutations.size();
+        allSingleMutations.add(single);
+        singleMutationIds[m][s] = id;
+
+        String value = single.getDomainName() + '\t' + single.getPosition() + '\t' + single.getOriAA()
+            + single.getNewAA();
+        Integer valueId = valueIds.get(value);
+        if (valueId == null) {
+          valueId = valueIds.size();
+          valueIds.put(value, valueId);
+        }
+        singleMutationValues[m].set(valueId);
+
+        if (single.getPosition() < 1) {
+          continue;
+        }
+        Map<Long, List<Integer>> domainPositions = positions.get(single.getDomainName());
+        if (domainPositions == null) {
+          domainPositions = new TreeMap<Long, List<Integer>>();
+          positions.put(single.getDomainName(), domainPositions);
+        }
+        Long key = key(single.getPosition(), single.getNewAA());
+        List<Integer> ids = domainPositions.get(key);
+        if (ids == null) {
+          ids = new ArrayList<Integer>();
+          domainPositions.put(key, ids);
+        }
+        ids.add(id);
+      }
+    }
+
+    singleMutations = allSingleMutations.toArray(new SingleMutation[allSingleMutations.size()]);
+    mutationOfSingleMutation = new int[singleMutations.length];
+    for (int m = 0; m < singleMutationIds.length; m++) {
+      for (int id : singleMutationIds[m]) {
+        mutationOfSingleMutation[id] = m;
+      }
+    }
+    for (Map.Entry<String, Map<Long, List<Integer>>> entry : positions.entrySet()) {
+      domainMutations.put(entry.getKey(), new DomainMutations(entry.getValue()));
+    }
+  }
+
+  /**
+   * Finds the mutations in the peptideList and adds the found mutations to the domain object. It also changes the
+   * userlabel of the domain and adds the mutation short names to the domains with mutations detected. (Same as
+   * {@link FindMutations#find(List, List)}.)
+   * 
+   * @param peptideList
+   */
+  public void find(List<Peptide> peptideList) {
+    for (Peptide peptide : peptideList) {
+      findByDomainList(peptide.getDomains());
+    }
+
+    for (Peptide peptide : peptideList) {
+      for (Domain dom : peptide.getDomains()) {
+        // Add mutation short name to userlabel
+        if (dom.getSingleMutations().size() > 0) {
+          StringBuilder sb = new StringBuilder();
+          sb.append("(");
+          for (ISingleMutationRead sm : dom.getSingleMutations()) {
+            if (sm.getVisible() == 1) {
+              if (sb.indexOf(sm.getShortname()) == -1) {
+                sb.append(sm.getShortname());
+                sb.append(",");
+              }
+            }
+          }
+          if (sb.length() > 1) {
+            sb.deleteCharAt(sb.length() - 1);
+            sb.append(")");
+            dom.setUserLabel(dom.getUserLabel() + " " + sb.toString());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the mutations in the domainList and adds the found mutations to the domain object.
+   */
+  private void findByDomainList(List<Domain> domainList) {
+    // filter by domains that have unknown mutations
+    List<Domain> mutatedDomains = new LinkedList<Domain>();
+    for (Domain dom : domainList) {
+      if (dom.getLibraryValues() != null && !dom.getUnknownMutations().isEmpty()) {
+        mutatedDomains.add(dom);
+      }
+    }
+    if (mutatedDomains.isEmpty()) {
+      return;
+    }
+
+    // single mutation id -> domains carrying it
+    Map<Integer, List<Domain>> foundSingleMutations = new HashMap<Integer, List<Domain>>();
+    for (Domain domain : mutatedDomains) {
+      DomainMutations registered = domainMutations.get(domain.getLibraryValues().getName());
+      if (registered != null) {
+        registered.collect(domain, foundSingleMutations);
+      }
+    }
+
+    // a mutation is found, when all of its single mutations were found
+    BitSet foundMutations = (BitSet) emptyMutations.clone();
+    for (Integer id : foundSingleMutations.keySet()) {
+      int m = mutationOfSingleMutation[id];
+      if (!foundMutations.get(m) && isComplete(m, foundSingleMutations)) {
+        foundMutations.set(m);
+      }
+    }
+
+    if (foundMutations.cardinality() > 1) {
+      cleanMutationSubsets(foundMutations);
+    }
+
+    for (int m = foundMutations.nextSetBit(0); m >= 0; m = foundMutations.nextSetBit(m + 1)) {
+      for (int id : singleMutationIds[m]) {
+        for (Domain domain : foundSingleMutations.get(id)) {
+          domain.getSingleMutations().add(singleMutations[id]);
+        }
+      }
+    }
+  }
+
+  private boolean isComplete(int mutation, Map<Integer, List<Domain>> foundSingleMutations) {
+    for (int id : singleMutationIds[mutation]) {
+      if (!foundSingleMutations.containsKey(id)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Removes every found mutation, whose single mutations are all part of another found mutation (see
+   * {@code FindMutations.cleanMutationSubsets}).
+   */
+  private void cleanMutationSubsets(BitSet foundMutations) {
+    BitSet mutationsToRemove = new BitSet();
+    BitSet difference = new BitSet();
+    for (int m1 = foundMutations.nextSetBit(0); m1 >= 0; m1 = foundMutations.nextSetBit(m1 + 1)) {
+      for (int m2 = foundMutations.nextSetBit(0); m2 >= 0; m2 = foundMutations.nextSetBit(m2 + 1)) {
+        if (mutations.get(m1) != mutations.get(m2)) {
+          difference.clear();
+          difference.or(singleMutationValues[m1]);
+          difference.andNot(singleMutationValues[m2]);
+          if (difference.isEmpty()) {
+            mutationsToRemove.set(m1);
+            break;
+          }
+        }
+      }
+    }
+    foundMutations.andNot(mutationsToRemove);
+  }
+
+  private static long key(int position, char newAA) {
+    return ((long) position << 16) | newAA;
+  }
+
+  /**
+   * The registered single mutations of one domain library entry, ordered by position.
+   */
+  private static final class DomainMutations {
+
+    private final int[] positions;
+
+    private final Map<Long, int[]> singleMutationIds = new HashMap<Long, int[]>();
+
+    private DomainMutations(Map<Long, List<Integer>> sortedPositions) {
+      int[] allPositions = new int[sortedPositions.size()];
+      int count = 0;
+      for (Map.Entry<Long, List<Integer>> entry : sortedPositions.entrySet()) {
+        int position = (int) (entry.getKey() >>> 16);
+        if (count == 0 || allPositions[count - 1] != position) {
+          allPositions[count++] = position;
+        }
+        int[] ids = new int[entry.getValue().size()];
+        for (int i = 0; i < ids.length; i++) {
+          ids[i] = entry.getValue().get(i);
+        }
+        singleMutationIds.put(entry.getKey(), ids);
+      }
+      positions = Arrays.copyOf(allPositions, count);
+    }
+
+    /**
+     * Looks up the registered single mutations, whose new amino acid is found at their position of the domain
+     * sequence.
+     */
+    private void collect(Domain domain, Map<Integer, List<Domain>> foundSingleMutations) {
+      String sequence = domain.getSequence();
+      for (int position : positions) {
+        if (position > sequence.length()) {
+          break;
+        }
+        int[] ids = singleMutationIds.get(key(position, sequence.charAt(position - 1)));
+        if (ids == null) {
+          continue;
+        }
+        for (int id : ids) {
+          List<Domain> domains = foundSingleMutations.get(id);
+          if (domains == null) {
+            domains = new ArrayList<Domain>(1);
+            foundSingleMutations.put(id, domains);
+          }
+          domains.add(domain);
+        }
+      }
+    }
+  }
+
+}
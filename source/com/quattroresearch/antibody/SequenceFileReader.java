@@ -92,28 +92,29 @@ public class SequenceFileReader implements ISequenceFileReader {
     List<String> foundNames = new ArrayList<String>();
     List<String> foundChains = new ArrayList<String>();
     int current = -1;
+    StringBuilder currentChain = new StringBuilder();
     BufferedReader br = null;
 
     try {
       br = new BufferedReader(new StringReader(fileAsString));
       String line;
-      Pattern p = Pattern.compile("\\d+");
-      Matcher matcher;
       while ((line = br.readLine()) != null) {
         String lineClean = line.trim();
         if (!lineClean.isEmpty()) {
           if (lineClean.startsWith(">")) {
+            if (current >= 0) {
+              foundChains.set(current, currentChain.toString());
+            }
             foundNames.add(lineClean.split(">")[1]);
             foundChains.add("");
+            currentChain.setLength(0);
             current++;
           } else {
-            matcher = p.matcher(lineClean);
-            if (matcher.find()) {
+            if (containsDigit(lineClean)) {
               throw new Exception(
                   "Could not read fasta. Sequence contains number (Line " + (current + 1) + ")");
             }
-            foundChains.set(current, foundChains.get(current)
-                + lineClean);
+            currentChain.append(lineClean);
           }
         }
       }
@@ -125,6 +126,9 @@ public class SequenceFileReader implements ISequenceFileReader {
       JOptionPane.showMessageDialog(parentFrame, e.getMessage());
       e.printStackTrace();
     } finally {
+      if (current >= 0) {
+        foundChains.set(current, currentChain.toString());
+      }
 
       if (br != null) {
         try {
@@ -142,6 +146,15 @@ public class SequenceFileReader implements ISequenceFileReader {
     return result;
   }
 
+  private boolean containsDigit(String line) {
+    for (int i = 0; i < line.length(); i++) {
+      if (Character.isDigit(line.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Parses .gp Files <p> Parses all chains found in a gp-formatted file (usually one). Sequence can be upper- or
    * lower-case letters, chainname is the filename.
@@ -0,0 +1,422 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.antibody;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+
+import org.apache.commons.io.FilenameUtils;
+import org.roche.antibody.ui.filechooser.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 
+ * {@code StreamingSequenceFileReader} reads protein FASTA and GP files like the {@link SequenceFileReader}, but without
+ * loading whole files into memory. Files are read through a {@link FileChannel} into a fixed buffer, every sequence is
+ * built in a reused {@link StringBuilder} and handed to an {@link ISequenceRecordHandler} as soon as it is complete.
+ * Only the sequence currently read is held in memory, so even very large sequence dumps can be processed.
+ * 
+ * @version $Id$
+ */
+public class StreamingSequenceFileReader implements ISequenceFileReader {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(StreamingSequenceFileReader.class);
+
+  /** size of the byte and char buffers */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final String FORMAT_ERROR =
+      "The content of the file is not a fasta nor a VNT protein format. Please use only these file formats.";
+
+  /** alternative end of a GP sequence besides "//": a data line of a following section */
+  private static final Pattern GP_DATA_LINE = Pattern.compile("^\\s*[A-Z]{2,}\\s{3,}");
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<String>[] read(JFrame parentFrame, TreeMap<String, String> files)
+      throws IllegalArgumentException, HeadlessException, IOException {
+    SequenceCollector collector = new SequenceCollector();
+    try {
+      for (Map.Entry<String, String> file : files.entrySet()) {
+        RecordParser parser = new RecordParser(file.getKey(), collector);
+        try {
+          parser.parse(CharBuffer.wrap(file.getValue()));
+          parser.finish();
+        } catch (InvalidSequenceException e) {
+          skipFile(parentFrame, e);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      showMessage(parentFrame, e.getMessage());
+      throw e;
+    }
+    return collector.getResult();
+  }
+
+  /**
+   * Reads all sequences of the given files. Files are read in the order of their names (without extension), as done
+   * for {@link #read(JFrame, TreeMap)}. As in the {@link SequenceFileReader}, a sequence containing numbers is shown as
+   * message and the rest of its file is skipped, the sequences read before are kept.
+   * 
+   * @param parentFrame frame for error messages, may be null
+   * @param files .fa or .gp files
+   * @return Array[List of chainnames, List of chainsequences]
+   * @throws IllegalArgumentException thrown when the file content can not be read
+   * @throws IOException
+   */
+  public List<String>[] read(JFrame parentFrame, List<File> files) throws IllegalArgumentException, IOException {
+    TreeMap<String, File> sortedFiles = new TreeMap<String, File>();
+    for (File file : files) {
+      sortedFiles.put(FilenameUtils.removeExtension(file.getName()), file);
+    }
+
+    SequenceCollector collector = new SequenceCollector();
+    try {
+      for (File file : sortedFiles.values()) {
+        try {
+          read(file, collector);
+        } catch (InvalidSequenceException e) {
+          skipFile(parentFrame, e);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      showMessage(parentFrame, e.getMessage());
+      throw e;
+    }
+    return collector.getResult();
+  }
+
+  /**
+   * Reads the sequences of a FASTA or GP file and passes them to the handler one by one.
+   * 
+   * @param file .fa or .gp file
+   * @param handler receives the sequences
+   * @throws IllegalArgumentException thrown when the file content can not be read
+   * @throws IOException
+   */
+  public void read(File file, ISequenceRecordHandler handler) throws IllegalArgumentException, IOException {
+    RecordParser parser = new RecordParser(FilenameUtils.removeExtension(file.getName()), handler);
+    CharsetDecoder decoder = Charset.forName("UTF8").newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+    FileInputStream in = new FileInputStream(file);
+    try {
+      FileChannel channel = in.getChannel();
+      boolean endOfInput = false;
+      while (!endOfInput) {
+        endOfInput = channel.read(bytes) == -1;
+        bytes.flip();
+        decoder.decode(bytes, chars, endOfInput);
+        if (endOfInput) {
+          decoder.flush(chars);
+        }
+        chars.flip();
+        parser.parse(chars);
+        chars.clear();
+        bytes.compact();
+      }
+    } finally {
+      in.close();
+    }
+    parser.finish();
+  }
+
+  private void skipFile(JFrame parentFrame, InvalidSequenceException e) {
+    LOG.warn("Skipped rest of sequence file: " + e.getMessage());
+    showMessage(parentFrame, e.getMessage());
+  }
+
+  private void showMessage(JFrame parentFrame, String message) {
+    if (!GraphicsEnvironment.isHeadless()) {
+      JOptionPane.showMessageDialog(parentFrame, message);
+    }
+  }
+
+  /**
+   * Thrown for a sequence, which contains numbers.
+   */
+  private static final class InvalidSequenceException extends IllegalArgumentException {
+
+    /** Generated UID */
+    private static final long serialVersionUID = 4387562195810357140L;
+
+    private InvalidSequenceException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Collects all sequences for the list based {@link ISequenceFileReader} interface.
+   */
+  private static final class SequenceCollector implements ISequenceRecordHandler {
+
+    private final List<String> names = new ArrayList<String>();
+
+    private final List<String> sequences = new ArrayList<String>();
+
+    @Override
+    public void sequenceRead(String name, String sequence) {
+      names.add(name);
+      sequences.add(sequence);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<String>[] getResult() {
+      List<String>[] result = new List[2];
+      result[0] = names;
+      result[1] = sequences;
+      return result;
+    }
+  }
+
+  /**
+   * Parses the characters of one file line by line. The format is detected on the first non-empty line.
+   */
+  private static final class RecordParser {
+
+    private static final int FORMAT_UNKNOWN = 0;
+
+    private static final int FORMAT_FASTA = 1;
+
+    private static final int FORMAT_GP = 2;
+
+    private final String fileName;
+
+    private final ISequenceRecordHandler handler;
+
+    private final StringBuilder line = new StringBuilder();
+
+    private final StringBuilder sequence = new StringBuilder();
+
+    private int format = FORMAT_UNKNOWN;
+
+    private int lineNumber;
+
+    private boolean skipLineFeed;
+
+    /** name of the FASTA sequence currently read */
+    private String sequenceName;
+
+    /** true, while reading the ORIGIN section of a GP file */
+    private boolean readGPSequence;
+
+    /** the first GP sequence is held back, its name depends on whether more sequences follow */
+    private String firstGPSequence;
+
+    private int gpSequenceCount;
+
+    private RecordParser(String fileName, ISequenceRecordHandler handler) {
+      this.fileName = fileName;
+      this.handler = handler;
+    }
+
+    private void parse(CharBuffer chars) {
+      while (chars.hasRemaining()) {
+        char c = chars.get();
+        if (c == '\n') {
+          if (!skipLineFeed) {
+            endLine();
+          }
+          skipLineFeed = false;
+        } else if (c == '\r') {
+          endLine();
+          skipLineFeed = true;
+        } else {
+          line.append(c);
+          skipLineFeed = false;
+        }
+      }
+    }
+
+    private void finish() {
+      if (line.length() > 0) {
+        endLine();
+      }
+      if (format == FORMAT_UNKNOWN) {
+        throw new IllegalArgumentException(FORMAT_ERROR);
+      }
+      if (format == FORMAT_FASTA) {
+        endFastaSequence();
+      } else if (firstGPSequence != null) {
+        handler.sequenceRead(fileName, firstGPSequence);
+      }
+    }
+
+    private void endLine() {
+      lineNumber++;
+      if (format == FORMAT_UNKNOWN) {
+        detectFormat();
+      }
+      if (format == FORMAT_FASTA) {
+        parseFastaLine();
+      } else if (format == FORMAT_GP) {
+        parseGPLine();
+      }
+      line.setLength(0);
+    }
+
+    private void detectFormat() {
+      int start = firstNonWhitespace();
+      if (start == line.length()) {
+        return;
+      }
+      if (line.charAt(start) == '>') {
+        format = FORMAT_FASTA;
+      } else if (FileUtils.isVNTProteinHeader(line.toString())) {
+        format = FORMAT_GP;
+      } else {
+        throw new IllegalArgumentException(FORMAT_ERROR);
+      }
+    }
+
+    /**
+     * Sequence can be upper- or lower-case letters, name is everything from ">".
+     */
+    private void parseFastaLine() {
+      int start = firstNonWhitespace();
+      int end = line.length();
+      while (end > start && line.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      if (start == end) {
+        return;
+      }
+
+      if (line.charAt(start) == '>') {
+        endFastaSequence();
+        int nameEnd = line.indexOf(">", start + 1);
+        sequenceName = line.substring(start + 1, nameEnd == -1 ? end : nameEnd);
+        return;
+      }
+
+      for (int i = start; i < end; i++) {
+        if (Character.isDigit(line.charAt(i))) {
+          throw new InvalidSequenceException(
+              "Could not read fasta. Sequence contains number (Line " + lineNumber + ")");
+        }
+      }
+      sequence.append(line, start, end);
+    }
+
+    private void endFastaSequence() {
+      if (sequenceName != null) {
+        handler.sequenceRead(sequenceName, sequence.toString());
+      }
+      sequenceName = null;
+      sequence.setLength(0);
+    }
+
+    /**
+     * Sequence lines of the ORIGIN section look like "1 mkhlwfflll lvaaprwvls", the section ends with "//".
+     */
+    private void parseGPLine() {
+      if (!readGPSequence) {
+        readGPSequence = line.indexOf("ORIGIN") == 0;
+        return;
+      }
+
+      if (!appendGPSequenceLine() && (line.indexOf("//") == 0 || GP_DATA_LINE.matcher(line).matches())) {
+        endGPSequence(sequence.toString());
+        sequence.setLength(0);
+        readGPSequence = false;
+      }
+    }
+
+    /**
+     * @return true, if the line is a sequence line
+     */
+    private boolean appendGPSequenceLine() {
+      int length = line.length();
+      int i = firstNonWhitespace();
+      int digitsStart = i;
+      while (i < length && Character.isDigit(line.charAt(i))) {
+        i++;
+      }
+      int residuesStart = i;
+      while (i < length && (line.charAt(i) == ' ' || line.charAt(i) == '\t')) {
+        i++;
+      }
+      if (i == digitsStart || digitsStart == residuesStart || i == residuesStart) {
+        return false;
+      }
+      for (int j = i; j < length; j++) {
+        char c = line.charAt(j);
+        if (c != ' ' && c != '*' && !isLetter(c)) {
+          return false;
+        }
+      }
+      for (int j = i; j < length; j++) {
+        char c = line.charAt(j);
+        if (isLetter(c)) {
+          sequence.append(Character.toUpperCase(c));
+        }
+      }
+      return true;
+    }
+
+    private void endGPSequence(String gpSequence) {
+      if (gpSequenceCount == 0) {
+        firstGPSequence = gpSequence;
+      } else {
+        if (firstGPSequence != null) {
+          handler.sequenceRead(fileName + "0", firstGPSequence);
+          firstGPSequence = null;
+        }
+        handler.sequenceRead(fileName + gpSequenceCount, gpSequence);
+      }
+      gpSequenceCount++;
+    }
+
+    private int firstNonWhitespace() {
+      int i = 0;
+      while (i < line.length() && line.charAt(i) <= ' ') {
+        i++;
+      }
+      return i;
+    }
+
+    private static boolean isLetter(char c) {
+      return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+  }
+
+}
@@ -0,0 +1,597 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.antibody.paratopedetection;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.roche.antibody.model.antibody.ChainType;
+import org.roche.antibody.model.antibody.Connection;
+import org.roche.antibody.model.antibody.Domain;
+import org.roche.antibody.model.antibody.DomainType;
+import org.roche.antibody.model.antibody.Peptide;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.quattroresearch.antibody.paratopedetection.INode.CONNECTION_MODE;
+
+/**
+ * {@code HeapParatopeDetection} detects the paratopes of an antibody like {@link ParatopeDetection} and sets them in
+ * the domains. Only the paratopes left after the hinge-based detection are searched differently: the shortest paths of
+ * all VL domains are resolved in parallel by the {@link HeapPathfinder}, which gives the same paths as
+ * {@link Pathfinder} without writing the costs into the nodes.
+ *
+ * @version $Id$
+ */
+public class HeapParatopeDetection {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(HeapParatopeDetection.class);
+
+  private Map<Domain, INode> domainMap = new Hashtable<Domain, INode>();
+
+  private List<INode> vlNodes = new LinkedList<INode>();
+
+  private List<INode> vhNodes = new LinkedList<INode>();
+
+  private List<INode> autonomousNodes = new LinkedList<INode>();
+
+  private List<Paratope> detectedParatopes = new LinkedList<Paratope>();
+
+  private Map<String, Integer> paratopeIndexMapping = new Hashtable<String, Integer>();
+
+  /**
+   * Detects the paratopes of the peptides and sets them in their domains.
+   *
+   * @param antibody the peptides of an antibody
+   * @throws ParatopeDetectionException if the paratopes are ambiguous
+   */
+  public HeapParatopeDetection(List<Peptide> antibody) throws ParatopeDetectionException {
+    loadDomainMap(antibody);
+    fetchInterDomainConnections();
+    detectHingeParatopes();
+
+    detectRemainingParatopes();
+
+    collectAutonomousDomainParatopes();
+
+    LOG.debug(vlNodes.size() + " light domains and " + vhNodes.size() + " heavy domains left without paratope.");
+
+    Collections.sort(detectedParatopes);
+
+    // name paratopes by distinct domain sequences
+    for (Paratope paratope : detectedParatopes) {
+      String paratopeHash = paratope.getParatopeHash();
+      if (!paratopeIndexMapping.containsKey(paratopeHash)) {
+        paratopeIndexMapping.put(paratopeHash, paratopeIndexMapping.size() + 1);
+      }
+      paratope.setParatopeIndex(paratopeIndexMapping.get(paratopeHash));
+    }
+
+    fillInDetectedParatopes();
+  }
+
+  /**
+   * Creates a node for every domain in the antibody and the direct (backbone) connections between those nodes.
+   * 
+   * @param antibody
+   */
+  private void loadDomainMap(List<Peptide> antibody) {
+    for (Peptide pep : antibody) {
+      INode previousNode = null;
+      for (Domain dom : pep.getDomains()) {
+        dom.setParatope(null);
+        INode newNode = new com.quattroresearch.antibody.paratopedetection.Node(dom, true);
+        domainMap.put(dom, newNode);
+
+        if (previousNode != null) {
+          newNode.addConnectedNode(previousNode, CONNECTION_MODE.PROXIMAL);
+          previousNode.addConnectedNode(newNode, CONNECTION_MODE.PROXIMAL);
+        }
+
+        if (dom.getDomainType().equals(DomainType.VARIABLE)) {
+
+          // autonomous domains must not get paired
+          if (dom.getIsAutonomous()) {
+            autonomousNodes.add(newNode);
+          } else {
+            switch (dom.getChainType()) {
+            case HEAVY:
+              vhNodes.add(newNode);
+              break;
+            case KAPPA:
+            case LAMBDA:
+              vlNodes.add(newNode);
+              break;
+            default:
+              break;
+            }
+          }
+        }
+
+        previousNode = newNode;
+      }
+    }
+
+  }
+
+  /**
+   * Fetches all connections between different domains. Connections between hinges are not taken into account.
+   * 
+   * @return
+   */
+  private void fetchInterDomainConnections() {
+    List<Connection> intraPeptideConnections = new LinkedList<Connection>();
+    List<Connection> interPeptideConnections = new LinkedList<Connection>();
+    for (Entry<Domain, INode> entry : domainMap.entrySet()) {
+      for (Connection conn : entry.getKey().getConnections()) {
+
+        if (conn.getSource() instanceof Peptide
+            && conn.getTarget() instanceof Peptide) {
+
+          Peptide source = (Peptide) conn.getSource();
+          Peptide target = (Peptide) conn.getTarget();
+          Domain domSrc = source.getDomain(conn.getSourcePosition());
+          Domain domTar = target.getDomain(conn.getTargetPosition());
+
+          // no trans-hinge-paratopes
+          if (!(domSrc.isHinge() && domTar.isHinge())) {
+
+            // no intra-domain-paratopes / exactly one connection in each direction
+            if (domSrc != null && domTar != null && !domSrc.equals(domTar)) {
+              if (domainMap.get(domSrc) != null && domainMap.get(domTar) != null) {
+
+                if (source.equals(target) && !intraPeptideConnections.contains(conn)) {
+                  // intra peptide
+                  intraPeptideConnections.add(conn);
+                  domainMap.get(domSrc).addConnectedNode(domainMap.get(domTar), CONNECTION_MODE.PROXIMAL);
+                  domainMap.get(domTar).addConnectedNode(domainMap.get(domSrc), CONNECTION_MODE.PROXIMAL);
+                } else if (!source.equals(target) && !interPeptideConnections.contains(conn)) {
+                  // inter peptide
+                  domainMap.get(domSrc).addConnectedNode(domainMap.get(domTar), CONNECTION_MODE.DISTANT);
+                  domainMap.get(domTar).addConnectedNode(domainMap.get(domSrc), CONNECTION_MODE.DISTANT);
+                }
+              }
+            }
+          }
+          else if (domSrc != domTar) {
+            domainMap.get(domSrc).addConnectedNode(domainMap.get(domTar), CONNECTION_MODE.HINGE);
+            domainMap.get(domTar).addConnectedNode(domainMap.get(domSrc), CONNECTION_MODE.HINGE);
+          }
+        }
+
+      }
+    }
+  }
+
+  /**
+   * Finds all hinges in domain Map and returns corresponding nodes.
+   * 
+   * @return
+   */
+  private List<Domain> findHinges() {
+    List<Domain> hinges = new LinkedList<Domain>();
+    for (Entry<Domain, INode> node : domainMap.entrySet()) {
+      if (node.getKey().isHinge()) {
+        hinges.add(node.getKey());
+      }
+    }
+    return hinges;
+  }
+
+  /**
+   * Finds paratopes that are connected by a hinge domain. <br /><br />
+   * 
+   * Algorithm: <br /> Search hinges. For every hinge, find next variable domain on same chain in N-terminal direction.
+   * Second variable domain will be on another chain, connected by a cys connection (e.g. from hinge to light chain).
+   * 
+   * @throws ParatopeDetectionException
+   */
+  private void detectHingeParatopes() throws ParatopeDetectionException {
+    List<Domain> hinges = findHinges();
+
+// detect 1 paratope at every hinge
+    for (Domain hinge : hinges) {
+      INode paratopeDomainSameChain = findNextVariableDomainNDirection(domainMap.get(hinge));
+      if (paratopeDomainSameChain == null) {
+// throw new ParatopeDetectionException("Paratope Detection failed: Candidate on same chain not found for "
+// + hinge.getName());
+        continue;
+      } else {
+        LOG.debug("Paratope domain 1 for " + hinge.getName() + " = "
+            + ((Domain) paratopeDomainSameChain.getObject()).getName());
+      }
+
+      // check whether n term neighbor is up_hinge and use up_hinge or hinge itself accordingly as startingNode
+      INode nTermNeighbor = findNextDomainNDirection(domainMap.get(hinge));
+      List<INode> startingNodesOtherChain = null;
+      if (((Domain) nTermNeighbor.getObject()).getDomainType() == DomainType.UP_HINGE) {
+        // use up_hinge for searching
+        startingNodesOtherChain = nTermNeighbor.getConnectedNodes(CONNECTION_MODE.DISTANT);
+      } else {
+        // use hinge as there is no up_hinge
+        startingNodesOtherChain = domainMap.get(hinge).getConnectedNodes(CONNECTION_MODE.DISTANT);
+      }
+      INode paratopeDomainOtherChain = null;
+      if (startingNodesOtherChain.size() > 1) {
+        throw new ParatopeDetectionException("Paratope Detection failed: " + startingNodesOtherChain.size()
+            + " pairing candidates found for " + hinge.getName());
+      } else if (startingNodesOtherChain.size() == 1) {
+        paratopeDomainOtherChain = findNextVariableDomainNDirection(startingNodesOtherChain.get(0));
+        if (paratopeDomainOtherChain != null) {
+          LOG.debug("Paratope domain 2 for " + hinge.getName() + " = "
+              + ((Domain) paratopeDomainOtherChain.getObject()).getName());
+        }
+      }
+
+      // only accept paratopes where the domains chain types differ
+      if (paratopeDomainOtherChain != null
+          && paratopeDomainSameChain != null
+          && ((Domain) paratopeDomainOtherChain.getObject()).getChainType()
+          != ((Domain) paratopeDomainSameChain.getObject()).getChainType()) {
+        for (INode paratopeDomain : new INode[] {paratopeDomainOtherChain, paratopeDomainSameChain}) {
+          if (((Domain) paratopeDomain.getObject()).getChainType().equals(ChainType.HEAVY)) {
+            vhNodes = removeNodesFromList(Arrays.asList(paratopeDomain), vhNodes);
+          } else {
+            vlNodes = removeNodesFromList(Arrays.asList(paratopeDomain), vlNodes);
+          }
+        }
+
+        detectedParatopes.add(new Paratope(new INode[] {paratopeDomainSameChain,
+            paratopeDomainOtherChain}));
+      }
+    }
+  }
+
+  /**
+   * Finds the next variable domain in N terminal direction ("up"). But this domain is only valid(=returned) when it is
+   * not autonomous (autonomous variable domains build a paratope for themselves).
+   * 
+   * @param startingDomain the domain to start.
+   * @return
+   * @throws ParatopeDetectionException
+   */
+  private INode findNextVariableDomainNDirection(INode startingNode) throws ParatopeDetectionException {
+    INode currNode = startingNode;
+    Domain currDom;
+
+    while (currNode != null) {
+      currDom = (Domain) currNode.getObject();
+      if (currDom.getDomainType().equals(DomainType.VARIABLE)) {
+        if (currDom.getParatope() != null) {
+          throw new ParatopeDetectionException("Paratope Detection failed: " + currDom.getName()
+              + " is already part of a paratope.");
+        }
+        // 2016-09-21: found variable domain is only valid, when not autonomous
+        if (currDom.getIsAutonomous()) {
+          return null;
+        } else {
+          return currNode;
+        }
+      }
+
+      // find next node in n terminal direction
+      INode neighborNode = findNextDomainNDirection(currNode);
+      // no node found
+      if (neighborNode == null) {
+        return null;
+      } else {
+        currNode = neighborNode;
+      }
+      // node found --> next loop
+    }
+
+    return null;
+  }
+
+  private INode findNextDomainNDirection(INode node) {
+    List<INode> neighborsNodes = node.getConnectedNodes(CONNECTION_MODE.PROXIMAL);
+    for (INode nb : neighborsNodes) {
+      if (((Domain) nb.getObject()).getStartPosition() < ((Domain) node.getObject()).getStartPosition()) {
+        return nb;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Detects paratopes that weren't found by hinge paratope detection. It uses shortest path algorithm, the paths of
+   * all VL domains are searched in parallel.
+   * 
+   * @throws ParatopeDetectionException
+   */
+  private void detectRemainingParatopes() throws ParatopeDetectionException {
+    List<INode> foundVLNodes = new LinkedList<INode>();
+    List<INode> foundVHNodes = new LinkedList<INode>();
+
+    List<LinkedList<INode>> paths;
+    try {
+      paths = HeapPathfinder.findPaths(vlNodes, vhNodes);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ParatopeDetectionException("Paratope Detection interrupted");
+    }
+    Iterator<LinkedList<INode>> pathIterator = paths.iterator();
+    for (INode startNode : vlNodes) {
+      List<INode> nodes = pathIterator.next();
+      if (nodes != null) {
+        INode paratopeVLNode = nodes.get(0);
+        INode paratopeVHNode = nodes.get(nodes.size() - 1);
+        Domain paratopeVL = (Domain) paratopeVLNode.getObject();
+        Domain paratopeVH = (Domain) paratopeVHNode.getObject();
+        LOG.debug("Paratope found by shortest path (" + (nodes.size() - 1) + "): " + paratopeVL.getName() + "-"
+            + paratopeVH.getName());
+
+        detectedParatopes.add(new Paratope(new INode[] {paratopeVLNode, paratopeVHNode}));
+        foundVHNodes.add(paratopeVHNode);
+        foundVLNodes.add(paratopeVLNode);
+      } else {
+        LOG.error("No path found for " + ((Domain) startNode.getObject()).getName());
+      }
+    }
+
+    vhNodes = removeNodesFromList(foundVHNodes, vhNodes);
+    vlNodes = removeNodesFromList(foundVLNodes, vlNodes);
+  }
+
+  /**
+   * Creates a new node list which contains only nodes that are not in given list 'nodesToRemove'.
+   * 
+   * @param nodesToRemove nodes we do not want
+   * @param listToRemoveFrom original list
+   * @return new node which desired nodes
+   */
+  private List<INode> removeNodesFromList(List<INode> nodesToRemove, List<INode> listToRemoveFrom) {
+    List<INode> newList = new LinkedList<INode>();
+    for (INode node : listToRemoveFrom) {
+      if (!nodesToRemove.contains(node)) {
+        newList.add(node);
+      }
+    }
+
+    return newList;
+  }
+
+  /**
+   * Creates paratopes out of single autonomous variable domains.
+   * 
+   * @throws ParatopeDetectionException
+   */
+  private void collectAutonomousDomainParatopes() throws ParatopeDetectionException {
+    for (INode node : autonomousNodes) {
+      Domain nodeDomain = ((Domain) node.getObject());
+      if (nodeDomain.getIsAutonomous()) {
+        LOG.debug("Autonomous variable " + nodeDomain.getChainType() + " found.");
+        detectedParatopes.add(new Paratope(node));
+      }
+    }
+  }
+
+  /**
+   * Registers the detected paratopes inside the corresponding domains.
+   */
+  private void fillInDetectedParatopes() {
+    for (Paratope paratope : detectedParatopes) {
+      INode vl = paratope.getVL();
+      INode vh = paratope.getVH();
+      if (vl != null) {
+        ((Domain) vl.getObject()).setParatope(paratope.getParatopeIndex());
+      }
+      if (vh != null) {
+        ((Domain) vh.getObject()).setParatope(paratope.getParatopeIndex());
+      }
+    }
+  }
+
+  private class Paratope implements Comparable<Paratope> {
+    private INode vH;
+
+    private INode vL;
+
+    private Integer paratopeIndex = null;
+
+    public Paratope(INode autonomousParatopeDomain) throws ParatopeDetectionException {
+      Domain paratopeDomain = (Domain) autonomousParatopeDomain.getObject();
+      if (!paratopeDomain.getIsAutonomous()) {
+        throw new ParatopeDetectionException("Paratope Detection failed: detected autonomous domain is not autonomous");
+      }
+
+      switch (paratopeDomain.getChainType()) {
+      case HEAVY:
+        vH = autonomousParatopeDomain;
+        break;
+      case NONE:
+        throw new ParatopeDetectionException(
+            "Paratope Detection failed: Autonomous paratope domain doesn't have a chain type");
+      default:
+        vL = autonomousParatopeDomain;
+        break;
+      }
+    }
+
+    public Paratope(INode[] paratopeDomains) throws ParatopeDetectionException {
+      super();
+      if (paratopeDomains.length > 2) {
+        throw new ParatopeDetectionException("Paratope Detection failed: too many paratope domains ("
+            + paratopeDomains.length
+            + ")");
+      } else if (paratopeDomains.length < 2) {
+        throw new ParatopeDetectionException("Paratope Detection failed: too few paratope domains ("
+            + paratopeDomains.length
+            + ")");
+      } else {
+        if (((Domain) paratopeDomains[0].getObject()).getChainType().equals(ChainType.HEAVY)) {
+          vH = paratopeDomains[0];
+        } else {
+          vL = paratopeDomains[0];
+        }
+        if (((Domain) paratopeDomains[1].getObject()).getChainType().equals(ChainType.HEAVY)) {
+          vH = paratopeDomains[1];
+        } else {
+          vL = paratopeDomains[1];
+        }
+        if (vH == null) {
+          throw new ParatopeDetectionException("Paratope Detection failed: vH == null");
+        }
+        if (vL == null) {
+          throw new ParatopeDetectionException("Paratope Detection failed: vL == null");
+        }
+      }
+    }
+
+    /**
+     * Creates a hash on the paratope domains sequences. Seq LC + Seq HC
+     * 
+     * @return hash
+     */
+    public String getParatopeHash() {
+
+      String seqLightDomain = vL == null ? "X" : ((Domain) vL.getObject()).getSequence();
+      String seqHeavyDomain = vH == null ? "X" : ((Domain) vH.getObject()).getSequence();
+
+      return seqLightDomain + "#" + seqHeavyDomain;
+    }
+
+    public INode getVH() {
+      return this.vH;
+    }
+
+    public Domain getVHDomain() {
+      return (Domain) getVH().getObject();
+    }
+
+    public INode getVL() {
+      return this.vL;
+    }
+
+    public Domain getVLDomain() {
+      return (Domain) getVL().getObject();
+    }
+
+    public Integer getParatopeIndex() {
+      return this.paratopeIndex;
+    }
+
+    public void setParatopeIndex(Integer paratopeIndex) {
+      this.paratopeIndex = paratopeIndex;
+    }
+
+    @Override
+    public int compareTo(Paratope o) {
+      Domain thisVH = this.getVH() == null ? null : (Domain) this.getVH().getObject();
+      Domain thisVL = this.getVL() == null ? null : (Domain) this.getVL().getObject();
+      Domain otherVH = o.getVH() == null ? null : (Domain) o.getVH().getObject();
+      Domain otherVL = o.getVL() == null ? null : (Domain) o.getVL().getObject();
+      Domain thisSortingHinge = thisVH == null ? null : findHinge(thisVH.getPeptide());
+      Domain otherSortingHinge = otherVH == null ? null : findHinge(otherVH.getPeptide());
+
+      // 1. We sort by position relatively to hinge.
+      // a. consider the domain which lies on a peptide with a hinge
+      Domain thisSortingDomain = null;
+      if (thisSortingHinge != null) {
+        thisSortingDomain = thisVH;
+      } else {
+        thisSortingHinge = thisVL == null ? null : findHinge(thisVL.getPeptide());
+        if (thisSortingHinge != null) {
+          thisSortingDomain = thisVL;
+        }
+      }
+
+      Domain otherSortingDomain = null;
+      if (otherSortingHinge != null) {
+        otherSortingDomain = otherVH;
+      } else {
+        otherSortingHinge = otherVL == null ? null : findHinge(otherVL.getPeptide());
+        if (otherSortingHinge != null) {
+          otherSortingDomain = otherVL;
+        }
+      }
+
+      // b. when no hinge in the peptides -> check the longer one
+      if (thisSortingDomain == null) {
+        thisSortingDomain =
+            thisVH.getPeptide().getDomains().size() >= thisVL.getPeptide().getDomains().size() ? thisVH : thisVL;
+      }
+      if (otherSortingDomain == null) {
+        otherSortingDomain =
+            otherVH.getPeptide().getDomains().size() >= otherVL.getPeptide().getDomains().size() ? otherVH : otherVL;
+      }
+
+      // c. When this domain and other domain on different hinge sides -> upper domain is sorted as smaller
+      // when no hinge, then index is set according to peptide length
+      int offsetThisToHinge =
+          thisSortingHinge == null ? thisSortingDomain.getPeptide().getDomains().size()
+              - thisSortingDomain.getDomainIndex()
+              : thisSortingDomain.getDomainIndex() - thisSortingHinge.getDomainIndex();
+      int offsetOtherToHinge =
+          otherSortingHinge == null ? otherSortingDomain.getPeptide().getDomains().size()
+              - otherSortingDomain.getDomainIndex()
+              : otherSortingDomain.getDomainIndex() - otherSortingHinge.getDomainIndex();
+
+      if (offsetThisToHinge < 0 && offsetOtherToHinge > 0) {
+        // this above hinge, other below hinge
+// System.out.println("above hinge to below hinge");
+        return -1;
+      } else if (offsetThisToHinge > 0 && offsetOtherToHinge < 0) {
+        // this below hinge, other above hinge
+// System.out.println("below hinge to above hinge");
+        return 1;
+      }
+      // both on same side
+
+      // 2. Check distance from hinge
+      // Both are on same side, so only check which offset is smaller
+      if (offsetThisToHinge != offsetOtherToHinge) {
+// System.out.println("offsets this to other " + (offsetThisToHinge - offsetOtherToHinge));
+        return offsetThisToHinge - offsetOtherToHinge;
+      }
+
+      // 3. At last resort, sort by peptide index
+      List<Peptide> peps = thisSortingDomain.getPeptide().getAntibody().getPeptides();
+// System.out.println("pep index (" + offsetThisToHinge + " " + offsetOtherToHinge + ")");
+      return peps.indexOf(thisSortingDomain.getPeptide()) - peps.indexOf(otherSortingDomain.getPeptide());
+    }
+
+    /**
+     * Searches the first hinge in a given peptide or returns null when none found.
+     * 
+     * @param pep
+     * @return
+     */
+    private Domain findHinge(Peptide pep) {
+      for (Domain dom : pep.getDomains()) {
+        if (dom.isHinge()) {
+          return dom;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public String toString() {
+      return "Paratope " + getVHDomain().getName() + "-" + getVLDomain().getName();
+    }
+  }
+
+}
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.antibody.paratopedetection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.quattroresearch.antibody.paratopedetection.INode.CONNECTION_MODE;
+
+/**
+ * {@code HeapPathfinder} searches the shortest path between a node and a set of destination nodes, like
+ * {@link Pathfinder#findPath(INode, List)}, and returns the same path. The open nodes are kept in a binary heap, the
+ * closed nodes and destinations in identity sets. Costs and parent nodes are stored per search instead of in the
+ * {@link INode}s, so the nodes are only read and any number of searches may run on the same network at the same time.
+ * <p>
+ * {@link #findPaths(List, Collection)} resolves several start nodes in parallel, e.g. all VL domains of a construct.
+ *
+ * @version $Id$
+ */
+public final class HeapPathfinder {
+
+  private static final int EDGE_COST = 10;
+
+  /** number of threads searching paths in parallel */
+  public static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+  private static ExecutorService executor;
+
+  /** nodes, which are known to the search; the index in this list is the id of the node */
+  private final List<INode> nodes = new ArrayList<INode>();
+
+  private final Map<INode, Integer> nodeIds = new IdentityHashMap<INode, Integer>();
+
+  private final Set<INode> destinations;
+
+  /** exact cost from start, by node id */
+  private double[] g = new double[16];
+
+  /** estimated full cost at the time the node was opened, by node id */
+  private double[] f = new double[16];
+
+  /** parent node id, by node id */
+  private int[] parent = new int[16];
+
+  /** order in which the nodes were opened first, by node id */
+  private long[] openOrder = new long[16];
+
+  private final BitSet closed = new BitSet();
+
+  /** number of nodes opened so far */
+  private long openCount;
+
+  private HeapPathfinder(Collection<INode> destinationNodes) {
+    destinations = Collections.newSetFromMap(new IdentityHashMap<INode, Boolean>());
+    destinations.addAll(destinationNodes);
+  }
+
+  /**
+   * Returns a shortest path between the start node and the nearest destination node. Of several paths with the same
+   * cost, the one {@link Pathfinder} finds is returned.
+   *
+   * @param startNode node to start at
+   * @param destinationNodes nodes to go to, they need not be traversable
+   * @return the path from the start node to the destination or null, if no destination can be reached
+   */
+  public static LinkedList<INode> findPath(INode startNode, Collection<INode> destinationNodes) {
+    return new HeapPathfinder(destinationNodes).search(startNode);
+  }
+
+  /**
+   * Searches the paths of all start nodes in parallel, on a pool of {@link #PARALLELISM} threads shared by all
+   * searches. The network must not be changed until all searches are done.
+   *
+   * @param startNodes nodes to start at
+   * @param destinationNodes nodes to go to, they need not be traversable
+   * @return the path of every start node, in order of the start nodes; null for start nodes without a path
+   * @throws InterruptedException
+   */
+  public static List<LinkedList<INode>> findPaths(List<INode> startNodes, final Collection<INode> destinationNodes)
+      throws InterruptedException {
+    if (startNodes.size() <= 1 || PARALLELISM <= 1) {
+      List<LinkedList<INode>> paths = new ArrayList<LinkedList<INode>>(startNodes.size());
+      for (INode startNode : startNodes) {
+        paths.add(findPath(startNode, destinationNodes));
+      }
+      return paths;
+    }
+
+    List<Future<LinkedList<INode>>> futures = new ArrayList<Future<LinkedList<INode>>>(startNodes.size());
+    try {
+      for (final INode startNode : startNodes) {
+        futures.add(getExecutor().submit(new Callable<LinkedList<INode>>() {
+          @Override
+          public LinkedList<INode> call() {
+            return findPath(startNode, destinationNodes);
+          }
+        }));
+      }
+      List<LinkedList<INode>> paths = new ArrayList<LinkedList<INode>>(startNodes.size());
+      for (Future<LinkedList<INode>> future : futures) {
+        paths.add(future.get());
+      }
+      return paths;
+    } catch (ExecutionException e) {
+      cancel(futures);
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      cancel(futures);
+      throw e;
+    }
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "pathfinder-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  private static void cancel(List<? extends Future<?>> futures) {
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  private LinkedList<INode> search(INode startNode) {
+    PriorityQueue<OpenNode> openNodes = new PriorityQueue<OpenNode>();
+    int current = getId(startNode);
+    g[current] = 0;
+    f[current] = heuristic(startNode);
+    parent[current] = -1;
+
+    while (!destinations.contains(nodes.get(current))) {
+      INode currentNode = nodes.get(current);
+      for (INode testNode : currentNode.getConnectedNodes(CONNECTION_MODE.ALL)) {
+        if (testNode == currentNode || (!testNode.isTraversable() && !destinations.contains(testNode))) {
+          continue;
+        }
+        double testG = g[current] + EDGE_COST;
+        double testF = testG + heuristic(testNode);
+
+        Integer knownId = nodeIds.get(testNode);
+        if (knownId == null) {
+          int id = getId(testNode);
+          openOrder[id] = openCount++;
+          open(openNodes, id, current, testG, testF);
+        } else if (f[knownId] > testF) {
+          // only change, if newest calculation is better than that before; closed nodes stay closed
+          if (closed.get(knownId)) {
+            g[knownId] = testG;
+            f[knownId] = testF;
+            parent[knownId] = current;
+          } else {
+            open(openNodes, knownId, current, testG, testF);
+          }
+        }
+      }
+      // node is done, close it
+      closed.set(current);
+
+      current = -1;
+      while (!openNodes.isEmpty()) {
+        OpenNode next = openNodes.poll();
+        // skip entries, which were replaced by a cheaper one
+        if (!closed.get(next.id) && next.f == f[next.id]) {
+          current = next.id;
+          break;
+        }
+      }
+      if (current < 0) {
+        return null;
+      }
+    }
+
+    LinkedList<INode> path = new LinkedList<INode>();
+    for (int id = current; id >= 0; id = parent[id]) {
+      path.addFirst(nodes.get(id));
+    }
+    return path;
+  }
+
+  private void open(PriorityQueue<OpenNode> openNodes, int id, int parentId, double nodeG, double nodeF) {
+    g[id] = nodeG;
+    f[id] = nodeF;
+    parent[id] = parentId;
+    openNodes.add(new OpenNode(id, nodeF, openOrder[id]));
+  }
+
+  private int getId(INode node) {
+    Integer id = nodeIds.get(node);
+    if (id == null) {
+      id = nodes.size();
+      nodes.add(node);
+      nodeIds.put(node, id);
+      if (id == g.length) {
+        g = Arrays.copyOf(g, id * 2);
+        f = Arrays.copyOf(f, id * 2);
+        parent = Arrays.copyOf(parent, id * 2);
+        openOrder = Arrays.copyOf(openOrder, id * 2);
+      }
+    }
+    return id;
+  }
+
+  /**
+   * Estimated cost from the node to the nearest destination. Like {@link Pathfinder}, no heuristic is used, so the
+   * search is a Dijkstra search.
+   */
+  private double heuristic(INode node) {
+    return 0;
+  }
+
+  /**
+   * Entry of the open heap: the cheapest node first, of nodes with equal cost the one opened first. This is the order
+   * in which {@link Pathfinder} picks the next node from its list of open nodes.
+   */
+  private static class OpenNode implements Comparable<OpenNode> {
+
+    private final int id;
+
+    private final double f;
+
+    private final long order;
+
+    private OpenNode(int id, double f, long order) {
+      this.id = id;
+      this.f = f;
+      this.order = order;
+    }
+
+    @Override
+    public int compareTo(OpenNode o) {
+      int result = Double.compare(f, o.f);
+      if (result == 0) {
+        result = order < o.order ? -1 : (order == o.order ? 0 : 1);
+      }
+      return result;
+    }
+  }
+
+}
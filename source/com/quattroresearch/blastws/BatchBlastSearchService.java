@@ -0,0 +1,452 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.blastws;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecuteResultHandler;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteWatchdog;
+import org.apache.commons.exec.Executor;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * {@code BatchBlastSearchService} runs all queries of a detection run as multi-FASTA Blast searches instead of forking
+ * one blast process per chain. The queries are split into as many parts as there are processors per database, all
+ * parts and databases are searched concurrently on a shared pool and the hits are split back per query.
+ * {@link #searchSequence(BlastSearchParams, String)} hands out the batched hits, so callers that search chain by chain
+ * work unchanged. Queries that were not part of a batch fall back to a single search. A {@link BatchListener} gets the
+ * hits of every query as soon as its block of the blast output was parsed.
+ * <p>
+ * Every blast process runs in its own {@link BlastWorkspace}, which is deleted when the process is done. Unlike
+ * {@link NCBIBlastAPI}, no temp files or counters are shared, so any number of searches may run at the same time.
+ * Keeping the last blast result for the HELMEditor is configured per service, see
+ * {@link #setArchiveLastBlast(boolean)}. When the searching thread is interrupted, the running blast processes are
+ * destroyed.
+ *
+ * @version $Id$
+ */
+public class BatchBlastSearchService extends BlastSearchService {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(BatchBlastSearchService.class);
+
+  /** Prefix of the query identifiers written to the multi-FASTA file */
+  private static final String QUERY_ID_PREFIX = "query";
+
+  /** Line that starts the output block of a single query in Blast text output */
+  private static final String QUERY_BLOCK_START = "Query=";
+
+  /** Blast processes running longer are destroyed, as by {@link OSUtils#exec(String, PrintStream, PrintStream)} */
+  private static final long PROCESS_TIMEOUT = 60 * 1000;
+
+  /** maximal number of concurrent blast processes */
+  public static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+  /** shared by all services, so concurrent detections do not start more processes than there are processors */
+  private static ExecutorService executor;
+
+  private boolean archiveLastBlast = NCBIBlastAPI.ARCHIVE_LAST_BLAST;
+
+  private volatile String bestAlignment;
+
+  /** batched hits: database suffix -> query sequence -> hits, one entry per occurrence of the query */
+  private final Map<String, Map<String, LinkedList<BlastHit[]>>> batchHits =
+      new ConcurrentHashMap<String, Map<String, LinkedList<BlastHit[]>>>();
+
+  /**
+   * @param archiveLastBlast true, to keep the files of the last blast job for the HELMEditor (default:
+   *          {@link NCBIBlastAPI#ARCHIVE_LAST_BLAST})
+   */
+  public void setArchiveLastBlast(boolean archiveLastBlast) {
+    this.archiveLastBlast = archiveLastBlast;
+  }
+
+  public boolean isArchiveLastBlast() {
+    return archiveLastBlast;
+  }
+
+  /**
+   * Searches all queries against the databases with the given suffixes. The queries are split into
+   * {@link #PARALLELISM} / number of databases parts, one blast process is launched per part and database. All
+   * processes run in parallel. The results are kept until they are fetched by
+   * {@link #searchSequence(BlastSearchParams, String)}.
+   *
+   * @param params search parameters, the query is ignored
+   * @param queries the query sequences
+   * @param dbSuffixes database suffixes (e.g. "CORE")
+   * @throws Exception
+   */
+  public void searchBatch(BlastSearchParams params, List<String> queries, String... dbSuffixes) throws Exception {
+    searchBatch(params, queries, null, dbSuffixes);
+  }
+
+  /**
+   * Searches all queries like {@link #searchBatch(BlastSearchParams, List, String...)} and tells the listener about the
+   * hits of every query while the searches run.
+   *
+   * @param params search parameters, the query is ignored
+   * @param queries the query sequences
+   * @param listener told about the hits of every query and database, may be null
+   * @param dbSuffixes database suffixes (e.g. "CORE")
+   * @throws Exception
+   */
+  public void searchBatch(final BlastSearchParams params, final List<String> queries, final BatchListener listener,
+      String... dbSuffixes) throws Exception {
+    long startTime = System.currentTimeMillis();
+    int partCount = Math.max(1, Math.min(queries.size(), (PARALLELISM + dbSuffixes.length - 1)
+        / Math.max(1, dbSuffixes.length)));
+    int partSize = (queries.size() + partCount - 1) / partCount;
+    List<Future<List<List<BlastHit>>>> futures = new ArrayList<Future<List<List<BlastHit>>>>();
+    try {
+      for (final String dbSuffix : dbSuffixes) {
+        for (int start = 0; start < queries.size(); start += partSize) {
+          final List<String> part = queries.subList(start, Math.min(start + partSize, queries.size()));
+          final int firstQueryIndex = start;
+          futures.add(getExecutor().submit(new Callable<List<List<BlastHit>>>() {
+            @Override
+            public List<List<BlastHit>> call() throws Exception {
+              return runBatchQuery(params, part, dbSuffix, listener, firstQueryIndex);
+            }
+          }));
+        }
+      }
+
+      int partsPerDatabase = futures.size() / Math.max(1, dbSuffixes.length);
+      for (int i = 0; i < dbSuffixes.length; i++) {
+        List<List<BlastHit>> hitsPerQuery = new ArrayList<List<BlastHit>>(queries.size());
+        for (int j = 0; j < partsPerDatabase; j++) {
+          hitsPerQuery.addAll(futures.get(i * partsPerDatabase + j).get());
+        }
+        Map<String, LinkedList<BlastHit[]>> hitsBySequence = new HashMap<String, LinkedList<BlastHit[]>>();
+        for (int j = 0; j < queries.size(); j++) {
+          LinkedList<BlastHit[]> occurrences = hitsBySequence.get(queries.get(j));
+          if (occurrences == null) {
+            occurrences = new LinkedList<BlastHit[]>();
+            hitsBySequence.put(queries.get(j), occurrences);
+          }
+          List<BlastHit> hits = hitsPerQuery.get(j);
+          occurrences.add(hits.toArray(new BlastHit[hits.size()]));
+        }
+        batchHits.put(dbSuffixes[i], hitsBySequence);
+      }
+    } catch (ExecutionException e) {
+      cancel(futures);
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    } catch (InterruptedException e) {
+      cancel(futures);
+      throw e;
+    }
+    LOG.info("Time|Batched Blast of " + queries.size() + " queries in " + futures.size() + " jobs against "
+        + dbSuffixes.length + " databases|" + (System.currentTimeMillis() - startTime));
+  }
+
+  /**
+   * Returns the batched hits for the query, if it was part of a batch. Every batched result is handed out only once,
+   * because domain detection modifies the returned hits. Any further search runs blast for the single query.
+   */
+  @Override
+  public BlastHit[] searchSequence(BlastSearchParams params, String dbSuffix)
+      throws Exception {
+    Map<String, LinkedList<BlastHit[]>> hitsBySequence = batchHits.get(dbSuffix);
+    if (hitsBySequence != null) {
+      synchronized (hitsBySequence) {
+        LinkedList<BlastHit[]> occurrences = hitsBySequence.get(params.getQuery());
+        if (occurrences != null && !occurrences.isEmpty()) {
+          BlastHit[] hits = occurrences.removeFirst();
+          LOG.info("Found " + hits.length + " batched blastHits.");
+          return hits;
+        }
+      }
+    }
+    List<BlastHit> hits =
+        runBatchQuery(params, Collections.singletonList(params.getQuery()), dbSuffix, null, 0).get(0);
+    LOG.info("Found " + hits.size() + " blastHits.");
+    return hits.toArray(new BlastHit[hits.size()]);
+  }
+
+  /**
+   * @return the best alignment of the last search of a single query, which was not part of a batch
+   */
+  @Override
+  public String getBestAlignment() {
+    return bestAlignment;
+  }
+
+  /**
+   * Discards all batched hits that were not fetched yet.
+   */
+  public void clearBatch() {
+    batchHits.clear();
+  }
+
+  /**
+   * @return the pool shared by all blast searches, it runs at most {@link #PARALLELISM} searches at a time
+   */
+  public static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "blast-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  private static void cancel(List<? extends Future<?>> futures) {
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * Runs a single blast process with all queries against the database with the given suffix. All files are created in
+   * a new {@link BlastWorkspace}, which is deleted afterwards.
+   *
+   * @param listener told about the hits of every query, when its block in the output of the last database file was
+   *          parsed, may be null
+   * @param firstQueryIndex index of the first query in the batch, for the listener
+   * @return hits for every query, in order of the queries
+   * @throws Exception
+   */
+  private List<List<BlastHit>> runBatchQuery(BlastSearchParams params, List<String> queries, String dbSuffix,
+      BatchListener listener, int firstQueryIndex) throws Exception {
+    List<List<BlastHit>> hitsPerQuery = new ArrayList<List<BlastHit>>(queries.size());
+    for (int i = 0; i < queries.size(); i++) {
+      hitsPerQuery.add(new ArrayList<BlastHit>());
+    }
+
+    String directory;
+    String cmd;
+    if ("DNA".equals(params.getSequenceType())) {
+      directory = LocalConfig.getInstance().getDnaLibraryDirectory().toString();
+      cmd = LocalConfig.getInstance().getBlastn().toString();
+    } else {
+      directory = LocalConfig.getInstance().getProteinLibraryDirectory().toString();
+      cmd = LocalConfig.getInstance().getBlastp().toString();
+    }
+    BlastWorkspace workspace = BlastWorkspace.create();
+    try {
+      File queryFile = workspace.getFile("query.fa");
+      OSUtils.writeToFile(queryFile, toMultiFasta(queries));
+
+      File[] dbFiles = getBlastDBFiles(directory, dbSuffix);
+      for (int i = 0; i < dbFiles.length; i++) {
+        File db = dbFiles[i];
+        File outputFile = workspace.getFile(db.getName() + ".out");
+        File errorFile = workspace.getFile(db.getName() + ".err");
+        PrintStream output = new PrintStream(outputFile);
+        PrintStream error = new PrintStream(errorFile);
+        try {
+          long startTime = System.currentTimeMillis();
+          exec(cmd + " -db " + db.getAbsolutePath() + " -query " + queryFile.getAbsolutePath()
+              + params.getParameterString(), output, error);
+          LOG.info("Time|Step Run batched Blast " + db.getName() + "|" + (System.currentTimeMillis() - startTime));
+        } finally {
+          output.close();
+          error.close();
+        }
+
+        // the hits of a query are complete with the last database file
+        if (i == dbFiles.length - 1) {
+          splitAndParse(outputFile, hitsPerQuery, dbSuffix, listener, firstQueryIndex);
+        } else {
+          splitAndParse(outputFile, hitsPerQuery, dbSuffix, null, firstQueryIndex);
+        }
+
+        if (archiveLastBlast) {
+          archiveLastBlast(workspace.getDirectory().getParentFile(), outputFile, errorFile, queryFile);
+        }
+      }
+    } finally {
+      workspace.close();
+    }
+
+    return hitsPerQuery;
+  }
+
+  /**
+   * Runs the blast process like {@link OSUtils#exec(String, PrintStream, PrintStream)}, but destroys it when the
+   * searching thread is interrupted.
+   *
+   * @return the exit value of the process
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  private static int exec(String cmd, PrintStream out, PrintStream err) throws IOException, InterruptedException {
+    DefaultExecuteResultHandler resultHandler = new DefaultExecuteResultHandler();
+    ExecuteWatchdog watchdog = new ExecuteWatchdog(PROCESS_TIMEOUT);
+    Executor executor = new DefaultExecutor();
+    executor.setStreamHandler(new PumpStreamHandler(out, err));
+    executor.setWatchdog(watchdog);
+    executor.execute(CommandLine.parse(cmd), resultHandler);
+    try {
+      resultHandler.waitFor();
+    } catch (InterruptedException e) {
+      watchdog.destroyProcess();
+      throw e;
+    }
+    return resultHandler.getExitValue();
+  }
+
+  /**
+   * Builds the multi-FASTA query. The query identifier encodes the index of the query.
+   */
+  private String toMultiFasta(List<String> queries) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < queries.size(); i++) {
+      builder.append('>').append(QUERY_ID_PREFIX).append(i).append('\n');
+      builder.append(queries.get(i)).append('\n');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Splits a multi-query Blast output into one block per query and parses every block with a
+   * {@link BlastTextParser}, line by line while reading the output.
+   *
+   * @param outputFile the blast output
+   * @param hitsPerQuery the hits are added to the list of their query
+   * @param dbSuffix database suffix, for the listener
+   * @param listener told about the hits of every finished block, may be null
+   * @param firstQueryIndex index of the first query in the batch, for the listener
+   * @throws IOException
+   */
+  private void splitAndParse(File outputFile, List<List<BlastHit>> hitsPerQuery, String dbSuffix,
+      BatchListener listener, int firstQueryIndex) throws IOException {
+    BufferedReader reader = new BufferedReader(new FileReader(outputFile), BlastTextParser.BUFFER_SIZE);
+    BlastTextParser parser = null;
+    int queryIndex = -1;
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(QUERY_BLOCK_START)) {
+          finishBlock(parser, queryIndex, hitsPerQuery, dbSuffix, listener, firstQueryIndex);
+          queryIndex = parseQueryIndex(line);
+          parser = new BlastTextParser();
+        }
+        if (parser != null) {
+          parser.parseLine(line);
+        }
+      }
+      finishBlock(parser, queryIndex, hitsPerQuery, dbSuffix, listener, firstQueryIndex);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void finishBlock(BlastTextParser parser, int queryIndex, List<List<BlastHit>> hitsPerQuery, String dbSuffix,
+      BatchListener listener, int firstQueryIndex) {
+    if (parser == null) {
+      return;
+    }
+    if (queryIndex >= 0 && queryIndex < hitsPerQuery.size()) {
+      List<BlastHit> hits = hitsPerQuery.get(queryIndex);
+      hits.addAll(parser.findHits());
+      if (hitsPerQuery.size() == 1) {
+        bestAlignment = parser.getBestAlignmentAsString();
+      }
+      if (listener != null) {
+        listener.querySearched(firstQueryIndex + queryIndex, dbSuffix, hits.toArray(new BlastHit[hits.size()]));
+      }
+    } else {
+      LOG.warn("Unexpected query block " + queryIndex + " in batched blast output.");
+    }
+  }
+
+  private int parseQueryIndex(String line) {
+    String queryId = line.substring(QUERY_BLOCK_START.length()).trim();
+    if (!queryId.startsWith(QUERY_ID_PREFIX)) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(queryId.substring(QUERY_ID_PREFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private File[] getBlastDBFiles(String directory, final String dbSuffix) {
+    File[] blastDBFiles = new File(directory).listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith((dbSuffix == null ? "" : dbSuffix) + ".fa");
+      }
+    });
+    return blastDBFiles == null ? new File[0] : blastDBFiles;
+  }
+
+  /**
+   * Keeps the last blast result for the HELMEditor (see {@link NCBIBlastAPI#ARCHIVE_LAST_BLAST}). Jobs finishing at the
+   * same time archive one after the other.
+   */
+  private static synchronized void archiveLastBlast(File tmpDir, File outputFile, File errorFile, File queryFile)
+      throws IOException {
+    FileUtils.copyFile(outputFile, new File(tmpDir, "lastBlast.out"));
+    FileUtils.copyFile(errorFile, new File(tmpDir, "lastBlast.err"));
+    FileUtils.copyFile(queryFile, new File(tmpDir, "lastBlastQuery.fa"));
+  }
+
+  /**
+   * Receives the hits of the queries of a batch, as soon as a query was searched in a database.
+   */
+  public interface BatchListener {
+
+    /**
+     * Called on a blast thread, the queries of different parts are reported concurrently.
+     *
+     * @param queryIndex index of the query in the batch
+     * @param dbSuffix the database, e.g. CORE
+     * @param hits the hits found, must not be modified
+     */
+    void querySearched(int queryIndex, String dbSuffix, BlastHit[] hits);
+  }
+
+}
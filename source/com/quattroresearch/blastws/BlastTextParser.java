@@ -0,0 +1,754 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.blastws;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.quattroresearch.antibody.FindMutations;
+import com.quattroresearch.antibody.UnknownMutation;
+
+/**
+ * {@code BlastTextParser} parses Blast text output into {@link BlastHit}s with the same results as {@link BlastParser},
+ * but without regular expressions: every line is dispatched on its first characters and numbers are read in place, so
+ * most lines are rejected after looking at a few characters. Alignment lines are collected in builders. The output can
+ * be read from a file or a reader, or fed line by line with {@link #parseLine(String)}, e.g. while splitting a
+ * multi-query output.
+ * <p>
+ * Like {@link BlastParser}, a parser is used for a single output and is not thread safe.
+ * 
+ * @version $Id$
+ */
+public class BlastTextParser {
+
+  /** buffer size for reading blast outputs */
+  public static final int BUFFER_SIZE = 1 << 16;
+
+  /** initial capacity of the alignment builders, a domain with some gaps fits */
+  private static final int ALIGNMENT_CAPACITY = 160;
+
+  private static final String DISULFID = "DISULFID";
+
+  private static final String LENGTH = "Length=";
+
+  private static final String SCORE = "Score";
+
+  private static final String BITS = "bits";
+
+  private static final String EXPECT = "Expect";
+
+  private static final String IDENTITIES = "Identities";
+
+  private static final String QUERY = "Query";
+
+  private static final String SUBJECT = "Sbjct";
+
+  private final Map<String, LinkedList<BlastHit>> hits = new LinkedHashMap<String, LinkedList<BlastHit>>();
+
+  private boolean isParsingDetailData = false;
+
+  private boolean isParsingAlignment = false;
+
+  private boolean isAdditionalHit = false;
+
+  private int emptyLineCount = 0;
+
+  private BlastHit hit = null;
+
+  private Alignment currentAlignment = null;
+
+  private Alignment bestAlignment = null;
+
+  /** fields of the last matched line */
+  private String matchedId;
+
+  private List<Integer> matchedBonds;
+
+  private String matchedFirstNumber;
+
+  private String matchedLastNumber;
+
+  private int matchedSequenceStart;
+
+  private int matchedSequenceEnd;
+
+  /**
+   * Parses the Blast output file.
+   * 
+   * @param inputFile Blast text output
+   * @throws IOException
+   */
+  public void parse(File inputFile) throws IOException {
+    parse(new FileReader(inputFile));
+  }
+
+  /**
+   * Parses the Blast output and closes the reader.
+   * 
+   * @param input Blast text output
+   * @throws IOException
+   */
+  public void parse(Reader input) throws IOException {
+    BufferedReader reader = new BufferedReader(input, BUFFER_SIZE);
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        parseLine(line);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Parses the next line of the Blast output.
+   * 
+   * @param line the line without line terminator
+   */
+  public void parseLine(String line) {
+    if (matchesHitOverview(line)) {
+      parseHitOverview();
+    }
+
+    if (matchesStartOfDetailData(line)) {
+      // count subsequent empty lines, to determine end of first hit
+      emptyLineCount = 0;
+      parseStartOfDetailData();
+      isAdditionalHit = false;
+    }
+
+    if (!isParsingDetailData) {
+      return;
+    }
+    if (line.length() == 0) {
+      emptyLineCount++;
+    } else if (line.startsWith(LENGTH)) {
+      if (matchesLength(line)) {
+        hit.setLength(Long.parseLong(matchedFirstNumber));
+        emptyLineCount = 0;
+      }
+    } else if (line.startsWith(QUERY)) {
+      if (matchesAlignmentLine(line, QUERY.length())) {
+        parseQueryLine(line);
+        emptyLineCount = 0;
+      }
+    } else if (line.startsWith(SUBJECT)) {
+      if (matchesAlignmentLine(line, SUBJECT.length())) {
+        parseTemplateLine(line);
+      }
+    } else if (isSpace(line.charAt(0)) || line.charAt(0) == 'S') {
+      parseScoreLine(line);
+      if (matchesIdentities(line)) {
+        hit.setIdentity(Double.parseDouble(matchedFirstNumber) / Double.parseDouble(matchedLastNumber));
+        emptyLineCount = 0;
+      }
+    }
+
+    if (emptyLineCount == 2) {
+      // everything after this is new domain, or additional occurrence of hit
+      isAdditionalHit = true;
+      parseAfterAlignmentBlock();
+    }
+  }
+
+  public String getBestAlignmentAsString() {
+    return bestAlignment == null ? "" : bestAlignment.toString();
+  }
+
+  /**
+   * This function collects all found hits and puts them into a list of BlastHit.
+   * 
+   * @return list containing all hits
+   */
+  public List<BlastHit> findHits() {
+    List<BlastHit> list = new ArrayList<BlastHit>(hits.size());
+    for (LinkedList<BlastHit> hitList : hits.values()) {
+      list.addAll(hitList);
+    }
+    return list;
+  }
+
+  private void parseHitOverview() {
+    hit = new BlastHit();
+    hit.setSequenceID(matchedId);
+    LinkedList<BlastHit> hitList = new LinkedList<BlastHit>();
+    hitList.add(hit);
+    hits.put(matchedId, hitList);
+  }
+
+  private void parseStartOfDetailData() {
+    isParsingDetailData = true;
+    isParsingAlignment = true;
+    currentAlignment = new Alignment();
+    hit = hits.get(matchedId).getFirst();
+    if (matchedBonds != null) {
+      for (int i = 0; i + 1 < matchedBonds.size(); i += 2) {
+        currentAlignment.addInternalBond(matchedBonds.get(i), matchedBonds.get(i + 1));
+      }
+    }
+  }
+
+  private void parseScoreLine(String line) {
+    int i = skipSpaces(line, 0);
+    if (!line.startsWith(SCORE, i)) {
+      return;
+    }
+    i = skipSpaces(line, i + SCORE.length());
+    if (i == line.length() || line.charAt(i) != '=') {
+      return;
+    }
+    int scoreStart = skipSpaces(line, i + 1);
+    int scoreEnd = scoreStart;
+    while (scoreEnd < line.length() && (isDigit(line.charAt(scoreEnd)) || line.charAt(scoreEnd) == '.')) {
+      scoreEnd++;
+    }
+    i = skipSpaces(line, scoreEnd);
+    if (!line.startsWith(BITS, i)) {
+      return;
+    }
+    int bitsEnd = i + BITS.length();
+
+    // the last "Expect =" wins, as the pattern of BlastParser matches greedily
+    for (int e = line.lastIndexOf(EXPECT); e >= bitsEnd; e = line.lastIndexOf(EXPECT, e - 1)) {
+      int j = skipSpaces(line, e + EXPECT.length());
+      if (j < line.length() && line.charAt(j) == '=') {
+        int eValueStart = skipSpaces(line, j + 1);
+        int eValueEnd = eValueStart;
+        while (eValueEnd < line.length() && isEValueChar(line.charAt(eValueEnd))) {
+          eValueEnd++;
+        }
+        addScore(Double.parseDouble(line.substring(scoreStart, scoreEnd)),
+            Double.parseDouble(line.substring(eValueStart, eValueEnd)));
+        return;
+      }
+    }
+  }
+
+  private void addScore(double score, double eValue) {
+    // adding a new BlastHit, when parsing the same domain, but different hit
+    if (!isParsingAlignment && isAdditionalHit) {
+      // alignment parsing just ended, but there is another one for the same hit
+      BlastHit blastHit = new BlastHit();
+      blastHit.setSequenceID(hit.getSequenceID());
+      blastHit.setLength(hit.getLength());
+
+      LinkedList<Integer> bonds = new LinkedList<Integer>(currentAlignment.getInternalBonds());
+      isParsingAlignment = true;
+      currentAlignment = new Alignment();
+      currentAlignment.addInternalBondsList(bonds);
+
+      hits.get(hit.getSequenceID()).add(blastHit);
+      hit = blastHit;
+    }
+    hit.setScore(score);
+    hit.setEValue(eValue);
+  }
+
+  private void parseQueryLine(String line) {
+    if (currentAlignment.getBegin() < 0) {
+      currentAlignment.setBegin(Long.parseLong(matchedFirstNumber));
+    }
+    currentAlignment.setEnd(Long.parseLong(matchedLastNumber));
+    currentAlignment.addQueryLine(line, matchedSequenceStart, matchedSequenceEnd);
+  }
+
+  private void parseTemplateLine(String line) {
+    if (currentAlignment.getTemplateBegin() < 0) {
+      currentAlignment.setTemplateBegin(Integer.parseInt(matchedFirstNumber));
+    }
+    currentAlignment.setTemplateEnd(Integer.parseInt(matchedLastNumber));
+    currentAlignment.addSubjectLine(line, matchedSequenceStart, matchedSequenceEnd);
+  }
+
+  /**
+   * This routine ends the current alignment.
+   */
+  private void parseAfterAlignmentBlock() {
+    String alignmentQuery = currentAlignment.getAlignmentQuery();
+    String alignmentSubject = currentAlignment.getAlignmentSubject();
+    hit.setInternalBonds(currentAlignment.getInternalBonds());
+    hit.setBegin(currentAlignment.getBegin());
+    hit.setEnd(currentAlignment.getEnd());
+    hit.setTemplateBegin(currentAlignment.getTemplateBegin());
+    hit.setTemplateEnd(currentAlignment.getTemplateEnd());
+    hit.setAlignmentLineSequence(alignmentQuery);
+    hit.setAlignmentLineTemplate(alignmentSubject);
+    hit.setOriginalBlastAlignment(currentAlignment.toString());
+    hit.setConservedCysteins(currentAlignment.getConservedCysteins());
+    // BlastParser compares with an E-value, which is never updated: the last alignment is the best one
+    if (hit.getEValue() < Double.MAX_VALUE) {
+      bestAlignment = currentAlignment;
+    }
+    hit.setUnknownMutations((ArrayList<UnknownMutation>) FindMutations.findUnknownMutations(alignmentQuery,
+        alignmentSubject, currentAlignment.getTemplateBegin()));
+
+    isParsingAlignment = false;
+  }
+
+  /**
+   * Matches lines of the hit overview: {@code <id> [DISULFID <bonds>] <score> <e-value>}. Without bonds, the id and the
+   * score are separated by at least two white spaces.
+   */
+  private boolean matchesHitOverview(String line) {
+    int n = line.length();
+    // the line ends with a number
+    int last = n;
+    while (last > 0 && isSpace(line.charAt(last - 1))) {
+      last--;
+    }
+    if (last == 0 || !isDigit(line.charAt(last - 1))) {
+      return false;
+    }
+
+    int[] tokens = new int[12];
+    int count = 0;
+    int i = skipSpaces(line, 0);
+    while (i < last) {
+      if (count == tokens.length) {
+        return false;
+      }
+      tokens[count++] = i;
+      i = skipNonSpaces(line, i);
+      tokens[count++] = i;
+      i = skipSpaces(line, i);
+    }
+    int tokenCount = count / 2;
+    if (tokenCount == 3) {
+      if (tokens[2] - tokens[1] < 2) {
+        return false;
+      }
+    } else if (tokenCount == 5) {
+      if (!regionEquals(line, tokens[2], tokens[3], DISULFID) || tokens[4] - tokens[3] != 1
+          || line.charAt(tokens[3]) != ' ' || !matchesBonds(line, tokens[4], tokens[5])) {
+        return false;
+      }
+    } else {
+      return false;
+    }
+    int scoreToken = 2 * tokenCount - 4;
+    if (scanNumber(line, tokens[scoreToken]) != tokens[scoreToken + 1]
+        || scanNumber(line, tokens[scoreToken + 2]) != tokens[scoreToken + 3]) {
+      return false;
+    }
+    matchedId = line.substring(tokens[0], tokens[1]);
+    return true;
+  }
+
+  /**
+   * Matches the first line of a hit: {@code ><id> [DISULFID <bonds>]}.
+   */
+  private boolean matchesStartOfDetailData(String line) {
+    if (line.length() == 0 || line.charAt(0) != '>') {
+      return false;
+    }
+    int idStart = skipSpaces(line, 1);
+    int firstEnd = skipNonSpaces(line, idStart);
+    if (firstEnd == idStart) {
+      return false;
+    }
+    int i = skipSpaces(line, firstEnd);
+    if (i == line.length()) {
+      matchedId = line.substring(idStart, firstEnd);
+      matchedBonds = null;
+      return true;
+    }
+
+    int bondsStart;
+    int idEnd;
+    if (line.startsWith(DISULFID + " ", i)) {
+      idEnd = firstEnd;
+      bondsStart = i + DISULFID.length() + 1;
+    } else if (firstEnd - idStart > DISULFID.length() && regionEquals(line, firstEnd - DISULFID.length(), firstEnd,
+        DISULFID) && line.charAt(firstEnd) == ' ') {
+      // the id is directly followed by the bonds
+      idEnd = firstEnd - DISULFID.length();
+      bondsStart = firstEnd + 1;
+    } else {
+      return false;
+    }
+    int bondsEnd = skipNonSpaces(line, bondsStart);
+    if (skipSpaces(line, bondsEnd) != line.length() || !matchesBonds(line, bondsStart, bondsEnd)) {
+      return false;
+    }
+    matchedId = line.substring(idStart, idEnd);
+    matchedBonds = parseBonds(line, bondsStart, bondsEnd);
+    return true;
+  }
+
+  private boolean matchesLength(String line) {
+    int start = LENGTH.length();
+    int end = skipDigits(line, start);
+    if (end == start) {
+      return false;
+    }
+    matchedFirstNumber = line.substring(start, end);
+    return true;
+  }
+
+  /**
+   * Matches {@code " Identities = <identical>/<length> (<percent>%)"}, exactly one white space is allowed around the
+   * equals sign.
+   */
+  private boolean matchesIdentities(String line) {
+    int i = 1 + IDENTITIES.length();
+    if (line.length() < i + 3 || !line.startsWith(IDENTITIES, 1) || !isSpace(line.charAt(0))
+        || !isSpace(line.charAt(i)) || line.charAt(i + 1) != '=' || !isSpace(line.charAt(i + 2))) {
+      return false;
+    }
+    int identicalStart = i + 3;
+    int identicalEnd = skipDigits(line, identicalStart);
+    if (identicalEnd == identicalStart || identicalEnd == line.length() || line.charAt(identicalEnd) != '/') {
+      return false;
+    }
+    int lengthEnd = skipDigits(line, identicalEnd + 1);
+    if (lengthEnd == identicalEnd + 1) {
+      return false;
+    }
+    int j = skipSpaces(line, lengthEnd);
+    if (j == lengthEnd || j == line.length() || line.charAt(j) != '(') {
+      return false;
+    }
+    int percentEnd = skipDigits(line, j + 1);
+    if (percentEnd == j + 1 || !line.startsWith("%)", percentEnd)) {
+      return false;
+    }
+    matchedFirstNumber = line.substring(identicalStart, identicalEnd);
+    matchedLastNumber = line.substring(identicalEnd + 1, lengthEnd);
+    return true;
+  }
+
+  /**
+   * Matches {@code "Query <begin> <sequence> <end>"}, the same for "Sbjct". The sequence consists of letters and
+   * gaps.
+   */
+  private boolean matchesAlignmentLine(String line, int prefixLength) {
+    int beginStart = skipSpaces(line, prefixLength);
+    if (beginStart == prefixLength) {
+      return false;
+    }
+    int beginEnd = skipDigits(line, beginStart);
+    if (beginEnd == beginStart) {
+      return false;
+    }
+    int sequenceStart = skipSpaces(line, beginEnd);
+    if (sequenceStart == beginEnd) {
+      return false;
+    }
+    int sequenceEnd = sequenceStart;
+    while (sequenceEnd < line.length() && isSequenceChar(line.charAt(sequenceEnd))) {
+      sequenceEnd++;
+    }
+    if (sequenceEnd == sequenceStart) {
+      return false;
+    }
+    int endStart = skipSpaces(line, sequenceEnd);
+    if (endStart == sequenceEnd) {
+      return false;
+    }
+    int endEnd = skipDigits(line, endStart);
+    if (endEnd == endStart) {
+      return false;
+    }
+    matchedFirstNumber = line.substring(beginStart, beginEnd);
+    matchedLastNumber = line.substring(endStart, endEnd);
+    matchedSequenceStart = sequenceStart;
+    matchedSequenceEnd = sequenceEnd;
+    return true;
+  }
+
+  /**
+   * Checks for a list of bonds like {@code 22-96,LC-3,1-H}: items of digits, a minus and digits or 'H' or "LC",
+   * optionally separated by commas.
+   */
+  static boolean matchesBonds(String s, int start, int end) {
+    // positions, at which a next item may start or the bonds may end
+    BitSet reachable = new BitSet(end - start + 1);
+    reachable.set(0);
+    for (int p = reachable.nextSetBit(0); p >= 0 && p < end - start; p = reachable.nextSetBit(p + 1)) {
+      int i = start + p;
+      int minus = skipDigits(s, i, end);
+      if (minus == i || minus == end || s.charAt(minus) != '-') {
+        continue;
+      }
+      int j = minus + 1;
+      while (j < end && (isDigit(s.charAt(j)) || s.charAt(j) == 'H')) {
+        j++;
+        setItemEnd(reachable, s, start, j, end);
+      }
+      if (minus + 3 <= end && s.startsWith("LC", minus + 1)) {
+        setItemEnd(reachable, s, start, minus + 3, end);
+      }
+    }
+    return end > start && reachable.get(end - start);
+  }
+
+  private static void setItemEnd(BitSet reachable, String s, int start, int itemEnd, int end) {
+    reachable.set(itemEnd - start);
+    if (itemEnd < end && s.charAt(itemEnd) == ',') {
+      reachable.set(itemEnd + 1 - start);
+    }
+  }
+
+  /**
+   * @return the positions of the bonds of the form digits-digits, others are left out
+   */
+  private static List<Integer> parseBonds(String s, int start, int end) {
+    List<Integer> bonds = new ArrayList<Integer>();
+    int i = start;
+    while (i < end) {
+      int itemEnd = s.indexOf(',', i);
+      if (itemEnd < 0 || itemEnd > end) {
+        itemEnd = end;
+      }
+      int minus = skipDigits(s, i, itemEnd);
+      if (minus > i && minus < itemEnd && s.charAt(minus) == '-' && skipDigits(s, minus + 1, itemEnd) == itemEnd
+          && itemEnd > minus + 1) {
+        bonds.add(Integer.valueOf(s.substring(i, minus)));
+        bonds.add(Integer.valueOf(s.substring(minus + 1, itemEnd)));
+      }
+      i = itemEnd + 1;
+    }
+    return bonds;
+  }
+
+  /**
+   * @return end of the number {@code [0-9]+(\.[0-9]+)?(e[-+]?[0-9]+)?} starting at i, or -1
+   */
+  static int scanNumber(String s, int i) {
+    int j = skipDigits(s, i);
+    if (j == i) {
+      return -1;
+    }
+    if (j < s.length() && s.charAt(j) == '.') {
+      int k = skipDigits(s, j + 1);
+      if (k > j + 1) {
+        j = k;
+      }
+    }
+    if (j < s.length() && s.charAt(j) == 'e') {
+      int k = j + 1;
+      if (k < s.length() && (s.charAt(k) == '-' || s.charAt(k) == '+')) {
+        k++;
+      }
+      int m = skipDigits(s, k);
+      if (m > k) {
+        j = m;
+      }
+    }
+    return j;
+  }
+
+  private static boolean regionEquals(String s, int start, int end, String expected) {
+    return end - start == expected.length() && s.startsWith(expected, start);
+  }
+
+  private static int skipSpaces(String s, int i) {
+    while (i < s.length() && isSpace(s.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static int skipNonSpaces(String s, int i) {
+    while (i < s.length() && !isSpace(s.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static int skipDigits(String s, int i) {
+    return skipDigits(s, i, s.length());
+  }
+
+  private static int skipDigits(String s, int i, int end) {
+    while (i < end && isDigit(s.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /** white space as matched by \s */
+  private static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isSequenceChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-';
+  }
+
+  private static boolean isEValueChar(char c) {
+    return isDigit(c) || c == '.' || c == 'e' || c == '-' || c == '+';
+  }
+
+  /**
+   * Encapsulates an alignment that can be built line by line.
+   */
+  private static class Alignment {
+
+    private long begin = -1;
+
+    private long end = -1;
+
+    private int templateBegin = -1;
+
+    private int templateEnd = -1;
+
+    private LinkedList<Integer> internalBonds = new LinkedList<Integer>();
+
+    /** first line, with gaps */
+    private final StringBuilder alignmentQuery = new StringBuilder(ALIGNMENT_CAPACITY);
+
+    /** second line, with gaps */
+    private final StringBuilder alignmentSubject = new StringBuilder(ALIGNMENT_CAPACITY);
+
+    /** alignment columns with a cystein in the query, starting with 1 */
+    private final BitSet cysteinsInQuery = new BitSet(ALIGNMENT_CAPACITY);
+
+    private final List<Integer> cysteinsInSubject = new ArrayList<Integer>();
+
+    public void setBegin(long begin) {
+      this.begin = begin;
+    }
+
+    public long getBegin() {
+      return begin;
+    }
+
+    public void setEnd(long end) {
+      this.end = end;
+    }
+
+    public long getEnd() {
+      return end;
+    }
+
+    public void setTemplateBegin(int templateBegin) {
+      this.templateBegin = templateBegin;
+    }
+
+    public int getTemplateBegin() {
+      return templateBegin;
+    }
+
+    public void setTemplateEnd(int templateEnd) {
+      this.templateEnd = templateEnd;
+    }
+
+    public int getTemplateEnd() {
+      return templateEnd;
+    }
+
+    public String getAlignmentQuery() {
+      return alignmentQuery.toString();
+    }
+
+    public String getAlignmentSubject() {
+      return alignmentSubject.toString();
+    }
+
+    public List<Integer> getInternalBonds() {
+      return internalBonds;
+    }
+
+    public void addInternalBond(int leftIndex, int rightIndex) {
+      internalBonds.add(leftIndex);
+      internalBonds.add(rightIndex);
+    }
+
+    public void addInternalBondsList(LinkedList<Integer> bonds) {
+      internalBonds = bonds;
+    }
+
+    public void addQueryLine(String line, int start, int end) {
+      for (int i = start; i < end; i++) {
+        if (line.charAt(i) == 'C') {
+          cysteinsInQuery.set(alignmentQuery.length() + i - start + 1);
+        }
+      }
+      alignmentQuery.append(line, start, end);
+    }
+
+    public void addSubjectLine(String line, int start, int end) {
+      for (int i = start; i < end; i++) {
+        if (line.charAt(i) == 'C') {
+          cysteinsInSubject.add(alignmentSubject.length() + i - start + 1);
+        }
+      }
+      alignmentSubject.append(line, start, end);
+    }
+
+    /**
+     * Cysteins, which are contained in both subject and query. The positions in the query are given with the gaps of
+     * the query removed. Rows of cysteins of the subject, which are not conserved, are left empty.
+     */
+    public Integer[][] getConservedCysteins() {
+      Integer[][] conservedCysteins = new Integer[cysteinsInSubject.size()][2];
+      for (int counter = 0; counter < cysteinsInSubject.size(); counter++) {
+        int cysPosInSubject = cysteinsInSubject.get(counter);
+        if (cysteinsInQuery.get(cysPosInSubject)) {
+          int gapCountBeforeCys = countGaps(alignmentQuery, cysPosInSubject - 1);
+          conservedCysteins[counter][BlastParser.INDEX_QUERY] = cysPosInSubject - gapCountBeforeCys + (int) begin - 1;
+          conservedCysteins[counter][BlastParser.INDEX_SUBJECT] = cysPosInSubject;
+        }
+      }
+      return conservedCysteins;
+    }
+
+    @Override
+    public String toString() {
+      String lineSep = System.getProperty("line.separator");
+      return "Alignment: " + lineSep + String.format("%03d", templateBegin) + " " + alignmentSubject + " "
+          + String.format("%03d", templateEnd) + lineSep + String.format("%03d", begin) + " " + alignmentQuery + " "
+          + String.format("%03d", end);
+    }
+  }
+
+  /**
+   * Counts the gaps before the end like {@code alignment.substring(0, end).split("-").length - 1} does in
+   * {@link BlastParser}: trailing gaps are not counted, and only gaps count as -1.
+   */
+  static int countGaps(CharSequence alignment, int end) {
+    int last = end;
+    while (last > 0 && alignment.charAt(last - 1) == '-') {
+      last--;
+    }
+    if (end > 0 && last == 0) {
+      return -1;
+    }
+    int gaps = 0;
+    for (int i = 0; i < last; i++) {
+      if (alignment.charAt(i) == '-') {
+        gaps++;
+      }
+    }
+    return gaps;
+  }
+
+}
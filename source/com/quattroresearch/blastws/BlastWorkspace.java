@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.blastws;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code BlastWorkspace} is the private directory of one blast job. Query, output and error files of the job are
+ * created in it, so concurrent jobs never share or delete each other's files. {@link #close()} deletes the directory
+ * with all its files, it should be called in a finally block.
+ *
+ * @version $Id$
+ */
+public class BlastWorkspace implements Closeable {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(BlastWorkspace.class);
+
+  private static final String DIRECTORY_PREFIX = "blastjob";
+
+  private static final AtomicLong JOB_COUNTER = new AtomicLong();
+
+  private final File directory;
+
+  private BlastWorkspace(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Creates a new workspace in the working directory of the {@link LocalConfig}.
+   *
+   * @return the workspace
+   * @throws IOException if the directory could not be created
+   */
+  public static BlastWorkspace create() throws IOException {
+    return create(new File(LocalConfig.getInstance().getWorkingDirectory().toString()));
+  }
+
+  /**
+   * Creates a new workspace in the given parent directory, which is created if necessary.
+   *
+   * @param parent parent directory
+   * @return the workspace
+   * @throws IOException if the directory could not be created
+   */
+  public static BlastWorkspace create(File parent) throws IOException {
+    if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+      throw new IOException("Could not create blast working directory " + parent);
+    }
+    for (int attempt = 0; attempt < 100; attempt++) {
+      File directory = new File(parent, DIRECTORY_PREFIX + System.currentTimeMillis() + "-"
+          + JOB_COUNTER.incrementAndGet());
+      if (directory.mkdir()) {
+        LOG.debug("Created blast workspace {}", directory);
+        return new BlastWorkspace(directory);
+      }
+    }
+    throw new IOException("Could not create blast workspace in " + parent);
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @param name file name
+   * @return the file with the given name in the workspace, it is not created
+   */
+  public File getFile(String name) {
+    return new File(directory, name);
+  }
+
+  /**
+   * Deletes the workspace with all its files.
+   */
+  @Override
+  public void close() {
+    FileUtils.deleteQuietly(directory);
+  }
+
+}
@@ -0,0 +1,498 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.blastws;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * {@code SmithWatermanAligner} computes local protein alignments with affine gap costs (Gotoh) and BLOSUM62 scores.
+ * All scores are kept in primitive arrays: the subject is converted once into a score profile (one row of scores per
+ * residue code), the dynamic programming rows and the traceback matrix are reused per thread. The aligner is thread
+ * safe.
+ *
+ * @version $Id$
+ */
+public class SmithWatermanAligner {
+
+  /** Blast default gap open cost for BLOSUM62 */
+  public static final int DEFAULT_GAP_OPEN = 11;
+
+  /** Blast default gap extension cost for BLOSUM62 */
+  public static final int DEFAULT_GAP_EXTEND = 1;
+
+  /** residue order of {@link #BLOSUM62} */
+  private static final String ALPHABET = "ARNDCQEGHILKMFPSTWYVBZX*";
+
+  private static final int ALPHABET_SIZE = ALPHABET.length();
+
+  /** code of 'X', used for unknown residues */
+  private static final byte UNKNOWN = (byte) ALPHABET.indexOf('X');
+
+  /** code of query residues that are already part of an alignment */
+  private static final byte MASKED = (byte) ALPHABET_SIZE;
+
+  /** score of masked residues, prevents alignments through them */
+  private static final int MASKED_SCORE = -1000;
+
+  /** number of rows of a subject profile (alphabet plus masked code) */
+  private static final int PROFILE_ROWS = ALPHABET_SIZE + 1;
+
+  private static final int NEGATIVE_INFINITY = Integer.MIN_VALUE / 2;
+
+  private static final byte ORIGIN_ZERO = 0;
+
+  private static final byte ORIGIN_DIAGONAL = 1;
+
+  private static final byte ORIGIN_GAP_IN_QUERY = 2;
+
+  private static final byte ORIGIN_GAP_IN_SUBJECT = 3;
+
+  private static final byte ORIGIN_MASK = 3;
+
+  private static final byte EXTENDS_GAP_IN_QUERY = 4;
+
+  private static final byte EXTENDS_GAP_IN_SUBJECT = 8;
+
+  /** BLOSUM62 in {@link #ALPHABET} order, row major */
+  private static final int[] BLOSUM62 = {
+      4, -1, -2, -2, 0, -1, -1, 0, -2, -1, -1, -1, -1, -2, -1, 1, 0, -3, -2, 0, -2, -1, 0, -4,
+      -1, 5, 0, -2, -3, 1, 0, -2, 0, -3, -2, 2, -1, -3, -2, -1, -1, -3, -2, -3, -1, 0, -1, -4,
+      -2, 0, 6, 1, -3, 0, 0, 0, 1, -3, -3, 0, -2, -3, -2, 1, 0, -4, -2, -3, 3, 0, -1, -4,
+      -2, -2, 1, 6, -3, 0, 2, -1, -1, -3, -4, -1, -3, -3, -1, 0, -1, -4, -3, -3, 4, 1, -1, -4,
+      0, -3, -3, -3, 9, -3, -4, -3, -3, -1, -1, -3, -1, -2, -3, -1, -1, -2, -2, -1, -3, -3, -2, -4,
+      -1, 1, 0, 0, -3, 5, 2, -2, 0, -3, -2, 1, 0, -3, -1, 0, -1, -2, -1, -2, 0, 3, -1, -4,
+      -1, 0, 0, 2, -4, 2, 5, -2, 0, -3, -3, 1, -2, -3, -1, 0, -1, -3, -2, -2, 1, 4, -1, -4,
+      0, -2, 0, -1, -3, -2, -2, 6, -2, -4, -4, -2, -3, -3, -2, 0, -2, -2, -3, -3, -1, -2, -1, -4,
+      -2, 0, 1, -1, -3, 0, 0, -2, 8, -3, -3, -1, -2, -1, -2, -1, -2, -2, 2, -3, 0, 0, -1, -4,
+      -1, -3, -3, -3, -1, -3, -3, -4, -3, 4, 2, -3, 1, 0, -3, -2, -1, -3, -1, 3, -3, -3, -1, -4,
+      -1, -2, -3, -4, -1, -2, -3, -4, -3, 2, 4, -2, 2, 0, -3, -2, -1, -2, -1, 1, -4, -3, -1, -4,
+      -1, 2, 0, -1, -3, 1, 1, -2, -1, -3, -2, 5, -1, -3, -1, 0, -1, -3, -2, -2, 0, 1, -1, -4,
+      -1, -1, -2, -3, -1, 0, -2, -3, -2, 1, 2, -1, 5, 0, -2, -1, -1, -1, -1, 1, -3, -1, -1, -4,
+      -2, -3, -3, -3, -2, -3, -3, -3, -1, 0, 0, -3, 0, 6, -4, -2, -2, 1, 3, -1, -3, -3, -1, -4,
+      -1, -2, -2, -1, -3, -1, -1, -2, -2, -3, -3, -1, -2, -4, 7, -1, -1, -4, -3, -2, -2, -1, -2, -4,
+      1, -1, 1, 0, -1, 0, 0, 0, -1, -2, -2, 0, -1, -2, -1, 4, 1, -3, -2, -2, 0, 0, 0, -4,
+      0, -1, 0, -1, -1, -1, -1, -2, -2, -1, -1, -1, -1, -2, -1, 1, 5, -2, -2, 0, -1, -1, 0, -4,
+      -3, -3, -4, -4, -2, -2, -3, -2, -2, -3, -2, -3, -1, 1, -4, -3, -2, 11, 2, -3, -4, -3, -2, -4,
+      -2, -2, -2, -3, -2, -1, -2, -3, 2, -1, -1, -2, -1, 3, -3, -2, -2, 2, 7, -1, -3, -2, -1, -4,
+      0, -3, -3, -3, -1, -2, -2, -3, -3, 3, 1, -2, 1, -1, -2, -2, 0, -3, -1, 4, -3, -2, -1, -4,
+      -2, -1, 3, 4, -3, 0, 1, -1, 0, -3, -4, 0, -3, -3, -2, 0, -1, -4, -3, -3, 4, 1, -1, -4,
+      -1, 0, 0, 1, -3, 3, 4, -2, 0, -3, -3, 1, -1, -3, -1, 0, -1, -3, -2, -2, 1, 4, -1, -4,
+      0, -1, -1, -1, -2, -1, -1, -1, -1, -1, -1, -1, -1, -1, -2, 0, 0, -2, -1, -1, -1, -1, -1, -4,
+      -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, -4, 1
+  };
+
+  /** residue character -> code */
+  private static final byte[] CODES = new byte[128];
+
+  static {
+    Arrays.fill(CODES, UNKNOWN);
+    for (int i = 0; i < ALPHABET_SIZE; i++) {
+      CODES[ALPHABET.charAt(i)] = (byte) i;
+      CODES[Character.toLowerCase(ALPHABET.charAt(i))] = (byte) i;
+    }
+  }
+
+  /** dynamic programming buffers, reused per thread */
+  private static final ThreadLocal<Workspace> WORKSPACE = new ThreadLocal<Workspace>() {
+    @Override
+    protected Workspace initialValue() {
+      return new Workspace();
+    }
+  };
+
+  private final int gapOpen;
+
+  private final int gapExtend;
+
+  /**
+   * Creates an aligner with the blast default gap costs.
+   */
+  public SmithWatermanAligner() {
+    this(DEFAULT_GAP_OPEN, DEFAULT_GAP_EXTEND);
+  }
+
+  /**
+   * Creates an aligner with the given gap costs. A gap of length k costs {@code gapOpen + k * gapExtend}.
+   *
+   * @param gapOpen gap open cost
+   * @param gapExtend gap extension cost
+   */
+  public SmithWatermanAligner(int gapOpen, int gapExtend) {
+    this.gapOpen = gapOpen;
+    this.gapExtend = gapExtend;
+  }
+
+  /**
+   * Returns the BLOSUM62 score of two residues.
+   *
+   * @param first residue
+   * @param second residue
+   * @return score
+   */
+  public static int getBlosum62Score(char first, char second) {
+    return BLOSUM62[toCode(first) * ALPHABET_SIZE + toCode(second)];
+  }
+
+  /**
+   * Encodes a sequence for alignment.
+   *
+   * @param sequence protein sequence
+   * @return encoded sequence
+   */
+  public static EncodedSequence encode(String sequence) {
+    byte[] codes = new byte[sequence.length()];
+    for (int i = 0; i < codes.length; i++) {
+      codes[i] = toCode(sequence.charAt(i));
+    }
+    return new EncodedSequence(sequence, codes);
+  }
+
+  private static byte toCode(char residue) {
+    return residue < CODES.length ? CODES[residue] : UNKNOWN;
+  }
+
+  /**
+   * Finds the best local alignments of query and subject. After each alignment the aligned query residues are
+   * excluded, so a subject occurring several times in the query is found several times.
+   *
+   * @param query the query
+   * @param subject the subject
+   * @param minScore minimum raw score of an alignment
+   * @param maxAlignments maximum number of alignments
+   * @return alignments, ordered by descending score
+   */
+  public List<LocalAlignment> align(EncodedSequence query, EncodedSequence subject, int minScore, int maxAlignments) {
+    List<LocalAlignment> alignments = new ArrayList<LocalAlignment>();
+    int m = query.codes.length;
+    int n = subject.codes.length;
+    if (m == 0 || n == 0) {
+      return alignments;
+    }
+
+    Workspace ws = WORKSPACE.get();
+    ws.ensureCapacity(m, n);
+    System.arraycopy(query.codes, 0, ws.queryCodes, 0, m);
+    int[] profile = subject.getProfile();
+
+    while (alignments.size() < maxAlignments) {
+      int best = fill(ws, profile, m, n);
+      if (best < minScore || best <= 0) {
+        break;
+      }
+      LocalAlignment alignment = traceback(ws, query, subject, best);
+      alignments.add(alignment);
+      Arrays.fill(ws.queryCodes, alignment.queryBegin - 1, alignment.queryEnd, MASKED);
+    }
+    return alignments;
+  }
+
+  /**
+   * Fills the traceback matrix and returns the best score. The position of the best score is stored in the
+   * workspace.
+   */
+  private int fill(Workspace ws, int[] profile, int m, int n) {
+    int open = gapOpen + gapExtend;
+    int extend = gapExtend;
+    int width = n + 1;
+    int[] hPrev = ws.hPrev;
+    int[] hCur = ws.hCur;
+    int[] f = ws.f;
+    byte[] trace = ws.trace;
+    byte[] queryCodes = ws.queryCodes;
+
+    Arrays.fill(hPrev, 0, width, 0);
+    Arrays.fill(f, 0, width, NEGATIVE_INFINITY);
+    Arrays.fill(trace, 0, width, ORIGIN_ZERO);
+
+    int best = 0;
+    int bestI = 0;
+    int bestJ = 0;
+    for (int i = 1; i <= m; i++) {
+      int profileOffset = queryCodes[i - 1] * n - 1;
+      int rowOffset = i * width;
+      int e = NEGATIVE_INFINITY;
+      hCur[0] = 0;
+      trace[rowOffset] = ORIGIN_ZERO;
+      for (int j = 1; j <= n; j++) {
+        byte t;
+        int eOpen = hCur[j - 1] - open;
+        int eExtend = e - extend;
+        if (eExtend > eOpen) {
+          e = eExtend;
+          t = EXTENDS_GAP_IN_QUERY;
+        } else {
+          e = eOpen;
+          t = 0;
+        }
+        int fOpen = hPrev[j] - open;
+        int fExtend = f[j] - extend;
+        int fj;
+        if (fExtend > fOpen) {
+          fj = fExtend;
+          t |= EXTENDS_GAP_IN_SUBJECT;
+        } else {
+          fj = fOpen;
+        }
+        f[j] = fj;
+
+        int h = hPrev[j - 1] + profile[profileOffset + j];
+        byte origin = ORIGIN_DIAGONAL;
+        if (h <= 0) {
+          h = 0;
+          origin = ORIGIN_ZERO;
+        }
+        if (e > h) {
+          h = e;
+          origin = ORIGIN_GAP_IN_QUERY;
+        }
+        if (fj > h) {
+          h = fj;
+          origin = ORIGIN_GAP_IN_SUBJECT;
+        }
+        hCur[j] = h;
+        trace[rowOffset + j] = (byte) (t | origin);
+        if (h > best) {
+          best = h;
+          bestI = i;
+          bestJ = j;
+        }
+      }
+      int[] swap = hPrev;
+      hPrev = hCur;
+      hCur = swap;
+    }
+    ws.hPrev = hPrev;
+    ws.hCur = hCur;
+    ws.bestI = bestI;
+    ws.bestJ = bestJ;
+    return best;
+  }
+
+  private LocalAlignment traceback(Workspace ws, EncodedSequence query, EncodedSequence subject, int score) {
+    int width = subject.codes.length + 1;
+    byte[] trace = ws.trace;
+    StringBuilder alignedQuery = new StringBuilder(ws.bestI + ws.bestJ);
+    StringBuilder alignedSubject = new StringBuilder(ws.bestI + ws.bestJ);
+    int identities = 0;
+
+    int i = ws.bestI;
+    int j = ws.bestJ;
+    byte state = ORIGIN_DIAGONAL;
+    while (i > 0 && j > 0) {
+      byte t = trace[i * width + j];
+      if (state == ORIGIN_DIAGONAL) {
+        byte origin = (byte) (t & ORIGIN_MASK);
+        if (origin == ORIGIN_ZERO) {
+          break;
+        }
+        if (origin != ORIGIN_DIAGONAL) {
+          state = origin;
+          continue;
+        }
+        char q = Character.toUpperCase(query.sequence.charAt(i - 1));
+        char s = Character.toUpperCase(subject.sequence.charAt(j - 1));
+        if (q == s) {
+          identities++;
+        }
+        alignedQuery.append(q);
+        alignedSubject.append(s);
+        i--;
+        j--;
+      } else if (state == ORIGIN_GAP_IN_QUERY) {
+        alignedQuery.append('-');
+        alignedSubject.append(Character.toUpperCase(subject.sequence.charAt(j - 1)));
+        j--;
+        if ((t & EXTENDS_GAP_IN_QUERY) == 0) {
+          state = ORIGIN_DIAGONAL;
+        }
+      } else {
+        alignedQuery.append(Character.toUpperCase(query.sequence.charAt(i - 1)));
+        alignedSubject.append('-');
+        i--;
+        if ((t & EXTENDS_GAP_IN_SUBJECT) == 0) {
+          state = ORIGIN_DIAGONAL;
+        }
+      }
+    }
+
+    return new LocalAlignment(score, i + 1, ws.bestI, j + 1, ws.bestJ, alignedQuery.reverse().toString(),
+        alignedSubject.reverse().toString(), identities);
+  }
+
+  /**
+   * A sequence encoded for alignment. The score profile is built on first use as subject.
+   */
+  public static final class EncodedSequence {
+
+    private final String sequence;
+
+    private final byte[] codes;
+
+    private volatile int[] profile;
+
+    private EncodedSequence(String sequence, byte[] codes) {
+      this.sequence = sequence;
+      this.codes = codes;
+    }
+
+    public String getSequence() {
+      return sequence;
+    }
+
+    public int length() {
+      return codes.length;
+    }
+
+    /**
+     * Returns the score profile: {@code profile[code * length + j]} is the score of residue code against position j.
+     */
+    private int[] getProfile() {
+      int[] result = profile;
+      if (result == null) {
+        int n = codes.length;
+        result = new int[PROFILE_ROWS * n];
+        for (int code = 0; code < ALPHABET_SIZE; code++) {
+          int rowOffset = code * n;
+          int matrixOffset = code * ALPHABET_SIZE;
+          for (int j = 0; j < n; j++) {
+            result[rowOffset + j] = BLOSUM62[matrixOffset + codes[j]];
+          }
+        }
+        Arrays.fill(result, MASKED * n, PROFILE_ROWS * n, MASKED_SCORE);
+        profile = result;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * A local alignment. Positions are 1-based and inclusive.
+   */
+  public static final class LocalAlignment {
+
+    private final int score;
+
+    private final int queryBegin;
+
+    private final int queryEnd;
+
+    private final int subjectBegin;
+
+    private final int subjectEnd;
+
+    private final String alignedQuery;
+
+    private final String alignedSubject;
+
+    private final int identities;
+
+    private LocalAlignment(int score, int queryBegin, int queryEnd, int subjectBegin, int subjectEnd,
+        String alignedQuery, String alignedSubject, int identities) {
+      this.score = score;
+      this.queryBegin = queryBegin;
+      this.queryEnd = queryEnd;
+      this.subjectBegin = subjectBegin;
+      this.subjectEnd = subjectEnd;
+      this.alignedQuery = alignedQuery;
+      this.alignedSubject = alignedSubject;
+      this.identities = identities;
+    }
+
+    public int getScore() {
+      return score;
+    }
+
+    public int getQueryBegin() {
+      return queryBegin;
+    }
+
+    public int getQueryEnd() {
+      return queryEnd;
+    }
+
+    public int getSubjectBegin() {
+      return subjectBegin;
+    }
+
+    public int getSubjectEnd() {
+      return subjectEnd;
+    }
+
+    /**
+     * @return aligned query, including gaps
+     */
+    public String getAlignedQuery() {
+      return alignedQuery;
+    }
+
+    /**
+     * @return aligned subject, including gaps
+     */
+    public String getAlignedSubject() {
+      return alignedSubject;
+    }
+
+    public int getIdentities() {
+      return identities;
+    }
+
+    /**
+     * @return alignment length, including gaps
+     */
+    public int getLength() {
+      return alignedQuery.length();
+    }
+  }
+
+  /**
+   * Per thread buffers of the dynamic programming.
+   */
+  private static final class Workspace {
+
+    private int[] hPrev = new int[0];
+
+    private int[] hCur = new int[0];
+
+    private int[] f = new int[0];
+
+    private byte[] trace = new byte[0];
+
+    private byte[] queryCodes = new byte[0];
+
+    private int bestI;
+
+    private int bestJ;
+
+    private void ensureCapacity(int m, int n) {
+      if (hPrev.length < n + 1) {
+        hPrev = new int[n + 1];
+        hCur = new int[n + 1];
+        f = new int[n + 1];
+      }
+      if (trace.length < (m + 1) * (n + 1)) {
+        trace = new byte[(m + 1) * (n + 1)];
+      }
+      if (queryCodes.length < m) {
+        queryCodes = new byte[m];
+      }
+    }
+  }
+
+}
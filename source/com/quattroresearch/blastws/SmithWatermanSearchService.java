@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright C 2016, quattro research GmbH, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package com.quattroresearch.blastws;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.roche.antibody.model.antibody.DomainLibraryValues;
+import org.roche.antibody.model.antibody.DomainLibraryValues.DomainUsage;
+import org.roche.antibody.services.DomainDetectionSettings;
+import org.roche.antibody.services.DomainDetectionSettingsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.quattroresearch.antibody.DomainLibrary;
+import com.quattroresearch.antibody.DomainLibraryIndex;
+import com.quattroresearch.antibody.FindMutations;
+import com.quattroresearch.antibody.UnknownMutation;
+import com.quattroresearch.blastws.SmithWatermanAligner.EncodedSequence;
+import com.quattroresearch.blastws.SmithWatermanAligner.LocalAlignment;
+
+/**
+ *
+ * {@code SmithWatermanSearchService} searches the domain library in-process with the {@link SmithWatermanAligner}
+ * instead of running NCBI Blast. No database needs to be indexed: the "databases" are the CORE and GENERAL (incl.
+ * ANTIGEN) parts of the cached {@link DomainLibrary}. The results are {@link BlastHit}s filled like the ones parsed by
+ * {@link BlastParser}, E-values are estimated with the Karlin-Altschul statistics Blast uses for BLOSUM62 with gap costs
+ * 11/1.
+ *
+ * @version $Id$
+ */
+public class SmithWatermanSearchService extends BlastSearchService {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(SmithWatermanSearchService.class);
+
+  /** user preference that selects this search service for domain detection */
+  public static final String PREF_USE_INTERNAL_ALIGNER = "DD_USE_INTERNAL_ALIGNER";
+
+  /** default of {@link #PREF_USE_INTERNAL_ALIGNER} */
+  public static final boolean DEFAULT_USE_INTERNAL_ALIGNER = false;
+
+  /** Karlin-Altschul lambda of BLOSUM62, gap costs 11/1 */
+  private static final double LAMBDA = 0.267;
+
+  /** Karlin-Altschul K of BLOSUM62, gap costs 11/1 */
+  private static final double K = 0.041;
+
+  /** Blast default E-value cutoff */
+  private static final double DEFAULT_EVALUE = 10.0;
+
+  /** maximum number of alignments of one library domain within a query */
+  private static final int MAX_ALIGNMENTS_PER_DOMAIN = 4;
+
+  /** internal bonds in the cysteine pattern of a library domain, e.g. "1-3" */
+  private static final Pattern INTERNAL_BOND = Pattern.compile("([0-9]+)-([0-9]+)");
+
+  private final SmithWatermanAligner aligner = new SmithWatermanAligner();
+
+  /** encoded library domains per database suffix */
+  private final Map<String, List<LibraryDomain>> databases = new ConcurrentHashMap<String, List<LibraryDomain>>();
+
+  /**
+   * Aligns the query against all library domains of the database given by its suffix. Only protein searches against
+   * the domain library are handled here, anything else is delegated to NCBI Blast.
+   */
+  @Override
+  public BlastHit[] searchSequence(BlastSearchParams params, String dbSuffix) throws Exception {
+    List<LibraryDomain> database = getDatabase(dbSuffix);
+    if (database == null || "DNA".equals(params.getSequenceType())) {
+      return super.searchSequence(params, dbSuffix);
+    }
+
+    long startTime = System.currentTimeMillis();
+    DomainDetectionSettings settings = DomainDetectionSettingsService.getInstance().getCurrentSettings();
+    double maxEValue = settings.getBlastParamEValue() > -1.0 ? settings.getBlastParamEValue() : DEFAULT_EVALUE;
+    int maxDomains = settings.getBlastParamNumAlignments();
+
+    EncodedSequence query = SmithWatermanAligner.encode(params.getQuery());
+    long databaseLength = 0;
+    for (LibraryDomain domain : database) {
+      databaseLength += domain.sequence.length();
+    }
+    double searchSpace = (double) query.length() * databaseLength;
+    int minScore = (int) Math.ceil(Math.log(K * searchSpace / maxEValue) / LAMBDA);
+
+    List<List<BlastHit>> hitsPerDomain = new ArrayList<List<BlastHit>>();
+    for (LibraryDomain domain : database) {
+      List<BlastHit> hits = new ArrayList<BlastHit>();
+      for (LocalAlignment alignment : aligner.align(query, domain.sequence, minScore, MAX_ALIGNMENTS_PER_DOMAIN)) {
+        hits.add(createHit(domain, alignment, searchSpace));
+      }
+      if (!hits.isEmpty()) {
+        hitsPerDomain.add(hits);
+      }
+    }
+
+    // like Blast: domains ordered by their best hit, limited to the number of alignments
+    Collections.sort(hitsPerDomain, new Comparator<List<BlastHit>>() {
+      @Override
+      public int compare(List<BlastHit> o1, List<BlastHit> o2) {
+        return Double.compare(o1.get(0).getEValue(), o2.get(0).getEValue());
+      }
+    });
+    List<BlastHit> result = new ArrayList<BlastHit>();
+    for (int i = 0; i < hitsPerDomain.size() && (maxDomains <= 0 || i < maxDomains); i++) {
+      result.addAll(hitsPerDomain.get(i));
+    }
+
+    LOG.info("Found " + result.size() + " hits with internal aligner in "
+        + (System.currentTimeMillis() - startTime) + "ms.");
+    return result.toArray(new BlastHit[result.size()]);
+  }
+
+  /**
+   * Returns the library domains of a database suffix ("CORE" or "GENERAL"), or null for any other database.
+   */
+  private List<LibraryDomain> getDatabase(String dbSuffix) {
+    if (dbSuffix == null) {
+      return null;
+    }
+    String key = dbSuffix.toUpperCase().replace("_", "");
+    List<LibraryDomain> database = databases.get(key);
+    if (database == null) {
+      if (key.equals(DomainUsage.CORE.toString())) {
+        database = loadDatabase(DomainUsage.CORE);
+      } else if (key.equals(DomainUsage.GENERAL.toString())) {
+        database = loadDatabase(DomainUsage.GENERAL, DomainUsage.ANTIGEN);
+      } else {
+        return null;
+      }
+      databases.put(key, database);
+    }
+    return database;
+  }
+
+  private List<LibraryDomain> loadDatabase(DomainUsage... domainUsages) {
+    List<LibraryDomain> database = new ArrayList<LibraryDomain>();
+    for (DomainLibraryValues libValues : DomainLibraryIndex.getInstance().getByUsage(domainUsages)) {
+      if (libValues.getSequence() != null) {
+        database.add(new LibraryDomain(libValues));
+      }
+    }
+    return database;
+  }
+
+  private BlastHit createHit(LibraryDomain domain, LocalAlignment alignment, double searchSpace) {
+    BlastHit hit = new BlastHit();
+    hit.setSequenceID(domain.shortName);
+    hit.setLength(domain.sequence.length());
+    hit.setScore((LAMBDA * alignment.getScore() - Math.log(K)) / Math.log(2));
+    hit.setEValue(K * searchSpace * Math.exp(-LAMBDA * alignment.getScore()));
+    hit.setIdentity((double) alignment.getIdentities() / alignment.getLength());
+    hit.setBegin((long) alignment.getQueryBegin());
+    hit.setEnd((long) alignment.getQueryEnd());
+    hit.setTemplateBegin(alignment.getSubjectBegin());
+    hit.setTemplateEnd(alignment.getSubjectEnd());
+    hit.setAlignmentLineSequence(alignment.getAlignedQuery());
+    hit.setAlignmentLineTemplate(alignment.getAlignedSubject());
+    hit.setInternalBonds(new LinkedList<Integer>(domain.internalBonds));
+    hit.setConservedCysteins(findConservedCysteins(alignment));
+    hit.setOriginalBlastAlignment(toAlignmentString(alignment));
+    hit.setUnknownMutations(new ArrayList<UnknownMutation>(FindMutations.findUnknownMutations(
+        alignment.getAlignedQuery(), alignment.getAlignedSubject(), alignment.getSubjectBegin())));
+    return hit;
+  }
+
+  /**
+   * Cysteins of the subject, which are aligned to a cystein in the query. Index {@link BlastParser#INDEX_QUERY} holds
+   * the position in the query, {@link BlastParser#INDEX_SUBJECT} the alignment column (as done by {@link BlastParser}).
+   */
+  private Integer[][] findConservedCysteins(LocalAlignment alignment) {
+    String alignedQuery = alignment.getAlignedQuery();
+    String alignedSubject = alignment.getAlignedSubject();
+    int subjectCysteins = 0;
+    for (int i = 0; i < alignedSubject.length(); i++) {
+      if (alignedSubject.charAt(i) == 'C') {
+        subjectCysteins++;
+      }
+    }
+
+    Integer[][] conservedCysteins = new Integer[subjectCysteins][2];
+    int counter = 0;
+    int queryGaps = 0;
+    for (int i = 0; i < alignedSubject.length(); i++) {
+      char queryResidue = alignedQuery.charAt(i);
+      if (alignedSubject.charAt(i) == 'C') {
+        if (queryResidue == 'C') {
+          conservedCysteins[counter][BlastParser.INDEX_QUERY] = i + 1 - queryGaps + alignment.getQueryBegin() - 1;
+          conservedCysteins[counter][BlastParser.INDEX_SUBJECT] = i + 1;
+        }
+        counter++;
+      }
+      if (queryResidue == '-') {
+        queryGaps++;
+      }
+    }
+    return conservedCysteins;
+  }
+
+  private String toAlignmentString(LocalAlignment alignment) {
+    String lineSep = System.getProperty("line.separator");
+    return "Alignment: " + lineSep + String.format("%03d", alignment.getSubjectBegin()) + " "
+        + alignment.getAlignedSubject() + " " + String.format("%03d", alignment.getSubjectEnd()) + lineSep
+        + String.format("%03d", alignment.getQueryBegin()) + " " + alignment.getAlignedQuery() + " "
+        + String.format("%03d", alignment.getQueryEnd());
+  }
+
+  /**
+   * A library domain prepared for alignment.
+   */
+  private static final class LibraryDomain {
+
+    private final String shortName;
+
+    private final EncodedSequence sequence;
+
+    private final List<Integer> internalBonds = new ArrayList<Integer>();
+
+    private LibraryDomain(DomainLibraryValues libValues) {
+      this.shortName = libValues.getShortName();
+      this.sequence = SmithWatermanAligner.encode(libValues.getSequence());
+      if (!libValues.getCysteinPatterns().isEmpty() && libValues.getCysBonds() != null) {
+        for (String bond : libValues.getCysBonds().split("[ ,]")) {
+          Matcher matcher = INTERNAL_BOND.matcher(bond);
+          if (matcher.matches()) {
+            internalBonds.add(Integer.valueOf(matcher.group(1)));
+            internalBonds.add(Integer.valueOf(matcher.group(2)));
+          }
+        }
+      }
+    }
+  }
+
+}
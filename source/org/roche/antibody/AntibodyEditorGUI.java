@@ -41,7 +41,9 @@ import javax.swing.plaf.basic.BasicTabbedPaneUI;
 
 import org.roche.antibody.services.UIService;
 import org.roche.antibody.ui.actions.menu.AbstractEditorAction;
+import org.roche.antibody.ui.actions.menu.AntibodyAppendToArchiveAction;
 import org.roche.antibody.ui.actions.menu.AntibodyDomainsLibraryEditorAction;
+import org.roche.antibody.ui.actions.menu.AntibodyLoadFromArchiveAction;
 import org.roche.antibody.ui.actions.menu.AntibodyLoadXmlAction;
 import org.roche.antibody.ui.actions.menu.AntibodySaveXmlAction;
 import org.roche.antibody.ui.actions.menu.EditorHelpAction;
@@ -199,6 +201,9 @@ public class AntibodyEditorGUI {
     JMenuItem saveItem = fileMenu.add(new AntibodySaveXmlAction(parentFrame));
     saveItem.setAccelerator(KeyStroke.getKeyStroke("control S"));
     fileMenu.addSeparator();
+    fileMenu.add(new AntibodyLoadFromArchiveAction(parentFrame));
+    fileMenu.add(new AntibodyAppendToArchiveAction(parentFrame));
+    fileMenu.addSeparator();
     fileMenu.add(new ExitEditorAction(parentFrame));
 
     JMenu settingsMenu = new JMenu("Settings");
@@ -0,0 +1,359 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FilenameUtils;
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.AntibodyContainer;
+import org.roche.antibody.model.antibody.DomainLibraryValues;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.services.AntibodyCreationService;
+import org.roche.antibody.services.CachedHelmService;
+import org.roche.antibody.services.CommandLineParameters;
+import org.roche.antibody.services.ConfigFileService;
+import org.roche.antibody.services.ConfigLoaderAuthentication;
+import org.roche.antibody.services.ConfigRepository;
+import org.roche.antibody.services.DomainDetectionSettingsService;
+import org.roche.antibody.services.PreferencesService;
+import org.roche.antibody.services.xml.AntibodyArchive;
+import org.roche.antibody.services.xml.CachedXmlAntibodyService;
+import org.roche.antibody.ui.filechooser.AntibodyFileChooser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.quattroresearch.antibody.BatchDomainDetection;
+import com.quattroresearch.antibody.DomainDetection;
+import com.quattroresearch.antibody.DomainDetection.E_ErrorType;
+import com.quattroresearch.antibody.ISequenceRecordHandler;
+import com.quattroresearch.antibody.MutationLibraryIndex;
+import com.quattroresearch.antibody.StreamingSequenceFileReader;
+
+/**
+ *
+ * {@code HELMAntibodyBatchAnnotator} contains the main routine of the headless antibody annotation. Every FASTA or GP
+ * file of the input is one antibody: its chains run through domain detection, mutation lookup and autoconnection (as
+ * in {@code AntibodyFindDialog}) and the resulting HELM and antibody XML are written to the output directory. The
+ * files are processed on a bounded worker pool, throughput is reported at the end.
+ * <p>
+ * The blast searches of the workers run concurrently. The domain detection itself keeps the domain library, the hit
+ * thresholds and the chain panels in static or Swing state, so the workers build and evaluate their detections one
+ * after the other.
+ * <p>
+ * Parameters are given as pairs, like for {@link HELMAntibodyEditor}:
+ *
+ * <pre>
+ * -in &lt;directory | file | -&gt;   input files, "-" reads one file path per line from stdin
+ * -out &lt;directory&gt;             output directory (default: current directory)
+ * -archive &lt;file&gt;             append the antibody XML to this archive instead of writing XML files
+ * -threads &lt;n&gt;                 number of workers (default: number of processors)
+ * -user &lt;name&gt; -password &lt;pw&gt;  credentials, if password-based authentication is configured
+ * -env &lt;DEV | QA | PROD&gt;       registration environment
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class HELMAntibodyBatchAnnotator {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(HELMAntibodyBatchAnnotator.class);
+
+  /** The command line parameter for the input directory, file or "-" for stdin */
+  public static final String PARAMETER_INPUT = "-in";
+
+  /** The command line parameter for the output directory */
+  public static final String PARAMETER_OUTPUT = "-out";
+
+  /** The command line parameter for the antibody archive */
+  public static final String PARAMETER_ARCHIVE = "-archive";
+
+  /** The command line parameter for the number of workers */
+  public static final String PARAMETER_THREADS = "-threads";
+
+  /** The command line parameter for the user name */
+  public static final String PARAMETER_USER = "-user";
+
+  /** The command line parameter for the password */
+  public static final String PARAMETER_PASSWORD = "-password";
+
+  /** input parameter value for reading file paths from stdin */
+  public static final String STDIN = "-";
+
+  public static final String HELM_EXTENSION = ".helm";
+
+  /** guards the static state of {@link DomainDetection}, which is shared by all workers */
+  private static final Object DETECTION_LOCK = new Object();
+
+  private final File outputDirectory;
+
+  private final int threads;
+
+  private List<DomainLibraryValues> domainLibrary;
+
+  private MutationLibraryIndex mutationLibrary;
+
+  private AntibodyArchive archive;
+
+  private final AtomicInteger annotated = new AtomicInteger();
+
+  private final AtomicInteger failed = new AtomicInteger();
+
+  public HELMAntibodyBatchAnnotator(File outputDirectory, int threads) {
+    this.outputDirectory = outputDirectory;
+    this.threads = threads;
+  }
+
+  /**
+   * @param archive archive the antibodies are appended to instead of writing XML files, null for XML files
+   */
+  public void setArchive(AntibodyArchive archive) {
+    this.archive = archive;
+  }
+
+  /**
+   * Loads settings and libraries once, sets the domain library of the domain detection and makes it usable to BLAST.
+   *
+   * @throws Exception
+   */
+  public void init() throws Exception {
+    DomainDetectionSettingsService.getInstance().reloadSettings();
+    domainLibrary = ConfigRepository.getInstance().getDomainLibrary();
+    mutationLibrary = MutationLibraryIndex.of(ConfigRepository.getInstance().getMutationLibrary());
+
+    DomainDetection domainDetection =
+        new BatchDomainDetection(new ArrayList<String>(), new ArrayList<String>(), domainLibrary);
+    if (domainDetection.makeBlastDatabases().equals(E_ErrorType.LOADLIB_FAILED)) {
+      throw new IllegalStateException("Unable to load library, no search conducted!");
+    }
+  }
+
+  /**
+   * Annotates all files on the worker pool. At most twice as many files as workers are queued, further files are
+   * annotated by the submitting thread until the queue has room again.
+   *
+   * @param files the input files
+   * @return number of files, which could not be annotated
+   * @throws InterruptedException
+   */
+  public int annotate(List<File> files) throws InterruptedException {
+    if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+      throw new IllegalArgumentException("Could not create output directory " + outputDirectory);
+    }
+
+    long startTime = System.currentTimeMillis();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(2 * threads), new ThreadPoolExecutor.CallerRunsPolicy());
+    for (final File file : files) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            annotate(file);
+            annotated.incrementAndGet();
+          } catch (Exception e) {
+            failed.incrementAndGet();
+            LOG.error("Could not annotate " + file + ": " + e.getClass().getName() + "(" + e.getMessage() + ")");
+          }
+        }
+      });
+    }
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+    double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0;
+    System.out.println(String.format(
+        "Annotated %d antibodies (%d failed) in %.1fs with %d workers: %.2f antibodies/sec", annotated.get(),
+        failed.get(), seconds, threads, annotated.get() / seconds));
+    return failed.get();
+  }
+
+  /**
+   * Annotates one sequence file and writes HELM and XML of the antibody, the XML to the archive if there is one.
+   *
+   * @param file FASTA or GP file with the chains of one antibody
+   * @throws Exception
+   */
+  private void annotate(File file) throws Exception {
+    String name = FilenameUtils.removeExtension(file.getName());
+    final List<String> chainNames = new ArrayList<String>();
+    final List<String> chains = new ArrayList<String>();
+    new StreamingSequenceFileReader().read(file, new ISequenceRecordHandler() {
+      @Override
+      public void sequenceRead(String chainName, String sequence) {
+        chainNames.add(chainName);
+        chains.add(sequence);
+      }
+    });
+    if (chains.isEmpty()) {
+      throw new IllegalArgumentException("No sequences found");
+    }
+
+    BatchDomainDetection domainDetection;
+    synchronized (DETECTION_LOCK) {
+      domainDetection = new BatchDomainDetection(chainNames, chains, domainLibrary);
+    }
+    // files run concurrently, the last blast of one of them is of no use
+    domainDetection.setArchiveLastBlast(false);
+    domainDetection.prefetchSearches();
+    List<Peptide> peptideList;
+    synchronized (DETECTION_LOCK) {
+      domainDetection.loadData();
+      domainDetection.checkCompability();
+      peptideList = domainDetection.calculatePeptides(false);
+    }
+    mutationLibrary.find(peptideList);
+    Antibody ab = AntibodyCreationService.getInstance().create(peptideList);
+    ab.setMasterLibrariesUsed(PreferencesService.getInstance().isAllMasterLibrariesEnabled());
+    ab.setMasterSettingsUsed(PreferencesService.getInstance().isMasterSettingsEnabled());
+    ab.setDomainLibraryPath(ConfigFileService.getInstance().getDomainLibFilename());
+
+    String helm = CachedHelmService.getInstance().toHELMString(ab);
+    org.apache.commons.io.FileUtils.writeStringToFile(new File(outputDirectory, name + HELM_EXTENSION), helm);
+
+    AntibodyContainer abContainer = new AntibodyContainer();
+    abContainer.setAntibody(ab);
+    abContainer.setHelmCode(helm);
+    if (archive != null) {
+      synchronized (archive) {
+        archive.append(name, abContainer);
+      }
+    } else {
+      CachedXmlAntibodyService.getInstance().marshal(abContainer,
+          new File(outputDirectory, name + AntibodyFileChooser.XML_EXTENSION));
+    }
+    LOG.debug("Annotated " + file);
+  }
+
+  /**
+   * Collects the input files: all files of a directory, a single file or the file paths read from stdin.
+   *
+   * @param input the input parameter
+   * @return input files
+   * @throws IOException
+   */
+  static List<File> collectInputFiles(String input) throws IOException {
+    List<File> files = new ArrayList<File>();
+    if (STDIN.equals(input)) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, "UTF8"));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          files.add(new File(line.trim()));
+        }
+      }
+      return files;
+    }
+
+    File inputFile = new File(input);
+    if (inputFile.isDirectory()) {
+      File[] directoryFiles = inputFile.listFiles();
+      if (directoryFiles != null) {
+        Arrays.sort(directoryFiles);
+        for (File file : directoryFiles) {
+          if (file.isFile() && !file.isHidden()) {
+            files.add(file);
+          }
+        }
+      }
+    } else if (inputFile.isFile()) {
+      files.add(inputFile);
+    } else {
+      throw new IllegalArgumentException("Input not found: " + input);
+    }
+    return files;
+  }
+
+  private static void authorize(Map<String, String> parameters) throws Exception {
+    ConfigLoaderAuthentication authClass = ConfigFileService.getInstance()
+        .getAuthorizationClass();
+    if (authClass.isPasswordNeeded()) {
+      String user = parameters.get(PARAMETER_USER);
+      String password = parameters.get(PARAMETER_PASSWORD);
+      if (user == null || password == null) {
+        throw new IllegalArgumentException(
+            "Password-based authentication is configured. Use " + PARAMETER_USER + " and " + PARAMETER_PASSWORD + ".");
+      }
+      authClass.setUsernamePassword(user, password);
+      String error = authClass.checkLogon();
+      if (!error.isEmpty()) {
+        throw new IllegalArgumentException("Not authorized: " + error);
+      }
+    }
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: HELMAntibodyBatchAnnotator " + PARAMETER_INPUT + " <directory|file|-> ["
+        + PARAMETER_OUTPUT + " <directory>] [" + PARAMETER_ARCHIVE + " <file>] [" + PARAMETER_THREADS + " <n>] ["
+        + PARAMETER_USER + " <name> " + PARAMETER_PASSWORD + " <password>] ["
+        + CommandLineParameters.PARAMETER_ENVIRONMENT + " <DEV|QA|PROD>]");
+  }
+
+  /**
+   * @param args the command line arguments
+   */
+  public static void main(String args[]) {
+    System.setProperty("java.awt.headless", "true");
+    try {
+      CommandLineParameters.getInstance().setCommandLineParameters(args);
+      Map<String, String> parameters = CommandLineParameters.getInstance().getCommandLineParameters();
+      String input = parameters.get(PARAMETER_INPUT);
+      if (input == null) {
+        printUsage();
+        System.exit(2);
+      }
+      String output = parameters.containsKey(PARAMETER_OUTPUT) ? parameters.get(PARAMETER_OUTPUT) : ".";
+      int threads = parameters.containsKey(PARAMETER_THREADS) ? Integer.parseInt(parameters.get(PARAMETER_THREADS))
+          : Runtime.getRuntime().availableProcessors();
+
+      authorize(parameters);
+      HELMAntibodyBatchAnnotator annotator = new HELMAntibodyBatchAnnotator(new File(output), Math.max(threads, 1));
+      annotator.init();
+      AntibodyArchive archive = null;
+      if (parameters.containsKey(PARAMETER_ARCHIVE)) {
+        archive = AntibodyArchive.openForAppend(new File(parameters.get(PARAMETER_ARCHIVE)));
+        annotator.setArchive(archive);
+      }
+      int failed;
+      try {
+        failed = annotator.annotate(collectInputFiles(input));
+      } finally {
+        if (archive != null) {
+          archive.close();
+        }
+      }
+      System.exit(failed == 0 ? 0 : 1);
+    } catch (Exception e) {
+      LOG.error("Batch annotation failed: " + e.getMessage(), e);
+      printUsage();
+      System.exit(1);
+    }
+  }
+
+}
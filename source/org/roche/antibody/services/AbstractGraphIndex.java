@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.roche.antibody.model.antibody.Connection;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.model.antibody.Sequence;
+
+import y.base.DataProvider;
+import y.base.Edge;
+import y.base.Graph;
+import y.base.GraphEvent;
+import y.base.GraphListener;
+import y.base.Node;
+import y.util.DataProviderAdapter;
+import y.view.Graph2D;
+
+/**
+ * {@code AbstractGraphIndex} holds the reverse lookups of an abstract antibody graph: {@link Sequence} to {@link Node},
+ * {@link Peptide} to its group {@link Node} and {@link Connection} to {@link Edge}. They are keyed by identity, like
+ * {@link AbConst#NODE_TO_SEQUENCE_KEY} and {@link AbConst#EDGE_TO_CONNECTION_KEY}, and registered as data providers
+ * with the graph. Removed and reinserted graph elements are tracked by listening to the graph.
+ *
+ * @version $Id$
+ */
+public class AbstractGraphIndex implements GraphListener {
+
+  /** data provider: {@link Sequence} to {@link Node} */
+  public static final String SEQUENCE_TO_NODE_KEY = "SEQUENCE_TO_NODE";
+
+  /** data provider: {@link Peptide} to group {@link Node} */
+  public static final String PEPTIDE_TO_GROUP_NODE_KEY = "PEPTIDE_TO_GROUP_NODE";
+
+  /** data provider: {@link Connection} to {@link Edge} */
+  public static final String CONNECTION_TO_EDGE_KEY = "CONNECTION_TO_EDGE";
+
+  private final Map<Sequence, Node> sequenceToNode = new IdentityHashMap<Sequence, Node>();
+
+  private final Map<Peptide, Node> peptideToGroupNode = new IdentityHashMap<Peptide, Node>();
+
+  /** reverse of peptideToGroupNode, there is no graph map for group nodes */
+  private final Map<Node, Peptide> groupNodeToPeptide = new IdentityHashMap<Node, Peptide>();
+
+  private final Map<Connection, Edge> connectionToEdge = new IdentityHashMap<Connection, Edge>();
+
+  private AbstractGraphIndex() {
+  }
+
+  /**
+   * Creates an empty index and registers its data providers and listener with the graph. Must be called before nodes
+   * and edges are added, listeners registered later on are notified after the index was updated.
+   *
+   * @param graph abstract antibody graph
+   * @return the index
+   */
+  public static AbstractGraphIndex register(Graph2D graph) {
+    AbstractGraphIndex index = new AbstractGraphIndex();
+    graph.addDataProvider(SEQUENCE_TO_NODE_KEY, index.new IndexDataProvider(index.sequenceToNode));
+    graph.addDataProvider(PEPTIDE_TO_GROUP_NODE_KEY, index.new IndexDataProvider(index.peptideToGroupNode));
+    graph.addDataProvider(CONNECTION_TO_EDGE_KEY, index.new IndexDataProvider(index.connectionToEdge));
+    graph.addGraphListener(index);
+    return index;
+  }
+
+  /**
+   * @param graph abstract antibody graph
+   * @return the index registered with the graph or null, if there is none
+   */
+  public static AbstractGraphIndex of(Graph graph) {
+    DataProvider provider = graph.getDataProvider(SEQUENCE_TO_NODE_KEY);
+    if (provider instanceof IndexDataProvider) {
+      return ((IndexDataProvider) provider).getIndex();
+    }
+    return null;
+  }
+
+  public void putNode(Sequence sequence, Node node) {
+    sequenceToNode.put(sequence, node);
+  }
+
+  public void putGroupNode(Peptide peptide, Node groupNode) {
+    peptideToGroupNode.put(peptide, groupNode);
+    groupNodeToPeptide.put(groupNode, peptide);
+  }
+
+  public void putEdge(Connection connection, Edge edge) {
+    connectionToEdge.put(connection, edge);
+  }
+
+  /**
+   * @return the node of the sequence or null, if it is not part of the graph
+   */
+  public Node getNode(Sequence sequence) {
+    return alive(sequenceToNode.get(sequence));
+  }
+
+  /**
+   * @return the group node of the peptide or null, if it is not part of the graph
+   */
+  public Node getGroupNode(Peptide peptide) {
+    return alive(peptideToGroupNode.get(peptide));
+  }
+
+  /**
+   * @return the edge of the connection or null, if it is not part of the graph
+   */
+  public Edge getEdge(Connection connection) {
+    Edge edge = connectionToEdge.get(connection);
+    return edge != null && edge.getGraph() != null ? edge : null;
+  }
+
+  @Override
+  public void onGraphEvent(GraphEvent e) {
+    switch (e.getType()) {
+    case GraphEvent.POST_NODE_REMOVAL:
+      removeNode(e.getGraph(), (Node) e.getData());
+      break;
+    case GraphEvent.POST_EDGE_REMOVAL:
+      removeEdge(e.getGraph(), (Edge) e.getData());
+      break;
+    case GraphEvent.NODE_REINSERTION:
+      reinsertNode(e.getGraph(), (Node) e.getData());
+      break;
+    case GraphEvent.EDGE_REINSERTION:
+      reinsertEdge(e.getGraph(), (Edge) e.getData());
+      break;
+    default:
+      break;
+    }
+  }
+
+  private void removeNode(Graph graph, Node node) {
+    Sequence sequence = (Sequence) graph.getDataProvider(AbConst.NODE_TO_SEQUENCE_KEY).get(node);
+    if (sequence != null && sequenceToNode.get(sequence) == node) {
+      sequenceToNode.remove(sequence);
+    }
+    Peptide peptide = groupNodeToPeptide.get(node);
+    if (peptide != null && peptideToGroupNode.get(peptide) == node) {
+      peptideToGroupNode.remove(peptide);
+    }
+  }
+
+  private void removeEdge(Graph graph, Edge edge) {
+    Connection connection = (Connection) graph.getDataProvider(AbConst.EDGE_TO_CONNECTION_KEY).get(edge);
+    if (connection != null && connectionToEdge.get(connection) == edge) {
+      connectionToEdge.remove(connection);
+    }
+  }
+
+  private void reinsertNode(Graph graph, Node node) {
+    Sequence sequence = (Sequence) graph.getDataProvider(AbConst.NODE_TO_SEQUENCE_KEY).get(node);
+    if (sequence != null) {
+      sequenceToNode.put(sequence, node);
+    }
+    Peptide peptide = groupNodeToPeptide.get(node);
+    if (peptide != null) {
+      peptideToGroupNode.put(peptide, node);
+    }
+  }
+
+  private void reinsertEdge(Graph graph, Edge edge) {
+    Connection connection = (Connection) graph.getDataProvider(AbConst.EDGE_TO_CONNECTION_KEY).get(edge);
+    if (connection != null) {
+      connectionToEdge.put(connection, edge);
+    }
+  }
+
+  private static Node alive(Node node) {
+    return node != null && node.getGraph() != null ? node : null;
+  }
+
+  /**
+   * Read only view of one lookup of the index.
+   */
+  private class IndexDataProvider extends DataProviderAdapter {
+
+    private final Map<?, ?> lookup;
+
+    private IndexDataProvider(Map<?, ?> lookup) {
+      this.lookup = lookup;
+    }
+
+    @Override
+    public Object get(Object dataHolder) {
+      Object value = lookup.get(dataHolder);
+      if (value instanceof Node) {
+        return alive((Node) value);
+      }
+      if (value instanceof Edge && ((Edge) value).getGraph() == null) {
+        return null;
+      }
+      return value;
+    }
+
+    private AbstractGraphIndex getIndex() {
+      return AbstractGraphIndex.this;
+    }
+  }
+
+}
@@ -33,6 +33,8 @@ import y.base.EdgeCursor;
 import y.base.Node;
 import y.base.NodeMap;
 import y.layout.CanonicMultiStageLayouter;
+import y.layout.Layouter;
+import y.layout.SequentialLayouter;
 import y.layout.hierarchic.GivenLayersLayerer;
 import y.layout.hierarchic.IncrementalHierarchicLayouter;
 import y.layout.hierarchic.incremental.RoutingStyle;
@@ -197,6 +199,31 @@ public class AbstractGraphLayoutService {
 
   }
 
+  /**
+   * Prepares the graph for a layout with {@link #createLayoutSequence(CanonicMultiStageLayouter)}.
+   * 
+   * @param abstractGraph
+   */
+  public static void prepareLayout(Graph2D abstractGraph) {
+    // SH/ML 2016-04-19: Removing the last node would lead to a layouting error, because of empty group
+    removeEmptyGroups(abstractGraph);
+  }
+
+  /**
+   * Creates a layouter, which does the same as {@link #layout(Graph2D, CanonicMultiStageLayouter)} in a single run. This
+   * is required to run the layout in one go, e.g. by a threaded {@link Graph2DLayoutExecutor}. Call
+   * {@link #prepareLayout(Graph2D)} before.
+   * 
+   * @param abstractGraphLayouter instance of {@link #createLayouter()}
+   * @return the layouter
+   */
+  public static Layouter createLayoutSequence(CanonicMultiStageLayouter abstractGraphLayouter) {
+    SequentialLayouter layoutSequence = new SequentialLayouter();
+    layoutSequence.appendLayouter(createOrthogonalEdgeRouter(abstractGraphLayouter));
+    layoutSequence.appendLayouter(abstractGraphLayouter);
+    return layoutSequence;
+  }
+
   private static void removeEmptyGroups(Graph2D graph) {
     HierarchyManager hm = graph.getHierarchyManager();
     Node[] nodes = graph.getNodeArray();
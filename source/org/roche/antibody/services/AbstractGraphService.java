@@ -139,8 +139,9 @@ public class AbstractGraphService {
    * 
    * @param graph
    * @param connection
+   * @return the new edge or null, if source or target is not part of the graph
    */
-  public static void addConnection(Graph2D graph, Connection connection) {
+  public static Edge addConnection(Graph2D graph, Connection connection) {
     Node source = null;
     Node target = null;
     EdgeRealizer realizer = null;
@@ -168,8 +169,7 @@ public class AbstractGraphService {
 
     if (source != null && target != null) {
       Edge newEdge = graph.createEdge(source, target, realizer);
-      EdgeMap edgeMap = (EdgeMap) graph.getDataProvider(AbConst.EDGE_TO_CONNECTION_KEY);
-      edgeMap.set(newEdge, connection);
+      registerConnection(graph, newEdge, connection);
 
      // if (connection instanceof GeneralConnection) {
      //   EdgeMap criticalPathMap = (EdgeMap) graph.getDataProvider(IncrementalHierarchicLayouter.CRITICAL_EDGE_DPKEY);
@@ -189,10 +189,40 @@ public class AbstractGraphService {
      //     }
 
       // }
+      return newEdge;
     }
     else {
       LOG.debug("Source or target is null");
     }
+    return null;
+  }
+
+  /**
+   * Maps the edge to the connection in {@link AbConst#EDGE_TO_CONNECTION_KEY} and in the {@link AbstractGraphIndex}.
+   * 
+   * @param graph
+   * @param edge
+   * @param connection
+   */
+  public static void registerConnection(Graph2D graph, Edge edge, Connection connection) {
+    EdgeMap edgeMap = (EdgeMap) graph.getDataProvider(AbConst.EDGE_TO_CONNECTION_KEY);
+    edgeMap.set(edge, connection);
+    AbstractGraphIndex index = AbstractGraphIndex.of(graph);
+    if (index != null) {
+      index.putEdge(connection, edge);
+    }
+  }
+
+  /**
+   * Maps the node to the sequence in {@link AbConst#NODE_TO_SEQUENCE_KEY} and in the {@link AbstractGraphIndex}.
+   */
+  private static void registerSequence(Graph2D graph, Node node, Sequence sequence) {
+    NodeMap nodeToSequence = (NodeMap) graph.getDataProvider(AbConst.NODE_TO_SEQUENCE_KEY);
+    nodeToSequence.set(node, sequence);
+    AbstractGraphIndex index = AbstractGraphIndex.of(graph);
+    if (index != null) {
+      index.putNode(sequence, node);
+    }
   }
 
   /**
@@ -200,6 +230,16 @@ public class AbstractGraphService {
    * @param sequence could be a {@link ChemElement} or a @link {@link Domain}
    */
   public static Node addSequence(Graph2D graph, Sequence sequence) {
+    return addSequence(graph, sequence, true);
+  }
+
+  /**
+   * @param graph
+   * @param sequence could be a {@link ChemElement} or a @link {@link Domain}
+   * @param annotateDomain true, to annotate a new domain by {@link DomainAnnotationAction#annotateDomain}, which runs a
+   *          blast search
+   */
+  public static Node addSequence(Graph2D graph, Sequence sequence, boolean annotateDomain) {
     AntibodyEditorPane abePane = AntibodyEditorAccess.getInstance().getAntibodyEditorPane();
     if (abePane != null) {
       abePane.updatePane(null);
@@ -209,7 +249,7 @@ public class AbstractGraphService {
     if (sequence instanceof ChemElement) {
       newNode = addChemElement(graph, (ChemElement) sequence);
     } else if (sequence instanceof Domain) {
-      newNode = addDomain(graph, (Domain) sequence);
+      newNode = addDomain(graph, (Domain) sequence, annotateDomain);
     } else if (sequence instanceof RNA) {
       newNode = addRNAElement(graph, (RNA) sequence);
     } else {
@@ -278,6 +318,7 @@ public class AbstractGraphService {
     graph.addDataProvider(AbConst.EDGE_TO_CONNECTION_KEY, connectionMap);
     graph.addDataProvider(AbConst.NODE_DELETABLE_KEY, deletableNodeMap);
     graph.addDataProvider(AbConst.NODE_TO_SEQUENCE_KEY, sequenceMap);
+    AbstractGraphIndex.register(graph);
 
     /* Grouping */
     graph.setHierarchyManager(createHierarchyManager(graph));
@@ -514,12 +555,12 @@ public class AbstractGraphService {
    * 
    * @param graph
    * @param domain
+   * @param annotate true, to annotate the new domain
    */
-  private static Node addDomain(Graph2D graph, Domain domain) {
+  private static Node addDomain(Graph2D graph, Domain domain, boolean annotate) {
     if (domain == null) {
       return null;
     }
-    NodeMap map = (NodeMap) graph.getDataProvider(AbConst.NODE_TO_SEQUENCE_KEY);
     NodeMap deleteable = (NodeMap) graph.getDataProvider(AbConst.NODE_DELETABLE_KEY);
     Node node = findNodeBySequence(graph, domain);
     if (node != null) {
@@ -532,7 +573,7 @@ public class AbstractGraphService {
     graph.setLabelText(node, graph.getRealizer(node).getLabel().getText());
     setupCommonLabelConfiguration(graph.getRealizer(node).getLabel());
     LOG.debug("New Domain added to Graph: {}", domain.getName());
-    map.set(node, domain);
+    registerSequence(graph, node, domain);
     deleteable.setBool(node, true);
 
     // Add new domain to existing chain
@@ -566,10 +607,12 @@ public class AbstractGraphService {
       createBackboneBridge(graph, nodesToConnect, criticalPathValue, criticalPathMap, domain.getPeptide());
     }
 
-    try {
-      DomainAnnotationAction.annotateDomain(AntibodyEditorAccess.getInstance().getAntibodyEditorPane(), domain);
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+    if (annotate) {
+      try {
+        DomainAnnotationAction.annotateDomain(AntibodyEditorAccess.getInstance().getAntibodyEditorPane(), domain);
+      } catch (FileNotFoundException e) {
+        e.printStackTrace();
+      }
     }
 
     return node;
@@ -590,9 +633,8 @@ public class AbstractGraphService {
     Node node = graph.createNode(new RNARealizer());
     graph.setLabelText(node, graph.getRealizer(node).getLabel().getText());
     setupCommonLabelConfiguration(graph.getRealizer(node).getLabel());
-    NodeMap map = (NodeMap) graph.getDataProvider(AbConst.NODE_TO_SEQUENCE_KEY);
     NodeMap deleteable = (NodeMap) graph.getDataProvider(AbConst.NODE_DELETABLE_KEY);
-    map.set(node, element);
+    registerSequence(graph, node, element);
     deleteable.setBool(node, true);
 
     LOG.debug("New RNAElement added to Graph: {}", element);
@@ -604,9 +646,8 @@ public class AbstractGraphService {
     Node node = graph.createNode(new ChemElementRealizer());
     graph.setLabelText(node, graph.getRealizer(node).getLabel().getText());
     setupCommonLabelConfiguration(graph.getRealizer(node).getLabel());
-    NodeMap map = (NodeMap) graph.getDataProvider(AbConst.NODE_TO_SEQUENCE_KEY);
     NodeMap deleteable = (NodeMap) graph.getDataProvider(AbConst.NODE_DELETABLE_KEY);
-    map.set(node, molecule);
+    registerSequence(graph, node, molecule);
     deleteable.setBool(node, true);
 
     LOG.debug("New ChemElement added to Graph: {}", molecule);
@@ -759,7 +800,14 @@ public class AbstractGraphService {
       return;
     }
 
-    Node groupNode = createGroupNodeForSequence(graph, peptide);
+    // a domain appended to an existing chain joins the group node of the chain
+    Node groupNode = findGroupNodeByPeptide(graph, peptide);
+    if (groupNode == null || !graph.contains(groupNode)) {
+      groupNode = findParentGroupNode(graph, nodes);
+    }
+    if (groupNode == null) {
+      groupNode = createGroupNodeForSequence(graph, peptide);
+    }
 
     for (int i = 0; i < nodes.size() - 1; i++) {
       graph.getHierarchyManager().setParentNode(nodes.get(i), groupNode);
@@ -770,6 +818,20 @@ public class AbstractGraphService {
 
   }
 
+  /**
+   * @return the group node one of the nodes already belongs to or null
+   */
+  private static Node findParentGroupNode(Graph2D graph, List<Node> nodes) {
+    HierarchyManager hierarchyManager = graph.getHierarchyManager();
+    for (Node node : nodes) {
+      Node parent = hierarchyManager.getParentNode(node);
+      if (parent != null) {
+        return parent;
+      }
+    }
+    return null;
+  }
+
   private static Node createGroupNodeForSequence(Graph2D graph, Peptide peptide) {
     String label = "";
     if (!peptide.getLabel().isEmpty()) {
@@ -784,6 +846,10 @@ public class AbstractGraphService {
     Node outerGroup = graph.getHierarchyManager().createGroupNode(graph);
     NodeMap deletable = (NodeMap) graph.getDataProvider(AbConst.NODE_DELETABLE_KEY);
     deletable.setBool(outerGroup, true);
+    AbstractGraphIndex index = AbstractGraphIndex.of(graph);
+    if (index != null) {
+      index.putGroupNode(peptide, outerGroup);
+    }
     
 
     if (label.length() > 20) {
@@ -802,6 +868,21 @@ public class AbstractGraphService {
    * @return
    */
   public static Node findNodeBySequence(Graph2D graph, Sequence sequence) {
+    AbstractGraphIndex index = AbstractGraphIndex.of(graph);
+    if (index != null) {
+      if (sequence instanceof Peptide) {
+        for (Domain domain : ((Peptide) sequence).getDomains()) {
+          Node node = index.getNode(domain);
+          if (node != null) {
+            return node;
+          }
+        }
+        return null;
+      }
+      return index.getNode(sequence);
+    }
+
+    // graph without index: search all nodes
     DataMap nodeToSequence = (DataMap) graph.getDataProvider(AbConst.NODE_TO_SEQUENCE_KEY);
     for (Node node : graph.getNodeArray()) {
       Sequence foundSequence = (Sequence) nodeToSequence.get(node);
@@ -813,6 +894,18 @@ public class AbstractGraphService {
     return null;
   }
 
+  /**
+   * Searches the group node in given graph that belongs to the given peptide.
+   * 
+   * @param graph
+   * @param peptide
+   * @return the group node or null
+   */
+  public static Node findGroupNodeByPeptide(Graph2D graph, Peptide peptide) {
+    AbstractGraphIndex index = AbstractGraphIndex.of(graph);
+    return index != null ? index.getGroupNode(peptide) : null;
+  }
+
   /**
    * Searches the edge representation in given graph that belongs to the gieven connection.
    * 
@@ -821,6 +914,12 @@ public class AbstractGraphService {
    * @return
    */
   private static Edge findeEdgeByConnection(Graph2D graph, Connection con) {
+    AbstractGraphIndex index = AbstractGraphIndex.of(graph);
+    if (index != null) {
+      return index.getEdge(con);
+    }
+
+    // graph without index: search all edges
     DataMap nodeToSequence = (DataMap) graph.getDataProvider(AbConst.EDGE_TO_CONNECTION_KEY);
     for (Edge edge : graph.getEdgeArray()) {
       Connection foundConnection = (Connection) nodeToSequence.get(edge);
@@ -894,7 +993,7 @@ public class AbstractGraphService {
         Node node = graph.createNode(new DomainNodeRealizer(dom));
         graph.setLabelText(node, graph.getRealizer(node).getLabel().getText());
         nodes.add(node);
-        nodeToSequence.set(node, dom);
+        registerSequence(graph, node, dom);
         sequenceToNode.put(dom, node);
         // ML 2016-02-04 all domains should be deletable
         NodeMap deleteable = (NodeMap) graph.getDataProvider(AbConst.NODE_DELETABLE_KEY);
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.Connection;
+import org.roche.antibody.model.antibody.Domain;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.model.antibody.Sequence;
+import org.roche.antibody.ui.abstractgraph.AbstractGraphElementInitializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import y.base.DataMap;
+import y.base.DataProvider;
+import y.base.Edge;
+import y.base.EdgeCursor;
+import y.base.Node;
+import y.base.NodeCursor;
+import y.base.NodeMap;
+import y.layout.hierarchic.GivenLayersLayerer;
+import y.layout.hierarchic.IncrementalHierarchicLayouter;
+import y.layout.hierarchic.incremental.IncrementalHintsFactory;
+import y.view.Graph2D;
+
+/**
+ * {@code AbstractGraphUpdateService} brings an existing abstract antibody graph (derived from
+ * {@link AbstractGraphService#getGraph(Antibody)}) up to date with its {@link Antibody} model, without building the
+ * graph again. The {@link GraphDelta} between graph and model is computed by identity of the sequences and connections
+ * registered in {@link AbConst#NODE_TO_SEQUENCE_KEY} and {@link AbConst#EDGE_TO_CONNECTION_KEY}. Only the delta is
+ * applied and only the touched nodes get incremental hints, all other nodes keep their place in the next layout.
+ * <p>
+ * Changes which cannot be applied to the existing chains (new peptides, domains inserted in the middle of a chain) are
+ * reported by {@link GraphDelta#isRebuildRequired()}. The graph has to be built again in that case.
+ *
+ * @version $Id$
+ */
+public class AbstractGraphUpdateService {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(AbstractGraphUpdateService.class);
+
+  private AbstractGraphUpdateService() {
+    // all methods are static and require the graph as input.
+  }
+
+  /**
+   * Computes the nodes and edges, which have to be removed from and added to the graph, to represent the antibody.
+   *
+   * @param graph abstract antibody graph
+   * @param ab the current antibody model
+   * @return the delta, never null
+   */
+  public static GraphDelta computeDelta(Graph2D graph, Antibody ab) {
+    GraphDelta delta = new GraphDelta();
+    DataProvider nodeToSequence = graph.getDataProvider(AbConst.NODE_TO_SEQUENCE_KEY);
+    DataProvider edgeToConnection = graph.getDataProvider(AbConst.EDGE_TO_CONNECTION_KEY);
+    if (nodeToSequence == null || edgeToConnection == null) {
+      delta.rebuildRequired = true;
+      return delta;
+    }
+
+    Set<Sequence> modelSequences = newIdentitySet();
+    for (Peptide peptide : ab.getPeptides()) {
+      modelSequences.addAll(peptide.getDomains());
+    }
+    modelSequences.addAll(ab.getRnaElements());
+    modelSequences.addAll(ab.getChemElements());
+
+    Set<Sequence> graphSequences = newIdentitySet();
+    for (NodeCursor nc = graph.nodes(); nc.ok(); nc.next()) {
+      Sequence sequence = (Sequence) nodeToSequence.get(nc.node());
+      if (sequence == null) {
+        // group nodes of the peptides
+        continue;
+      }
+      if (modelSequences.contains(sequence)) {
+        graphSequences.add(sequence);
+      } else {
+        delta.removedNodes.add(nc.node());
+      }
+    }
+
+    for (Sequence sequence : modelSequences) {
+      if (graphSequences.contains(sequence)) {
+        continue;
+      }
+      if (sequence instanceof Domain && !isAppendableDomain((Domain) sequence, graphSequences)) {
+        LOG.debug("Domain {} can not be added to an existing chain.", sequence.getName());
+        delta.rebuildRequired = true;
+      }
+      delta.addedSequences.add(sequence);
+    }
+
+    Set<Connection> modelConnections = newIdentitySet();
+    modelConnections.addAll(ab.getConnections());
+    Set<Connection> graphConnections = newIdentitySet();
+    for (EdgeCursor ec = graph.edges(); ec.ok(); ec.next()) {
+      Connection connection = (Connection) edgeToConnection.get(ec.edge());
+      if (connection == null) {
+        // backbone edges are not part of the model
+        continue;
+      }
+      if (modelConnections.contains(connection)) {
+        graphConnections.add(connection);
+      } else {
+        delta.removedEdges.add(ec.edge());
+      }
+    }
+    for (Connection connection : ab.getConnections()) {
+      if (!graphConnections.contains(connection)) {
+        delta.addedConnections.add(connection);
+      }
+    }
+    return delta;
+  }
+
+  /**
+   * Applies the delta to the graph. Removed elements go first, so connections of deleted sequences are gone before the
+   * new sequences and connections are added.
+   *
+   * @param graph abstract antibody graph the delta was computed for
+   * @param ab the current antibody model
+   * @param delta a delta, which does not require a rebuild
+   * @return the nodes touched by the delta: new nodes and the remaining neighbours of added or removed elements
+   */
+  public static Collection<Node> applyDelta(Graph2D graph, Antibody ab, GraphDelta delta) {
+    if (delta.isRebuildRequired()) {
+      throw new IllegalArgumentException("Delta can not be applied, the graph has to be rebuilt.");
+    }
+    Set<Node> touchedNodes = new LinkedHashSet<Node>();
+
+    for (Edge edge : delta.removedEdges) {
+      if (graph.contains(edge)) {
+        touchedNodes.add(edge.source());
+        touchedNodes.add(edge.target());
+        graph.removeEdge(edge);
+      }
+    }
+    for (Node node : delta.removedNodes) {
+      if (graph.contains(node)) {
+        for (NodeCursor nc = node.neighbors(); nc.ok(); nc.next()) {
+          touchedNodes.add(nc.node());
+        }
+        graph.removeNode(node);
+      }
+    }
+    touchedNodes.removeAll(delta.removedNodes);
+
+    boolean nonDomainAdded = false;
+    for (Sequence sequence : delta.addedSequences) {
+      // like building the graph, no annotation of new domains: it runs a blast search
+      Node node = AbstractGraphService.addSequence(graph, sequence, false);
+      if (node != null) {
+        touchedNodes.add(node);
+        for (NodeCursor nc = node.neighbors(); nc.ok(); nc.next()) {
+          touchedNodes.add(nc.node());
+        }
+        initFromMap(graph.getRealizer(node));
+      }
+      nonDomainAdded |= !(sequence instanceof Domain);
+    }
+    for (Connection connection : delta.addedConnections) {
+      Edge edge = AbstractGraphService.addConnection(graph, connection);
+      if (edge != null) {
+        touchedNodes.add(edge.source());
+        touchedNodes.add(edge.target());
+        initFromMap(graph.getRealizer(edge));
+      }
+    }
+
+    if (nonDomainAdded) {
+      AbstractGraphService.alignNonDomainSequences(graph, ab,
+          (NodeMap) graph.getDataProvider(GivenLayersLayerer.LAYER_ID_KEY));
+    }
+
+    LOG.debug(String.format("Graph updated incrementally (%s touched nodes).", touchedNodes.size()));
+    return touchedNodes;
+  }
+
+  /**
+   * Registers incremental hints for the touched nodes. All nodes without hint are treated as fixed by the
+   * {@link IncrementalHierarchicLayouter}. The layers given by {@link GivenLayersLayerer#LAYER_ID_KEY} are kept, the
+   * touched nodes are only sequenced again. Hints are collected until {@link #clearIncrementalHints(Graph2D)} is called
+   * after the layout.
+   *
+   * @param graph abstract antibody graph
+   * @param layouter the layouter, which will layout the graph next
+   * @param touchedNodes nodes returned by {@link #applyDelta(Graph2D, Antibody, GraphDelta)}
+   */
+  public static void updateIncrementalHints(Graph2D graph, IncrementalHierarchicLayouter layouter,
+      Collection<Node> touchedNodes) {
+    DataMap hintMap = (DataMap) graph.getDataProvider(IncrementalHierarchicLayouter.INCREMENTAL_HINTS_DPKEY);
+    if (hintMap == null) {
+      return;
+    }
+    IncrementalHintsFactory hintsFactory = layouter.createIncrementalHintsFactory();
+    for (Node node : touchedNodes) {
+      if (graph.contains(node)) {
+        hintMap.set(node, hintsFactory.createSequenceIncrementallyHint(node));
+      }
+    }
+  }
+
+  /**
+   * Drops all incremental hints, the graph has been laid out.
+   *
+   * @param graph abstract antibody graph
+   */
+  public static void clearIncrementalHints(Graph2D graph) {
+    DataMap hintMap = (DataMap) graph.getDataProvider(IncrementalHierarchicLayouter.INCREMENTAL_HINTS_DPKEY);
+    if (hintMap == null) {
+      return;
+    }
+    for (NodeCursor nc = graph.nodes(); nc.ok(); nc.next()) {
+      hintMap.set(nc.node(), null);
+    }
+  }
+
+  /**
+   * A new domain can be added to its chain, if it is the first or last domain and its neighbour domain is already part
+   * of the graph (see AbstractGraphService#addDomain).
+   */
+  private static boolean isAppendableDomain(Domain domain, Set<Sequence> graphSequences) {
+    List<Domain> domains = domain.getPeptide().getDomains();
+    int index = domain.getDomainIndex();
+    if (domains.size() < 2) {
+      return false;
+    }
+    if (index == 0) {
+      return graphSequences.contains(domains.get(1));
+    }
+    if (index == domains.size() - 1) {
+      return graphSequences.contains(domains.get(index - 1));
+    }
+    return false;
+  }
+
+  private static void initFromMap(Object realizer) {
+    if (realizer instanceof AbstractGraphElementInitializer) {
+      ((AbstractGraphElementInitializer) realizer).initFromMap();
+    }
+  }
+
+  private static <T> Set<T> newIdentitySet() {
+    return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+  }
+
+  /**
+   * {@code GraphDelta} holds the difference between an abstract antibody graph and its {@link Antibody} model.
+   *
+   * @version $Id$
+   */
+  public static class GraphDelta {
+
+    private final List<Node> removedNodes = new ArrayList<Node>();
+
+    private final List<Edge> removedEdges = new ArrayList<Edge>();
+
+    private final List<Sequence> addedSequences = new ArrayList<Sequence>();
+
+    private final List<Connection> addedConnections = new ArrayList<Connection>();
+
+    private boolean rebuildRequired;
+
+    /**
+     * @return true, if graph and model are equal
+     */
+    public boolean isEmpty() {
+      return !rebuildRequired && removedNodes.isEmpty() && removedEdges.isEmpty() && addedSequences.isEmpty()
+          && addedConnections.isEmpty();
+    }
+
+    /**
+     * @return true, if the delta can not be applied to the existing graph
+     */
+    public boolean isRebuildRequired() {
+      return rebuildRequired;
+    }
+
+    public List<Node> getRemovedNodes() {
+      return removedNodes;
+    }
+
+    public List<Edge> getRemovedEdges() {
+      return removedEdges;
+    }
+
+    public List<Sequence> getAddedSequences() {
+      return addedSequences;
+    }
+
+    public List<Connection> getAddedConnections() {
+      return addedConnections;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("GraphDelta [removedNodes=%s, removedEdges=%s, addedSequences=%s, addedConnections=%s, rebuild=%s]",
+          removedNodes.size(), removedEdges.size(), addedSequences.size(), addedConnections.size(), rebuildRequired);
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services;
+
+import java.util.List;
+
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.services.antibody.AntibodyService;
+import org.roche.antibody.services.antibody.HingeAutoConnector;
+import org.roche.antibody.services.antibody.HingeToConstDomainAutoConnector;
+import org.roche.antibody.services.antibody.MutationAutoConnector;
+import org.roche.antibody.services.antibody.PeptideChainSorter;
+import org.roche.antibody.services.antibody.autoconnector.IndexedAutoConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.quattroresearch.antibody.paratopedetection.HeapParatopeDetection;
+
+/**
+ * {@code AntibodyCreationService} creates an antibody from its peptides like {@link AntibodyService#create(List)},
+ * but the user defined autoconnector rules are applied by the {@link IndexedAutoConnector}: the rule table is compiled
+ * once per configuration and only the rules matching the domain types of the antibody are checked. The paratopes are
+ * detected by the {@link HeapParatopeDetection}.
+ *
+ * @version $Id$
+ */
+public class AntibodyCreationService {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(AntibodyCreationService.class);
+
+  /** static Singleton instance */
+  private static AntibodyCreationService instance;
+
+  /** Private constructor for singleton */
+  private AntibodyCreationService() {
+  }
+
+  /** Static getter method for retrieving the singleton instance */
+  public synchronized static AntibodyCreationService getInstance() {
+    if (instance == null) {
+      instance = new AntibodyCreationService();
+    }
+    return instance;
+  }
+
+  /**
+   * Creates the antibody: sorts the peptides, connects the domains and detects the paratopes.
+   *
+   * @param peptideChain the peptides with their domains
+   * @return the antibody
+   * @throws Exception
+   */
+  public Antibody create(List<Peptide> peptideChain) throws Exception {
+    Antibody ab = new Antibody(peptideChain);
+
+    try {
+      // Layout modifications
+      ab = new PeptideChainSorter().remodel(ab);
+
+      // Structure modifications (create edges)
+      ab = new HingeAutoConnector().remodel(ab);
+      ab = new HingeToConstDomainAutoConnector().remodel(ab);
+      ab = new MutationAutoConnector().remodel(ab);
+
+      IndexedAutoConnector autoConnector = new IndexedAutoConnector();
+      ab = autoConnector.remodel(ab);
+      // log contains, what the connector did
+      ab.setAutoconnectionLog(autoConnector.getLog());
+
+      new HeapParatopeDetection(ab.getPeptides());
+    } catch (Exception e) {
+      LOG.error(e.getMessage(), e);
+      throw e;
+    }
+
+    return ab;
+  }
+
+}
@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.ChemElement;
+import org.roche.antibody.model.antibody.Connection;
+import org.roche.antibody.model.antibody.Domain;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.model.antibody.RNA;
+import org.roche.antibody.model.antibody.Sequence;
+import org.roche.antibody.services.antibody.AntibodyService;
+import org.roche.antibody.services.helmnotation.HELM;
+import org.roche.antibody.services.helmnotation.HelmNotationService;
+import org.roche.antibody.services.helmnotation.model.HELMChem;
+import org.roche.antibody.services.helmnotation.model.HELMElement;
+import org.roche.antibody.services.helmnotation.model.HELMPeptide;
+import org.roche.antibody.services.helmnotation.model.HELMRna;
+
+/**
+ * {@code CachedHelmService} creates the same HELM as {@link AntibodyService#toHELMString(Antibody)} and
+ * {@link SequenceService#toHELM(Sequence)}, but keeps the results:
+ * <ul>
+ * <li>the HELM sequence representation of each {@link Sequence}, e.g. "A.C.D" for a peptide, until its sequence
+ * changes</li>
+ * <li>the HELM string of each {@link Antibody}, until {@link #markModified(Antibody)} is called or one of its
+ * sequences or connections changes</li>
+ * </ul>
+ * The full string is assembled from the cached representations in linear time. Model objects are held weakly.
+ *
+ * @version $Id$
+ */
+public class CachedHelmService {
+
+  /** static Singleton instance */
+  private static CachedHelmService instance;
+
+  /** Sequence has identity equality, so the weak map is keyed by identity */
+  private final Map<Sequence, Fragment> fragments = new WeakHashMap<Sequence, Fragment>();
+
+  private final Map<Antibody, AntibodyHelm> antibodies = new WeakHashMap<Antibody, AntibodyHelm>();
+
+  /** Private constructor for singleton */
+  private CachedHelmService() {
+  }
+
+  /** Static getter method for retrieving the singleton instance */
+  public synchronized static CachedHelmService getInstance() {
+    if (instance == null) {
+      instance = new CachedHelmService();
+    }
+    return instance;
+  }
+
+  /**
+   * Marks the antibody as modified, e.g. after a domain, peptide or connection was changed. The next call of
+   * {@link #toHELMString(Antibody)} assembles the HELM again.
+   *
+   * @param ab the antibody
+   */
+  public synchronized void markModified(Antibody ab) {
+    getAntibodyHelm(ab).modificationCount++;
+  }
+
+  /**
+   * @param ab the antibody
+   * @return the number of times {@link #markModified(Antibody)} was called for the antibody
+   */
+  public synchronized int getModificationCount(Antibody ab) {
+    return getAntibodyHelm(ab).modificationCount;
+  }
+
+  /**
+   * Returns antibody HELM as String, like {@link AntibodyService#toHELMString(Antibody)}.
+   *
+   * @param ab the antibody
+   * @return HELM notation
+   */
+  public synchronized String toHELMString(Antibody ab) {
+    List<Connection> connections = ab.getConnections();
+    AntibodyHelm abHelm = getAntibodyHelm(ab);
+    if (abHelm.isValid(ab, connections)) {
+      return abHelm.helm;
+    }
+
+    Map<Sequence, String> names = new IdentityHashMap<Sequence, String>();
+    StringBuilder sb = new StringBuilder(abHelm.helm == null ? 256 : abHelm.helm.length() + 64);
+    appendElements(sb, ab.getPeptides(), HELM.PEPTIDE, names);
+    appendElements(sb, ab.getChemElements(), HELM.CHEM, names);
+    appendElements(sb, ab.getRnaElements(), HELM.RNA, names);
+    chop(sb, !names.isEmpty());
+    sb.append(HELM.DOLLAR_DELIMITTER);
+
+    boolean hasConnections = false;
+    for (Connection con : connections) {
+      String source = names.get(con.getSource());
+      String target = names.get(con.getTarget());
+      if (source == null || target == null) {
+        // not part of the HELM code, like in HELMCode.addHELMConnection
+        continue;
+      }
+      sb.append(source).append(HELM.COMMA_DELIMITTER).append(target).append(HELM.COMMA_DELIMITTER)
+          .append(con.getSourcePosition()).append(HELM.DOUBLE_DOT_DELIMITTER).append(con.getSourceRest())
+          .append(HELM.MINUS_DELIMITTER).append(con.getTargetPosition()).append(HELM.DOUBLE_DOT_DELIMITTER)
+          .append(con.getTargetRest()).append(HELM.PIPE_DELIMITTER);
+      hasConnections = true;
+    }
+    chop(sb, hasConnections);
+    sb.append(HELM.DOLLAR_DELIMITTER).append(HELM.DOLLAR_DELIMITTER).append(HELM.DOLLAR_DELIMITTER);
+
+    abHelm.update(ab, connections, sb.toString());
+    return abHelm.helm;
+  }
+
+  /**
+   * Converts a {@link Sequence} to a new {@link HELMElement}, like {@link SequenceService#toHELM(Sequence)}.
+   *
+   * @param sequence the sequence
+   * @return {@link HELMElement} or null for unknown sequence types
+   */
+  public HELMElement toHELM(Sequence sequence) {
+    HELMElement element = null;
+    if (sequence instanceof Peptide || sequence instanceof Domain) {
+      element = new HELMPeptide();
+    }
+    if (sequence instanceof RNA) {
+      element = new HELMRna();
+    }
+    if (sequence instanceof ChemElement) {
+      element = new HELMChem();
+    }
+    if (element != null) {
+      element.setSequenceRepresentation(getSequenceRepresentation(sequence));
+    }
+    return element;
+  }
+
+  /**
+   * @param sequence the sequence
+   * @return HELM representation of the sequence, dot separated monomers for peptides and domains
+   * @see HelmNotationService#simpleSequenceToSequenceRepresentation(String)
+   */
+  public synchronized String getSequenceRepresentation(Sequence sequence) {
+    String source = sequence.getSequence();
+    Fragment fragment = fragments.get(sequence);
+    if (fragment != null && fragment.isValid(source)) {
+      return fragment.representation;
+    }
+    String representation = source;
+    if (source != null && (sequence instanceof Peptide || sequence instanceof Domain)) {
+      StringBuilder sb = new StringBuilder(Math.max(2 * source.length() - 1, 0));
+      for (int i = 0; i < source.length(); i++) {
+        if (i > 0) {
+          sb.append('.');
+        }
+        sb.append(source.charAt(i));
+      }
+      representation = sb.toString();
+    }
+    fragments.put(sequence, new Fragment(source, representation));
+    return representation;
+  }
+
+  private void appendElements(StringBuilder sb, List<? extends Sequence> sequences, String identifier,
+      Map<Sequence, String> names) {
+    int number = 1;
+    for (Sequence sequence : sequences) {
+      String name = identifier + number++;
+      names.put(sequence, name);
+      sb.append(name).append('{').append(getSequenceRepresentation(sequence)).append('}')
+          .append(HELM.PIPE_DELIMITTER);
+    }
+  }
+
+  /** removes the trailing delimiter */
+  private static void chop(StringBuilder sb, boolean appended) {
+    if (appended) {
+      sb.setLength(sb.length() - 1);
+    }
+  }
+
+  private AntibodyHelm getAntibodyHelm(Antibody ab) {
+    AntibodyHelm abHelm = antibodies.get(ab);
+    if (abHelm == null) {
+      abHelm = new AntibodyHelm();
+      antibodies.put(ab, abHelm);
+    }
+    return abHelm;
+  }
+
+  /**
+   * Representation of one sequence and the sequence it was created from.
+   */
+  private static class Fragment {
+
+    private String source;
+
+    private final String representation;
+
+    private Fragment(String source, String representation) {
+      this.source = source;
+      this.representation = representation;
+    }
+
+    private boolean isValid(String currentSource) {
+      if (source == currentSource) {
+        return true;
+      }
+      if (source != null && source.equals(currentSource)) {
+        // same content, compare by reference next time
+        source = currentSource;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * HELM of one antibody and a snapshot of everything it was assembled from. The snapshot is compared by reference, it
+   * detects changes made without {@link CachedHelmService#markModified(Antibody)}.
+   */
+  private static class AntibodyHelm {
+
+    private int modificationCount;
+
+    private int helmModificationCount = -1;
+
+    private String helm;
+
+    private Object[] elements;
+
+    private Connection[] connections;
+
+    private Object[] connectionValues;
+
+    private boolean isValid(Antibody ab, List<Connection> currentConnections) {
+      if (helm == null || helmModificationCount != modificationCount) {
+        return false;
+      }
+      if (!Arrays.equals(elements, snapshotElements(ab))) {
+        return false;
+      }
+      if (connections.length != currentConnections.size()) {
+        return false;
+      }
+      for (int i = 0; i < connections.length; i++) {
+        if (connections[i] != currentConnections.get(i)) {
+          return false;
+        }
+      }
+      return Arrays.equals(connectionValues, snapshotConnectionValues(connections));
+    }
+
+    private void update(Antibody ab, List<Connection> currentConnections, String newHelm) {
+      helm = newHelm;
+      helmModificationCount = modificationCount;
+      elements = snapshotElements(ab);
+      connections = currentConnections.toArray(new Connection[currentConnections.size()]);
+      connectionValues = snapshotConnectionValues(connections);
+    }
+
+    private static Object[] snapshotElements(Antibody ab) {
+      List<Peptide> peptides = ab.getPeptides();
+      List<ChemElement> chemElements = ab.getChemElements();
+      List<RNA> rnaElements = ab.getRnaElements();
+      Object[] snapshot = new Object[3 + 2 * (peptides.size() + chemElements.size() + rnaElements.size())];
+      snapshot[0] = peptides.size();
+      snapshot[1] = chemElements.size();
+      snapshot[2] = rnaElements.size();
+      int i = snapshotSequences(snapshot, 3, peptides);
+      i = snapshotSequences(snapshot, i, chemElements);
+      snapshotSequences(snapshot, i, rnaElements);
+      return snapshot;
+    }
+
+    private static int snapshotSequences(Object[] snapshot, int start, List<? extends Sequence> sequences) {
+      int i = start;
+      for (Sequence sequence : sequences) {
+        snapshot[i++] = sequence;
+        snapshot[i++] = sequence.getSequence();
+      }
+      return i;
+    }
+
+    private static Object[] snapshotConnectionValues(Connection[] connections) {
+      Object[] snapshot = new Object[6 * connections.length];
+      int i = 0;
+      for (Connection con : connections) {
+        snapshot[i++] = con.getSource();
+        snapshot[i++] = con.getTarget();
+        snapshot[i++] = con.getSourcePosition();
+        snapshot[i++] = con.getSourceRest();
+        snapshot[i++] = con.getTargetPosition();
+        snapshot[i++] = con.getTargetRest();
+      }
+      return snapshot;
+    }
+  }
+
+}
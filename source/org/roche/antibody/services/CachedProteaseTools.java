@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services;
+
+import java.util.regex.Matcher;
+
+import org.roche.antibody.services.tools.ProteaseCleavageResult;
+import org.roche.antibody.services.tools.ProteaseTools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code CachedProteaseTools} has the same static methods as {@link ProteaseTools}, but matches with the compiled
+ * motifs of the {@link ProteaseCatalog}. Plugins, e.g. the protease entries of the domain context menu, call it instead
+ * of {@link ProteaseTools}: the first protease checked against a domain matches all active proteases at once, the
+ * others are answered from the cleavage sites kept for the sequence.
+ * <p>
+ * Descriptions of the {@link ConfigRepository} use its catalog, any other description and the motif based methods use
+ * the compiled motif only.
+ *
+ * @version $Id$
+ */
+public final class CachedProteaseTools {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(CachedProteaseTools.class);
+
+  private CachedProteaseTools() {
+  }
+
+  /**
+   * Same as {@link ProteaseTools#sequenceHasCleaveSite(String, ProteaseDescription)}.
+   *
+   * @param sequence the sequence to examine
+   * @param description the protease
+   * @return true, if the motif of the protease matches
+   */
+  public static boolean sequenceHasCleaveSite(String sequence, ProteaseDescription description) {
+    ProteaseCatalog catalog = getCatalog();
+    if (catalog != null) {
+      return catalog.hasCleavageSite(sequence, description);
+    }
+    return sequenceHasCleavageSite(sequence, description.getMotif(), description.getCaseSensitivity());
+  }
+
+  /**
+   * Same as {@link ProteaseTools#sequenceHasCleavageSite(String, String, String)}.
+   *
+   * @param sequence the sequence to examine
+   * @param motif the recognition pattern of the protease
+   * @param caseSensitivity whether to match case sensitive or not
+   * @return true, if the pattern matches
+   */
+  public static boolean sequenceHasCleavageSite(String sequence, String motif, String caseSensitivity) {
+    return ProteaseCatalog.compileMotif(motif, caseSensitivity).matcher(sequence).matches();
+  }
+
+  /**
+   * Same as {@link ProteaseTools#doProteaseCleavage(String, ProteaseDescription)}.
+   *
+   * @param sequence the sequence to cleave
+   * @param protease the protease
+   * @return the cleavage result, without cut if the motif does not match
+   */
+  public static ProteaseCleavageResult doProteaseCleavage(String sequence, ProteaseDescription protease) {
+    ProteaseCatalog catalog = getCatalog();
+    if (catalog != null) {
+      return catalog.cleave(sequence, protease);
+    }
+    return doProteaseCleavage(sequence, protease.getMotif(), protease.getCaseSensitivity(),
+        protease.getCaptureGroup(), protease.getAppendedAfter());
+  }
+
+  /**
+   * Same as {@link ProteaseTools#doProteaseCleavage(String, String, String, int, String)}.
+   *
+   * @param sequence the peptide sequence to cleave
+   * @param motif the recognition pattern of the protease
+   * @param caseSensitivity whether to match case sensitive or not
+   * @param captureGroup the capture group that defines the remaining sequence
+   * @param appendedAfter the sequence to append after the cleave site
+   * @return the cleavage result, without cut if the motif does not match
+   */
+  public static ProteaseCleavageResult doProteaseCleavage(String sequence, String motif, String caseSensitivity,
+      int captureGroup, String appendedAfter) {
+    ProteaseCleavageResult result = new ProteaseCleavageResult(sequence, appendedAfter);
+    Matcher matcher = ProteaseCatalog.compileMotif(motif, caseSensitivity).matcher(sequence);
+    if (matcher.matches()) {
+      result.setLeftCut(matcher.start(captureGroup));
+      result.setRightCut(matcher.end(captureGroup));
+    }
+    return result;
+  }
+
+  private static ProteaseCatalog getCatalog() {
+    try {
+      return ProteaseCatalog.getInstance();
+    } catch (Exception e) {
+      LOG.debug("No protease catalog, matching motifs only: " + e.getMessage());
+      return null;
+    }
+  }
+
+}
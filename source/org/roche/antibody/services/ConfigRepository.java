@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.prefs.Preferences;
+
+import org.roche.antibody.model.antibody.DomainLibraryValues;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.quattroresearch.antibody.Mutation;
+
+/**
+ * 
+ * {@code ConfigRepository} caches the libraries of the {@link ConfigFileService} in an immutable {@link Snapshot}.
+ * Every library is fetched at most once per snapshot. A new snapshot is only created, when the local configuration
+ * database (SQLite file change counter, modification time, size) or the library settings of the user changed. The
+ * version of the snapshot can be used by other caches to find out whether the libraries changed.
+ * <p>
+ * Master libraries of a backend can not be checked for changes, they are reloaded after {@link #invalidate()} or when
+ * the settings changed.
+ * 
+ * @version $Id$
+ */
+public final class ConfigRepository {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(ConfigRepository.class);
+
+  private static final String SQLITE_URL_PREFIX = "jdbc:sqlite:";
+
+  /** offset of the file change counter in the header of a SQLite database */
+  private static final int SQLITE_CHANGE_COUNTER_OFFSET = 24;
+
+  private static ConfigRepository instance;
+
+  private Snapshot snapshot;
+
+  private long lastVersion;
+
+  private ConfigRepository() {
+  }
+
+  public static synchronized ConfigRepository getInstance() {
+    if (instance == null) {
+      instance = new ConfigRepository();
+    }
+    return instance;
+  }
+
+  /**
+   * Returns the current snapshot. A new snapshot is created, when the configuration changed since the last call.
+   * 
+   * @return snapshot of the configuration
+   */
+  public synchronized Snapshot getSnapshot() {
+    String fingerprint = createFingerprint();
+    if (snapshot == null || !snapshot.fingerprint.equals(fingerprint)) {
+      snapshot = new Snapshot(++lastVersion, fingerprint);
+      LOG.debug("Configuration snapshot " + lastVersion + " created (" + fingerprint + ")");
+    }
+    return snapshot;
+  }
+
+  /**
+   * @return version of the current snapshot, changes whenever the libraries may have changed
+   */
+  public long getVersion() {
+    return getSnapshot().getVersion();
+  }
+
+  public List<DomainLibraryValues> getDomainLibrary() throws Exception {
+    return getSnapshot().getDomainLibrary();
+  }
+
+  public List<Mutation> getMutationLibrary() throws Exception {
+    return getSnapshot().getMutationLibrary();
+  }
+
+  public List<String> getAutoConnectorRules() throws Exception {
+    return getSnapshot().getAutoConnectorRules();
+  }
+
+  public List<ProteaseDescription> getProteaseDescriptions() throws Exception {
+    return getSnapshot().getProteaseDescriptions();
+  }
+
+  /**
+   * Forces all libraries to be fetched again on the next access.
+   */
+  public synchronized void invalidate() {
+    snapshot = null;
+  }
+
+  /**
+   * The fingerprint consists of the library settings and the state of the local configuration database.
+   */
+  private String createFingerprint() {
+    Preferences userPrefs = PreferencesService.getInstance().getUserPrefs();
+    StringBuilder fingerprint = new StringBuilder();
+    fingerprint.append(userPrefs.getBoolean(PreferencesService.USE_MASTER_DOMAIN_LIB,
+        PreferencesDefault.USE_MASTER_LIBRARIES)).append('|');
+    fingerprint.append(userPrefs.getBoolean(PreferencesService.USE_MASTER_MUTATION_LIB,
+        PreferencesDefault.USE_MASTER_LIBRARIES)).append('|');
+    fingerprint.append(userPrefs.getBoolean(PreferencesService.USE_MASTER_AUTOCONNECTOR_CONFIG,
+        PreferencesDefault.USE_MASTER_LIBRARIES)).append('|');
+    fingerprint.append(userPrefs.get(PreferencesService.USER_DOMAIN_LIB_TABLE, null)).append('|');
+    fingerprint.append(userPrefs.get(PreferencesService.USER_MUTATION_LIB_TABLE, null)).append('|');
+    fingerprint.append(userPrefs.get(PreferencesService.USER_AUTOCONNECTOR_TABLE, null)).append('|');
+    fingerprint.append(userPrefs.get(PreferencesService.USER_PROTEASE_TABLE, null)).append('|');
+
+    File database = getDatabaseFile();
+    if (database != null && database.isFile()) {
+      fingerprint.append(database.lastModified()).append('|');
+      fingerprint.append(database.length()).append('|');
+      fingerprint.append(readChangeCounter(database));
+      File wal = new File(database.getPath() + "-wal");
+      if (wal.isFile()) {
+        fingerprint.append('|').append(wal.lastModified()).append('|').append(wal.length());
+      }
+    }
+    return fingerprint.toString();
+  }
+
+  private File getDatabaseFile() {
+    String url = PreferencesService.getInstance().getApplicationPrefs()
+        .getString(PreferencesService.CONFIG_LOADER_URL);
+    if (url == null || !url.startsWith(SQLITE_URL_PREFIX)) {
+      return null;
+    }
+    String path = url.substring(SQLITE_URL_PREFIX.length());
+    int optionsStart = path.indexOf('?');
+    if (optionsStart != -1) {
+      path = path.substring(0, optionsStart);
+    }
+    return new File(path);
+  }
+
+  /**
+   * Reads the file change counter from the SQLite header, which is incremented by every committed transaction.
+   */
+  private int readChangeCounter(File database) {
+    RandomAccessFile file = null;
+    try {
+      file = new RandomAccessFile(database, "r");
+      if (file.length() < SQLITE_CHANGE_COUNTER_OFFSET + 4) {
+        return -1;
+      }
+      file.seek(SQLITE_CHANGE_COUNTER_OFFSET);
+      return file.readInt();
+    } catch (IOException e) {
+      LOG.warn("Could not read change counter of " + database + ": " + e.getMessage());
+      return -1;
+    } finally {
+      if (file != null) {
+        try {
+          file.close();
+        } catch (IOException e) {
+          LOG.warn(e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * {@code Snapshot} holds the libraries of one configuration state. The lists can not be modified, each library is
+   * fetched on first access.
+   */
+  public static final class Snapshot {
+
+    private final long version;
+
+    private final String fingerprint;
+
+    private List<DomainLibraryValues> domainLibrary;
+
+    private List<Mutation> mutationLibrary;
+
+    private List<String> autoConnectorRules;
+
+    private List<ProteaseDescription> proteaseDescriptions;
+
+    private Snapshot(long version, String fingerprint) {
+      this.version = version;
+      this.fingerprint = fingerprint;
+    }
+
+    public long getVersion() {
+      return version;
+    }
+
+    public synchronized List<DomainLibraryValues> getDomainLibrary() throws Exception {
+      if (domainLibrary == null) {
+        domainLibrary = Collections.unmodifiableList(ConfigFileService.getInstance().fetchDomainLibrary());
+      }
+      return domainLibrary;
+    }
+
+    public synchronized List<Mutation> getMutationLibrary() throws Exception {
+      if (mutationLibrary == null) {
+        mutationLibrary = Collections.unmodifiableList(ConfigFileService.getInstance().fetchMutationLibrary());
+      }
+      return mutationLibrary;
+    }
+
+    public synchronized List<String> getAutoConnectorRules() throws Exception {
+      if (autoConnectorRules == null) {
+        autoConnectorRules = Collections.unmodifiableList(ConfigFileService.getInstance().fetchAutoConnectorRules());
+      }
+      return autoConnectorRules;
+    }
+
+    public synchronized List<ProteaseDescription> getProteaseDescriptions() throws Exception {
+      if (proteaseDescriptions == null) {
+        proteaseDescriptions =
+            Collections.unmodifiableList(ConfigFileService.getInstance().getProteaseDescriptions());
+      }
+      return proteaseDescriptions;
+    }
+  }
+
+}
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services;
+
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.roche.antibody.services.helmnotation.HELM;
+import org.roche.antibody.services.helmnotation.HelmNotationService;
+import org.roche.antibody.services.helmnotation.model.HELMChem;
+import org.roche.antibody.services.helmnotation.model.HELMCode;
+import org.roche.antibody.services.helmnotation.model.HELMConnection;
+import org.roche.antibody.services.helmnotation.model.HELMElement;
+import org.roche.antibody.services.helmnotation.model.HELMPeptide;
+import org.roche.antibody.services.helmnotation.model.HELMRna;
+
+/**
+ * {@code HelmNotationParser} builds a {@link HELMCode} from HELM notation in one pass over the string, like
+ * {@link HelmNotationService#toHELMCode(String)}. Errors are reported as {@link ParseException} with the offset of the
+ * offending character.
+ *
+ * <pre>
+ * notation    := elements '$' connections ['$' ...]
+ * elements    := element ('|' element)*
+ * element     := ('PEPTIDE' | 'CHEM' | 'RNA') number '{' representation '}'
+ * connections := [connection ('|' connection)*]
+ * connection  := name ',' name ',' number ':' rest '-' number ':' rest
+ * </pre>
+ *
+ * Hydrogen bonds and annotations after the connections are not parsed. {@link #structuralHash(HELMCode)} compares
+ * codes independent of the numbering and order of their elements and connections.
+ *
+ * @version $Id$
+ */
+public class HelmNotationParser {
+
+  private final String notation;
+
+  private final int length;
+
+  private int pos;
+
+  private HelmNotationParser(String notation) {
+    this.notation = notation;
+    this.length = notation.length();
+  }
+
+  /**
+   * @param notation HELM notation
+   * @return the parsed {@link HELMCode}
+   * @throws ParseException if the notation is invalid, {@link ParseException#getErrorOffset()} is the position in the
+   *           notation
+   */
+  public static HELMCode parse(String notation) throws ParseException {
+    if (notation == null) {
+      throw new ParseException("No HELM notation given", 0);
+    }
+    return new HelmNotationParser(notation).parseCode();
+  }
+
+  private HELMCode parseCode() throws ParseException {
+    HELMCode code = new HELMCode();
+    Map<String, HELMElement> nameToElement = new HashMap<String, HELMElement>();
+    if (!at(HELM.DOLLAR_DELIMITER_CHAR)) {
+      parseElement(code, nameToElement);
+      while (at(HELM.PIPE_DELIMITER_CHAR)) {
+        pos++;
+        parseElement(code, nameToElement);
+      }
+    }
+    if (pos == length) {
+      return code;
+    }
+    expect(HELM.DOLLAR_DELIMITER_CHAR);
+
+    if (pos < length && !at(HELM.DOLLAR_DELIMITER_CHAR)) {
+      parseConnection(code, nameToElement);
+      while (at(HELM.PIPE_DELIMITER_CHAR)) {
+        pos++;
+        parseConnection(code, nameToElement);
+      }
+    }
+    if (pos < length) {
+      expect(HELM.DOLLAR_DELIMITER_CHAR);
+    }
+    return code;
+  }
+
+  private void parseElement(HELMCode code, Map<String, HELMElement> nameToElement) throws ParseException {
+    int start = pos;
+    String name = parseName();
+    HELMElement element;
+    if (name.startsWith(HELM.PEPTIDE)) {
+      element = new HELMPeptide();
+    } else if (name.startsWith(HELM.CHEM)) {
+      element = new HELMChem();
+    } else if (name.startsWith(HELM.RNA)) {
+      element = new HELMRna();
+    } else {
+      throw new ParseException("Unknown polymer type '" + name + "'", start);
+    }
+    if (nameToElement.containsKey(name)) {
+      throw new ParseException("Duplicate polymer '" + name + "'", start);
+    }
+
+    expect(HELM.CURLY_BRACES_OPEN);
+    int representationStart = pos;
+    int end = notation.indexOf(HELM.CURLY_BRACES_CLOSE, pos);
+    if (end < 0) {
+      throw new ParseException("Missing '" + HELM.CURLY_BRACES_CLOSE + "' of polymer '" + name + "'",
+          representationStart - 1);
+    }
+    element.setSequenceRepresentation(notation.substring(representationStart, end));
+    pos = end + 1;
+
+    code.addHELMElement(element);
+    nameToElement.put(name, element);
+  }
+
+  private void parseConnection(HELMCode code, Map<String, HELMElement> nameToElement) throws ParseException {
+    HELMConnection connection = new HELMConnection();
+    connection.setSource(parseElementReference(nameToElement));
+    expect(',');
+    connection.setTarget(parseElementReference(nameToElement));
+    expect(',');
+    connection.setSourcePosition(parseNumber());
+    expect(':');
+    connection.setSourceRest(parseName());
+    expect('-');
+    connection.setTargetPosition(parseNumber());
+    expect(':');
+    connection.setTargetRest(parseName());
+    code.addHELMConnection(connection);
+  }
+
+  private HELMElement parseElementReference(Map<String, HELMElement> nameToElement) throws ParseException {
+    int start = pos;
+    String name = parseName();
+    HELMElement element = nameToElement.get(name);
+    if (element == null) {
+      throw new ParseException("Unknown polymer '" + name + "' in connection", start);
+    }
+    return element;
+  }
+
+  /** letters followed by digits, e.g. PEPTIDE1 or R3 */
+  private String parseName() throws ParseException {
+    int start = pos;
+    while (pos < length && Character.isLetterOrDigit(notation.charAt(pos))) {
+      pos++;
+    }
+    if (pos == start) {
+      throw error("Name expected");
+    }
+    return notation.substring(start, pos);
+  }
+
+  private int parseNumber() throws ParseException {
+    int start = pos;
+    int number = 0;
+    while (pos < length && notation.charAt(pos) >= '0' && notation.charAt(pos) <= '9') {
+      number = number * 10 + (notation.charAt(pos) - '0');
+      pos++;
+      if (number < 0) {
+        throw new ParseException("Number too large", start);
+      }
+    }
+    if (pos == start) {
+      throw error("Number expected");
+    }
+    return number;
+  }
+
+  private boolean at(char c) {
+    return pos < length && notation.charAt(pos) == c;
+  }
+
+  private void expect(char c) throws ParseException {
+    if (!at(c)) {
+      throw error("'" + c + "' expected");
+    }
+    pos++;
+  }
+
+  private ParseException error(String message) {
+    String found = pos < length ? "'" + notation.charAt(pos) + "'" : "end of notation";
+    return new ParseException(message + ", found " + found, pos);
+  }
+
+  /**
+   * Hash of the structure of a {@link HELMCode}: the type and sequence representation of its elements and how they are
+   * connected. It does not depend on the numbering and order of elements and connections or the direction of
+   * connections, so it is equal for notations, which differ only therein. Codes with different hashes are different.
+   *
+   * @param code the code
+   * @return structural hash
+   */
+  public static long structuralHash(HELMCode code) {
+    List<HELMElement> elements = code.getAllElements();
+    List<HELMConnection> connections = code.getAllConnections();
+
+    // content of each element, refined by the content of its neighbors
+    Map<HELMElement, Long> contentHashes = new IdentityHashMap<HELMElement, Long>();
+    Map<HELMElement, Long> neighborHashes = new IdentityHashMap<HELMElement, Long>();
+    for (HELMElement element : elements) {
+      contentHashes.put(element, mix(hash(element.getIdentifier()) * 31 + hash(element.getSequenceRepresentation())));
+      neighborHashes.put(element, 0L);
+    }
+    for (HELMConnection con : connections) {
+      long sourcePort = portHash(con.getSourcePosition(), con.getSourceRest());
+      long targetPort = portHash(con.getTargetPosition(), con.getTargetRest());
+      addNeighbor(neighborHashes, con.getSource(), contentHash(contentHashes, con.getTarget()), sourcePort, targetPort);
+      addNeighbor(neighborHashes, con.getTarget(), contentHash(contentHashes, con.getSource()), targetPort, sourcePort);
+    }
+
+    Map<HELMElement, Long> elementHashes = new IdentityHashMap<HELMElement, Long>();
+    long hash = mix(elements.size() * 31L + connections.size());
+    for (HELMElement element : elements) {
+      long elementHash = mix(contentHashes.get(element) + 31 * neighborHashes.get(element));
+      elementHashes.put(element, elementHash);
+      hash += elementHash;
+    }
+    for (HELMConnection con : connections) {
+      long sourceEnd = mix(contentHash(elementHashes, con.getSource()) + 31
+          * portHash(con.getSourcePosition(), con.getSourceRest()));
+      long targetEnd = mix(contentHash(elementHashes, con.getTarget()) + 31
+          * portHash(con.getTargetPosition(), con.getTargetRest()));
+      hash += mix(sourceEnd + targetEnd + (sourceEnd ^ targetEnd));
+    }
+    return mix(hash);
+  }
+
+  private static void addNeighbor(Map<HELMElement, Long> neighborHashes, HELMElement element, long neighborHash,
+      long ownPort, long neighborPort) {
+    Long current = neighborHashes.get(element);
+    if (current != null) {
+      neighborHashes.put(element, current + mix(neighborHash + 31 * (ownPort + 31 * neighborPort)));
+    }
+  }
+
+  private static long contentHash(Map<HELMElement, Long> hashes, HELMElement element) {
+    Long hash = hashes.get(element);
+    return hash == null ? 0 : hash;
+  }
+
+  private static long portHash(int position, String rest) {
+    return mix(position * 31L + hash(rest));
+  }
+
+  /** 64 bit FNV-1a */
+  private static long hash(String s) {
+    if (s == null) {
+      return 0;
+    }
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < s.length(); i++) {
+      hash ^= s.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /** finalizer of SplitMix64 */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.helm.notation.MonomerFactory;
+import org.helm.notation.MonomerStore;
+import org.helm.notation.model.Monomer;
+import org.helm.notation.tools.ComplexNotationParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code MonomerRegistry} registers monomers in the local monomer store of the HELM editor. It remembers, which
+ * monomers and notations were already registered, so repeated registrations do not touch the store again. Changes are
+ * not written to disk right away: {@link #flushAsync()} saves the monomer cache once in the background, no matter how
+ * many monomers were registered before.
+ * <p>
+ * The monomer cache is saved while holding the lock of the {@link MonomerFactory}, registrations wait for a running
+ * save.
+ *
+ * @version $Id$
+ */
+public class MonomerRegistry {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MonomerRegistry.class);
+
+  /** number of notations, whose inline structures are remembered as registered */
+  private static final int MAX_REGISTERED_NOTATIONS = 64;
+
+  /** static Singleton instance */
+  private static MonomerRegistry instance;
+
+  /** single background thread, which ends when idle */
+  private final ExecutorService saveExecutor = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>());
+
+  /** the store the registered monomers and notations belong to */
+  private MonomerStore registeredStore;
+
+  private final Set<String> registeredMonomers = new HashSet<String>();
+
+  private final Set<String> registeredNotations = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+      return size() > MAX_REGISTERED_NOTATIONS;
+    }
+  });
+
+  private boolean modified;
+
+  private Future<?> pendingSave;
+
+  private int saveCount;
+
+  /** Private constructor for singleton */
+  private MonomerRegistry() {
+  }
+
+  /** Static getter method for retrieving the singleton instance */
+  public synchronized static MonomerRegistry getInstance() {
+    if (instance == null) {
+      instance = new MonomerRegistry();
+    }
+    return instance;
+  }
+
+  /**
+   * @param polymerType e.g. {@link Monomer#CHEMICAL_POLYMER_TYPE}
+   * @param monomerId id of the monomer
+   * @return true, if the monomer is in the local store
+   * @throws Exception if the monomer store is not available
+   */
+  public synchronized boolean isRegistered(String polymerType, String monomerId) throws Exception {
+    MonomerStore store = getStore();
+    String key = polymerType + '\t' + monomerId;
+    if (registeredMonomers.contains(key)) {
+      return true;
+    }
+    Map<String, Monomer> monomers = store.getMonomerDB().get(polymerType);
+    if (monomers != null && monomers.containsKey(monomerId)) {
+      registeredMonomers.add(key);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Adds the monomer to the local store. The store is saved by the next {@link #flushAsync()}.
+   *
+   * @param monomer the monomer
+   * @throws Exception if the monomer could not be added
+   */
+  public synchronized void register(Monomer monomer) throws Exception {
+    MonomerFactory factory = MonomerFactory.getInstance();
+    MonomerStore store = getStore();
+    synchronized (factory) {
+      store.addMonomer(monomer, true);
+    }
+    registeredMonomers.add(monomer.getPolymerType() + '\t' + monomer.getAlternateId());
+    modified = true;
+  }
+
+  /**
+   * Registers the inline structures (SMILES) of the notation in the local store. Notations, which were registered
+   * before, are skipped. The store is saved by the next {@link #flushAsync()}.
+   *
+   * @param helmNotation HELM notation
+   * @throws Exception if the notation could not be parsed
+   */
+  public synchronized void registerInlineStructures(String helmNotation) throws Exception {
+    MonomerFactory factory = MonomerFactory.getInstance();
+    MonomerStore store = getStore();
+    if (registeredNotations.contains(helmNotation)) {
+      return;
+    }
+    synchronized (factory) {
+      int monomerCount = countMonomers(store);
+      ComplexNotationParser.parse(helmNotation);
+      if (countMonomers(store) != monomerCount) {
+        modified = true;
+      }
+    }
+    registeredNotations.add(helmNotation);
+  }
+
+  private static int countMonomers(MonomerStore store) {
+    int count = store.getSmilesMonomerDB().size();
+    for (Map<String, Monomer> monomers : store.getMonomerDB().values()) {
+      count += monomers.size();
+    }
+    return count;
+  }
+
+  /**
+   * Returns the store of the {@link MonomerFactory}. If it was replaced, nothing is known to be registered anymore.
+   */
+  private MonomerStore getStore() throws Exception {
+    MonomerStore store = MonomerFactory.getInstance().getMonomerStore();
+    if (store != registeredStore) {
+      registeredStore = store;
+      registeredMonomers.clear();
+      registeredNotations.clear();
+    }
+    return store;
+  }
+
+  /**
+   * Saves the monomer cache in the background, if monomers were registered since the last save. A save, which did not
+   * start yet, includes all registrations until it starts.
+   */
+  public synchronized void flushAsync() {
+    if (!modified || (pendingSave != null && !pendingSave.isDone())) {
+      return;
+    }
+    modified = false;
+    pendingSave = saveExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        save();
+      }
+    });
+  }
+
+  private void save() {
+    long startTime = System.currentTimeMillis();
+    try {
+      MonomerFactory factory = MonomerFactory.getInstance();
+      synchronized (factory) {
+        factory.saveMonomerCache();
+      }
+      synchronized (this) {
+        saveCount++;
+      }
+      LOG.debug("Monomer cache saved in {}ms.", System.currentTimeMillis() - startTime);
+    } catch (Exception e) {
+      synchronized (this) {
+        modified = true;
+      }
+      LOG.error("Monomer cache could not be saved: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * @return true, if registrations are not saved yet
+   */
+  public synchronized boolean isModified() {
+    return modified || (pendingSave != null && !pendingSave.isDone());
+  }
+
+  /**
+   * @return number of saves of the monomer cache
+   */
+  public synchronized int getSaveCount() {
+    return saveCount;
+  }
+
+}
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.roche.antibody.services.tools.ProteaseCleavageResult;
+import org.roche.antibody.services.tools.ProteaseTools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code ProteaseCatalog} holds the motifs of all active proteases as compiled patterns. It gives the same results as
+ * {@link ProteaseTools#sequenceHasCleaveSite(String, ProteaseDescription)} and
+ * {@link ProteaseTools#doProteaseCleavage(String, ProteaseDescription)}, which compile the motif on every call.
+ * {@link #findCleavageSites(String)} checks a sequence against all proteases at once and remembers the result for the
+ * last {@link #MAX_CACHED_SEQUENCES} sequences, so context menus of domains can be built without matching again.
+ * <p>
+ * The catalog of the current configuration is returned by {@link #getInstance()}, it is compiled again only when
+ * {@link ConfigRepository} has new protease descriptions. Plugins use it through {@link CachedProteaseTools}. Motifs of
+ * descriptions, which are not part of a catalog, are compiled once as well and kept for the last
+ * {@link #MAX_CACHED_MOTIFS} motifs.
+ *
+ * @version $Id$
+ */
+public final class ProteaseCatalog {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(ProteaseCatalog.class);
+
+  private static final String CASE_INSENSITIVE = "CASE_INSENSITIVE";
+
+  /** number of sequences, whose cleavage sites are kept */
+  public static final int MAX_CACHED_SEQUENCES = 256;
+
+  /** number of compiled motifs kept */
+  public static final int MAX_CACHED_MOTIFS = 256;
+
+  /** flags and motif to its compiled pattern */
+  private static final Map<String, Pattern> compiledMotifs = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+      return size() > MAX_CACHED_MOTIFS;
+    }
+  };
+
+  /** the descriptions of the last catalog */
+  private static List<ProteaseDescription> cachedDescriptions;
+
+  private static ProteaseCatalog cachedCatalog;
+
+  private final List<CompiledProtease> proteases = new ArrayList<CompiledProtease>();
+
+  private final Map<ProteaseDescription, CompiledProtease> byDescription =
+      new IdentityHashMap<ProteaseDescription, CompiledProtease>();
+
+  private final Map<String, List<CleavageSite>> cleavageSites =
+      new LinkedHashMap<String, List<CleavageSite>>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<CleavageSite>> eldest) {
+          return size() > MAX_CACHED_SEQUENCES;
+        }
+      };
+
+  /**
+   * @return catalog of the protease descriptions of the {@link ConfigRepository}
+   * @throws Exception if the descriptions could not be loaded
+   */
+  public static ProteaseCatalog getInstance() throws Exception {
+    return of(ConfigRepository.getInstance().getProteaseDescriptions());
+  }
+
+  /**
+   * Returns the catalog of the given descriptions. The catalog is only compiled again, if another list instance is
+   * given than for the last call.
+   *
+   * @param descriptions protease descriptions, e.g. from {@link ConfigRepository#getProteaseDescriptions()}
+   * @return catalog of the descriptions
+   */
+  public static synchronized ProteaseCatalog of(List<ProteaseDescription> descriptions) {
+    if (cachedCatalog == null || cachedDescriptions != descriptions) {
+      cachedCatalog = new ProteaseCatalog(descriptions);
+      cachedDescriptions = descriptions;
+    }
+    return cachedCatalog;
+  }
+
+  /**
+   * Compiles the motifs of all active proteases. Proteases with invalid motifs are left out.
+   *
+   * @param descriptions protease descriptions, must not be changed afterwards
+   */
+  public ProteaseCatalog(List<ProteaseDescription> descriptions) {
+    long startTime = System.currentTimeMillis();
+    for (ProteaseDescription description : descriptions) {
+      CompiledProtease protease = compile(description);
+      byDescription.put(description, protease);
+      if (protease != null && description.getIsActive()) {
+        proteases.add(protease);
+      }
+    }
+    LOG.debug("Protease catalog with {} proteases compiled in {}ms.", proteases.size(),
+        System.currentTimeMillis() - startTime);
+  }
+
+  private static CompiledProtease compile(ProteaseDescription description) {
+    if (description.getMotif() == null) {
+      LOG.warn("Protease " + description.getProteaseName() + " has no motif.");
+      return null;
+    }
+    try {
+      return new CompiledProtease(description, compileMotif(description.getMotif(), description.getCaseSensitivity()));
+    } catch (PatternSyntaxException e) {
+      LOG.warn("Invalid motif of protease " + description.getProteaseName() + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Compiles a motif as ProteaseTools does. The pattern is compiled only once.
+   *
+   * @param motif the recognition pattern of a protease
+   * @param caseSensitivity "CASE_SENSITIVE" or "CASE_INSENSITIVE"
+   * @return the compiled motif
+   * @throws PatternSyntaxException if the motif is invalid
+   */
+  static Pattern compileMotif(String motif, String caseSensitivity) throws PatternSyntaxException {
+    int flags = CASE_INSENSITIVE.equals(caseSensitivity) ? Pattern.CASE_INSENSITIVE : 0;
+    String key = flags + ":" + motif;
+    synchronized (compiledMotifs) {
+      Pattern pattern = compiledMotifs.get(key);
+      if (pattern == null) {
+        pattern = Pattern.compile(motif, flags);
+        compiledMotifs.put(key, pattern);
+      }
+      return pattern;
+    }
+  }
+
+  /**
+   * @return the active proteases with a valid motif
+   */
+  public List<ProteaseDescription> getProteases() {
+    List<ProteaseDescription> result = new ArrayList<ProteaseDescription>(proteases.size());
+    for (CompiledProtease protease : proteases) {
+      result.add(protease.description);
+    }
+    return result;
+  }
+
+  /**
+   * Checks the sequence against all active proteases.
+   *
+   * @param sequence the sequence to examine
+   * @return the cleavage sites of all proteases, whose motif matches the sequence, in order of the descriptions
+   */
+  public List<CleavageSite> findCleavageSites(String sequence) {
+    synchronized (cleavageSites) {
+      List<CleavageSite> sites = cleavageSites.get(sequence);
+      if (sites != null) {
+        return sites;
+      }
+    }
+    List<CleavageSite> sites = new ArrayList<CleavageSite>();
+    for (CompiledProtease protease : proteases) {
+      Matcher matcher = protease.pattern.matcher(sequence);
+      if (matcher.matches()) {
+        sites.add(new CleavageSite(protease.description, matcher.start(protease.captureGroup),
+            matcher.end(protease.captureGroup)));
+      }
+    }
+    sites = Collections.unmodifiableList(sites);
+    synchronized (cleavageSites) {
+      cleavageSites.put(sequence, sites);
+    }
+    return sites;
+  }
+
+  /**
+   * Same as {@link ProteaseTools#sequenceHasCleaveSite(String, ProteaseDescription)}.
+   *
+   * @param sequence the sequence to examine
+   * @param description a protease of this catalog
+   * @return true, if the motif of the protease matches
+   */
+  public boolean hasCleavageSite(String sequence, ProteaseDescription description) {
+    return getCleavageSite(sequence, description) != null;
+  }
+
+  /**
+   * Same as {@link ProteaseTools#doProteaseCleavage(String, ProteaseDescription)}.
+   *
+   * @param sequence the sequence to cleave
+   * @param description a protease of this catalog
+   * @return the cleavage result, without cut if the motif does not match
+   */
+  public ProteaseCleavageResult cleave(String sequence, ProteaseDescription description) {
+    ProteaseCleavageResult result = new ProteaseCleavageResult(sequence, description.getAppendedAfter());
+    CleavageSite site = getCleavageSite(sequence, description);
+    if (site != null) {
+      result.setLeftCut(site.getLeftCut());
+      result.setRightCut(site.getRightCut());
+    }
+    return result;
+  }
+
+  private CleavageSite getCleavageSite(String sequence, ProteaseDescription description) {
+    if (proteases.contains(byDescription.get(description))) {
+      for (CleavageSite site : findCleavageSites(sequence)) {
+        if (site.getProtease() == description) {
+          return site;
+        }
+      }
+      return null;
+    }
+    // inactive or not part of the catalog
+    CompiledProtease protease =
+        byDescription.containsKey(description) ? byDescription.get(description) : compile(description);
+    if (protease == null) {
+      return null;
+    }
+    Matcher matcher = protease.pattern.matcher(sequence);
+    if (!matcher.matches()) {
+      return null;
+    }
+    return new CleavageSite(description, matcher.start(protease.captureGroup), matcher.end(protease.captureGroup));
+  }
+
+  /**
+   * Motif of a protease, compiled once.
+   */
+  private static class CompiledProtease {
+
+    private final ProteaseDescription description;
+
+    private final Pattern pattern;
+
+    private final int captureGroup;
+
+    private CompiledProtease(ProteaseDescription description, Pattern pattern) {
+      this.description = description;
+      this.pattern = pattern;
+      this.captureGroup = description.getCaptureGroup();
+    }
+  }
+
+  /**
+   * The part of a sequence a protease cuts out: the capture group of its motif.
+   */
+  public static class CleavageSite {
+
+    private final ProteaseDescription protease;
+
+    private final int leftCut;
+
+    private final int rightCut;
+
+    public CleavageSite(ProteaseDescription protease, int leftCut, int rightCut) {
+      this.protease = protease;
+      this.leftCut = leftCut;
+      this.rightCut = rightCut;
+    }
+
+    public ProteaseDescription getProtease() {
+      return protease;
+    }
+
+    /**
+     * @return start of the capture group in the sequence
+     */
+    public int getLeftCut() {
+      return leftCut;
+    }
+
+    /**
+     * @return end of the capture group in the sequence
+     */
+    public int getRightCut() {
+      return rightCut;
+    }
+
+    @Override
+    public String toString() {
+      return protease.getProteaseName() + " [" + leftCut + ", " + rightCut + "]";
+    }
+  }
+
+}
@@ -16,16 +16,8 @@
  ******************************************************************************/
 package org.roche.antibody.services;
 
-import org.roche.antibody.model.antibody.ChemElement;
-import org.roche.antibody.model.antibody.Domain;
-import org.roche.antibody.model.antibody.Peptide;
-import org.roche.antibody.model.antibody.RNA;
 import org.roche.antibody.model.antibody.Sequence;
-import org.roche.antibody.services.helmnotation.HelmNotationService;
-import org.roche.antibody.services.helmnotation.model.HELMChem;
 import org.roche.antibody.services.helmnotation.model.HELMElement;
-import org.roche.antibody.services.helmnotation.model.HELMPeptide;
-import org.roche.antibody.services.helmnotation.model.HELMRna;
 
 /**
  * {@code SequenceService}
@@ -37,8 +29,6 @@ import org.roche.antibody.services.helmnotation.model.HELMRna;
  */
 public class SequenceService {
 
-  private HelmNotationService hs = HelmNotationService.getInstance();
-
   /** static Singleton instance */
   private static SequenceService instance;
 
@@ -55,27 +45,13 @@ public class SequenceService {
   }
 
   /**
-   * converts a {@link Sequence} to a {@link HELMElement}
+   * converts a {@link Sequence} to a {@link HELMElement}. The sequence representation is cached by
+   * {@link CachedHelmService}.
    * 
    * @param sequence {@link Sequence}
    * @return {@link HELMElement}
    */
   public HELMElement toHELM(Sequence sequence) {
-    HELMElement element = null;
-    if (sequence instanceof Peptide || sequence instanceof Domain) {
-      element = new HELMPeptide();
-      element.setSequenceRepresentation(hs.simpleSequenceToSequenceRepresentation(sequence.getSequence()));
-    }
-
-    if (sequence instanceof RNA) {
-      element = new HELMRna();
-      element.setSequenceRepresentation(sequence.getSequence());
-    }
-
-    if (sequence instanceof ChemElement) {
-      element = new HELMChem();
-      element.setSequenceRepresentation(sequence.getSequence());
-    }
-    return element;
+    return CachedHelmService.getInstance().toHELM(sequence);
   }
 }
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services.antibody.autoconnector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.roche.antibody.model.antibody.Domain;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.services.ConfigRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code AutoConnectorRuleIndex} is the compiled autoconnector rule table. Every rule is parsed once into a
+ * {@link DynamicAutoConnectorRule} and indexed by the domain types its search patterns require: the type of every
+ * domain pattern (e.g. "VH", "CL", "H") and of every two adjacent domain patterns (e.g. "VH-CH"). Patterns starting
+ * with {@link DynamicAutoConnectorMatcher#ANY_TYPE} match any type and are not indexed.
+ * <p>
+ * {@link #findCandidates(List)} collects the types of the peptides once and returns only the rules, whose required
+ * types are all present. All other rules cannot match, so the matcher need not run for them.
+ * <p>
+ * The index of the current configuration is returned by {@link #getInstance()}, it is compiled again only when the
+ * version of the {@link ConfigRepository} changes.
+ *
+ * @version $Id$
+ */
+public final class AutoConnectorRuleIndex {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(AutoConnectorRuleIndex.class);
+
+  /** type patterns of {@link DomainPattern}, a domain pattern of a rule starts with at most one of them */
+  private static final List<String> TYPE_PATTERNS = Arrays.asList("CH", "CL", "CX", "VH", "VL", "VX", "H");
+
+  private static final String KEY_SEPARATOR = "-";
+
+  private static AutoConnectorRuleIndex cachedIndex;
+
+  private static long cachedVersion;
+
+  private final List<DynamicAutoConnectorRule> rules = new ArrayList<DynamicAutoConnectorRule>();
+
+  /** number of distinct keys each rule requires; -1 for rules, which can never match */
+  private final int[] requiredKeyCounts;
+
+  /** indexes of the rules by required key */
+  private final Map<String, List<Integer>> rulesByKey = new HashMap<String, List<Integer>>();
+
+  /**
+   * @return index of the autoconnector rules of the {@link ConfigRepository}
+   * @throws Exception if the rules could not be loaded
+   */
+  public static synchronized AutoConnectorRuleIndex getInstance() throws Exception {
+    long version = ConfigRepository.getInstance().getVersion();
+    if (cachedIndex == null || cachedVersion != version) {
+      cachedIndex = new AutoConnectorRuleIndex(ConfigRepository.getInstance().getAutoConnectorRules());
+      cachedVersion = version;
+    }
+    return cachedIndex;
+  }
+
+  /**
+   * Compiles the rule table. Empty lines and comments (starting with #) are skipped, defective rules are logged and
+   * skipped. The rules are numbered like by {@link DynamicAutoConnector}.
+   *
+   * @param ruleTable the rules, e.g. from {@link ConfigRepository#getAutoConnectorRules()}
+   */
+  public AutoConnectorRuleIndex(List<String> ruleTable) {
+    long startTime = System.currentTimeMillis();
+    for (String ruleString : ruleTable) {
+      if (ruleString.isEmpty() || ruleString.startsWith("#")) {
+        continue;
+      }
+      try {
+        rules.add(new DynamicAutoConnectorRule(rules.size(), ruleString));
+      } catch (Exception e) {
+        LOG.error("Defective rule " + ruleString + " --> no autoconnect possible.");
+      }
+    }
+
+    requiredKeyCounts = new int[rules.size()];
+    for (int ruleIndex = 0; ruleIndex < rules.size(); ruleIndex++) {
+      Set<String> keys = getRequiredKeys(rules.get(ruleIndex));
+      if (keys == null) {
+        requiredKeyCounts[ruleIndex] = -1;
+        continue;
+      }
+      requiredKeyCounts[ruleIndex] = keys.size();
+      for (String key : keys) {
+        List<Integer> keyRules = rulesByKey.get(key);
+        if (keyRules == null) {
+          keyRules = new ArrayList<Integer>();
+          rulesByKey.put(key, keyRules);
+        }
+        keyRules.add(ruleIndex);
+      }
+    }
+    LOG.debug("Autoconnector rule index with {} rules and {} keys compiled in {}ms.", new Object[] {rules.size(),
+        rulesByKey.size(), System.currentTimeMillis() - startTime});
+  }
+
+  /**
+   * @return the keys of the rule or null, if a domain pattern cannot match any domain
+   */
+  private static Set<String> getRequiredKeys(DynamicAutoConnectorRule rule) {
+    Set<String> keys = new LinkedHashSet<String>();
+    for (String[] chainPattern : rule.getSearchPattern()) {
+      String previousType = null;
+      for (String domainPattern : chainPattern) {
+        String type = getRequiredType(domainPattern);
+        if (type == null) {
+          // any type
+          previousType = null;
+          continue;
+        }
+        if (type.isEmpty()) {
+          return null;
+        }
+        keys.add(type);
+        if (previousType != null) {
+          keys.add(previousType + KEY_SEPARATOR + type);
+        }
+        previousType = type;
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * @return the type a domain must have to match the domain pattern, null for any type, an empty string if no domain
+   *         matches
+   */
+  private static String getRequiredType(String domainPattern) {
+    if (domainPattern.startsWith(DynamicAutoConnectorMatcher.ANY_TYPE)) {
+      return null;
+    }
+    for (String type : TYPE_PATTERNS) {
+      if (domainPattern.startsWith(type)) {
+        return type;
+      }
+    }
+    return "";
+  }
+
+  /**
+   * @return all compiled rules, in order of the rule table
+   */
+  public List<DynamicAutoConnectorRule> getRules() {
+    return Collections.unmodifiableList(rules);
+  }
+
+  /**
+   * Returns the rules, which may match the peptides.
+   *
+   * @param peptides the peptides of the antibody
+   * @return rules, whose required domain types all occur in the peptides, in order of the rule table
+   */
+  public List<DynamicAutoConnectorRule> findCandidates(List<Peptide> peptides) {
+    int[] foundKeyCounts = new int[rules.size()];
+    for (String key : getKeys(peptides)) {
+      List<Integer> keyRules = rulesByKey.get(key);
+      if (keyRules != null) {
+        for (Integer ruleIndex : keyRules) {
+          foundKeyCounts[ruleIndex]++;
+        }
+      }
+    }
+
+    List<DynamicAutoConnectorRule> candidates = new ArrayList<DynamicAutoConnectorRule>();
+    for (int ruleIndex = 0; ruleIndex < rules.size(); ruleIndex++) {
+      if (foundKeyCounts[ruleIndex] == requiredKeyCounts[ruleIndex]) {
+        candidates.add(rules.get(ruleIndex));
+      }
+    }
+    return candidates;
+  }
+
+  private static Set<String> getKeys(List<Peptide> peptides) {
+    Set<String> keys = new LinkedHashSet<String>();
+    for (Peptide peptide : peptides) {
+      String previousType = null;
+      for (Domain domain : peptide.getDomains()) {
+        String type = getType(domain);
+        keys.add(type);
+        if (previousType != null) {
+          keys.add(previousType + KEY_SEPARATOR + type);
+        }
+        previousType = type;
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * @return type pattern of the domain as used by the {@link DynamicAutoConnectorMatcher}
+   */
+  static String getType(Domain domain) {
+    return new DomainPattern(domain, domain.getDomainType(), domain.getChainType(), domain.getUserLabel())
+        .getTypePattern();
+  }
+
+}
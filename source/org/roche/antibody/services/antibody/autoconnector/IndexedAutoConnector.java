@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services.antibody.autoconnector;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.ChainType;
+import org.roche.antibody.model.antibody.CysteinConnection;
+import org.roche.antibody.model.antibody.Domain;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.services.antibody.AntibodyRemodeller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.quattroresearch.antibody.exception.AutoconnectorCompatibilityError;
+import com.quattroresearch.antibody.exception.AutoconnectorConnectingException;
+
+/**
+ * {@code IndexedAutoConnector} connects domains by the user defined autoconnector rules like
+ * {@link DynamicAutoConnector} and writes the same log. The rules are not fetched and parsed for every antibody, but
+ * taken from the {@link AutoConnectorRuleIndex}, and the matcher only runs for the rules the index finds for the
+ * domain types of the antibody.
+ *
+ * @version $Id$
+ */
+public class IndexedAutoConnector implements AntibodyRemodeller {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(IndexedAutoConnector.class);
+
+  private static final String PREFIX_AUTONOMOUS_VH = "aVH";
+
+  private final AutoConnectorRuleIndex ruleIndex;
+
+  private final StringBuilder connectionLog = new StringBuilder();
+
+  private DynamicAutoConnectorMatcher matcher;
+
+  /**
+   * Uses the rules of the current configuration.
+   *
+   * @throws Exception if the rules could not be loaded
+   */
+  public IndexedAutoConnector() throws Exception {
+    this(AutoConnectorRuleIndex.getInstance());
+  }
+
+  /**
+   * @param ruleIndex the compiled rules
+   */
+  public IndexedAutoConnector(AutoConnectorRuleIndex ruleIndex) {
+    this.ruleIndex = ruleIndex;
+  }
+
+  /**
+   * The log containing info about, what the autoConnector did.
+   *
+   * @return log
+   */
+  public String getLog() {
+    return connectionLog.toString();
+  }
+
+  private void addLogLine(String line) {
+    connectionLog.append(line);
+    connectionLog.append(System.getProperty("line.separator"));
+  }
+
+  @Override
+  public Antibody remodel(Antibody ab) throws Exception {
+    matcher = new DynamicAutoConnectorMatcher();
+
+    List<ChainPattern> patterns = new LinkedList<ChainPattern>();
+    for (Peptide pep : ab.getPeptides()) {
+      patterns.add(getPeptidePattern(pep));
+    }
+    matcher.setAntibodyPattern(patterns);
+
+    List<DynamicAutoConnectorRule> candidates = ruleIndex.findCandidates(ab.getPeptides());
+    LOG.debug("Checking " + candidates.size() + " of " + ruleIndex.getRules().size() + " autoconnector rules.");
+
+    List<String> annotationList = new LinkedList<String>();
+    for (DynamicAutoConnectorRule rule : candidates) {
+      matcher.resetMatchResult(rule);
+      if (matcher.match()) {
+        if (matcher.getMatchResult().isMatchComplete()) {
+          // connect and save annotation
+          String annotation = processCompleteMatch(ab);
+          if (annotation != null) {
+            annotationList.add(annotation);
+            detectAutonomousDomains(annotation);
+          }
+        } else {
+          LOG.debug("Matcher ran successfully but match isn't complete");
+        }
+      }
+    }
+
+    List<String> annotationListWithUniqueEntries = DynamicAutoConnector.getListWithoutDoublets(annotationList);
+    if (annotationListWithUniqueEntries.size() > 0) {
+      ab.setAnnotations(annotationListWithUniqueEntries);
+    }
+    return ab;
+  }
+
+  /**
+   * Connects matching domains. Returns annotation if one applicable.
+   *
+   * @param ab antibody
+   * @return annotation or null
+   * @throws AutoconnectorConnectingException
+   */
+  private String processCompleteMatch(Antibody ab) throws AutoconnectorConnectingException {
+    DynamicAutoConnectorRule rule = matcher.getRule();
+    try {
+      if (matcher.getMatchResult().isMatchCompatibleToConnectionMode()) {
+        LOG.debug("Compatible match for mode " + matcher.getConnectionMode() + " found. Trying to connect rule "
+            + rule);
+        List<Domain[]> domainsToConnect = matcher.getMatchResult().readConnectingDomains();
+        LOG.debug("Found " + domainsToConnect.size() + " connecting domains");
+
+        for (Domain[] doms : domainsToConnect) {
+          LOG.debug("Connect " + doms[0] + " to " + doms[1]);
+          connectDomains(ab, doms[0], rule, rule.getConnectingPattern()[1], doms[1], rule.getConnectingPattern()[3]);
+        }
+
+        if (matcher.getAnnotationOfCurrentRule() != null) {
+          if (domainsToConnect.size() == 0) {
+            addLogLine(String.format("No domains connected (#%s/%s), but annotation added.", rule.getRuleNumber(),
+                rule.getAnnotation()));
+          }
+          return matcher.getAnnotationOfCurrentRule();
+        }
+      } else {
+        LOG.debug("Match found completely, but is incompatible to connection mode " + matcher.getConnectionMode());
+        logIncompatibleMatch(rule);
+      }
+    } catch (AutoconnectorCompatibilityError err) {
+      logIncompatibleMatch(rule);
+    }
+    return null;
+  }
+
+  private void logIncompatibleMatch(DynamicAutoConnectorRule rule) {
+    addLogLine(String.format("Found match (#%s/%s) is incompatible to connection mode %s ", rule.getRuleNumber(),
+        rule.getAnnotation(), matcher.getConnectionMode()));
+  }
+
+  private void detectAutonomousDomains(String annotation) {
+    if (annotation.toLowerCase().startsWith(PREFIX_AUTONOMOUS_VH.toLowerCase())) {
+      for (Object[] domains : matcher.getMatchResult().getAllMatchingDomains()) {
+        for (Object domainObject : domains) {
+          Domain domain = (Domain) domainObject;
+          // variable/heavy domains are made autonomous
+          if (domain.isVariable() && domain.getChainType() == ChainType.HEAVY) {
+            domain.setIsAutonomous(true);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Connects two domains like {@link DynamicAutoConnector}: the cystein indices of the rule refer to the cysteins of
+   * the domain (first, second, ... or negative from behind). Without index, the one and only free cystein is used.
+   */
+  private void connectDomains(Antibody ab, Domain src, DynamicAutoConnectorRule rule, Integer srcCysteinFromRule,
+      Domain tar, Integer tarCysteinFromRule) {
+    List<Integer> srcFreeCys = src.getFreeCysteinPositions();
+    List<Integer> tarFreeCys = tar.getFreeCysteinPositions();
+    String notConnected = String.format("Not connected: (#%s/%s): %s (%s cys) and %s (%s cys)", rule.getRuleNumber(),
+        nvl(rule.getAnnotation(), "NN"), src.getName(), srcFreeCys.size(), tar.getName(), tarFreeCys.size());
+    if ((srcFreeCys.size() == 0) && (tarFreeCys.size() == 0)) {
+      LOG.debug(notConnected);
+      return;
+    }
+
+    List<Integer> srcCysPositions = src.getCysteinPositions();
+    if (!isCysteinResolvable(srcCysPositions, srcFreeCys, srcCysteinFromRule)) {
+      addLogLine(notConnected);
+      return;
+    }
+    Integer srcConnectPos = getConnectPosition(srcCysPositions, srcFreeCys, srcCysteinFromRule);
+
+    List<Integer> tarCysPositions = tar.getCysteinPositions();
+    if (!isCysteinResolvable(tarCysPositions, tarFreeCys, tarCysteinFromRule)) {
+      if (tarCysteinFromRule != null) {
+        // as logged by DynamicAutoConnector
+        addLogLine(String.format("Not connected: (#%s/%s): %s (%s cys) and %s (%s cys)", rule.getRuleNumber(),
+            nvl(rule.getAnnotation(), "NN"), src.getName(), tarFreeCys.size(), tar.getName(), tarFreeCys.size()));
+      } else {
+        addLogLine(notConnected);
+      }
+      return;
+    }
+    Integer tarConnectPos = getConnectPosition(tarCysPositions, tarFreeCys, tarCysteinFromRule);
+
+    if (srcConnectPos != null && tarConnectPos != null && srcFreeCys.contains(srcConnectPos)
+        && tarFreeCys.contains(tarConnectPos)) {
+      CysteinConnection cysConnection = null;
+      try {
+        cysConnection = new CysteinConnection(srcConnectPos, tarConnectPos, src.getPeptide(), tar.getPeptide());
+      } catch (RuntimeException e) {
+        addLogLine(String.format("Connection failed (#%s/%s): " + e.getClass().getSimpleName() + " ("
+            + e.getMessage() + ")", rule.getRuleNumber(), nvl(rule.getAnnotation(), "NN")));
+        LOG.error("", e);
+        return;
+      }
+
+      String connecting = String.format("Connecting (#%s/%s): %s and %s ", rule.getRuleNumber(),
+          nvl(rule.getAnnotation(), "NN"), src.getName(), tar.getName());
+      LOG.debug(connecting);
+      ab.addConnection(cysConnection);
+      addLogLine(connecting);
+    } else {
+      addLogLine(String.format("Connection failed (#%s/%s): %s (Cys #%s) and %s (Cys #%s)", rule.getRuleNumber(),
+          nvl(rule.getAnnotation(), "NN"), src.getName(), srcConnectPos, tar.getName(), tarConnectPos));
+      LOG.error(String.format(
+          "Cystein Positions not found for autoconnection (#%s/%s): %s (Cys %s) and %s (Cys %s)",
+          rule.getRuleNumber(), nvl(rule.getAnnotation(), "NN"), src.getName(), srcConnectPos, tar.getName(),
+          tarConnectPos));
+    }
+  }
+
+  /**
+   * @return true, if the domain has the cystein the rule refers to
+   */
+  private static boolean isCysteinResolvable(List<Integer> cysPositions, List<Integer> freeCys,
+      Integer cysteinFromRule) {
+    if (cysteinFromRule == null) {
+      // when no cystein index given by rule, only connect when exactly 1 free cys
+      return freeCys.size() == 1;
+    }
+    return cysPositions.size() > Math.abs(cysteinFromRule) - 1;
+  }
+
+  /**
+   * @return the position of the cystein to connect, null for cystein index 0
+   */
+  private static Integer getConnectPosition(List<Integer> cysPositions, List<Integer> freeCys,
+      Integer cysteinFromRule) {
+    if (cysteinFromRule == null) {
+      return freeCys.get(0);
+    }
+    // negative index means "x cys from behind"
+    if (cysteinFromRule > 0) {
+      return cysPositions.get(cysteinFromRule - 1);
+    } else if (cysteinFromRule < 0) {
+      return cysPositions.get(cysPositions.size() - Math.abs(cysteinFromRule));
+    }
+    return null;
+  }
+
+  private static String nvl(String value, String defVal) {
+    return value != null ? value : defVal;
+  }
+
+  private static ChainPattern getPeptidePattern(Peptide pep) {
+    List<DomainPattern> patterns = new LinkedList<DomainPattern>();
+    for (Domain dom : pep.getDomains()) {
+      patterns.add(new DomainPattern(dom, dom.getDomainType(), dom.getChainType(), dom.getUserLabel()));
+    }
+    return new ChainPattern(patterns);
+  }
+
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services.graphsynchronizer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.roche.antibody.model.antibody.Connection;
+import org.roche.antibody.model.antibody.Sequence;
+
+/**
+ * {@code ConnectionIndex} is the adjacency of a set of connections: each {@link Sequence} is mapped by identity to the
+ * connections it is source or target of. Lookups are restricted to the connections of one sequence, but use
+ * {@link Connection#equals(Object)}, so a connection in the opposite direction is found as well. A
+ * {@link java.util.HashSet} cannot be used instead, as {@link Connection#hashCode()} depends on the direction.
+ * 
+ * @version $Id$
+ */
+class ConnectionIndex {
+
+  private final Map<Sequence, List<Connection>> adjacency = new IdentityHashMap<Sequence, List<Connection>>();
+
+  private int size;
+
+  /**
+   * @param connections the connections to index, e.g. all connections of an antibody
+   */
+  public ConnectionIndex(Collection<? extends Connection> connections) {
+    for (Connection connection : connections) {
+      add(connection);
+    }
+  }
+
+  /**
+   * Adds the connection to both of its sequences, if an equal connection is not indexed yet.
+   * 
+   * @param connection the connection to add
+   * @return true, if the connection was added
+   */
+  public boolean add(Connection connection) {
+    if (contains(connection)) {
+      return false;
+    }
+    adjacent(connection.getSource()).add(connection);
+    if (connection.getTarget() != connection.getSource()) {
+      adjacent(connection.getTarget()).add(connection);
+    }
+    size++;
+    return true;
+  }
+
+  /**
+   * @param connection the connection to look up
+   * @return true, if an equal connection, in either direction, is indexed
+   */
+  public boolean contains(Connection connection) {
+    // an equal connection is adjacent to both sequences, the shorter list is searched
+    List<Connection> candidates = adjacency.get(connection.getSource());
+    List<Connection> targetCandidates = adjacency.get(connection.getTarget());
+    if (candidates == null || targetCandidates == null) {
+      return false;
+    }
+    if (targetCandidates.size() < candidates.size()) {
+      candidates = targetCandidates;
+    }
+    for (Connection candidate : candidates) {
+      if (candidate == connection || candidate.equals(connection)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param sequence a sequence
+   * @return the indexed connections, the sequence is source or target of
+   */
+  public List<Connection> getConnections(Sequence sequence) {
+    List<Connection> connections = adjacency.get(sequence);
+    if (connections == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(connections);
+  }
+
+  /**
+   * @return the number of indexed connections
+   */
+  public int size() {
+    return size;
+  }
+
+  private List<Connection> adjacent(Sequence sequence) {
+    List<Connection> connections = adjacency.get(sequence);
+    if (connections == null) {
+      connections = new ArrayList<Connection>();
+      adjacency.put(sequence, connections);
+    }
+    return connections;
+  }
+
+}
@@ -18,13 +18,17 @@ package org.roche.antibody.services.graphsynchronizer;
 
 import java.awt.Cursor;
 import java.io.FileNotFoundException;
+import java.text.ParseException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.JOptionPane;
 import javax.swing.UIManager;
@@ -33,7 +37,6 @@ import javax.swing.plaf.FontUIResource;
 import org.apache.commons.configuration.Configuration;
 import org.helm.editor.data.MonomerStoreCache;
 import org.helm.editor.editor.MacromoleculeEditor;
-import org.helm.notation.MonomerFactory;
 import org.helm.notation.MonomerStore;
 import org.helm.notation.model.Attachment;
 import org.helm.notation.model.Monomer;
@@ -52,6 +55,8 @@ import org.roche.antibody.services.AbstractGraphService;
 import org.roche.antibody.services.ConnectionService;
 import org.roche.antibody.services.DomainService;
 import org.roche.antibody.services.HELMEditorAccessService;
+import org.roche.antibody.services.HelmNotationParser;
+import org.roche.antibody.services.MonomerRegistry;
 import org.roche.antibody.services.PreferencesService;
 import org.roche.antibody.services.SequenceService;
 import org.roche.antibody.services.UIService;
@@ -128,15 +133,21 @@ public class GraphSynchronizer {
 
   private String helmSentToEditor;
 
+  /** {@link HelmNotationParser#structuralHash(HELMCode)} of {@link #helmSentToEditor} */
+  private long helmSentToEditorHash;
+
+  /** canonical notation of {@link #helmSentToEditor}, created on demand */
+  private String canonicalHelmSentToEditor;
+
   private Antibody ab;
 
   private Domain activeDomain;
 
-  private List<Connection> handledConnections = new ArrayList<Connection>();
+  private Set<Connection> handledConnections = identitySet();
 
-  private List<Connection> handledInterDomainConnections = new ArrayList<Connection>();
+  private Set<Connection> handledInterDomainConnections = identitySet();
 
-  private List<Sequence> handledSequences = new ArrayList<Sequence>();
+  private Set<Sequence> handledSequences = identitySet();
 
   private DomainService domainService = DomainService.getInstance();
 
@@ -181,7 +192,8 @@ public class GraphSynchronizer {
   }
 
   /***
-   * Registers a block monomer in local helm editor store and returns success.
+   * Registers a block monomer in local helm editor store and returns success. The store is saved by
+   * {@link MonomerRegistry#flushAsync()}.
    * 
    * @param monomerName
    * @param smiles
@@ -191,11 +203,11 @@ public class GraphSynchronizer {
    */
   private int registerBlockMonomerInLocalStore(String monomerName, String smiles, String molfile)
       throws Exception {
-    MonomerFactory factory = MonomerFactory.getInstance();
-    MonomerStore store = factory.getMonomerStore();
+    MonomerRegistry registry = MonomerRegistry.getInstance();
 
-    if (!store.getMonomerDB().get("CHEM").containsKey(monomerName)) {
-      chemaxon.struc.Molecule mol = StructureParser.getMolecule(smiles);
+    if (!registry.isRegistered(Monomer.CHEMICAL_POLYMER_TYPE, monomerName)) {
+      // validates the structure
+      StructureParser.getMolecule(smiles);
       Monomer m = new Monomer(Monomer.CHEMICAL_POLYMER_TYPE,
           Monomer.UNDEFINED_MOMONER_TYPE, "", monomerName);
       m.setMolfile(molfile);
@@ -220,9 +232,7 @@ public class GraphSynchronizer {
         attachmentList.add(attachment);
         m.setAttachmentList(attachmentList);
       }
-      store.addMonomer(m, true);
-
-      factory.saveMonomerCache();
+      registry.register(m);
       return 1;
     }
 
@@ -259,8 +269,11 @@ public class GraphSynchronizer {
 
     /* register unknown chem objects */
     registerInlineSmilsInLocalStore(helmNotation);
+    MonomerRegistry.getInstance().flushAsync();
 
     this.helmSentToEditor = helmNotation;
+    this.helmSentToEditorHash = HelmNotationParser.structuralHash(code);
+    this.canonicalHelmSentToEditor = null;
     String newNotation = HELMEditorAccessService.openEditor(helmNotation);
     if (newNotation != null) {
       try {
@@ -277,8 +290,7 @@ public class GraphSynchronizer {
 
   private void registerInlineSmilsInLocalStore(String helmNotation) {
     try {
-      ComplexNotationParser.parse(helmNotation);
-      MonomerFactory.getInstance().saveMonomerCache();
+      MonomerRegistry.getInstance().registerInlineStructures(helmNotation);
     } catch (Exception e) {
       LOG.debug("Register inline smiles does not work");
       e.printStackTrace();
@@ -306,10 +318,8 @@ public class GraphSynchronizer {
       Sequence seqToHandle = sequencesToHandle.poll();
       Sequence seqForConnectionCheck = seqToHandle;
 
-      if (handledSequences.contains(seqToHandle)) {
+      if (!handledSequences.add(seqToHandle)) {
         continue;
-      } else {
-        handledSequences.add(seqToHandle);
       }
 
       if (seqToHandle instanceof Domain) {
@@ -384,20 +394,22 @@ public class GraphSynchronizer {
   public boolean syncBackToAntibody(String helmCode)
       throws FileNotFoundException {
     Map<HELMElement, Sequence> helmToSequence = new HashMap<HELMElement, Sequence>();
-    HELMCode code = HelmNotationService.getInstance().toHELMCode(helmCode);
-    List<HELMElement> handledElements = new ArrayList<HELMElement>();
+    HELMCode code;
+    try {
+      code = HelmNotationParser.parse(helmCode);
+    } catch (ParseException e) {
+      LOG.error("Invalid HELM notation at position " + e.getErrorOffset() + ": " + e.getMessage());
+      JOptionPane.showMessageDialog(this.abEditor, "Invalid HELM notation at position " + e.getErrorOffset() + ": "
+          + e.getMessage(), "Invalid HELM", JOptionPane.ERROR_MESSAGE);
+      return false;
+    }
+    Set<HELMElement> handledElements = identitySet();
     deletedConnectionCount = 0;
     createdConnectionCount = 0;
 
     // do not change anything, when molecule did not change
-    try {
-      if (ComplexNotationParser.getCanonicalNotation(helmSentToEditor)
-          .equals(ComplexNotationParser
-              .getCanonicalNotation(helmCode))) {
-        return true;
-      }
-    } catch (Exception e) {
-      LOG.error(e.getMessage());
+    if (isUnchanged(helmCode, code)) {
+      return true;
     }
 
     int validationOption = validate(code);
@@ -460,6 +472,30 @@ public class GraphSynchronizer {
     return true;
   }
 
+  /**
+   * Compares the notation from the editor with the one sent to it. The structural hash detects notations, which differ
+   * only in numbering and order, without canonicalization. Canonical notations are compared only, if the hashes
+   * differ, as notations of the same molecule can still differ in their monomers, e.g. inline SMILES.
+   * 
+   * @param helmCode notation from the editor
+   * @param code parsed notation from the editor
+   * @return true, if the molecule did not change
+   */
+  private boolean isUnchanged(String helmCode, HELMCode code) {
+    if (helmCode.equals(helmSentToEditor) || HelmNotationParser.structuralHash(code) == helmSentToEditorHash) {
+      return true;
+    }
+    try {
+      if (canonicalHelmSentToEditor == null) {
+        canonicalHelmSentToEditor = ComplexNotationParser.getCanonicalNotation(helmSentToEditor);
+      }
+      return canonicalHelmSentToEditor.equals(ComplexNotationParser.getCanonicalNotation(helmCode));
+    } catch (Exception e) {
+      LOG.error(e.getMessage());
+      return false;
+    }
+  }
+
   private void deleteOldSequencesAndConnections() {
     for (Connection con : handledConnections) {
       if (con instanceof CysteinConnection) {
@@ -489,7 +525,7 @@ public class GraphSynchronizer {
 
   private void handleActiveDomain(HELMCode code,
       Map<HELMElement, Sequence> helmToSequence,
-      List<HELMElement> handledElemetns) throws FileNotFoundException {
+      Set<HELMElement> handledElemetns) throws FileNotFoundException {
 
     // we handle the activeDomain and their connections
     HELMElement elemOfActiveDomain = HelmNotationService.getInstance()
@@ -625,6 +661,7 @@ public class GraphSynchronizer {
 
   private void handleNewConnections(HELMCode code,
       Map<HELMElement, Sequence> sequenceMap) {
+    ConnectionIndex existingConnections = new ConnectionIndex(ab.getConnections());
     for (HELMConnection helmConnection : code.getAllConnections()) {
       Connection conn = null;
       if (HelmNotationService.getInstance().isCysteinConnection(
@@ -639,7 +676,7 @@ public class GraphSynchronizer {
         conn = new GeneralConnectionBuilder().build(helmConnection,
             sequenceMap);
       }
-      if (conn != null && !ab.getConnections().contains(conn)) {
+      if (conn != null && existingConnections.add(conn)) {
         ab.addConnection(conn);
         AbstractGraphService.addConnection(abEditor.getAbstractGraph(),
             conn);
@@ -673,7 +710,7 @@ public class GraphSynchronizer {
 
   private List<Sequence> handleNewSequences(HELMCode code,
       Map<HELMElement, Sequence> helmToSequence,
-      List<HELMElement> handledElements) {
+      Set<HELMElement> handledElements) {
 
     List<Sequence> newSequences = new LinkedList<Sequence>();
 
@@ -866,7 +903,7 @@ public class GraphSynchronizer {
   }
 
   private void adaptHELMCodeForSyncBack(Domain newDomain, HELMPeptide pep,
-      HELMCode code, List<HELMElement> handledElemets,
+      HELMCode code, Set<HELMElement> handledElemets,
       Map<HELMElement, Sequence> helmToSequence) {
     int offset = 0;
     HelmNotationService hs = HelmNotationService.getInstance();
@@ -903,4 +940,14 @@ public class GraphSynchronizer {
     }
   }
 
+  /**
+   * Model and HELM elements are tracked by identity: it is the object, which was handled, and a lookup does not
+   * depend on the number of handled elements.
+   * 
+   * @return new empty set, which compares its elements by identity
+   */
+  private static <T> Set<T> identitySet() {
+    return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+  }
+
 }
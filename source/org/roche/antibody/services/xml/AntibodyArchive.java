@@ -0,0 +1,501 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.roche.antibody.model.antibody.AntibodyContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code AntibodyArchive} stores many {@link AntibodyContainer} in one file. Each entry is the antibody XML of
+ * {@link CachedXmlAntibodyService}, deflate compressed, preceded by its name and HELM hash. An index of the entry
+ * offsets, keyed by name and by HELM hash, is written to the end of the file, so any single entry can be read without
+ * parsing the others.
+ *
+ * <pre>
+ * header:  "HELMABA" version
+ * entry:   ENTRY_MARKER name hash compressed-length compressed-XML
+ * index:   entry-count (name hash offset length)*
+ * footer:  index-offset INDEX_MARKER
+ * </pre>
+ *
+ * The old index is cut off before the first entry is appended, the new index is written on {@link #close()}. If it is
+ * missing or invalid, e.g. after a crash, the index is recovered by scanning the entries on open. Entries with the
+ * same name are all kept, lookup by name returns the last one appended.
+ * <p>
+ * An archive is not thread safe, concurrent writers have to synchronize on it.
+ *
+ * @version $Id$
+ */
+public class AntibodyArchive implements Closeable, Iterable<AntibodyContainer> {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(AntibodyArchive.class);
+
+  public static final String ARCHIVE_EXTENSION = ".aba";
+
+  private static final byte[] MAGIC = {'H', 'E', 'L', 'M', 'A', 'B', 'A', 1};
+
+  private static final int ENTRY_MARKER = 0x41424531;
+
+  private static final int INDEX_MARKER = 0x41424931;
+
+  /** index offset and marker */
+  private static final int FOOTER_LENGTH = 12;
+
+  private final File file;
+
+  private final RandomAccessFile raf;
+
+  private final boolean writable;
+
+  private final List<Entry> entries = new ArrayList<Entry>();
+
+  private final Map<String, Entry> entriesByName = new HashMap<String, Entry>();
+
+  private final Map<String, Entry> entriesByHash = new HashMap<String, Entry>();
+
+  /** where the next entry is written, the index follows the last entry */
+  private long endOfEntries;
+
+  private boolean modified;
+
+  private Marshaller marshaller;
+
+  private AntibodyArchive(File file, boolean writable) throws IOException {
+    this.file = file;
+    this.writable = writable;
+    this.raf = new RandomAccessFile(file, writable ? "rw" : "r");
+    try {
+      if (raf.length() == 0 && writable) {
+        raf.write(MAGIC);
+        endOfEntries = MAGIC.length;
+        modified = true;
+      } else {
+        readHeader();
+        if (!readIndex()) {
+          LOG.warn("Index of antibody archive {} is missing, recovering it from the entries.", file);
+          recoverIndex();
+          modified = writable;
+        }
+      }
+    } catch (IOException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens an archive for reading.
+   *
+   * @param file existing archive
+   * @return the archive
+   * @throws IOException if the file is not readable or no archive
+   */
+  public static AntibodyArchive open(File file) throws IOException {
+    return new AntibodyArchive(file, false);
+  }
+
+  /**
+   * Opens an archive for reading and appending. It is created, if it does not exist.
+   *
+   * @param file archive
+   * @return the archive
+   * @throws IOException if the file is not writable or no archive
+   */
+  public static AntibodyArchive openForAppend(File file) throws IOException {
+    return new AntibodyArchive(file, true);
+  }
+
+  /**
+   * @param helm HELM notation
+   * @return the hash entries are keyed by, besides their name
+   */
+  public static String helmHash(String helm) {
+    return DigestUtils.sha256Hex(helm == null ? "" : helm);
+  }
+
+  /**
+   * Appends an antibody to the archive.
+   *
+   * @param name name of the entry
+   * @param abContainer the antibody container
+   * @return the new entry
+   * @throws IOException
+   * @throws JAXBException
+   */
+  public Entry append(String name, AntibodyContainer abContainer) throws IOException, JAXBException {
+    if (!writable) {
+      throw new IllegalStateException("Archive " + file + " is opened read only.");
+    }
+    if (name == null) {
+      throw new IllegalArgumentException("Entry name must not be null.");
+    }
+
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater);
+      getMarshaller().marshal(abContainer, out);
+      out.finish();
+    } finally {
+      deflater.end();
+    }
+
+    Entry entry = new Entry(name, helmHash(abContainer.getHelmCode()), endOfEntries, 0);
+    ByteArrayOutputStream record = new ByteArrayOutputStream(compressed.size() + 128);
+    DataOutputStream out = new DataOutputStream(record);
+    out.writeInt(ENTRY_MARKER);
+    out.writeUTF(entry.getName());
+    out.writeUTF(entry.getHelmHash());
+    out.writeInt(compressed.size());
+    compressed.writeTo(out);
+    out.flush();
+    entry.length = record.size();
+
+    if (raf.length() > endOfEntries) {
+      // drop the old index, so it cannot be taken for the index of the new entries after a crash
+      raf.setLength(endOfEntries);
+    }
+    raf.seek(endOfEntries);
+    raf.write(record.toByteArray());
+    endOfEntries += entry.length;
+    modified = true;
+    addEntry(entry);
+    return entry;
+  }
+
+  /**
+   * @return all entries in the order they were appended
+   */
+  public List<Entry> getEntries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the last entry appended with this name or null
+   */
+  public Entry getEntry(String name) {
+    return entriesByName.get(name);
+  }
+
+  /**
+   * @return the last entry appended with this HELM hash or null
+   * @see #helmHash(String)
+   */
+  public Entry getEntryByHelmHash(String helmHash) {
+    return entriesByHash.get(helmHash);
+  }
+
+  /**
+   * Reads the last antibody appended with this name.
+   *
+   * @return the antibody container or null, if there is no such entry
+   * @throws IOException
+   * @throws JAXBException
+   */
+  public AntibodyContainer get(String name) throws IOException, JAXBException {
+    Entry entry = getEntry(name);
+    return entry == null ? null : read(entry);
+  }
+
+  /**
+   * Reads the last antibody appended with this HELM notation.
+   *
+   * @return the antibody container or null, if there is no such entry
+   * @throws IOException
+   * @throws JAXBException
+   */
+  public AntibodyContainer getByHelm(String helm) throws IOException, JAXBException {
+    Entry entry = getEntryByHelmHash(helmHash(helm));
+    return entry == null ? null : read(entry);
+  }
+
+  /**
+   * Reads one antibody, the other entries are not touched.
+   *
+   * @param entry entry of this archive
+   * @return the antibody container
+   * @throws IOException
+   * @throws JAXBException
+   */
+  public AntibodyContainer read(Entry entry) throws IOException, JAXBException {
+    byte[] record = new byte[entry.getLength()];
+    raf.seek(entry.getOffset());
+    raf.readFully(record);
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    if (in.readInt() != ENTRY_MARKER) {
+      throw new IOException("Corrupt entry " + entry + " in archive " + file);
+    }
+    in.readUTF();
+    in.readUTF();
+    in.readInt();
+    InputStream xml = new InflaterInputStream(in);
+    return CachedXmlAntibodyService.getInstance().unmarshal(xml);
+  }
+
+  /**
+   * Iterates the antibodies in the order they were appended. Reading failures are thrown as
+   * {@link IllegalStateException}.
+   */
+  @Override
+  public Iterator<AntibodyContainer> iterator() {
+    final Iterator<Entry> entryIterator = new ArrayList<Entry>(entries).iterator();
+    return new Iterator<AntibodyContainer>() {
+      @Override
+      public boolean hasNext() {
+        return entryIterator.hasNext();
+      }
+
+      @Override
+      public AntibodyContainer next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Entry entry = entryIterator.next();
+        try {
+          return read(entry);
+        } catch (Exception e) {
+          throw new IllegalStateException("Could not read " + entry + " from archive " + file, e);
+        }
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Writes the index, if entries were appended, and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (modified) {
+        writeIndex();
+      }
+    } finally {
+      raf.close();
+    }
+  }
+
+  private Marshaller getMarshaller() throws JAXBException {
+    if (marshaller == null) {
+      // unformatted, unlike the XML files
+      marshaller = CachedXmlAntibodyService.getInstance().getContext().createMarshaller();
+    }
+    return marshaller;
+  }
+
+  private void addEntry(Entry entry) {
+    entries.add(entry);
+    entriesByName.put(entry.getName(), entry);
+    entriesByHash.put(entry.getHelmHash(), entry);
+  }
+
+  private void readHeader() throws IOException {
+    byte[] magic = new byte[MAGIC.length];
+    raf.seek(0);
+    try {
+      raf.readFully(magic);
+    } catch (EOFException e) {
+      throw new IOException(file + " is no antibody archive.");
+    }
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new IOException(file + " is no antibody archive.");
+    }
+  }
+
+  /**
+   * @return false, if there is no valid index
+   */
+  private boolean readIndex() throws IOException {
+    long length = raf.length();
+    if (length < MAGIC.length + FOOTER_LENGTH) {
+      return false;
+    }
+    raf.seek(length - FOOTER_LENGTH);
+    long indexOffset = raf.readLong();
+    if (raf.readInt() != INDEX_MARKER || indexOffset < MAGIC.length || indexOffset > length - FOOTER_LENGTH) {
+      return false;
+    }
+
+    byte[] index = new byte[(int) (length - FOOTER_LENGTH - indexOffset)];
+    raf.seek(indexOffset);
+    raf.readFully(index);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+    List<Entry> indexEntries = new ArrayList<Entry>();
+    try {
+      int count = in.readInt();
+      // every entry takes at least 16 bytes
+      if (count < 0 || count > index.length / 16) {
+        return false;
+      }
+      for (int i = 0; i < count; i++) {
+        Entry entry = new Entry(in.readUTF(), in.readUTF(), in.readLong(), in.readInt());
+        if (entry.getOffset() < MAGIC.length || entry.getLength() <= 0
+            || entry.getOffset() + entry.getLength() > indexOffset) {
+          return false;
+        }
+        indexEntries.add(entry);
+      }
+    } catch (EOFException e) {
+      return false;
+    }
+    for (Entry entry : indexEntries) {
+      addEntry(entry);
+    }
+    endOfEntries = indexOffset;
+    return true;
+  }
+
+  /**
+   * Scans all complete entries, an incomplete last entry is dropped.
+   */
+  private void recoverIndex() throws IOException {
+    long length = raf.length();
+    long offset = MAGIC.length;
+    while (offset + 4 < length) {
+      raf.seek(offset);
+      try {
+        if (raf.readInt() != ENTRY_MARKER) {
+          break;
+        }
+        String name = raf.readUTF();
+        String hash = raf.readUTF();
+        int compressedLength = raf.readInt();
+        long end = raf.getFilePointer() + compressedLength;
+        if (compressedLength < 0 || end > length) {
+          break;
+        }
+        addEntry(new Entry(name, hash, offset, (int) (end - offset)));
+        offset = end;
+      } catch (EOFException e) {
+        break;
+      }
+    }
+    endOfEntries = offset;
+  }
+
+  private void writeIndex() throws IOException {
+    ByteArrayOutputStream index = new ByteArrayOutputStream(entries.size() * 128 + FOOTER_LENGTH + 4);
+    DataOutputStream out = new DataOutputStream(index);
+    out.writeInt(entries.size());
+    for (Entry entry : entries) {
+      out.writeUTF(entry.getName());
+      out.writeUTF(entry.getHelmHash());
+      out.writeLong(entry.getOffset());
+      out.writeInt(entry.getLength());
+    }
+    out.writeLong(endOfEntries);
+    out.writeInt(INDEX_MARKER);
+    out.flush();
+
+    raf.seek(endOfEntries);
+    raf.write(index.toByteArray());
+    raf.setLength(raf.getFilePointer());
+    modified = false;
+    LOG.debug("Index of antibody archive {} written: {} entries.", file, entries.size());
+  }
+
+  /**
+   * Position of one antibody in the archive.
+   */
+  public static class Entry {
+
+    private final String name;
+
+    private final String helmHash;
+
+    private final long offset;
+
+    private int length;
+
+    private Entry(String name, String helmHash, long offset, int length) {
+      this.name = name;
+      this.helmHash = helmHash;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getHelmHash() {
+      return helmHash;
+    }
+
+    /**
+     * @return offset of the entry in the archive file
+     */
+    public long getOffset() {
+      return offset;
+    }
+
+    /**
+     * @return length of the entry in the archive file
+     */
+    public int getLength() {
+      return length;
+    }
+
+    @Override
+    public String toString() {
+      return "Entry [name=" + name + ", offset=" + offset + ", length=" + length + "]";
+    }
+  }
+
+}
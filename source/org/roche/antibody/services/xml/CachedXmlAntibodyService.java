@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.services.xml;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.roche.antibody.model.antibody.AntibodyContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code CachedXmlAntibodyService} reads and writes {@link AntibodyContainer} XML like {@link XmlAntibodyService}, but
+ * the {@link JAXBContext} is created only once and shared. Each thread reuses its own {@link Marshaller} and
+ * {@link Unmarshaller}, as they are not thread safe. Besides files and strings, streams can be read and written.
+ *
+ * @version $Id$
+ */
+public class CachedXmlAntibodyService {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(CachedXmlAntibodyService.class);
+
+  /** static Singleton instance */
+  private static CachedXmlAntibodyService instance;
+
+  private volatile JAXBContext context;
+
+  private final ThreadLocal<Marshaller> marshallers = new ThreadLocal<Marshaller>();
+
+  private final ThreadLocal<Unmarshaller> unmarshallers = new ThreadLocal<Unmarshaller>();
+
+  /** Private constructor for singleton */
+  private CachedXmlAntibodyService() {
+  }
+
+  /** Static getter method for retrieving the singleton instance */
+  public synchronized static CachedXmlAntibodyService getInstance() {
+    if (instance == null) {
+      instance = new CachedXmlAntibodyService();
+    }
+    return instance;
+  }
+
+  /**
+   * @return the shared context, created on first use
+   * @throws JAXBException
+   */
+  public JAXBContext getContext() throws JAXBException {
+    JAXBContext ctx = context;
+    if (ctx == null) {
+      synchronized (this) {
+        ctx = context;
+        if (ctx == null) {
+          long startTime = System.currentTimeMillis();
+          ctx = JAXBContext.newInstance(AntibodyContainer.class);
+          context = ctx;
+          LOG.debug("JAXBContext created in {}ms.", System.currentTimeMillis() - startTime);
+        }
+      }
+    }
+    return ctx;
+  }
+
+  /**
+   * Returns the marshaller of the current thread. It writes formatted output.
+   *
+   * @return marshaller instance
+   * @throws JAXBException
+   */
+  public Marshaller getMarshaller() throws JAXBException {
+    Marshaller marshaller = marshallers.get();
+    if (marshaller == null) {
+      marshaller = getContext().createMarshaller();
+      marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+      marshallers.set(marshaller);
+    }
+    return marshaller;
+  }
+
+  /**
+   * Returns the unmarshaller of the current thread.
+   *
+   * @return unmarshaller instance
+   * @throws JAXBException
+   */
+  public Unmarshaller getUnmarshaller() throws JAXBException {
+    Unmarshaller unmarshaller = unmarshallers.get();
+    if (unmarshaller == null) {
+      unmarshaller = getContext().createUnmarshaller();
+      unmarshallers.set(unmarshaller);
+    }
+    return unmarshaller;
+  }
+
+  /**
+   * Marshaller to create XML from {@link AntibodyContainer}. It will we written to a file.
+   *
+   * @param abContainer
+   * @param outputFile
+   * @throws JAXBException
+   */
+  public void marshal(AntibodyContainer abContainer, File outputFile) throws JAXBException {
+    getMarshaller().marshal(abContainer, outputFile);
+    LOG.debug("XML of Antibody created: {}", outputFile.getAbsoluteFile());
+  }
+
+  /**
+   * Marshaller to create XML from {@link AntibodyContainer}. It will be written to the stream, which is not closed.
+   *
+   * @param abContainer
+   * @param outputStream
+   * @throws JAXBException
+   */
+  public void marshal(AntibodyContainer abContainer, OutputStream outputStream) throws JAXBException {
+    getMarshaller().marshal(abContainer, outputStream);
+    LOG.debug("XML of Antibody written to stream.");
+  }
+
+  /**
+   * Marshaller to create XML from {@link AntibodyContainer}. It will be returned as String.
+   *
+   * @param abContainer the antibody container
+   * @return antibody xml as string
+   * @throws JAXBException
+   */
+  public String marshal(AntibodyContainer abContainer) throws JAXBException {
+    StringWriter stringWriter = new StringWriter();
+    getMarshaller().marshal(abContainer, stringWriter);
+    LOG.debug("OutputStream of Antibody created.");
+    return stringWriter.toString();
+  }
+
+  /**
+   * Unmarshaller to create {@link AntibodyContainer} from XML in a file.
+   *
+   * @param inputFile
+   * @return the antibody container
+   * @throws JAXBException
+   */
+  public AntibodyContainer unmarshal(File inputFile) throws JAXBException {
+    AntibodyContainer abContainer = (AntibodyContainer) getUnmarshaller().unmarshal(inputFile);
+    LOG.debug("Antibody created from File: {}", inputFile.getAbsoluteFile());
+    return abContainer;
+  }
+
+  /**
+   * Unmarshaller to create {@link AntibodyContainer} from XML in a stream. The stream is not closed.
+   *
+   * @param inputStream
+   * @return the antibody container
+   * @throws JAXBException
+   */
+  public AntibodyContainer unmarshal(InputStream inputStream) throws JAXBException {
+    AntibodyContainer abContainer = (AntibodyContainer) getUnmarshaller().unmarshal(inputStream);
+    LOG.debug("Antibody created from stream.");
+    return abContainer;
+  }
+
+  /**
+   * Unmarshaller to create {@link AntibodyContainer} from XML in an XML Node.
+   *
+   * @param xml
+   * @return the antibody container
+   * @throws JAXBException
+   */
+  public AntibodyContainer unmarshal(String xml) throws JAXBException {
+    return unmarshal(xml, false, false);
+  }
+
+  /**
+   * Unmarshaller to create {@link AntibodyContainer} from XML in an XML Node.
+   *
+   * @param xml
+   * @param isMasterLibrariesUsed
+   * @param isMasterSettingsUsed
+   * @return the antibody container
+   * @throws JAXBException
+   */
+  public AntibodyContainer unmarshal(String xml, boolean isMasterLibrariesUsed, boolean isMasterSettingsUsed)
+      throws JAXBException {
+    AntibodyContainer abContainer = (AntibodyContainer) getUnmarshaller().unmarshal(new StringReader(xml));
+    LOG.debug("Antibody created from OutputStream");
+    abContainer.getAntibody().setMasterLibrariesUsed(isMasterLibrariesUsed);
+    abContainer.getAntibody().setMasterSettingsUsed(isMasterSettingsUsed);
+    return abContainer;
+  }
+
+}
@@ -19,6 +19,7 @@ package org.roche.antibody.ui.abstractgraph;
 import java.awt.Color;
 import java.awt.Graphics2D;
 
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.roche.antibody.model.antibody.ChainType;
 import org.roche.antibody.model.antibody.Domain;
@@ -67,6 +68,15 @@ public class DomainNodeRealizer extends ShapeNodeRealizer implements
 
 	boolean initialized = false;
 
+	/**
+	 * Incremented by {@link #invalidateAll()}. Render states of an older
+	 * version are computed again on the next paint.
+	 */
+	private static volatile int renderVersion;
+
+	/** inputs of the current fill color, shape, border, label and size */
+	private RenderState renderState;
+
 	public DomainNodeRealizer() {
 		super();
 		initFromMap();
@@ -77,15 +87,17 @@ public class DomainNodeRealizer extends ShapeNodeRealizer implements
 		initFromMap(d);
 	}
 
+	/**
+	 * Outdates the render state of all domain nodes, e.g. after a domain was
+	 * edited without updating the graph. They are computed again, when the
+	 * nodes are painted the next time.
+	 */
+	public static void invalidateAll() {
+		renderVersion++;
+	}
+
 	public void initFromMap() {
-		try {
-			Domain domain = (Domain) getNode().getGraph()
-					.getDataProvider(AbConst.NODE_TO_SEQUENCE_KEY)
-					.get(getNode());
-			initFromMap(domain);
-		} catch (NullPointerException e) {
-			// Not yet ready for initialization
-		}
+		initFromMap(getDomain());
 	}
 
 	public void initFromMap(Domain domain) {
@@ -97,21 +109,37 @@ public class DomainNodeRealizer extends ShapeNodeRealizer implements
 			setLabelText(buildLabel(domain));
 			findSize(domain);
 			initialized = true;
+			renderState = new RenderState(domain);
 		}
 	}
 
+	/**
+	 * Paints the node with its current render state. The state is computed
+	 * again only, if the domain of the node or its label, paratope, mutations
+	 * or connections changed, or {@link #invalidateAll()} was called.
+	 */
 	@Override
 	protected void paintNode(Graphics2D graph) {
-		// ML 2014-03-21 multiple refreshing errors. Fast workaround needed for
-		// demo.
-		// TODO restructure refreshing (when label, connections, etc. change)
-		// if (!initialized) {
-		initFromMap();
-		// }
+		Domain domain = getDomain();
+		if (domain != null
+				&& (renderState == null || !renderState.isValidFor(domain))) {
+			initFromMap(domain);
+		}
 
 		super.paintNode(graph);
 	}
 
+	private Domain getDomain() {
+		try {
+			return (Domain) getNode().getGraph()
+					.getDataProvider(AbConst.NODE_TO_SEQUENCE_KEY)
+					.get(getNode());
+		} catch (NullPointerException e) {
+			// Not yet ready for initialization
+			return null;
+		}
+	}
+
 	private void findFillColor(Domain domain) {
 		if (domain.getParatope() != null) {
 			fillParatopeColor(domain, domain.getParatope());
@@ -224,4 +252,49 @@ public class DomainNodeRealizer extends ShapeNodeRealizer implements
 		return result;
 	}
 
+	/**
+	 * The domain and the changeable domain properties a render state was
+	 * computed from. All of them can be compared in constant time.
+	 */
+	private static final class RenderState {
+
+		private final Domain domain;
+
+		private final int version;
+
+		private final String userLabel;
+
+		private final Integer paratope;
+
+		private final int mutationCount;
+
+		private final int connectionCount;
+
+		private RenderState(Domain domain) {
+			this.domain = domain;
+			this.version = renderVersion;
+			this.userLabel = domain.getUserLabel();
+			this.paratope = domain.getParatope();
+			this.mutationCount = mutationCount(domain);
+			this.connectionCount = domain.getConnections().size();
+		}
+
+		/**
+		 * The label is compared by identity, a label set again with the same
+		 * text computes the render state again.
+		 */
+		private boolean isValidFor(Domain other) {
+			return domain == other && version == renderVersion
+					&& userLabel == other.getUserLabel()
+					&& ObjectUtils.equals(paratope, other.getParatope())
+					&& mutationCount == mutationCount(other)
+					&& connectionCount == other.getConnections().size();
+		}
+
+		private static int mutationCount(Domain domain) {
+			return domain.getAllMutations() == null ? 0 : domain
+					.getAllMutations().size();
+		}
+	}
+
 }
@@ -21,6 +21,7 @@ import javax.swing.JOptionPane;
 import org.roche.antibody.model.antibody.CysteinConnection;
 import org.roche.antibody.model.antibody.Domain;
 import org.roche.antibody.services.AbConst;
+import org.roche.antibody.services.AbstractGraphService;
 import org.roche.antibody.services.DomainService;
 import org.roche.antibody.ui.abstractgraph.CysBridgeEdgeRealizer;
 import org.roche.antibody.ui.components.CysBridgeDialog;
@@ -29,7 +30,6 @@ import org.slf4j.LoggerFactory;
 
 import y.base.DataProvider;
 import y.base.Edge;
-import y.base.EdgeMap;
 import y.base.Node;
 import y.view.CreateEdgeMode;
 import y.view.EdgeRealizer;
@@ -76,9 +76,8 @@ public class CysteinBridgeEdgeMode extends CreateEdgeMode {
     if (createdBridge != null) {
       graph.firePreEvent();
       createdBridge.getSource().getAntibody().addConnection(createdBridge);
-      EdgeMap map = (EdgeMap) graph.getDataProvider(AbConst.EDGE_TO_CONNECTION_KEY);
       Edge e = super.createEdge(graph, startNode, targetNode, new CysBridgeEdgeRealizer());
-      map.set(e, createdBridge);
+      AbstractGraphService.registerConnection(graph, e, createdBridge);
       graph.firePostEvent();
       return e;
     }
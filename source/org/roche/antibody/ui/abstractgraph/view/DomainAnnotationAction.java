@@ -30,7 +30,10 @@ import org.roche.antibody.ui.components.AntibodyEditorPane;
 
 import y.base.Node;
 
+import com.quattroresearch.antibody.BlastDatabaseCache;
+import com.quattroresearch.antibody.DomainDetection.E_ErrorType;
 import com.quattroresearch.antibody.DomainDetectionStandalone;
+import com.quattroresearch.blastws.BlastSearchService;
 
 /**
  * {@code DomainAnnotationAction}: action for re-blasting the selected domain.
@@ -83,7 +86,11 @@ public class DomainAnnotationAction extends AbstractAction {
     DomainDetectionStandalone domainDetection = new DomainDetectionStandalone(
         name, sequence);
     try {
-      domainDetection.makeBlastDatabases();
+      if (BlastDatabaseCache.getInstance().ensureDomainDatabases(new BlastSearchService()).equals(
+          E_ErrorType.LOADLIB_FAILED)) {
+        JOptionPane.showMessageDialog(editor, "Could not load Library File!", "Error", JOptionPane.ERROR_MESSAGE);
+        return;
+      }
     } catch (FileNotFoundException e) {
       JOptionPane.showMessageDialog(editor, "Please check the filepath in the Antibody Editor Settings", "Domain definition file not found", JOptionPane.ERROR_MESSAGE);
       return;
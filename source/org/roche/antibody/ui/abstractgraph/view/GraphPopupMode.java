@@ -29,8 +29,8 @@ import org.roche.antibody.model.antibody.Domain;
 import org.roche.antibody.model.antibody.Sequence;
 import org.roche.antibody.services.AbConst;
 import org.roche.antibody.services.AbstractGraphService;
+import org.roche.antibody.services.CachedHelmService;
 import org.roche.antibody.services.UIService;
-import org.roche.antibody.services.antibody.AntibodyService;
 import org.roche.antibody.ui.abstractgraph.DomainEdgeRealizer;
 import org.roche.antibody.ui.abstractgraph.GeneralConnectionEdgeRealizer;
 import org.roche.antibody.ui.components.AntibodyEditorAccess;
@@ -141,7 +141,7 @@ public class GraphPopupMode extends PopupMode {
 
       @Override
       public void actionPerformed(ActionEvent e) {
-        editor.updateGraphLayout();
+        editor.resetGraphLayout();
       }
     });
     graphContextMenu.add(item);
@@ -173,7 +173,7 @@ public class GraphPopupMode extends PopupMode {
       public void actionPerformed(ActionEvent e) {
 
         String helm =
-            AntibodyService.getInstance().toHELMString(AntibodyEditorAccess.getInstance().getAntibodyEditorPane().getAntibody());
+            CachedHelmService.getInstance().toHELMString(AntibodyEditorAccess.getInstance().getAntibodyEditorPane().getAntibody());
         ShowHELMDialog shdia =
             new ShowHELMDialog(UIService.getInstance().getMainFrame(), ModalityType.APPLICATION_MODAL, helm);
         shdia.setVisible(true);
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.ui.abstractgraph.view;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.Icon;
+import javax.swing.SwingWorker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.quattroresearch.antibody.MoleculeCache;
+
+/**
+ * {@code MoleculeIcon} shows the thumbnail of a molecule from the {@link MoleculeCache}. A thumbnail, which is not
+ * cached yet, is rendered in the background when the icon is painted first, the component is repainted as soon as it
+ * is ready. Until then the icon is empty, it keeps its size.
+ *
+ * @version $Id$
+ */
+public class MoleculeIcon implements Icon {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MoleculeIcon.class);
+
+  private final String chemNotation;
+
+  private final int width;
+
+  private final int height;
+
+  private Image image;
+
+  private boolean rendering;
+
+  /**
+   * @param chemNotation Molfile or SMILES string, may be Base64 encoded
+   * @param width width of the icon
+   * @param height height of the icon
+   */
+  public MoleculeIcon(String chemNotation, int width, int height) {
+    this.chemNotation = chemNotation;
+    this.width = width;
+    this.height = height;
+    this.image = MoleculeCache.getInstance().getCachedThumbnail(chemNotation, width, height);
+  }
+
+  @Override
+  public void paintIcon(Component c, Graphics g, int x, int y) {
+    if (image != null) {
+      g.drawImage(image, x, y, c);
+    } else if (!rendering) {
+      render(c);
+    }
+  }
+
+  @Override
+  public int getIconWidth() {
+    return width;
+  }
+
+  @Override
+  public int getIconHeight() {
+    return height;
+  }
+
+  private void render(final Component c) {
+    rendering = true;
+    new SwingWorker<Image, Void>() {
+      @Override
+      protected Image doInBackground() throws Exception {
+        return MoleculeCache.getInstance().getThumbnail(chemNotation, width, height);
+      }
+
+      @Override
+      protected void done() {
+        try {
+          image = get();
+          if (c != null) {
+            c.repaint();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          LOG.debug("No icon for molecule: " + e.getCause().getMessage());
+        }
+      }
+    }.execute();
+  }
+
+}
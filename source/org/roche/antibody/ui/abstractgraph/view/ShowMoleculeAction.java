@@ -41,6 +41,9 @@ public class ShowMoleculeAction extends AbstractAction {
 	/** */
 	private static final long serialVersionUID = 1L;
 
+	/** size of the molecule shown as icon */
+	private static final int ICON_SIZE = 32;
+
 	private AntibodyEditorPane editor;
 
 	private ChemElement chemDomain;
@@ -49,6 +52,8 @@ public class ShowMoleculeAction extends AbstractAction {
 		super("Show Molecule");
 		this.chemDomain = chemDomain;
 		this.editor = editor;
+		// rendered in the background, when the popup shows it
+		putValue(SMALL_ICON, new MoleculeIcon(chemDomain.getSmiles(), ICON_SIZE, ICON_SIZE));
 	}
 
 	@Override
@@ -31,10 +31,13 @@ import javax.swing.JPanel;
 import javax.swing.JTable;
 
 import org.roche.antibody.model.antibody.ChemElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import chemaxon.marvin.beans.MSketchPane;
 import chemaxon.marvin.beans.MViewPane;
 
+import com.quattroresearch.antibody.MoleculeCache;
+
 /**
  * 
  * {@code DomainAddDialog}: Dialog for showing a HELMNotation
@@ -49,14 +52,16 @@ import chemaxon.marvin.beans.MViewPane;
  */
 public class ShowMoleculeDialog extends JDialog implements ActionListener {
 
+	/** The Logger for this class */
+	private static final Logger LOG = LoggerFactory
+			.getLogger(ShowMoleculeDialog.class);
+
 	JTable domainTable;
 
 	private JButton btnOK;
 
 	private ChemElement chemDomain;
 
-	private MSketchPane msketchPane;
-
 	private MViewPane mviewPane;
 
 	/** Generated UID */
@@ -95,13 +100,16 @@ public class ShowMoleculeDialog extends JDialog implements ActionListener {
 	}
 
 	private JPanel createViewerPanel() {
-		msketchPane = new MSketchPane();
 		mviewPane = new MViewPane();
 		mviewPane.setEnabled(true);
 		mviewPane.setDetachable(false);
-		mviewPane.setM(0, chemDomain.getSmiles());
-
-		msketchPane.setMol(mviewPane.getM(0));
+		try {
+			mviewPane.setM(0, MoleculeCache.getInstance().getMolecule(
+					chemDomain.getSmiles()));
+		} catch (Exception e) {
+			LOG.warn("Molecule not cached: " + e.getMessage());
+			mviewPane.setM(0, chemDomain.getSmiles());
+		}
 
 		JPanel panel = new JPanel();
 		panel.setLayout(new BorderLayout());
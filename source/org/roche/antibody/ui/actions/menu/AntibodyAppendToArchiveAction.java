@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.ui.actions.menu;
+
+import java.awt.event.ActionEvent;
+import java.io.File;
+
+import javax.swing.Action;
+import javax.swing.ImageIcon;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+
+import org.apache.commons.io.FilenameUtils;
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.AntibodyContainer;
+import org.roche.antibody.services.CachedHelmService;
+import org.roche.antibody.services.ConfigFileService;
+import org.roche.antibody.services.xml.AntibodyArchive;
+import org.roche.antibody.ui.components.AntibodyEditorAccess;
+import org.roche.antibody.ui.filechooser.ArchiveFileChooser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code AntibodyAppendToArchiveAction}
+ * 
+ * Action for appending the current antibody to an antibody archive from the Mainmenu. The archive is created, if it
+ * does not exist.
+ * 
+ * @version $Id$
+ */
+public class AntibodyAppendToArchiveAction extends AbstractEditorAction {
+
+  /** */
+  private static final long serialVersionUID = -2984400731561380712L;
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory.getLogger(AntibodyAppendToArchiveAction.class);
+
+  public static final String NAME = "Append Antibody To Archive...";
+
+  public static final String SHORT_DESCRIPTION = "Appends antibody to an antibody archive.";
+
+  public static final String IMAGE_PATH = "disk.png";
+
+  public AntibodyAppendToArchiveAction(JFrame parentFrame) {
+    super(parentFrame, NAME);
+
+    ImageIcon icon = getImageIcon(IMAGE_PATH);
+    if (icon != null) {
+      this.putValue(Action.SMALL_ICON, icon);
+    }
+    this.putValue(Action.SHORT_DESCRIPTION, SHORT_DESCRIPTION);
+  }
+
+  public void actionPerformed(ActionEvent e) {
+
+    ArchiveFileChooser dialog = new ArchiveFileChooser();
+    if (dialog.showOpenDialog(super.getParentFrame()) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    File archiveFile = dialog.getSelectedFile();
+    if (!archiveFile.exists()) {
+      archiveFile = new File(FilenameUtils.removeExtension(archiveFile.getAbsolutePath())
+          + AntibodyArchive.ARCHIVE_EXTENSION);
+    }
+    String name = JOptionPane.showInputDialog(super.getParentFrame(), "Name of the antibody in the archive:",
+        FilenameUtils.getBaseName(archiveFile.getName()));
+    if (name == null || name.trim().isEmpty()) {
+      return;
+    }
+
+    AntibodyArchive archive = null;
+    try {
+      Antibody ab = AntibodyEditorAccess.getInstance().getAntibodyEditorPane().getAntibody();
+      ab.setDomainLibraryPath(ConfigFileService.getInstance().getDomainLibFilename());
+
+      AntibodyContainer abContainer = new AntibodyContainer();
+      abContainer.setAntibody(ab);
+      abContainer.setHelmCode(CachedHelmService.getInstance().toHELMString(ab));
+      archive = AntibodyArchive.openForAppend(archiveFile);
+      archive.append(name.trim(), abContainer);
+      archive.close();
+    } catch (Exception e1) {
+      JOptionPane.showMessageDialog(super.getParentFrame(),
+          "Could not append Antibody to archive! Please try again",
+          "Error", JOptionPane.ERROR_MESSAGE);
+      LOG.error("Could not append Antibody to archive! {}", e1);
+      closeQuietly(archive);
+    }
+  }
+
+  private void closeQuietly(AntibodyArchive archive) {
+    if (archive != null) {
+      try {
+        archive.close();
+      } catch (Exception e) {
+        LOG.error("Could not close archive! {}", e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.ui.actions.menu;
+
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.util.List;
+
+import javax.swing.Action;
+import javax.swing.ImageIcon;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+
+import org.roche.antibody.model.antibody.AntibodyContainer;
+import org.roche.antibody.services.UIService;
+import org.roche.antibody.services.xml.AntibodyArchive;
+import org.roche.antibody.ui.components.AntibodyEditorPane;
+import org.roche.antibody.ui.filechooser.ArchiveFileChooser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code AntibodyLoadFromArchiveAction}
+ * 
+ * Action for loading one antibody of an antibody archive from the Mainmenu. Only the index and the chosen antibody are
+ * read.
+ * 
+ * @version $Id$
+ */
+public class AntibodyLoadFromArchiveAction extends AbstractEditorAction {
+
+  /** */
+  private static final long serialVersionUID = 5087326271658305617L;
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory.getLogger(AntibodyLoadFromArchiveAction.class);
+
+  public static final String NAME = "Load Antibody From Archive...";
+
+  public static final String SHORT_DESCRIPTION = "Loads an antibody of an antibody archive.";
+
+  public static final String IMAGE_PATH = "open-folder.png";
+
+  public AntibodyLoadFromArchiveAction(JFrame parentFrame) {
+    super(parentFrame, NAME);
+
+    ImageIcon icon = getImageIcon(IMAGE_PATH);
+    if (icon != null) {
+      this.putValue(Action.SMALL_ICON, icon);
+    }
+    this.putValue(Action.SHORT_DESCRIPTION, SHORT_DESCRIPTION);
+  }
+
+  public void actionPerformed(ActionEvent e) {
+
+    ArchiveFileChooser dialog = new ArchiveFileChooser();
+    if (dialog.showOpenDialog(super.getParentFrame()) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    File archiveFile = dialog.getSelectedFile();
+
+    AntibodyContainer newAbContainer = null;
+    AntibodyArchive archive = null;
+    try {
+      archive = AntibodyArchive.open(archiveFile);
+      List<AntibodyArchive.Entry> entries = archive.getEntries();
+      if (entries.isEmpty()) {
+        JOptionPane.showMessageDialog(super.getParentFrame(), "The archive is empty.", "Info",
+            JOptionPane.INFORMATION_MESSAGE);
+        return;
+      }
+      String[] names = new String[entries.size()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = entries.get(i).getName();
+      }
+      String name = (String) JOptionPane.showInputDialog(super.getParentFrame(), "Antibody:",
+          archiveFile.getName(), JOptionPane.PLAIN_MESSAGE, null, names, names[names.length - 1]);
+      if (name == null) {
+        return;
+      }
+      newAbContainer = archive.get(name);
+    } catch (Exception e1) {
+      JOptionPane.showMessageDialog(super.getParentFrame(),
+          "Could not create antibody from given archive!", "Error",
+          JOptionPane.ERROR_MESSAGE);
+      LOG.error("Could not load Antibody from archive! {}", e1);
+      return;
+    } finally {
+      closeQuietly(archive);
+    }
+    AntibodyEditorPane pane = UIService.getInstance()
+        .addAntibodyViewEditor(null);
+    pane.setModel(newAbContainer.getAntibody());
+  }
+
+  private void closeQuietly(AntibodyArchive archive) {
+    if (archive != null) {
+      try {
+        archive.close();
+      } catch (Exception e) {
+        LOG.error("Could not close archive! {}", e);
+      }
+    }
+  }
+
+}
@@ -27,7 +27,7 @@ import javax.swing.JOptionPane;
 
 import org.roche.antibody.model.antibody.AntibodyContainer;
 import org.roche.antibody.services.UIService;
-import org.roche.antibody.services.xml.XmlAntibodyService;
+import org.roche.antibody.services.xml.CachedXmlAntibodyService;
 import org.roche.antibody.ui.components.AntibodyEditorPane;
 import org.roche.antibody.ui.filechooser.XmlFileChooser;
 import org.slf4j.Logger;
@@ -58,7 +58,7 @@ public class AntibodyLoadXmlAction extends AbstractEditorAction {
 
   public static final String IMAGE_PATH = "open-folder.png";
 
-  private XmlAntibodyService xmlService = XmlAntibodyService.getInstance();
+  private CachedXmlAntibodyService xmlService = CachedXmlAntibodyService.getInstance();
 
   public AntibodyLoadXmlAction(JFrame parentFrame) {
     super(parentFrame, NAME);
@@ -29,9 +29,9 @@ import javax.xml.bind.JAXBException;
 import org.apache.commons.io.FilenameUtils;
 import org.roche.antibody.model.antibody.Antibody;
 import org.roche.antibody.model.antibody.AntibodyContainer;
+import org.roche.antibody.services.CachedHelmService;
 import org.roche.antibody.services.ConfigFileService;
-import org.roche.antibody.services.antibody.AntibodyService;
-import org.roche.antibody.services.xml.XmlAntibodyService;
+import org.roche.antibody.services.xml.CachedXmlAntibodyService;
 import org.roche.antibody.ui.components.AntibodyEditorAccess;
 import org.roche.antibody.ui.filechooser.AntibodyFileChooser;
 import org.roche.antibody.ui.filechooser.XmlFileChooser;
@@ -63,7 +63,7 @@ public class AntibodySaveXmlAction extends AbstractEditorAction {
 
   public static final String IMAGE_PATH = "disk.png";
 
-  private XmlAntibodyService xmlService = XmlAntibodyService.getInstance();
+  private CachedXmlAntibodyService xmlService = CachedXmlAntibodyService.getInstance();
 
   public AntibodySaveXmlAction(JFrame parentFrame) {
     super(parentFrame, NAME);
@@ -90,7 +90,7 @@ public class AntibodySaveXmlAction extends AbstractEditorAction {
         ab.setDomainLibraryPath(ConfigFileService.getInstance().getDomainLibFilename());
 
         abContainer.setAntibody(ab);
-        abContainer.setHelmCode(AntibodyService.getInstance().toHELMString(ab));
+        abContainer.setHelmCode(CachedHelmService.getInstance().toHELMString(ab));
         xmlService.marshal(abContainer, abFile);
       } catch (JAXBException e1) {
         JOptionPane.showMessageDialog(super.getParentFrame(),
@@ -22,6 +22,7 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.KeyEvent;
 import java.awt.geom.Point2D;
+import java.util.Collection;
 import java.util.Map;
 
 import javax.swing.ActionMap;
@@ -34,6 +35,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTable;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.border.Border;
 import javax.swing.border.CompoundBorder;
 import javax.swing.border.EtchedBorder;
@@ -47,6 +49,9 @@ import org.roche.antibody.model.antibody.Sequence;
 import org.roche.antibody.services.AbConst;
 import org.roche.antibody.services.AbstractGraphLayoutService;
 import org.roche.antibody.services.AbstractGraphService;
+import org.roche.antibody.services.AbstractGraphUpdateService;
+import org.roche.antibody.services.AbstractGraphUpdateService.GraphDelta;
+import org.roche.antibody.services.CachedHelmService;
 import org.roche.antibody.services.DomainService;
 import org.roche.antibody.services.antibody.AntibodyService;
 import org.roche.antibody.services.graphsynchronizer.GraphSynchronizer;
@@ -63,7 +68,7 @@ import y.base.Edge;
 import y.base.GraphEvent;
 import y.base.GraphListener;
 import y.base.Node;
-import y.layout.CanonicMultiStageLayouter;
+import y.layout.hierarchic.IncrementalHierarchicLayouter;
 import y.view.BridgeCalculator;
 import y.view.DefaultGraph2DRenderer;
 import y.view.EditMode;
@@ -73,7 +78,7 @@ import y.view.Graph2DViewActions;
 import y.view.Graph2DViewMouseWheelZoomListener;
 import y.view.NodeRealizer;
 
-import com.quattroresearch.antibody.paratopedetection.ParatopeDetection;
+import com.quattroresearch.antibody.paratopedetection.HeapParatopeDetection;
 import com.quattroresearch.antibody.paratopedetection.ParatopeDetectionException;
 
 /**
@@ -124,7 +129,17 @@ public class AntibodyEditorPane extends JPanel implements GraphListener {
 
   private Graph2D abstractGraph;
 
-  private CanonicMultiStageLayouter abstractGraphLayouter;
+  private IncrementalHierarchicLayouter abstractGraphLayouter;
+
+  private GraphLayoutScheduler layoutScheduler;
+
+  /** applies the changes of the antibody model to the graph, when no layout is running */
+  private final Runnable graphUpdate = new Runnable() {
+    @Override
+    public void run() {
+      updateGraph();
+    }
+  };
 
   private DomainTableModel antibodyPropertyModel;
 
@@ -132,6 +147,12 @@ public class AntibodyEditorPane extends JPanel implements GraphListener {
 
   private boolean isBackToDomainEditorEnabled;
 
+  /** nesting depth of the compound events of the graph, see {@link Graph2D#firePreEvent()} */
+  private int graphEventDepth;
+
+  /** a graph event requested a layout, while a compound event was in progress */
+  private boolean graphLayoutPending;
+
   /**
    * Constructor
    * 
@@ -171,33 +192,81 @@ public class AntibodyEditorPane extends JPanel implements GraphListener {
   }
 
   /**
-   * Updates the GraphLayout and also the HELMTextfield
+   * Updates the GraphLayout and also the HELMTextfield. Changes of the antibody model are applied incrementally to the
+   * existing graph, see {@link #updateGraph()}. The layout itself is requested from the {@link GraphLayoutScheduler},
+   * which coalesces requests and layouts the graph in the background. While a layout is running, the scheduler holds
+   * the changes back until the layout was applied. The cached HELM of the antibody is marked as modified.
    */
   public void updateGraphLayout() {
+    if (antibody != null) {
+      CachedHelmService.getInstance().markModified(antibody);
+    }
     if (abstractGraph != null) {
-      // abstractGraph = null;
-      createGraph();
-      AbstractGraphLayoutService.layout(abstractGraph, abstractGraphLayouter);
-      abstractAntibodyView.fitContent();
-      abstractGraph.updateViews();
-
       AntibodyEditorAccess.getInstance().setAntibodyEditorPane(this);
 
       // Re-Detect paratopes(Fragment variables) for correct coloring
       try {
-        new ParatopeDetection(AntibodyEditorAccess.getInstance().getAntibodyEditorPane().getAntibody().getPeptides());
+        new HeapParatopeDetection(AntibodyEditorAccess.getInstance().getAntibodyEditorPane().getAntibody().getPeptides());
       } catch (ParatopeDetectionException e) {
         JOptionPane.showMessageDialog(this, "Paratope Detection failed with message '" + e.getMessage()
             + "'. Please contact your administrator.");
       }
-      for (Node node : abstractGraph.getNodeArray()) {
-        NodeRealizer realizer = abstractGraph.getRealizer(node);
-        if (realizer instanceof DomainNodeRealizer) {
-          ((DomainNodeRealizer) abstractGraph.getRealizer(node)).initFromMap();
-        }
+
+      layoutScheduler.updateGraph(graphUpdate);
+      layoutScheduler.requestLayout();
+    }
+  }
+
+  /**
+   * @return the scheduler, which layouts the graph of this pane
+   */
+  public GraphLayoutScheduler getLayoutScheduler() {
+    return layoutScheduler;
+  }
+
+  /**
+   * Builds the graph from scratch and layouts it.
+   */
+  public void resetGraphLayout() {
+    if (abstractGraph != null && antibody != null) {
+      createGraph();
+      updateGraphLayout();
+    }
+  }
+
+  /**
+   * Applies the changes of the antibody model to the current graph. Only the delta is added or removed and the touched
+   * nodes are laid out incrementally. The graph is built again, when the delta can not be applied to the existing
+   * chains. Run by the {@link GraphLayoutScheduler}, never while it layouts a copy of the graph.
+   */
+  private void updateGraph() {
+    if (antibody != null) {
+      GraphDelta delta = AbstractGraphUpdateService.computeDelta(abstractGraph, antibody);
+      if (delta.isRebuildRequired()) {
+        LOG.debug("Rebuilding graph: {}", delta);
+        createGraph();
+      } else if (!delta.isEmpty()) {
+        applyDelta(delta);
+      }
+    }
+    // the colors depend on the paratopes detected
+    for (Node node : abstractGraph.getNodeArray()) {
+      NodeRealizer realizer = abstractGraph.getRealizer(node);
+      if (realizer instanceof DomainNodeRealizer) {
+        ((DomainNodeRealizer) abstractGraph.getRealizer(node)).initFromMap();
       }
+    }
+  }
 
-      // createGraph();
+  private void applyDelta(GraphDelta delta) {
+    LOG.debug("Updating graph: {}", delta);
+    // the delta reflects the model already, it must not be written back by onGraphEvent
+    abstractGraph.removeGraphListener(this);
+    try {
+      Collection<Node> touchedNodes = AbstractGraphUpdateService.applyDelta(abstractGraph, antibody, delta);
+      AbstractGraphUpdateService.updateIncrementalHints(abstractGraph, abstractGraphLayouter, touchedNodes);
+    } finally {
+      abstractGraph.addGraphListener(this);
     }
   }
 
@@ -253,6 +322,15 @@ public class AntibodyEditorPane extends JPanel implements GraphListener {
     abstractGraphLayouter = AbstractGraphLayoutService.createLayouter();
     this.abstractAntibodyView = new Graph2DView();
     this.abstractAntibodyView.setFitContentOnResize(true);
+    layoutScheduler = new GraphLayoutScheduler(abstractAntibodyView, abstractGraphLayouter, new Runnable() {
+      @Override
+      public void run() {
+        Graph2D graph = abstractAntibodyView.getGraph2D();
+        AbstractGraphUpdateService.clearIncrementalHints(graph);
+        abstractAntibodyView.fitContent();
+        graph.updateViews();
+      }
+    });
     editMode = new AntibodyEditMode(this);
     abstractAntibodyView.addViewMode(editMode);
 
@@ -328,6 +406,21 @@ public class AntibodyEditorPane extends JPanel implements GraphListener {
 
   @Override
   public void onGraphEvent(GraphEvent e) {
+    // the graph is updated from the model, when a compound event is finished. Model and graph maps are only consistent
+    // then (e.g. new cystein bridges are registered after the edge was created).
+    if (e.getType() == GraphEvent.PRE_EVENT) {
+      graphEventDepth++;
+      return;
+    }
+    if (e.getType() == GraphEvent.POST_EVENT) {
+      graphEventDepth = Math.max(0, graphEventDepth - 1);
+      if (graphEventDepth == 0 && graphLayoutPending) {
+        graphLayoutPending = false;
+        updateGraphLayout();
+      }
+      return;
+    }
+
     // we catch the delete event of an edge. and remove the CysteinBridge
     // from the Model.
 
@@ -340,7 +433,7 @@ public class AntibodyEditorPane extends JPanel implements GraphListener {
       if (bridgeToDelete != null) {
         antibody.removeConnection(bridgeToDelete);
       }
-      updateGraphLayout();
+      requestGraphLayout();
     }
 
     if (e.getType() == GraphEvent.POST_NODE_REMOVAL) {
@@ -359,9 +452,15 @@ public class AntibodyEditorPane extends JPanel implements GraphListener {
         } else {
           LOG.debug("Domain should be deleted from the Middle --> Deleting whole peptide.");
           AntibodyService.getInstance().removeSequence(((Domain) seqToDelete).getPeptide(), antibody);
-          // Removing Domains from antibody other than seqToDelete does not affect Graph2D --> reset antibody
-          AntibodyEditorAccess.getInstance().getAntibodyEditorPane()
-              .setModel(AntibodyEditorAccess.getInstance().getAntibodyEditorPane().getAntibody());
+          // Removing Domains from antibody other than seqToDelete does not affect Graph2D --> the remaining domain nodes
+          // are removed by the incremental update, after the current deletion is finished.
+          SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+              updateGraphLayout();
+            }
+          });
+          return;
 
         }
       } else {
@@ -373,11 +472,22 @@ public class AntibodyEditorPane extends JPanel implements GraphListener {
 
       }
 
-      updateGraphLayout();
+      requestGraphLayout();
     }
 
     if (e.getType() == GraphEvent.EDGE_CREATION
         || e.getType() == GraphEvent.NODE_CREATION) {
+      requestGraphLayout();
+    }
+  }
+
+  /**
+   * Updates the graph layout now or, while a compound event of the graph is in progress, after it has finished.
+   */
+  private void requestGraphLayout() {
+    if (graphEventDepth > 0) {
+      graphLayoutPending = true;
+    } else {
       updateGraphLayout();
     }
   }
@@ -54,6 +54,8 @@ import org.roche.antibody.services.PreferencesService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.quattroresearch.blastws.SmithWatermanSearchService;
+
 /**
  * @author <b>Stefan Klostermann:</b> Stefan DOT Klostermann AT roche DOT com, Roche Pharma Research and Early
  *         Development - Informatics, Roche Innovation Center Munich
@@ -100,6 +102,8 @@ public class AntibodySettingsDialog extends JDialog implements ActionListener {
 
   private JCheckBox cbAutoconnectorDebugMode;
 
+  private JCheckBox cbUseInternalAligner;
+
   private JFormattedTextField tfMaxDomainDistTextField;
 
   private JCheckBox cbAutoextendDomains;
@@ -620,6 +624,13 @@ public class AntibodySettingsDialog extends JDialog implements ActionListener {
     cbAutoconnectorDebugMode
         .setToolTipText("<html>In Debug Mode you will see detailed information about which autoconnector rules were applied, or could not be applied.</html>");
     pnlBlast.add(cbAutoconnectorDebugMode);
+    cbUseInternalAligner = new JCheckBox("Use Internal Aligner Instead Of Blast");
+    cbUseInternalAligner.setSelected(preferences.getBoolean(
+        SmithWatermanSearchService.PREF_USE_INTERNAL_ALIGNER, SmithWatermanSearchService.DEFAULT_USE_INTERNAL_ALIGNER));
+    cbUseInternalAligner
+        .setToolTipText("<html>Domains are aligned in-process with Smith-Waterman (BLOSUM62, gap costs 11/1).<br />"
+            + "No Blast installation or database indexing is needed.</html>");
+    pnlBlast.add(cbUseInternalAligner);
 
     pnlBlast.setMaximumSize(pnlBlast.getMinimumSize());
 
@@ -691,6 +702,9 @@ public class AntibodySettingsDialog extends JDialog implements ActionListener {
         preferences.putBoolean(
             PreferencesService.DD_AUTOCONNECTOR_DEBUG_MODE,
             cbAutoconnectorDebugMode.isSelected());
+        preferences.putBoolean(
+            SmithWatermanSearchService.PREF_USE_INTERNAL_ALIGNER,
+            cbUseInternalAligner.isSelected());
 
         preferences.putInt(PreferencesService.MAX_DOMAIN_DISTANCE,
             Integer.parseInt(nvl(
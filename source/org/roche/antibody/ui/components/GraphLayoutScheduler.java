@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.ui.components;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.ExceptionListener;
+
+import javax.swing.Timer;
+
+import org.roche.antibody.services.AbstractGraphLayoutService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import y.layout.CanonicMultiStageLayouter;
+import y.view.Graph2D;
+import y.view.Graph2DLayoutExecutor;
+import y.view.Graph2DView;
+
+/**
+ * {@code GraphLayoutScheduler} layouts the graph of a {@link Graph2DView} on request. All requests within
+ * {@link #DEFAULT_COALESCE_DELAY} ms are coalesced into one layout. The layout is calculated on a copy of the graph in
+ * a separate thread and applied to the graph on the event dispatch thread, when it is finished. Requests while a layout
+ * is running start one more layout afterwards.
+ * <p>
+ * The graph must not change while its copy is laid out, otherwise the layout is applied to nodes which were added or
+ * removed in between. Changes of the graph are therefore passed to {@link #updateGraph(Runnable)}, which holds them
+ * back until the running layout was applied.
+ * <p>
+ * All methods have to be called on the event dispatch thread.
+ *
+ * @version $Id$
+ */
+public class GraphLayoutScheduler {
+
+  /** The Logger for this class */
+  private static final Logger LOG = LoggerFactory
+      .getLogger(GraphLayoutScheduler.class);
+
+  /** time in ms layout requests are coalesced: one frame */
+  public static final int DEFAULT_COALESCE_DELAY = 16;
+
+  private final Graph2DView view;
+
+  private final CanonicMultiStageLayouter layouter;
+
+  private final Runnable finishHandler;
+
+  private final Timer timer;
+
+  private boolean layoutRunning;
+
+  private boolean layoutPending;
+
+  private Runnable pendingUpdate;
+
+  private int requestCount;
+
+  private int layoutCount;
+
+  private int failedLayoutCount;
+
+  private long lastLayoutDuration;
+
+  private long maxLayoutDuration;
+
+  private long totalLayoutDuration;
+
+  /**
+   * @param view the view, whose graph will be laid out
+   * @param layouter layouter from {@link AbstractGraphLayoutService#createLayouter()}
+   * @param finishHandler called on the event dispatch thread after the layout was applied, may be null
+   */
+  public GraphLayoutScheduler(Graph2DView view, CanonicMultiStageLayouter layouter, Runnable finishHandler) {
+    this.view = view;
+    this.layouter = layouter;
+    this.finishHandler = finishHandler;
+    this.timer = new Timer(DEFAULT_COALESCE_DELAY, new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        startLayout();
+      }
+    });
+    this.timer.setRepeats(false);
+    this.timer.setCoalesce(true);
+  }
+
+  /**
+   * Requests a layout of the graph. The layout starts after {@link #DEFAULT_COALESCE_DELAY} ms without further
+   * requests.
+   */
+  public void requestLayout() {
+    requestCount++;
+    timer.restart();
+  }
+
+  /**
+   * Runs an update of the graph. While a layout is running, the update is held back until the layout was applied and
+   * runs right before the next layout starts. Only the last held back update is run, so it has to apply all changes
+   * made since the graph was updated last.
+   *
+   * @param update changes the graph
+   */
+  public void updateGraph(Runnable update) {
+    if (layoutRunning) {
+      pendingUpdate = update;
+      layoutPending = true;
+    } else {
+      update.run();
+    }
+  }
+
+  /**
+   * @return true, if a layout is requested or running
+   */
+  public boolean isLayoutScheduled() {
+    return timer.isRunning() || layoutRunning || layoutPending;
+  }
+
+  /**
+   * @return true, if a layout of a copy of the graph is running
+   */
+  public boolean isLayoutRunning() {
+    return layoutRunning;
+  }
+
+  private void startLayout() {
+    if (layoutRunning) {
+      layoutPending = true;
+      return;
+    }
+    Graph2D graph = view.getGraph2D();
+    if (graph == null || graph.isEmpty()) {
+      return;
+    }
+
+    layoutRunning = true;
+    layoutPending = false;
+    AbstractGraphLayoutService.prepareLayout(graph);
+    LayoutRun run = new LayoutRun();
+    Graph2DLayoutExecutor layoutExecutor = new Graph2DLayoutExecutor(Graph2DLayoutExecutor.THREADED);
+    layoutExecutor.setLockingView(true);
+    layoutExecutor.doLayout(view, AbstractGraphLayoutService.createLayoutSequence(layouter), run, run);
+  }
+
+  private void layoutFinished(long duration, boolean failed) {
+    layoutRunning = false;
+    if (failed) {
+      failedLayoutCount++;
+    } else {
+      layoutCount++;
+      lastLayoutDuration = duration;
+      maxLayoutDuration = Math.max(maxLayoutDuration, duration);
+      totalLayoutDuration += duration;
+      LOG.debug("Graph layout finished in {}ms ({}).", duration, this);
+      if (finishHandler != null) {
+        finishHandler.run();
+      }
+    }
+    if (pendingUpdate != null) {
+      Runnable update = pendingUpdate;
+      pendingUpdate = null;
+      update.run();
+    }
+    if (layoutPending) {
+      startLayout();
+    }
+  }
+
+  /**
+   * @return the number of layout requests
+   */
+  public int getRequestCount() {
+    return requestCount;
+  }
+
+  /**
+   * @return the number of layouts applied to the graph
+   */
+  public int getLayoutCount() {
+    return layoutCount;
+  }
+
+  /**
+   * @return the number of layouts, which failed
+   */
+  public int getFailedLayoutCount() {
+    return failedLayoutCount;
+  }
+
+  /**
+   * @return the duration of the last layout in ms
+   */
+  public long getLastLayoutDuration() {
+    return lastLayoutDuration;
+  }
+
+  /**
+   * @return the duration of the longest layout in ms
+   */
+  public long getMaxLayoutDuration() {
+    return maxLayoutDuration;
+  }
+
+  /**
+   * @return the duration of all layouts in ms
+   */
+  public long getTotalLayoutDuration() {
+    return totalLayoutDuration;
+  }
+
+  /**
+   * @return the average duration of a layout in ms
+   */
+  public double getAverageLayoutDuration() {
+    return layoutCount == 0 ? 0.0 : (double) totalLayoutDuration / layoutCount;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("GraphLayoutScheduler [requests=%s, layouts=%s, failed=%s, last=%sms, max=%sms, avg=%.1fms]",
+        requestCount, layoutCount, failedLayoutCount, lastLayoutDuration, maxLayoutDuration,
+        getAverageLayoutDuration());
+  }
+
+  /**
+   * Receives the end of one threaded layout, successful or not.
+   */
+  private class LayoutRun implements Runnable, ExceptionListener {
+
+    private final long startTime = System.currentTimeMillis();
+
+    private boolean finished;
+
+    @Override
+    public void run() {
+      finish(false);
+    }
+
+    @Override
+    public void exceptionThrown(Exception e) {
+      LOG.error("Graph layout failed: " + e.getMessage(), e);
+      finish(true);
+    }
+
+    private void finish(boolean failed) {
+      if (!finished) {
+        finished = true;
+        layoutFinished(System.currentTimeMillis() - startTime, failed);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright C 2016, Roche pREDi (Roche Innovation Center Munich)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.roche.antibody.ui.filechooser;
+
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import org.roche.antibody.services.PreferencesService;
+import org.roche.antibody.services.xml.AntibodyArchive;
+
+/**
+ * {@code ArchiveFileChooser}
+ * 
+ * Dialog for opening antibody archives, see {@link AntibodyArchive}.
+ * 
+ * @version $Id$
+ */
+public class ArchiveFileChooser extends AntibodyFileChooser {
+
+  /** */
+  private static final long serialVersionUID = -4630117702214586025L;
+
+  protected FileNameExtensionFilter abArchive = new FileNameExtensionFilter("Antibody-Archive (*"
+      + AntibodyArchive.ARCHIVE_EXTENSION + ")", AntibodyArchive.ARCHIVE_EXTENSION.substring(1));
+
+  public ArchiveFileChooser() {
+    super();
+    setFileFilter(abArchive);
+  }
+
+  @Override
+  public String getLastDirectoryProperty() {
+    return PreferencesService.LAST_XML_FOLDER;
+  }
+
+}
@@ -44,6 +44,9 @@ public class FileUtils {
   private final static String PATTERN_HEADER =
       "(LOCUS\\p{Blank}+)([A-Za-z0-9\\p{Punct}]+)(\\p{Blank}+)([0-9]+)(\\p{Blank}+)(bp|aa)(\\p{Blank}+)(ds-DNA|DNA)?(\\p{Blank}*)(circular)?(.*)";
 
+  /** compiled {@link #PATTERN_HEADER}, matched against every line read by the streaming reader */
+  private static final Pattern HEADER_PATTERN = Pattern.compile(PATTERN_HEADER);
+
   public static String getFileContent(File file) throws IOException {
     String lineSeparator = System.getProperty("line.separator");
     StringBuilder fileContent = new StringBuilder();
@@ -75,13 +78,12 @@ public class FileUtils {
    * @throws IOException
    */
   public static boolean isVNTDNAFile(String file) throws IOException {
-    Pattern pattern = Pattern.compile(PATTERN_HEADER);
     BufferedReader readbuffer = null;
     try {
       readbuffer = new BufferedReader(new StringReader(file));
       String strRead;
       strRead = readbuffer.readLine();
-      Matcher matcher = pattern.matcher(strRead);
+      Matcher matcher = HEADER_PATTERN.matcher(strRead);
 
       return (matcher.matches() && matcher.group(6).equalsIgnoreCase("bp") && (matcher.group(8).equalsIgnoreCase("DNA") || matcher.group(8).equalsIgnoreCase("ds-DNA")));
     } finally {
@@ -97,20 +99,31 @@ public class FileUtils {
    * @throws IOException
    */
   public static boolean isVNTProteinFile(String file) throws IOException {
-    Pattern pattern = Pattern.compile(PATTERN_HEADER);
     BufferedReader readbuffer = null;
     try {
       readbuffer = new BufferedReader(new StringReader(file));
       String strRead;
       strRead = readbuffer.readLine();
-      Matcher matcher = pattern.matcher(strRead);
-
-      return (matcher.matches() && matcher.group(6).equalsIgnoreCase("aa"));
+      return isVNTProteinHeader(strRead);
     } finally {
       readbuffer.close();
     }
   }
 
+  /**
+   * Checks if the given line is the LOCUS tag of a VNTFile that contains a protein.
+   * 
+   * @param line first line of the file
+   * @return true if the line starts a genbank file that contains a protein.
+   */
+  public static boolean isVNTProteinHeader(String line) {
+    if (line == null) {
+      return false;
+    }
+    Matcher matcher = HEADER_PATTERN.matcher(line);
+    return (matcher.matches() && matcher.group(6).equalsIgnoreCase("aa"));
+  }
+
   /**
    * Checks if the input really starts with a '>' character. Has to be refined eventually
    * 
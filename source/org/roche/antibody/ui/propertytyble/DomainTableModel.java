@@ -28,6 +28,7 @@ import org.roche.antibody.model.antibody.Domain;
 import org.roche.antibody.model.antibody.DomainLibraryValues;
 import org.roche.antibody.services.AbConst;
 import org.roche.antibody.services.ConnectionService;
+import org.roche.antibody.ui.abstractgraph.DomainNodeRealizer;
 
 import com.quattroresearch.antibody.ISingleMutationRead;
 import com.quattroresearch.antibody.UnknownMutation;
@@ -80,6 +81,8 @@ public class DomainTableModel extends AbstractTableModel {
     if (data.get(rowIndex).getName().equalsIgnoreCase(TableDataKeys.USER_COMMENT)) {
       curModel.setUserComment(aValue.toString());
     }
+    // the node label shows label and comment
+    DomainNodeRealizer.invalidateAll();
     updateModel();
   }
 
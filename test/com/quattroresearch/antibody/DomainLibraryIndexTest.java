@@ -0,0 +1,72 @@
+package com.quattroresearch.antibody;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roche.antibody.model.antibody.ChainType;
+import org.roche.antibody.model.antibody.DomainLibraryValues;
+import org.roche.antibody.model.antibody.DomainLibraryValues.DomainUsage;
+
+public class DomainLibraryIndexTest {
+
+  private static DomainLibraryValues values(String shortName, String species, String chainType, DomainUsage usage) {
+    DomainLibraryValues values = new DomainLibraryValues();
+    values.setShortName(shortName);
+    values.setSpecies(species);
+    values.setChainType(ChainType.fromString(chainType));
+    values.setDomainUsage(usage);
+    return values;
+  }
+
+  private final DomainLibraryValues vh = values("VH", "Human", "Heavy", DomainUsage.CORE);
+
+  private final DomainLibraryValues ch1 = values("CH1", "Human", "Heavy", DomainUsage.GENERAL);
+
+  private final DomainLibraryValues vk = values("VK", "Mouse", "Kappa", DomainUsage.CORE);
+
+  private final DomainLibraryValues antigen = values("AG", "Human", "None", DomainUsage.ANTIGEN);
+
+  private final DomainLibraryValues vhDuplicate = values("VH", "Mouse", "Heavy", DomainUsage.GENERAL);
+
+  private final List<DomainLibraryValues> library = Arrays.asList(vh, ch1, vk, antigen, vhDuplicate);
+
+  @Test
+  public void testLookupByShortName() {
+    DomainLibraryIndex index = new DomainLibraryIndex(library);
+    Assert.assertSame(vh, index.get("VH"));
+    Assert.assertSame(vk, index.getDomainLibraryValues("VK"));
+    Assert.assertNull(index.get("XY"));
+    Assert.assertFalse(index.contains("XY"));
+    DomainLibraryValues missing = index.getDomainLibraryValues("XY");
+    Assert.assertNotNull(missing);
+    Assert.assertNull(missing.getShortName());
+    Assert.assertEquals(5, index.size());
+  }
+
+  @Test
+  public void testGroupsInLibraryOrder() {
+    DomainLibraryIndex index = new DomainLibraryIndex(library);
+    Assert.assertEquals(Arrays.asList(vh, vk), index.getByUsage(DomainUsage.CORE));
+    Assert.assertEquals(Arrays.asList(ch1, antigen, vhDuplicate),
+        index.getByUsage(DomainUsage.GENERAL, DomainUsage.ANTIGEN));
+    Assert.assertEquals(Arrays.asList(vh, ch1, vhDuplicate), index.getByChainType(ChainType.HEAVY));
+    Assert.assertEquals(Arrays.asList(vk, vhDuplicate), index.getBySpecies("Mouse"));
+    Assert.assertTrue(index.getBySpecies("Rat").isEmpty());
+  }
+
+  @Test
+  public void testIndexIsKeptForSameLibrary() {
+    List<DomainLibraryValues> copy = new ArrayList<DomainLibraryValues>(library);
+    DomainLibraryIndex index = DomainLibraryIndex.of(library);
+    Assert.assertSame(index, DomainLibraryIndex.of(library));
+    Assert.assertNotSame(index, DomainLibraryIndex.of(copy));
+
+    // later changes of the library do not change the index
+    copy.remove(vh);
+    Assert.assertSame(vh, DomainLibraryIndex.of(copy).get("VH"));
+  }
+
+}
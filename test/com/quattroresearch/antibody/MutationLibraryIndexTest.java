@@ -0,0 +1,89 @@
+package com.quattroresearch.antibody;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roche.antibody.model.antibody.Domain;
+import org.roche.antibody.model.antibody.DomainLibraryValues;
+import org.roche.antibody.model.antibody.Peptide;
+
+public class MutationLibraryIndexTest {
+
+  private static final String CH3 = "GQPREPQVYTLPPSRDELTKNQVSLTCLVKGFYPSDIAVEWESNGQPENNYKTTPPVLDSDGSFFLYSKLTVDKSRWQQGNVFSCSVMHEALHNHYTQKSLSLSPG";
+
+  @Test
+  public void testSameResultAsFindMutations() throws Exception {
+    List<Mutation> library = createLibrary();
+    String knob = mutate(CH3, 22, 'W');
+    String hole = mutate(mutate(mutate(CH3, 22, 'S'), 24, 'A'), 63, 'V');
+
+    List<Peptide> expected = Arrays.asList(createPeptide(knob), createPeptide(hole), createPeptide(mutate(CH3, 5, 'A')));
+    FindMutations.find(expected, library);
+    List<Peptide> result = Arrays.asList(createPeptide(knob), createPeptide(hole), createPeptide(mutate(CH3, 5, 'A')));
+    new MutationLibraryIndex(library).find(result);
+
+    for (int i = 0; i < expected.size(); i++) {
+      Domain expectedDomain = expected.get(i).getDomains().get(0);
+      Domain domain = result.get(i).getDomains().get(0);
+      Assert.assertEquals(expectedDomain.getUserLabel(), domain.getUserLabel());
+      Assert.assertEquals(expectedDomain.getSingleMutations(), domain.getSingleMutations());
+    }
+    Assert.assertEquals(1, result.get(0).getDomains().get(0).getSingleMutations().size());
+    Assert.assertEquals("Knob", result.get(0).getDomains().get(0).getSingleMutations().get(0).getMutation()
+        .getMutationName());
+    // "Hole" contains "Hole partial", so only "Hole" is annotated
+    Assert.assertEquals(3, result.get(1).getDomains().get(0).getSingleMutations().size());
+    Assert.assertTrue(result.get(2).getDomains().get(0).getSingleMutations().isEmpty());
+  }
+
+  @Test
+  public void testIndexIsReusedForSameLibrary() {
+    List<Mutation> library = createLibrary();
+    Assert.assertSame(MutationLibraryIndex.of(library), MutationLibraryIndex.of(library));
+    Assert.assertNotSame(MutationLibraryIndex.of(library), MutationLibraryIndex.of(createLibrary()));
+  }
+
+  private List<Mutation> createLibrary() {
+    List<Mutation> library = new ArrayList<Mutation>();
+    Mutation knob = new Mutation("Knob");
+    knob.getSingleMutations().add(new SingleMutation("IGHG1_CH3_HUMAN", 22, 'T', 'W', knob, "K", 1, null));
+    library.add(knob);
+
+    Mutation holePartial = new Mutation("Hole partial");
+    holePartial.getSingleMutations().add(new SingleMutation("IGHG1_CH3_HUMAN", 22, 'T', 'S', holePartial, "HP", 1, null));
+    library.add(holePartial);
+
+    Mutation hole = new Mutation("Hole");
+    hole.getSingleMutations().add(new SingleMutation("IGHG1_CH3_HUMAN", 22, 'T', 'S', hole, "H", 1, null));
+    hole.getSingleMutations().add(new SingleMutation("IGHG1_CH3_HUMAN", 24, 'L', 'A', hole, "H", 1, null));
+    hole.getSingleMutations().add(new SingleMutation("IGHG1_CH3_HUMAN", 63, 'Y', 'V', hole, "H", 1, null));
+    library.add(hole);
+
+    Mutation otherDomain = new Mutation("Other");
+    otherDomain.getSingleMutations().add(new SingleMutation("IGHG1_CH2_HUMAN", 5, 'E', 'A', otherDomain, "O", 1, null));
+    library.add(otherDomain);
+    return library;
+  }
+
+  private Peptide createPeptide(String sequence) {
+    DomainLibraryValues libraryValues = new DomainLibraryValues();
+    libraryValues.setName("IGHG1_CH3_HUMAN");
+    Domain domain = new Domain();
+    domain.setLibraryValues(libraryValues);
+    domain.setSequence(sequence);
+    domain.setUserLabel("CH3");
+    domain.setAllMutations(FindMutations.findUnknownMutations(sequence, CH3, 1));
+
+    Peptide peptide = new Peptide();
+    peptide.setDomains(new Domain[] {domain});
+    return peptide;
+  }
+
+  private String mutate(String sequence, int position, char newAA) {
+    return sequence.substring(0, position - 1) + newAA + sequence.substring(position);
+  }
+
+}
@@ -0,0 +1,103 @@
+package com.quattroresearch.antibody;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamingSequenceFileReaderTest {
+
+  private static final String GP_HEADER =
+      "LOCUS       TEST                     25 aa            linear   PRI 01-JAN-2016\n";
+
+  @Test
+  public void testFasta() throws IOException {
+    File file = createFile(".fa", "\n>heavy chain\nEVQLVESGGG\r\nLVQPGGSLRL  \n\n>light\nDIQMTQSPSS\n");
+    List<String>[] result = new StreamingSequenceFileReader().read(null, Arrays.asList(file));
+
+    Assert.assertEquals(Arrays.asList("heavy chain", "light"), result[0]);
+    Assert.assertEquals(Arrays.asList("EVQLVESGGGLVQPGGSLRL", "DIQMTQSPSS"), result[1]);
+  }
+
+  @Test
+  public void testLongFastaSequence() throws IOException {
+    StringBuilder content = new StringBuilder(">long\n");
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      content.append("ACDEFGHIKLMNPQRSTVWY\n");
+      expected.append("ACDEFGHIKLMNPQRSTVWY");
+    }
+    final List<String> sequences = new ArrayList<String>();
+    new StreamingSequenceFileReader().read(createFile(".fa", content.toString()), new ISequenceRecordHandler() {
+      @Override
+      public void sequenceRead(String name, String sequence) {
+        sequences.add(sequence);
+      }
+    });
+
+    Assert.assertEquals(1, sequences.size());
+    Assert.assertEquals(expected.toString(), sequences.get(0));
+  }
+
+  @Test
+  public void testFastaWithNumber() throws IOException {
+    File file = createFile(".fa", ">first\nEVQLVES\n>chain\nEVQL1VES\n>last\nDIQM\n");
+    List<String>[] result = new StreamingSequenceFileReader().read(null, Arrays.asList(file));
+
+    Assert.assertEquals(Arrays.asList("first"), result[0]);
+    Assert.assertEquals(Arrays.asList("EVQLVES"), result[1]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFastaWithNumberStreamed() throws IOException {
+    new StreamingSequenceFileReader().read(createFile(".fa", ">chain\nEVQL1VES\n"), new ISequenceRecordHandler() {
+      @Override
+      public void sequenceRead(String name, String sequence) {
+      }
+    });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownFormat() throws IOException {
+    new StreamingSequenceFileReader().read(null, Arrays.asList(createFile(".txt", "EVQLVES\n")));
+  }
+
+  @Test
+  public void testGP() throws IOException {
+    File file = createFile(".gp", GP_HEADER + "DEFINITION  test.\nORIGIN      \n        1 evqlvesggg lvqpggslrl\n"
+        + "       21 scaas*\n//\n");
+    List<String>[] result = new StreamingSequenceFileReader().read(null, Arrays.asList(file));
+
+    String name = file.getName().substring(0, file.getName().length() - 3);
+    Assert.assertEquals(Arrays.asList(name), result[0]);
+    Assert.assertEquals(Arrays.asList("EVQLVESGGGLVQPGGSLRLSCAAS"), result[1]);
+  }
+
+  @Test
+  public void testSameResultAsSequenceFileReader() throws IOException {
+    String gp = GP_HEADER + "ORIGIN\n        1 evqlvesggg\n//\nORIGIN\n        1 diqmtqspss\n//\n";
+    String fasta = ">a\nEVQL\nVESG\n>b\nDIQM\n";
+    TreeMap<String, String> files = new TreeMap<String, String>();
+    files.put("first", gp);
+    files.put("second", fasta);
+
+    List<String>[] expected = new SequenceFileReader().read(null, files);
+    List<String>[] result = new StreamingSequenceFileReader().read(null, files);
+    Assert.assertEquals(expected[0], result[0]);
+    Assert.assertEquals(expected[1], result[1]);
+  }
+
+  private File createFile(String extension, String content) throws IOException {
+    File file = File.createTempFile("sequences", extension);
+    file.deleteOnExit();
+    FileUtils.writeStringToFile(file, content, "UTF8");
+    return file;
+  }
+
+}
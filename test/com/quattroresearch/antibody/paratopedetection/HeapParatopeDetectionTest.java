@@ -0,0 +1,75 @@
+package com.quattroresearch.antibody.paratopedetection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.ChainType;
+import org.roche.antibody.model.antibody.CysteinConnection;
+import org.roche.antibody.model.antibody.Domain;
+import org.roche.antibody.model.antibody.DomainType;
+import org.roche.antibody.model.antibody.Peptide;
+
+public class HeapParatopeDetectionTest {
+
+  private static final String SEQUENCE = "AAAACAAAAAAAAACAAAAAAAAACAAAAA";
+
+  @Test
+  public void testSameParatopesAsParatopeDetection() throws Exception {
+    List<Peptide> antibody = createAntibody();
+
+    new ParatopeDetection(antibody);
+    List<Integer> expected = getParatopes(antibody);
+    new HeapParatopeDetection(antibody);
+
+    Assert.assertEquals(Arrays.asList(1, null, null, 1, null, 1, null, null, 1, null), expected);
+    Assert.assertEquals(expected, getParatopes(antibody));
+  }
+
+  /** two heavy chains (VH-CH1-CH2) and two light chains (VL-CL), each bound to the CH1 of one heavy chain */
+  private List<Peptide> createAntibody() {
+    List<Peptide> antibody = new ArrayList<Peptide>();
+    for (int i = 0; i < 2; i++) {
+      Peptide heavy = createPeptide("HC" + i, ChainType.HEAVY, DomainType.VARIABLE, DomainType.CONSTANT,
+          DomainType.CONSTANT);
+      Peptide light = createPeptide("LC" + i, ChainType.KAPPA, DomainType.VARIABLE, DomainType.CONSTANT);
+      CysteinConnection connection = new CysteinConnection(15, 15, heavy, light);
+      heavy.addConnection(connection);
+      light.addConnection(connection);
+      antibody.add(heavy);
+      antibody.add(light);
+    }
+    new Antibody(antibody);
+    return antibody;
+  }
+
+  private Peptide createPeptide(String name, ChainType chainType, DomainType... domainTypes) {
+    StringBuilder sequence = new StringBuilder();
+    for (int i = 0; i < domainTypes.length; i++) {
+      sequence.append(SEQUENCE, 0, 10);
+    }
+    Peptide peptide = new Peptide(sequence.toString(), name);
+    Domain[] domains = new Domain[domainTypes.length];
+    for (int i = 0; i < domainTypes.length; i++) {
+      domains[i] = new Domain(name + "_" + i, peptide, i * 10 + 1, i * 10 + 10, 1, 10);
+      domains[i].setDomainType(domainTypes[i]);
+      domains[i].setChainType(chainType);
+      domains[i].setPeptide(peptide);
+    }
+    peptide.setDomains(domains);
+    return peptide;
+  }
+
+  private List<Integer> getParatopes(List<Peptide> antibody) {
+    List<Integer> paratopes = new ArrayList<Integer>();
+    for (Peptide peptide : antibody) {
+      for (Domain domain : peptide.getDomains()) {
+        paratopes.add(domain.getParatope());
+      }
+    }
+    return paratopes;
+  }
+}
@@ -0,0 +1,99 @@
+package com.quattroresearch.antibody.paratopedetection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.quattroresearch.antibody.paratopedetection.INode.CONNECTION_MODE;
+
+public class HeapPathfinderTest {
+
+  @Test
+  public void testShortestPath() {
+    List<INode> nodes = createNodes(6);
+    connect(nodes, 0, 1, CONNECTION_MODE.PROXIMAL);
+    connect(nodes, 1, 2, CONNECTION_MODE.PROXIMAL);
+    connect(nodes, 2, 3, CONNECTION_MODE.PROXIMAL);
+    connect(nodes, 0, 4, CONNECTION_MODE.DISTANT);
+    connect(nodes, 4, 3, CONNECTION_MODE.HINGE);
+    connect(nodes, 3, 5, CONNECTION_MODE.PROXIMAL);
+
+    LinkedList<INode> path = HeapPathfinder.findPath(nodes.get(0), Arrays.asList(nodes.get(3), nodes.get(5)));
+    Assert.assertEquals(Arrays.asList(nodes.get(0), nodes.get(4), nodes.get(3)), path);
+
+    // destinations need not be traversable, other nodes must
+    nodes.get(3).setTraversable(false);
+    path = HeapPathfinder.findPath(nodes.get(0), Collections.singletonList(nodes.get(3)));
+    Assert.assertEquals(3, path.size());
+    path = HeapPathfinder.findPath(nodes.get(0), Collections.singletonList(nodes.get(5)));
+    Assert.assertNull(path);
+  }
+
+  @Test
+  public void testNodesAreNotChanged() {
+    List<INode> nodes = createNodes(3);
+    connect(nodes, 0, 1, CONNECTION_MODE.PROXIMAL);
+    connect(nodes, 1, 2, CONNECTION_MODE.PROXIMAL);
+    HeapPathfinder.findPath(nodes.get(0), Collections.singletonList(nodes.get(2)));
+    for (INode node : nodes) {
+      Assert.assertEquals(0.0, node.getF(), 0.0);
+      Assert.assertNull(node.getParentNode());
+    }
+  }
+
+  @Test
+  public void testSamePathsAsPathfinder() throws Exception {
+    Random random = new Random(42);
+    for (int run = 0; run < 200; run++) {
+      int size = 2 + random.nextInt(40);
+      List<INode> nodes = createNodes(size);
+      for (int i = 1; i < size; i++) {
+        connect(nodes, i - 1, i, CONNECTION_MODE.PROXIMAL);
+      }
+      int edgeCount = random.nextInt(size * 2);
+      for (int i = 0; i < edgeCount; i++) {
+        connect(nodes, random.nextInt(size), random.nextInt(size),
+            random.nextBoolean() ? CONNECTION_MODE.DISTANT : CONNECTION_MODE.HINGE);
+      }
+      for (INode node : nodes) {
+        node.setTraversable(random.nextInt(5) > 0);
+      }
+      List<INode> starts = new ArrayList<INode>();
+      List<INode> destinations = new ArrayList<INode>();
+      for (INode node : nodes) {
+        int kind = random.nextInt(4);
+        if (kind == 0) {
+          starts.add(node);
+        } else if (kind == 1) {
+          destinations.add(node);
+        }
+      }
+
+      List<LinkedList<INode>> paths = HeapPathfinder.findPaths(starts, destinations);
+      Assert.assertEquals(starts.size(), paths.size());
+      for (int i = 0; i < starts.size(); i++) {
+        Assert.assertEquals(Pathfinder.findPath(starts.get(i), destinations), paths.get(i));
+      }
+    }
+  }
+
+  private static List<INode> createNodes(int count) {
+    List<INode> nodes = new ArrayList<INode>();
+    for (int i = 0; i < count; i++) {
+      nodes.add(new Node("node" + i, true));
+    }
+    return nodes;
+  }
+
+  private static void connect(List<INode> nodes, int source, int target, CONNECTION_MODE mode) {
+    nodes.get(source).addConnectedNode(nodes.get(target), mode);
+    nodes.get(target).addConnectedNode(nodes.get(source), mode);
+  }
+
+}
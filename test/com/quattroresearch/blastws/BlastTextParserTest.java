@@ -0,0 +1,159 @@
+package com.quattroresearch.blastws;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlastTextParserTest {
+
+  private static final String OUTPUT = "BLASTP 2.2.29+\n\n\nDatabase: db_CORE.fa\n"
+      + "           3 sequences; 330 total letters\n\n\n\nQuery= query0\n\nLength=120\n"
+      + "                                                                      Score     E\n"
+      + "Sequences producing significant alignments:                          (Bits)  Value\n\n"
+      + "VH3-23 DISULFID 22-96                                                 180    2e-52\n"
+      + "IGKV1 DISULFID 23-88,214-LC                                           90.1   1e-20\n"
+      + "CH1_HUMAN                                                             40.0   0.001\n\n\n"
+      + "> VH3-23 DISULFID 22-96\nLength=98\n\n"
+      + " Score =  180 bits (456),  Expect = 2e-52, Method: Compositional matrix adjust.\n"
+      + " Identities = 88/98 (90%), Positives = 92/98 (94%), Gaps = 2/98 (2%)\n\n"
+      + "Query  1   EVQLVESGGGLVQPGGSLRLSCAASGFTFSSYAMSWVRQAPGKGLEWVSAISGSGGSTYY  60\n"
+      + "           EVQLVESGGGLVQPGGSLRLSCAASGFTFSSYAMSWVRQAPGKGLEWVSAISGSGGSTYY\n"
+      + "Sbjct  1   EVQLVESGGGLVQPGGSLRLSCAASGFTFSSYAMSWVRQAPGKGLEWVSAISGSGGSTYY  60\n\n"
+      + "Query  61  ADSVKGRFTISRDNSKNTLYLQMNSLRAEDTAVYYCAK--  98\n"
+      + "           ADSVKGRFTISRDNSKNTLYLQMNSLRAEDTAVYYCAK\n"
+      + "Sbjct  61  ADSVKGRFTISRDNSKNTLYLQMNSLRAEDTAVYYCAKDR  100\n\n\n"
+      + ">IGKV1DISULFID 23-88,214-LC\nLength=107\n\n"
+      + " Score = 90.1 bits (222),  Expect = 1e-20, Method: Compositional matrix adjust.\n"
+      + " Identities = 40/60 (67%), Positives = 50/60 (83%), Gaps = 3/60 (5%)\n\n"
+      + "Query  3   --DIQMTQSPSSLSASVGDRVTITCRASQ-ISSYLNWYQQKPGKAPKLLIYAASSLQSGVPS  61\n"
+      + "           DIQMTQSPSSLSASVGDRVTITCRASQ ISSYLNWYQQKPGKAPKLLIYAASSLQSGVPS\n"
+      + "Sbjct  1   CCDIQMTQSPSSLSASVGDRVTITCRASQSISSYLNWYQQKPGKAPKLLIYAASSLQSGVPS  62\n\n\n"
+      + "> CH1_HUMAN\nLength=98\n\n"
+      + " Score = 40.0 bits (92),  Expect = 0.001, Method: Compositional matrix adjust.\n"
+      + " Identities = 20/60 (33%), Positives = 30/60 (50%), Gaps = 0/60 (0%)\n\n"
+      + "Query  62  CAKDRGCWG  70\n           C KDRG  G\nSbjct  10  CSKDRGSWG  18\n\n\n"
+      + " Score = 35.0 bits (80),  Expect = 0.01, Method: Compositional matrix adjust.\n"
+      + " Identities = 10/20 (50%), Positives = 12/20 (60%), Gaps = 1/20 (5%)\n\n"
+      + "Query  80  CTT-C  83\n           CTT C\nSbjct  40  CTTAC  44\n\n\n"
+      + "Lambda      K        H\n   0.318    0.134    0.401\n\nGapped\nLambda      K        H\n"
+      + "   0.267   0.0410    0.140\n\nEffective search space used: 12345\n\n\n"
+      + "  Database: db_CORE.fa\n    Posted date:  Jan 1, 2016  3:59 PM\n"
+      + "  Number of letters in database: 330\n  Number of sequences in database:  3\n\n\n\n"
+      + "Matrix: BLOSUM62\nGap Penalties: Existence: 11, Extension: 1\n";
+
+  @Test
+  public void testSameHitsAsBlastParser() throws Exception {
+    Assert.assertEquals(parseWithBlastParser(OUTPUT), parse(OUTPUT));
+    BlastTextParser parser = new BlastTextParser();
+    parser.parse(new StringReader(OUTPUT));
+    Assert.assertEquals(Arrays.asList("VH3-23", "IGKV1", "CH1_HUMAN", "CH1_HUMAN", "0.318", "0.267"),
+        sequenceIds(parser.findHits()));
+  }
+
+  @Test
+  public void testSameHitsAsBlastParserForChangedOutputs() throws Exception {
+    Random random = new Random(7);
+    String[] lines = OUTPUT.split("\n", -1);
+    for (int run = 0; run < 300; run++) {
+      StringBuilder output = new StringBuilder();
+      for (String line : lines) {
+        int change = random.nextInt(40);
+        if (change == 0) {
+          continue;
+        }
+        if (change == 1) {
+          output.append(line).append('\n');
+        }
+        if (change == 2 && line.length() > 0) {
+          int pos = random.nextInt(line.length());
+          line = line.substring(0, pos) + line.substring(pos + 1);
+        }
+        if (change == 3) {
+          int pos = random.nextInt(line.length() + 1);
+          line = line.substring(0, pos) + " -C,e1"
+              .charAt(random.nextInt(6)) + line.substring(pos);
+        }
+        output.append(line).append('\n');
+      }
+      Assert.assertEquals(parseWithBlastParser(output.toString()), parse(output.toString()));
+    }
+  }
+
+  @Test
+  public void testMatchesBondsLikePattern() {
+    Pattern bonds = Pattern.compile("([0-9]+-([0-9H]+|LC),?)+");
+    String[] candidates = {"22-96", "22-96,", "1-H", "12-LC", "1-23-4", "1-2,,3-4", "1-L", "-1", "1-", "a-1",
+        "1-2,LC-3", "1-HH2,3-LC", "", "1-LCH", "1-2LC"};
+    for (String candidate : candidates) {
+      Assert.assertEquals(candidate, bonds.matcher(candidate).matches(),
+          BlastTextParser.matchesBonds(candidate, 0, candidate.length()));
+    }
+  }
+
+  @Test
+  public void testCountGapsLikeSplit() {
+    String[] alignments = {"", "A", "-", "---", "A-B", "--AB", "AB--", "A--B-C--", "-A-"};
+    for (String alignment : alignments) {
+      Assert.assertEquals(alignment, alignment.split("-").length - 1,
+          BlastTextParser.countGaps(alignment, alignment.length()));
+    }
+  }
+
+  private static String parse(String output) {
+    try {
+      BlastTextParser parser = new BlastTextParser();
+      for (String line : output.split("\n")) {
+        parser.parseLine(line);
+      }
+      return describe(parser.findHits()) + parser.getBestAlignmentAsString();
+    } catch (RuntimeException e) {
+      return e.getClass().getName();
+    }
+  }
+
+  private static String parseWithBlastParser(String output) throws IOException {
+    File file = File.createTempFile("blast", ".out");
+    try {
+      FileUtils.writeStringToFile(file, output);
+      BlastParser parser = new BlastParser(file);
+      parser.parse();
+      return describe(parser.findHits()) + parser.getBestAlignmentAsString();
+    } catch (RuntimeException e) {
+      return e.getClass().getName();
+    } finally {
+      FileUtils.deleteQuietly(file);
+    }
+  }
+
+  private static List<String> sequenceIds(List<BlastHit> hits) {
+    List<String> ids = new ArrayList<String>();
+    for (BlastHit hit : hits) {
+      ids.add(hit.getSequenceID());
+    }
+    return ids;
+  }
+
+  private static String describe(List<BlastHit> hits) {
+    StringBuilder builder = new StringBuilder();
+    for (BlastHit hit : hits) {
+      builder.append(hit.getSequenceID()).append('|').append(hit.getLength()).append('|').append(hit.getScore())
+          .append('|').append(hit.getEValue()).append('|').append(hit.getIdentity()).append('|')
+          .append(hit.getBegin()).append('|').append(hit.getEnd()).append('|').append(hit.getTemplateBegin())
+          .append('|').append(hit.getTemplateEnd()).append('|').append(hit.getAlignmentLineSequence()).append('|')
+          .append(hit.getAlignmentLineTemplate()).append('|').append(hit.getOriginalBlastAlignment()).append('|')
+          .append(Arrays.deepToString(hit.getConservedCysteins())).append('|').append(hit.getInternalBonds())
+          .append('|').append(hit.getUnknownMutations()).append('\n');
+    }
+    return builder.toString();
+  }
+
+}
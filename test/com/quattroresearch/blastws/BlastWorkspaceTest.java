@@ -0,0 +1,73 @@
+package com.quattroresearch.blastws;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlastWorkspaceTest {
+
+  private File parent;
+
+  @Before
+  public void setUp() throws Exception {
+    parent = File.createTempFile("blastws", "");
+    parent.delete();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(parent);
+  }
+
+  @Test
+  public void testCloseDeletesFiles() throws Exception {
+    BlastWorkspace workspace = BlastWorkspace.create(parent);
+    Assert.assertTrue(workspace.getDirectory().isDirectory());
+    Assert.assertEquals(parent, workspace.getDirectory().getParentFile());
+
+    File queryFile = workspace.getFile("query.fa");
+    FileUtils.writeStringToFile(queryFile, ">q\nACD\n");
+    Assert.assertEquals(workspace.getDirectory(), queryFile.getParentFile());
+
+    workspace.close();
+    Assert.assertFalse(queryFile.exists());
+    Assert.assertFalse(workspace.getDirectory().exists());
+    Assert.assertTrue(parent.isDirectory());
+  }
+
+  @Test
+  public void testConcurrentWorkspacesAreDistinct() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<File>> futures = new ArrayList<Future<File>>();
+      for (int i = 0; i < 64; i++) {
+        futures.add(executor.submit(new Callable<File>() {
+          @Override
+          public File call() throws Exception {
+            return BlastWorkspace.create(parent).getDirectory();
+          }
+        }));
+      }
+      Set<File> directories = new HashSet<File>();
+      for (Future<File> future : futures) {
+        Assert.assertTrue(directories.add(future.get()));
+      }
+      Assert.assertEquals(64, parent.listFiles().length);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
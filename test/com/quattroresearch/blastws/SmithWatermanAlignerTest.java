@@ -0,0 +1,84 @@
+package com.quattroresearch.blastws;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.quattroresearch.blastws.SmithWatermanAligner.EncodedSequence;
+import com.quattroresearch.blastws.SmithWatermanAligner.LocalAlignment;
+
+public class SmithWatermanAlignerTest {
+
+  private static final String DOMAIN = "ASTKGPSVFPLAPSSKSTSGGTAALGCLVKDYFPEPVTVSWNSGALTSGVHTFPAVLQSSGLYSLSSVVTVPSSSLGTQTYICNVNHKPSNTKVDKKV";
+
+  @Test
+  public void testBlosum62() {
+    Assert.assertEquals(4, SmithWatermanAligner.getBlosum62Score('A', 'A'));
+    Assert.assertEquals(9, SmithWatermanAligner.getBlosum62Score('C', 'C'));
+    Assert.assertEquals(11, SmithWatermanAligner.getBlosum62Score('W', 'W'));
+    Assert.assertEquals(-4, SmithWatermanAligner.getBlosum62Score('W', 'D'));
+    String alphabet = "ARNDCQEGHILKMFPSTWYVBZX";
+    for (int i = 0; i < alphabet.length(); i++) {
+      for (int j = 0; j < alphabet.length(); j++) {
+        Assert.assertEquals(SmithWatermanAligner.getBlosum62Score(alphabet.charAt(i), alphabet.charAt(j)),
+            SmithWatermanAligner.getBlosum62Score(alphabet.charAt(j), alphabet.charAt(i)));
+      }
+    }
+  }
+
+  @Test
+  public void testEmbeddedDomain() {
+    String query = "MKHLWFFLLLVAAPRWVLS" + DOMAIN + "EPKSC";
+    List<LocalAlignment> alignments = new SmithWatermanAligner().align(SmithWatermanAligner.encode(query),
+        SmithWatermanAligner.encode(DOMAIN), 20, 1);
+
+    Assert.assertEquals(1, alignments.size());
+    LocalAlignment alignment = alignments.get(0);
+    Assert.assertEquals(20, alignment.getQueryBegin());
+    Assert.assertEquals(19 + DOMAIN.length(), alignment.getQueryEnd());
+    Assert.assertEquals(1, alignment.getSubjectBegin());
+    Assert.assertEquals(DOMAIN.length(), alignment.getSubjectEnd());
+    Assert.assertEquals(DOMAIN, alignment.getAlignedQuery());
+    Assert.assertEquals(DOMAIN, alignment.getAlignedSubject());
+    Assert.assertEquals(DOMAIN.length(), alignment.getIdentities());
+  }
+
+  @Test
+  public void testGap() {
+    // five residues deleted in the middle of the domain
+    String query = DOMAIN.substring(0, 50) + DOMAIN.substring(55);
+    List<LocalAlignment> alignments = new SmithWatermanAligner().align(SmithWatermanAligner.encode(query),
+        SmithWatermanAligner.encode(DOMAIN), 20, 1);
+
+    Assert.assertEquals(1, alignments.size());
+    LocalAlignment alignment = alignments.get(0);
+    Assert.assertEquals(DOMAIN, alignment.getAlignedSubject());
+    Assert.assertEquals(DOMAIN.length(), alignment.getAlignedQuery().length());
+    Assert.assertEquals(query, alignment.getAlignedQuery().replace("-", ""));
+    Assert.assertEquals(query.length(), alignment.getIdentities());
+    Assert.assertEquals(1, alignment.getQueryBegin());
+    Assert.assertEquals(query.length(), alignment.getQueryEnd());
+  }
+
+  @Test
+  public void testRepeatedDomain() {
+    String query = DOMAIN + "GGGGSGGGGS" + DOMAIN;
+    List<LocalAlignment> alignments = new SmithWatermanAligner().align(SmithWatermanAligner.encode(query),
+        SmithWatermanAligner.encode(DOMAIN), 20, 4);
+
+    Assert.assertEquals(2, alignments.size());
+    int first = Math.min(alignments.get(0).getQueryBegin(), alignments.get(1).getQueryBegin());
+    int second = Math.max(alignments.get(0).getQueryBegin(), alignments.get(1).getQueryBegin());
+    Assert.assertEquals(1, first);
+    Assert.assertEquals(DOMAIN.length() + 11, second);
+  }
+
+  @Test
+  public void testUnrelated() {
+    List<LocalAlignment> alignments = new SmithWatermanAligner().align(SmithWatermanAligner.encode("GGGGSGGGGS"),
+        SmithWatermanAligner.encode(DOMAIN), 40, 1);
+    Assert.assertTrue(alignments.isEmpty());
+  }
+
+}
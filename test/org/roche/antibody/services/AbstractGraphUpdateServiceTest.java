@@ -0,0 +1,81 @@
+package org.roche.antibody.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.Domain;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.services.AbstractGraphUpdateService.GraphDelta;
+
+import y.base.Node;
+import y.view.Graph2D;
+import y.view.hierarchy.HierarchyManager;
+
+public class AbstractGraphUpdateServiceTest {
+
+  private static final String DOMAIN_SEQUENCE = "EVQLVESGGGLVQPGGSLRLSCAASGFNIKDTYIHWVRQAPGKGLEWVARIYPTNGYTRYADSVKG";
+
+  @Test
+  public void testAppendedDomainsStayInTheGroupNodeOfTheirChain() {
+    Peptide peptide = createPeptide(4);
+    addDomain(peptide, 1);
+    addDomain(peptide, 2);
+    List<Peptide> peptides = new ArrayList<Peptide>();
+    peptides.add(peptide);
+    Antibody ab = new Antibody(peptides);
+    Graph2D graph = AbstractGraphService.getGraph(ab);
+    Assert.assertEquals(1, countGroupNodes(graph));
+
+    // at the end and at the start of the chain
+    addDomain(peptide, 3);
+    peptide.getDomains().add(0, createDomain(peptide, 0));
+    GraphDelta delta = AbstractGraphUpdateService.computeDelta(graph, ab);
+    Assert.assertFalse(delta.isRebuildRequired());
+    Assert.assertEquals(2, delta.getAddedSequences().size());
+    AbstractGraphUpdateService.applyDelta(graph, ab, delta);
+
+    Assert.assertEquals(1, countGroupNodes(graph));
+    Node groupNode = AbstractGraphService.findGroupNodeByPeptide(graph, peptide);
+    for (Domain domain : peptide.getDomains()) {
+      Node node = AbstractGraphService.findNodeBySequence(graph, domain);
+      Assert.assertNotNull(node);
+      Assert.assertSame(groupNode, graph.getHierarchyManager().getParentNode(node));
+    }
+    Assert.assertTrue(AbstractGraphUpdateService.computeDelta(graph, ab).isEmpty());
+  }
+
+  private static int countGroupNodes(Graph2D graph) {
+    HierarchyManager hierarchyManager = graph.getHierarchyManager();
+    int count = 0;
+    for (Node node : graph.getNodeArray()) {
+      if (hierarchyManager.isGroupNode(node)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static Peptide createPeptide(int domainCount) {
+    StringBuilder sequence = new StringBuilder();
+    for (int i = 0; i < domainCount; i++) {
+      sequence.append(DOMAIN_SEQUENCE);
+    }
+    Peptide peptide = new Peptide(sequence.toString(), "HC");
+    peptide.setOriginalSequence(sequence.toString());
+    return peptide;
+  }
+
+  private static void addDomain(Peptide peptide, int index) {
+    peptide.getDomains().add(createDomain(peptide, index));
+  }
+
+  private static Domain createDomain(Peptide peptide, int index) {
+    int startPosition = index * DOMAIN_SEQUENCE.length() + 1;
+    int endPosition = startPosition + DOMAIN_SEQUENCE.length() - 1;
+    return new Domain("Domain" + index, peptide, startPosition, endPosition, startPosition, endPosition);
+  }
+
+}
@@ -0,0 +1,83 @@
+package org.roche.antibody.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.ChemElement;
+import org.roche.antibody.model.antibody.CysteinConnection;
+import org.roche.antibody.model.antibody.GeneralConnection;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.model.antibody.RNA;
+import org.roche.antibody.services.antibody.AntibodyService;
+
+public class CachedHelmServiceTest {
+
+  private CachedHelmService helmService = CachedHelmService.getInstance();
+
+  private Antibody ab;
+
+  private Peptide heavy;
+
+  private Peptide light;
+
+  @Before
+  public void setUp() {
+    heavy = new Peptide("EVQLCAAS", "heavy");
+    light = new Peptide("DIQMCKR", "light");
+    List<Peptide> peptides = new ArrayList<Peptide>();
+    peptides.add(heavy);
+    peptides.add(light);
+    ab = new Antibody(peptides);
+    ab.addConnection(new CysteinConnection(5, 5, heavy, light));
+
+    ChemElement chem = new ChemElement(ab, "SMCC", "", "", "R1", "R2", "");
+    ab.getChemElements().add(chem);
+    ab.addConnection(new GeneralConnection(light, chem, 7, 1, "R3", "R1"));
+    ab.getRnaElements().add(new RNA("P.R(A)P"));
+  }
+
+  @Test
+  public void testSameHelmAsAntibodyService() {
+    Assert.assertEquals(AntibodyService.getInstance().toHELMString(ab), helmService.toHELMString(ab));
+  }
+
+  @Test
+  public void testUnchangedAntibodyIsCached() {
+    String helm = helmService.toHELMString(ab);
+    Assert.assertSame(helm, helmService.toHELMString(ab));
+
+    int modificationCount = helmService.getModificationCount(ab);
+    helmService.markModified(ab);
+    Assert.assertEquals(modificationCount + 1, helmService.getModificationCount(ab));
+    String rebuilt = helmService.toHELMString(ab);
+    Assert.assertNotSame(helm, rebuilt);
+    Assert.assertEquals(helm, rebuilt);
+  }
+
+  @Test
+  public void testChangesAreDetected() {
+    helmService.toHELMString(ab);
+
+    heavy.setSequence("EVQLCAASG");
+    Assert.assertEquals(AntibodyService.getInstance().toHELMString(ab), helmService.toHELMString(ab));
+
+    ab.addConnection(new CysteinConnection(2, 5, light));
+    Assert.assertEquals(AntibodyService.getInstance().toHELMString(ab), helmService.toHELMString(ab));
+
+    ab.getPeptides().remove(light);
+    Assert.assertEquals(AntibodyService.getInstance().toHELMString(ab), helmService.toHELMString(ab));
+  }
+
+  @Test
+  public void testSequenceRepresentation() {
+    Assert.assertEquals("E.V.Q.L.C.A.A.S", helmService.getSequenceRepresentation(heavy));
+    Assert.assertEquals("P.R(A)P", helmService.getSequenceRepresentation(ab.getRnaElements().get(0)));
+    Assert.assertEquals(helmService.getSequenceRepresentation(light), helmService.toHELM(light)
+        .getSequenceRepresentation());
+  }
+
+}
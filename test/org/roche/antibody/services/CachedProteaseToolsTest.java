@@ -0,0 +1,56 @@
+package org.roche.antibody.services;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roche.antibody.services.tools.ProteaseCleavageResult;
+import org.roche.antibody.services.tools.ProteaseTools;
+
+public class CachedProteaseToolsTest {
+
+  private static final List<String> SEQUENCES =
+      Arrays.asList("MKLENLYFQGSAKDDDDKVEPKSC", "AAAA", "GSLVPRGSH", "mklenlyfqgsakddddkvepksc");
+
+  private final List<ProteaseDescription> descriptions = Arrays.asList(
+      new ProteaseDescription(1, "TEV", ".*ENLYFQ(G.*)", 1, "", "CASE_SENSITIVE", 1),
+      new ProteaseDescription(2, "Enterokinase", ".*ddddk(.*)", 1, "GG", "CASE_INSENSITIVE", 1),
+      new ProteaseDescription(3, "Thrombin", ".*LVPR(GS.*)", 1, "", "CASE_SENSITIVE", 1));
+
+  @Test
+  public void testSameResultsAsProteaseTools() {
+    for (String sequence : SEQUENCES) {
+      for (ProteaseDescription description : descriptions) {
+        Assert.assertEquals(ProteaseTools.sequenceHasCleaveSite(sequence, description),
+            CachedProteaseTools.sequenceHasCleaveSite(sequence, description));
+        Assert.assertEquals(
+            ProteaseTools.sequenceHasCleavageSite(sequence, description.getMotif(), description.getCaseSensitivity()),
+            CachedProteaseTools.sequenceHasCleavageSite(sequence, description.getMotif(),
+                description.getCaseSensitivity()));
+        assertSameResult(ProteaseTools.doProteaseCleavage(sequence, description),
+            CachedProteaseTools.doProteaseCleavage(sequence, description));
+        assertSameResult(
+            ProteaseTools.doProteaseCleavage(sequence, description.getMotif(), description.getCaseSensitivity(),
+                description.getCaptureGroup(), description.getAppendedAfter()),
+            CachedProteaseTools.doProteaseCleavage(sequence, description.getMotif(),
+                description.getCaseSensitivity(), description.getCaptureGroup(), description.getAppendedAfter()));
+      }
+    }
+  }
+
+  @Test
+  public void testMotifCompiledOnce() {
+    Assert.assertSame(ProteaseCatalog.compileMotif(".*ddddk(.*)", "CASE_INSENSITIVE"),
+        ProteaseCatalog.compileMotif(".*ddddk(.*)", "CASE_INSENSITIVE"));
+    Assert.assertNotSame(ProteaseCatalog.compileMotif(".*ddddk(.*)", "CASE_INSENSITIVE"),
+        ProteaseCatalog.compileMotif(".*ddddk(.*)", "CASE_SENSITIVE"));
+  }
+
+  private void assertSameResult(ProteaseCleavageResult expected, ProteaseCleavageResult actual) {
+    Assert.assertEquals(expected.getLeftCut(), actual.getLeftCut());
+    Assert.assertEquals(expected.getRightCut(), actual.getRightCut());
+    Assert.assertEquals(expected.getAppendedAfter(), actual.getAppendedAfter());
+  }
+
+}
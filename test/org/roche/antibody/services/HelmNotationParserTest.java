@@ -0,0 +1,84 @@
+package org.roche.antibody.services;
+
+import java.text.ParseException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roche.antibody.services.helmnotation.HelmNotationService;
+import org.roche.antibody.services.helmnotation.model.HELMCode;
+
+public class HelmNotationParserTest {
+
+  private static final String HELM =
+      "PEPTIDE1{E.V.Q.C}|PEPTIDE2{D.I.C.K}|CHEM1{[*C|$;_R1$|]}|RNA1{P.R(A)P}$PEPTIDE1,PEPTIDE2,4:R3-3:R3|"
+          + "PEPTIDE2,CHEM1,4:R2-1:R1$$$";
+
+  /** same molecule, elements renumbered and reordered, one connection reversed */
+  private static final String RENUMBERED_HELM =
+      "RNA1{P.R(A)P}|PEPTIDE1{D.I.C.K}|CHEM1{[*C|$;_R1$|]}|PEPTIDE2{E.V.Q.C}$CHEM1,PEPTIDE1,1:R1-4:R2|"
+          + "PEPTIDE2,PEPTIDE1,4:R3-3:R3$$$";
+
+  @Test
+  public void testSameCodeAsHelmNotationService() throws Exception {
+    HELMCode expected = HelmNotationService.getInstance().toHELMCode(HELM);
+    HELMCode code = HelmNotationParser.parse(HELM);
+    Assert.assertEquals(HelmNotationService.getInstance().toHELMString(expected),
+        HelmNotationService.getInstance().toHELMString(code));
+    Assert.assertEquals(4, code.getAllElements().size());
+    Assert.assertEquals("[*C|$;_R1$|]", code.getAllElements().get(2).getSequenceRepresentation());
+    Assert.assertEquals(2, code.getAllConnections().size());
+  }
+
+  @Test
+  public void testWithoutConnections() throws Exception {
+    Assert.assertEquals(1, HelmNotationParser.parse("PEPTIDE1{A.C}$$$$").getAllElements().size());
+    Assert.assertEquals(1, HelmNotationParser.parse("PEPTIDE1{A.C}").getAllElements().size());
+    Assert.assertEquals(0, HelmNotationParser.parse("$$$$").getAllElements().size());
+  }
+
+  @Test
+  public void testErrorOffsets() {
+    assertErrorOffset("PEPTIDE1{A.C}$PEPTIDE1,PEPTIDE3,1:R3-2:R3$$$", 23);
+    assertErrorOffset("PEPTIDE1{A.C}|FOO1{A}$$$$", 14);
+    assertErrorOffset("PEPTIDE1{A.C$$$$", 8);
+    assertErrorOffset("PEPTIDE1{A.C}$PEPTIDE1,PEPTIDE1,1R3-2:R3$$$", 33);
+    assertErrorOffset("PEPTIDE1{A.C}PEPTIDE2{A}$$$$", 13);
+  }
+
+  @Test
+  public void testStructuralHash() throws Exception {
+    long hash = HelmNotationParser.structuralHash(HelmNotationParser.parse(HELM));
+    Assert.assertEquals(hash, HelmNotationParser.structuralHash(HelmNotationParser.parse(RENUMBERED_HELM)));
+
+    // changed monomer, position, rest and connected element
+    Assert.assertFalse(hash == HelmNotationParser.structuralHash(HelmNotationParser.parse(HELM.replace("E.V.Q",
+        "E.L.Q"))));
+    Assert.assertFalse(hash == HelmNotationParser.structuralHash(HelmNotationParser.parse(HELM.replace("4:R3-3",
+        "4:R3-2"))));
+    Assert.assertFalse(hash == HelmNotationParser.structuralHash(HelmNotationParser.parse(HELM.replace("4:R2-1:R1",
+        "4:R2-1:R2"))));
+    Assert.assertFalse(hash == HelmNotationParser.structuralHash(HelmNotationParser.parse(HELM.replace(
+        "PEPTIDE2,CHEM1", "PEPTIDE1,CHEM1"))));
+  }
+
+  @Test
+  public void testStructuralHashOfSymmetricElements() throws Exception {
+    // identical peptides: a chain of three is not the same as two peptides connected twice
+    String chains = "PEPTIDE1{C.C}|PEPTIDE2{C.C}|PEPTIDE3{C.C}$";
+    long chain = HelmNotationParser.structuralHash(HelmNotationParser.parse(chains
+        + "PEPTIDE1,PEPTIDE2,1:R3-1:R3|PEPTIDE2,PEPTIDE3,2:R3-2:R3$$$"));
+    long pair = HelmNotationParser.structuralHash(HelmNotationParser.parse(chains
+        + "PEPTIDE1,PEPTIDE2,1:R3-1:R3|PEPTIDE1,PEPTIDE2,2:R3-2:R3$$$"));
+    Assert.assertFalse(chain == pair);
+  }
+
+  private static void assertErrorOffset(String notation, int offset) {
+    try {
+      HelmNotationParser.parse(notation);
+      Assert.fail("ParseException expected for " + notation);
+    } catch (ParseException e) {
+      Assert.assertEquals(e.getMessage(), offset, e.getErrorOffset());
+    }
+  }
+
+}
@@ -0,0 +1,79 @@
+package org.roche.antibody.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roche.antibody.services.ProteaseCatalog.CleavageSite;
+import org.roche.antibody.services.tools.ProteaseCleavageResult;
+import org.roche.antibody.services.tools.ProteaseTools;
+
+public class ProteaseCatalogTest {
+
+  private static final String SEQUENCE = "MKLENLYFQGSAKDDDDKVEPKSC";
+
+  private final ProteaseDescription tev =
+      new ProteaseDescription(1, "TEV", ".*ENLYFQ(G.*)", 1, "", "CASE_SENSITIVE", 1);
+
+  private final ProteaseDescription enterokinase =
+      new ProteaseDescription(2, "Enterokinase", ".*ddddk(.*)", 1, "GG", "CASE_INSENSITIVE", 1);
+
+  private final ProteaseDescription thrombin =
+      new ProteaseDescription(3, "Thrombin", ".*LVPR(GS.*)", 1, "", "CASE_SENSITIVE", 1);
+
+  private final ProteaseDescription inactive =
+      new ProteaseDescription(4, "Inactive", "(.*)KSC", 1, "", "CASE_SENSITIVE", 0);
+
+  private final ProteaseDescription invalid =
+      new ProteaseDescription(5, "Invalid", "(.*", 1, "", "CASE_SENSITIVE", 1);
+
+  private final List<ProteaseDescription> descriptions = Arrays.asList(tev, enterokinase, thrombin, inactive, invalid);
+
+  @Test
+  public void testFindCleavageSites() {
+    ProteaseCatalog catalog = new ProteaseCatalog(descriptions);
+    Assert.assertEquals(Arrays.asList(tev, enterokinase, thrombin), catalog.getProteases());
+
+    List<CleavageSite> sites = catalog.findCleavageSites(SEQUENCE);
+    Assert.assertEquals(2, sites.size());
+    Assert.assertSame(tev, sites.get(0).getProtease());
+    Assert.assertEquals(SEQUENCE.indexOf("GSAK"), sites.get(0).getLeftCut());
+    Assert.assertEquals(SEQUENCE.length(), sites.get(0).getRightCut());
+    Assert.assertSame(enterokinase, sites.get(1).getProtease());
+    Assert.assertEquals(SEQUENCE.indexOf("VEP"), sites.get(1).getLeftCut());
+
+    // cached per sequence
+    Assert.assertSame(sites, catalog.findCleavageSites(SEQUENCE));
+    Assert.assertTrue(catalog.findCleavageSites("AAAA").isEmpty());
+  }
+
+  @Test
+  public void testSameResultsAsProteaseTools() {
+    ProteaseCatalog catalog = new ProteaseCatalog(descriptions);
+    List<String> sequences = Arrays.asList(SEQUENCE, "AAAA", "GSLVPRGSH", SEQUENCE.toLowerCase());
+    List<ProteaseDescription> validDescriptions = new ArrayList<ProteaseDescription>(descriptions);
+    validDescriptions.remove(invalid);
+    for (String sequence : sequences) {
+      for (ProteaseDescription description : validDescriptions) {
+        Assert.assertEquals(ProteaseTools.sequenceHasCleaveSite(sequence, description),
+            catalog.hasCleavageSite(sequence, description));
+        ProteaseCleavageResult expected = ProteaseTools.doProteaseCleavage(sequence, description);
+        ProteaseCleavageResult actual = catalog.cleave(sequence, description);
+        Assert.assertEquals(expected.getLeftCut(), actual.getLeftCut());
+        Assert.assertEquals(expected.getRightCut(), actual.getRightCut());
+        Assert.assertEquals(expected.getAppendedAfter(), actual.getAppendedAfter());
+      }
+    }
+    Assert.assertFalse(catalog.hasCleavageSite(SEQUENCE, invalid));
+  }
+
+  @Test
+  public void testCatalogReusedForSameDescriptions() {
+    ProteaseCatalog catalog = ProteaseCatalog.of(descriptions);
+    Assert.assertSame(catalog, ProteaseCatalog.of(descriptions));
+    Assert.assertNotSame(catalog, ProteaseCatalog.of(new ArrayList<ProteaseDescription>(descriptions)));
+  }
+
+}
@@ -0,0 +1,112 @@
+package org.roche.antibody.services.antibody.autoconnector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roche.antibody.model.antibody.ChainType;
+import org.roche.antibody.model.antibody.Domain;
+import org.roche.antibody.model.antibody.DomainType;
+import org.roche.antibody.model.antibody.Peptide;
+
+public class AutoConnectorRuleIndexTest {
+
+  private static final List<String> RULES = Arrays.asList(
+      "# comment",
+      "",
+      "IgG:VH-CH,VL-CL=>2&2<1>",
+      "VL-CH=>1&2<1>",
+      "XX-H=>1&2<n>",
+      "CH<'hCH1'>-H=>1&2<1>",
+      "CH<'other'>-H=>1&2<1>",
+      "*-CH-CH-CH=>2&3<1>",
+      "defective=>1&x",
+      "QQ-CH=>1&2<1>");
+
+  @Test
+  public void testRulesCompiled() {
+    AutoConnectorRuleIndex index = new AutoConnectorRuleIndex(RULES);
+    List<DynamicAutoConnectorRule> rules = index.getRules();
+    Assert.assertEquals(7, rules.size());
+    for (int i = 0; i < rules.size(); i++) {
+      Assert.assertEquals(i, rules.get(i).getRuleNumber());
+    }
+    Assert.assertEquals("IgG", rules.get(0).getAnnotation());
+  }
+
+  @Test
+  public void testFindCandidates() {
+    AutoConnectorRuleIndex index = new AutoConnectorRuleIndex(RULES);
+    List<Peptide> peptides = createAntibody();
+    List<DynamicAutoConnectorRule> rules = index.getRules();
+
+    List<DynamicAutoConnectorRule> candidates = index.findCandidates(peptides);
+    // VL-CH is no neighbour pair, QQ no domain type
+    Assert.assertEquals(Arrays.asList(rules.get(0), rules.get(2), rules.get(3), rules.get(4), rules.get(5)),
+        candidates);
+
+    // heavy chain without hinge
+    peptides.get(0).setDomains(new Domain[] {peptides.get(0).getDomains().get(0), peptides.get(0).getDomains().get(1)});
+    candidates = index.findCandidates(peptides);
+    Assert.assertEquals(Arrays.asList(rules.get(0)), candidates);
+
+    // only light chains
+    Assert.assertTrue(index.findCandidates(peptides.subList(1, 2)).isEmpty());
+  }
+
+  @Test
+  public void testRulesNotFoundDoNotMatch() throws Exception {
+    AutoConnectorRuleIndex index = new AutoConnectorRuleIndex(RULES);
+    List<Peptide> peptides = createAntibody();
+    List<DynamicAutoConnectorRule> candidates = index.findCandidates(peptides);
+
+    DynamicAutoConnectorMatcher matcher = new DynamicAutoConnectorMatcher();
+    List<ChainPattern> patterns = new LinkedList<ChainPattern>();
+    for (Peptide peptide : peptides) {
+      List<DomainPattern> domainPatterns = new LinkedList<DomainPattern>();
+      for (Domain domain : peptide.getDomains()) {
+        domainPatterns.add(new DomainPattern(domain, domain.getDomainType(), domain.getChainType(),
+            domain.getUserLabel()));
+      }
+      patterns.add(new ChainPattern(domainPatterns));
+    }
+    matcher.setAntibodyPattern(patterns);
+
+    int matchCount = 0;
+    for (DynamicAutoConnectorRule rule : index.getRules()) {
+      matcher.resetMatchResult(rule);
+      if (matcher.match()) {
+        matchCount++;
+        Assert.assertTrue(rule.toString(), candidates.contains(rule));
+      }
+    }
+    Assert.assertTrue(matchCount > 0);
+  }
+
+  private static List<Peptide> createAntibody() {
+    Peptide heavy = createPeptide(ChainType.HEAVY, new Object[][] {
+        {DomainType.VARIABLE, "hVH"}, {DomainType.CONSTANT, "hCH1"}, {DomainType.HINGE, "hinge"},
+        {DomainType.CONSTANT, "hCH2"}, {DomainType.CONSTANT, "hCH3"}});
+    Peptide light = createPeptide(ChainType.KAPPA, new Object[][] {
+        {DomainType.VARIABLE, "kVL"}, {DomainType.CONSTANT, "kCL"}});
+    return Arrays.asList(heavy, light);
+  }
+
+  private static Peptide createPeptide(ChainType chainType, Object[][] domainDefinitions) {
+    List<Domain> domains = new ArrayList<Domain>();
+    for (Object[] definition : domainDefinitions) {
+      Domain domain = new Domain();
+      domain.setDomainType((DomainType) definition[0]);
+      domain.setChainType(chainType);
+      domain.setUserLabel((String) definition[1]);
+      domains.add(domain);
+    }
+    Peptide peptide = new Peptide();
+    peptide.setDomains(domains.toArray(new Domain[domains.size()]));
+    return peptide;
+  }
+
+}
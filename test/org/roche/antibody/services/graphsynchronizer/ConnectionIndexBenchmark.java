@@ -0,0 +1,132 @@
+package org.roche.antibody.services.graphsynchronizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.roche.antibody.model.antibody.ChemElement;
+import org.roche.antibody.model.antibody.Connection;
+import org.roche.antibody.model.antibody.GeneralConnection;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.model.antibody.Sequence;
+
+/**
+ * Compares the list based bookkeeping of {@link GraphSynchronizer} with identity sets and {@link ConnectionIndex} on
+ * synthetic constructs: one peptide conjugated to 10 to 1000 chem elements. Both the traversal, which visits every
+ * connection from both of its sequences, and the sync back, which checks every rebuilt connection against the
+ * existing ones, are measured. Run with {@code java ConnectionIndexBenchmark [repetitions]}.
+ */
+public class ConnectionIndexBenchmark {
+
+  private static final int[] CONNECTION_COUNTS = {10, 100, 1000};
+
+  public static void main(String[] args) {
+    int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    // warm up
+    for (int count : CONNECTION_COUNTS) {
+      run(count, 2);
+    }
+    System.out.println("connections  list traversal  set traversal  list sync back  index sync back");
+    for (int count : CONNECTION_COUNTS) {
+      long[] times = run(count, repetitions);
+      System.out.println(String.format("%11d  %12.3fms  %11.3fms  %12.3fms  %13.3fms", count,
+          times[0] / 1e6 / repetitions, times[1] / 1e6 / repetitions, times[2] / 1e6 / repetitions,
+          times[3] / 1e6 / repetitions));
+    }
+  }
+
+  private static long[] run(int count, int repetitions) {
+    Peptide peptide = new Peptide();
+    List<Sequence> sequences = new ArrayList<Sequence>();
+    List<Connection> connections = new ArrayList<Connection>();
+    List<Connection> rebuilt = new ArrayList<Connection>();
+    sequences.add(peptide);
+    for (int i = 0; i < count; i++) {
+      ChemElement chem = new ChemElement();
+      sequences.add(chem);
+      connections.add(new GeneralConnection(peptide, chem, i + 1, 1, "R3", "R1"));
+      rebuilt.add(new GeneralConnection(chem, peptide, 1, i + 1, "R1", "R3"));
+    }
+
+    ConnectionIndex adjacency = new ConnectionIndex(connections);
+    long[] times = new long[4];
+    int found = 0;
+    for (int r = 0; r < repetitions; r++) {
+      long start = System.nanoTime();
+      found += traverseWithLists(sequences, adjacency);
+      times[0] += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      found += traverseWithSets(sequences, adjacency);
+      times[1] += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      found += syncBackWithList(connections, rebuilt);
+      times[2] += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      found += syncBackWithIndex(connections, rebuilt);
+      times[3] += System.nanoTime() - start;
+    }
+    if (found != 4 * count * repetitions) {
+      throw new IllegalStateException("Implementations disagree: " + found);
+    }
+    return times;
+  }
+
+  private static int traverseWithLists(List<Sequence> sequences, ConnectionIndex adjacency) {
+    List<Sequence> handledSequences = new ArrayList<Sequence>();
+    List<Connection> handledConnections = new ArrayList<Connection>();
+    for (Sequence sequence : sequences) {
+      if (handledSequences.contains(sequence)) {
+        continue;
+      }
+      handledSequences.add(sequence);
+      for (Connection con : adjacency.getConnections(sequence)) {
+        if (!handledConnections.contains(con)) {
+          handledConnections.add(con);
+        }
+      }
+    }
+    return handledConnections.size();
+  }
+
+  private static int traverseWithSets(List<Sequence> sequences, ConnectionIndex adjacency) {
+    Set<Sequence> handledSequences = Collections.newSetFromMap(new IdentityHashMap<Sequence, Boolean>());
+    Set<Connection> handledConnections = Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>());
+    for (Sequence sequence : sequences) {
+      if (!handledSequences.add(sequence)) {
+        continue;
+      }
+      for (Connection con : adjacency.getConnections(sequence)) {
+        handledConnections.add(con);
+      }
+    }
+    return handledConnections.size();
+  }
+
+  private static int syncBackWithList(List<Connection> connections, List<Connection> rebuilt) {
+    int existing = 0;
+    for (Connection con : rebuilt) {
+      // Antibody.getConnections() returns a copy
+      if (new ArrayList<Connection>(connections).contains(con)) {
+        existing++;
+      }
+    }
+    return existing;
+  }
+
+  private static int syncBackWithIndex(List<Connection> connections, List<Connection> rebuilt) {
+    ConnectionIndex index = new ConnectionIndex(connections);
+    int existing = 0;
+    for (Connection con : rebuilt) {
+      if (!index.add(con)) {
+        existing++;
+      }
+    }
+    return existing;
+  }
+
+}
@@ -0,0 +1,51 @@
+package org.roche.antibody.services.graphsynchronizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roche.antibody.model.antibody.ChemElement;
+import org.roche.antibody.model.antibody.Connection;
+import org.roche.antibody.model.antibody.GeneralConnection;
+import org.roche.antibody.model.antibody.Peptide;
+
+public class ConnectionIndexTest {
+
+  @Test
+  public void testContainsInBothDirections() {
+    Peptide peptide = new Peptide();
+    ChemElement chem = new ChemElement();
+    ConnectionIndex index = new ConnectionIndex(new ArrayList<Connection>());
+    Assert.assertTrue(index.add(new GeneralConnection(peptide, chem, 5, 1, "R3", "R1")));
+
+    Assert.assertTrue(index.contains(new GeneralConnection(peptide, chem, 5, 1, "R3", "R1")));
+    Assert.assertTrue(index.contains(new GeneralConnection(chem, peptide, 1, 5, "R1", "R3")));
+    Assert.assertFalse(index.contains(new GeneralConnection(peptide, chem, 6, 1, "R3", "R1")));
+    Assert.assertFalse(index.contains(new GeneralConnection(new Peptide(), chem, 5, 1, "R3", "R1")));
+
+    Assert.assertFalse(index.add(new GeneralConnection(chem, peptide, 1, 5, "R1", "R3")));
+    Assert.assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testAdjacency() {
+    Peptide peptide = new Peptide();
+    List<Connection> connections = new ArrayList<Connection>();
+    List<ChemElement> chems = new ArrayList<ChemElement>();
+    for (int i = 1; i <= 3; i++) {
+      ChemElement chem = new ChemElement();
+      chems.add(chem);
+      connections.add(new GeneralConnection(peptide, chem, i, 1, "R3", "R1"));
+    }
+    connections.add(new GeneralConnection(peptide, peptide, 1, 4, "R3", "R3"));
+    ConnectionIndex index = new ConnectionIndex(connections);
+
+    Assert.assertEquals(4, index.size());
+    Assert.assertEquals(4, index.getConnections(peptide).size());
+    Assert.assertEquals(1, index.getConnections(chems.get(1)).size());
+    Assert.assertSame(connections.get(1), index.getConnections(chems.get(1)).get(0));
+    Assert.assertTrue(index.getConnections(new ChemElement()).isEmpty());
+  }
+
+}
@@ -0,0 +1,170 @@
+package org.roche.antibody.services.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.AntibodyContainer;
+import org.roche.antibody.model.antibody.Peptide;
+
+public class AntibodyArchiveTest {
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("antibodies", AntibodyArchive.ARCHIVE_EXTENSION);
+    file.delete();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void testAppendAndRandomAccess() throws Exception {
+    AntibodyArchive archive = AntibodyArchive.openForAppend(file);
+    for (int i = 0; i < 10; i++) {
+      archive.append("ab" + i, createContainer(helm(i)));
+    }
+    archive.close();
+
+    archive = AntibodyArchive.open(file);
+    try {
+      Assert.assertEquals(10, archive.size());
+      Assert.assertEquals(helm(7), archive.get("ab7").getHelmCode());
+      Assert.assertEquals(helm(3), archive.getByHelm(helm(3)).getHelmCode());
+      Assert.assertEquals("ab3", archive.getEntryByHelmHash(AntibodyArchive.helmHash(helm(3))).getName());
+      Assert.assertNull(archive.get("unknown"));
+    } finally {
+      archive.close();
+    }
+  }
+
+  @Test
+  public void testReopenAppendAndIterate() throws Exception {
+    AntibodyArchive archive = AntibodyArchive.openForAppend(file);
+    archive.append("ab0", createContainer(helm(0)));
+    archive.append("ab1", createContainer(helm(1)));
+    archive.close();
+
+    archive = AntibodyArchive.openForAppend(file);
+    archive.append("ab2", createContainer(helm(2)));
+    // same name again, the last one wins
+    archive.append("ab0", createContainer(helm(3)));
+    archive.close();
+
+    archive = AntibodyArchive.open(file);
+    try {
+      List<String> helms = new ArrayList<String>();
+      for (AntibodyContainer abContainer : archive) {
+        helms.add(abContainer.getHelmCode());
+      }
+      Assert.assertEquals(4, helms.size());
+      Assert.assertEquals(helm(0), helms.get(0));
+      Assert.assertEquals(helm(3), helms.get(3));
+      Assert.assertEquals(helm(3), archive.get("ab0").getHelmCode());
+    } finally {
+      archive.close();
+    }
+  }
+
+  @Test
+  public void testRecoverMissingIndex() throws Exception {
+    AntibodyArchive archive = AntibodyArchive.openForAppend(file);
+    archive.append("ab0", createContainer(helm(0)));
+    AntibodyArchive.Entry last = archive.append("ab1", createContainer(helm(1)));
+    archive.close();
+
+    // cut off the index and half of the last entry, as after a crash while appending
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(last.getOffset() + last.getLength() / 2);
+    raf.close();
+
+    archive = AntibodyArchive.openForAppend(file);
+    Assert.assertEquals(1, archive.size());
+    archive.append("ab2", createContainer(helm(2)));
+    archive.close();
+
+    archive = AntibodyArchive.open(file);
+    try {
+      Assert.assertEquals(2, archive.size());
+      Assert.assertEquals(helm(2), archive.get("ab2").getHelmCode());
+    } finally {
+      archive.close();
+    }
+  }
+
+  @Test
+  public void testAppendToIndexedArchiveWithoutClose() throws Exception {
+    AntibodyArchive archive = AntibodyArchive.openForAppend(file);
+    for (int i = 0; i < 20; i++) {
+      archive.append("ab" + i, createContainer(helm(i)));
+    }
+    archive.close();
+
+    // the new entry is shorter than the old index, the writer crashes before close
+    AntibodyArchive crashed = AntibodyArchive.openForAppend(file);
+    crashed.append("ab20", createContainer(helm(20)));
+
+    AntibodyArchive recovered = AntibodyArchive.open(file);
+    try {
+      Assert.assertEquals(21, recovered.size());
+      Assert.assertEquals(helm(20), recovered.get("ab20").getHelmCode());
+    } finally {
+      recovered.close();
+      crashed.close();
+    }
+  }
+
+  @Test
+  public void testRecoverCorruptIndex() throws Exception {
+    AntibodyArchive archive = AntibodyArchive.openForAppend(file);
+    archive.append("ab0", createContainer(helm(0)));
+    AntibodyArchive.Entry last = archive.append("ab1", createContainer(helm(1)));
+    archive.close();
+
+    // entry count of the index
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.seek(last.getOffset() + last.getLength());
+    raf.writeInt(Integer.MAX_VALUE);
+    raf.close();
+
+    archive = AntibodyArchive.open(file);
+    try {
+      Assert.assertEquals(2, archive.size());
+      Assert.assertEquals(helm(1), archive.get("ab1").getHelmCode());
+    } finally {
+      archive.close();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testNoArchive() throws Exception {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.writeUTF("<antibodyContainer/>");
+    raf.close();
+    AntibodyArchive.open(file);
+  }
+
+  private static String helm(int i) {
+    return "PEPTIDE1{A.C.D." + i + "}$$$$";
+  }
+
+  private static AntibodyContainer createContainer(String helm) {
+    AntibodyContainer container = new AntibodyContainer(new Antibody(new ArrayList<Peptide>()));
+    container.setHelmCode(helm);
+    container.setTimestamp(new Date(0));
+    return container;
+  }
+
+}
@@ -0,0 +1,67 @@
+package org.roche.antibody.services.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+
+import javax.xml.bind.Marshaller;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roche.antibody.model.antibody.Antibody;
+import org.roche.antibody.model.antibody.AntibodyContainer;
+import org.roche.antibody.model.antibody.Peptide;
+
+public class CachedXmlAntibodyServiceTest {
+
+  private static final String HELM = "PEPTIDE1{A.C.D}$$$$";
+
+  private CachedXmlAntibodyService xmlService = CachedXmlAntibodyService.getInstance();
+
+  @Test
+  public void testMarshalAndUnmarshalStream() throws Exception {
+    AntibodyContainer container = createContainer();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    xmlService.marshal(container, out);
+
+    AntibodyContainer abContainer = xmlService.unmarshal(new ByteArrayInputStream(out.toByteArray()));
+    Assert.assertEquals(HELM, abContainer.getHelmCode());
+    Assert.assertNotNull(abContainer.getAntibody());
+
+    // string and stream output are the same
+    Assert.assertEquals(xmlService.marshal(container), new String(out.toByteArray(), "UTF-8"));
+  }
+
+  @Test
+  public void testContextSharedAndMarshallerPerThread() throws Exception {
+    Assert.assertSame(xmlService.getContext(), xmlService.getContext());
+    final Marshaller marshaller = xmlService.getMarshaller();
+    Assert.assertSame(marshaller, xmlService.getMarshaller());
+    Assert.assertSame(xmlService.getUnmarshaller(), xmlService.getUnmarshaller());
+
+    final Marshaller[] otherMarshaller = new Marshaller[1];
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          otherMarshaller[0] = xmlService.getMarshaller();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    thread.start();
+    thread.join();
+    Assert.assertNotNull(otherMarshaller[0]);
+    Assert.assertNotSame(marshaller, otherMarshaller[0]);
+  }
+
+  private AntibodyContainer createContainer() {
+    AntibodyContainer container = new AntibodyContainer(new Antibody(new ArrayList<Peptide>()));
+    container.setHelmCode(HELM);
+    container.setTimestamp(new Date(0));
+    return container;
+  }
+
+}
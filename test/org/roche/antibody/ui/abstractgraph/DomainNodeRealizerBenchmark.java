@@ -0,0 +1,97 @@
+package org.roche.antibody.ui.abstractgraph;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.roche.antibody.model.antibody.Domain;
+import org.roche.antibody.model.antibody.DomainType;
+import org.roche.antibody.model.antibody.Peptide;
+import org.roche.antibody.services.AbConst;
+
+import y.base.Node;
+import y.base.NodeMap;
+import y.view.Graph2D;
+import y.view.NodeRealizer;
+
+/**
+ * Repaints a synthetic graph of 200 domain nodes, as panning and zooming do. Compares painting with cached render
+ * states to painting with render states computed on every frame, like before. Run with
+ * {@code java DomainNodeRealizerBenchmark [frames]}.
+ */
+public class DomainNodeRealizerBenchmark {
+
+  private static final int DOMAIN_COUNT = 200;
+
+  private static final int DOMAINS_PER_PEPTIDE = 4;
+
+  private static final String DOMAIN_SEQUENCE = "EVQLVESGGGLVQPGGSLRLSCAASGFNIKDTYIHWVRQAPGKGLEWVARIYPTNGYTRYADSVKG";
+
+  public static void main(String[] args) {
+    int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    Graph2D graph = createGraph();
+    BufferedImage image = new BufferedImage(1600, 1200, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    try {
+      // warm up
+      paint(graph, g, frames / 10 + 1, true);
+      paint(graph, g, frames / 10 + 1, false);
+
+      long invalidated = paint(graph, g, frames, true);
+      long cached = paint(graph, g, frames, false);
+      System.out.println(String.format("%d domains, %d frames", DOMAIN_COUNT, frames));
+      System.out.println(String.format("render state per frame: %.3fms/frame", invalidated / 1e6 / frames));
+      System.out.println(String.format("cached render state:    %.3fms/frame", cached / 1e6 / frames));
+    } finally {
+      g.dispose();
+    }
+  }
+
+  private static long paint(Graph2D graph, Graphics2D g, int frames, boolean invalidate) {
+    long start = System.nanoTime();
+    for (int frame = 0; frame < frames; frame++) {
+      if (invalidate) {
+        DomainNodeRealizer.invalidateAll();
+      }
+      for (Node node : graph.getNodeArray()) {
+        graph.getRealizer(node).paint(g);
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static Graph2D createGraph() {
+    Graph2D graph = new Graph2D();
+    NodeMap nodeToSequence = graph.createNodeMap();
+    graph.addDataProvider(AbConst.NODE_TO_SEQUENCE_KEY, nodeToSequence);
+
+    Peptide peptide = null;
+    for (int i = 0; i < DOMAIN_COUNT; i++) {
+      int index = i % DOMAINS_PER_PEPTIDE;
+      if (index == 0) {
+        peptide = new Peptide();
+        StringBuilder sequence = new StringBuilder();
+        for (int j = 0; j < DOMAINS_PER_PEPTIDE; j++) {
+          sequence.append(DOMAIN_SEQUENCE);
+        }
+        peptide.setSequence(sequence.toString());
+        peptide.setOriginalSequence(sequence.toString());
+      }
+      int startPosition = index * DOMAIN_SEQUENCE.length() + 1;
+      int endPosition = startPosition + DOMAIN_SEQUENCE.length() - 1;
+      Domain domain = new Domain("Domain" + i, peptide, startPosition, endPosition, startPosition, endPosition);
+      domain.setDomainType(index == 0 ? DomainType.VARIABLE : DomainType.CONSTANT);
+      domain.setUserLabel("Domain " + i);
+      if (i % 8 == 0) {
+        domain.setParatope(1);
+      }
+      peptide.getDomains().add(domain);
+
+      NodeRealizer realizer = new DomainNodeRealizer();
+      realizer.setCenter(200 * (i % 8), 60 * (i / 8));
+      Node node = graph.createNode(realizer);
+      nodeToSequence.set(node, domain);
+    }
+    return graph;
+  }
+
+}